@@ -130,6 +130,62 @@ Java_org_xidobi_OS_SetCommState(JNIEnv *env, jobject this,
 	return JNI_TRUE;
 }
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    ApplyCommState
+ * Signature: (ILorg/xidobi/structs/DCB;Lorg/xidobi/structs/INT;)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_org_xidobi_OS_ApplyCommState(JNIEnv *env, jobject this,
+		jint handle,
+		jobject templateObject,
+		jobject lastError) {
+
+	DCB dcb;
+	FillMemory(&dcb, sizeof(dcb), 0);
+
+	BOOL result = GetCommState((HANDLE) handle, &dcb);
+	if (!result) {
+		preserveLastError(env, lastError);
+		return JNI_FALSE;
+	}
+
+	DCB template;
+	getDCBFields(env, templateObject, &template);
+
+	// replace only the values, that are configured by the DCBConfigurator
+	dcb.BaudRate = template.BaudRate;
+	dcb.ByteSize = template.ByteSize;
+	dcb.StopBits = template.StopBits;
+	dcb.Parity = template.Parity;
+	dcb.fRtsControl = template.fRtsControl;
+	dcb.fDtrControl = template.fDtrControl;
+	dcb.fOutxCtsFlow = template.fOutxCtsFlow;
+	dcb.fOutxDsrFlow = template.fOutxDsrFlow;
+	dcb.fDsrSensitivity = template.fDsrSensitivity;
+	dcb.fOutX = template.fOutX;
+	dcb.fInX = template.fInX;
+	dcb.fTXContinueOnXoff = template.fTXContinueOnXoff;
+	dcb.fErrorChar = template.fErrorChar;
+	dcb.fNull = template.fNull;
+	dcb.fAbortOnError = template.fAbortOnError;
+	dcb.XonLim = template.XonLim;
+	dcb.XoffLim = template.XoffLim;
+	dcb.XonChar = template.XonChar;
+	dcb.XoffChar = template.XoffChar;
+	dcb.ErrorChar = template.ErrorChar;
+	dcb.EofChar = template.EofChar;
+	dcb.EvtChar = template.EvtChar;
+
+	result = SetCommState((HANDLE) handle, &dcb);
+
+	preserveLastError(env, lastError);
+
+	if (!result)
+		return JNI_FALSE;
+	return JNI_TRUE;
+}
+
 
 /*
  * Class:     org_xidobi_OS
@@ -197,6 +253,39 @@ Java_org_xidobi_OS_WriteFile(JNIEnv *env, jobject this,
 	return JNI_FALSE;
 }
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    WriteFile_NativeByteArray
+ * Signature: (ILorg/xidobi/structs/NativeByteArray;ILorg/xidobi/structs/DWORD;Lorg/xidobi/structs/OVERLAPPED;Lorg/xidobi/structs/INT;)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_org_xidobi_OS_WriteFile_1NativeByteArray(JNIEnv *env, jobject this,
+		jint handle,
+		jobject lpBuffer,
+		jint nNumberOfBytesToWrite,
+		jobject lpNumberOfBytesWritten,
+		jobject lpOverlapped,
+		jobject lastError) {
+
+	DWORD *bytesWritten = getDWORD(env, lpNumberOfBytesWritten);
+	OVERLAPPED *overlapped = getOVERLAPPED(env, lpOverlapped);
+
+	// the native buffer stays valid until the overlapped write is completed
+	const jbyte *jBuffer = getNativeByteArray(env, lpBuffer);
+
+	BOOL result = WriteFile( (HANDLE) handle,
+							 (LPCVOID) jBuffer,
+							 (DWORD) nNumberOfBytesToWrite,
+							 bytesWritten,
+							 overlapped);
+
+	preserveLastError(env, lastError);
+
+	if (result)
+		return JNI_TRUE;
+	return JNI_FALSE;
+}
+
 /*
  * Class:     org_xidobi_OS
  * Method:    ReadFile
@@ -323,6 +412,38 @@ Java_org_xidobi_OS_WaitForSingleObject(JNIEnv *env, jobject this,
 	return (jint) result;
 }
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    WaitForMultipleObjects
+ * Signature: (I[IZILorg/xidobi/structs/INT;)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_xidobi_OS_WaitForMultipleObjects(JNIEnv *env, jobject this,
+		jint nCount,
+		jintArray lpHandles,
+		jboolean bWaitAll,
+		jint dwMilliseconds,
+		jobject lastError) {
+
+	HANDLE handles[MAXIMUM_WAIT_OBJECTS];
+	jint i;
+
+	jint* jHandles = (*env)->GetIntArrayElements(env, lpHandles, NULL);
+	// more than MAXIMUM_WAIT_OBJECTS handles are rejected by WaitForMultipleObjects
+	for (i = 0; i < nCount && i < MAXIMUM_WAIT_OBJECTS; i++)
+		handles[i] = (HANDLE) jHandles[i];
+	(*env)->ReleaseIntArrayElements(env, lpHandles, jHandles, JNI_ABORT);
+
+	DWORD result = WaitForMultipleObjects(	(DWORD) nCount,
+											handles,
+											(BOOL) bWaitAll,
+											(DWORD) dwMilliseconds);
+
+	preserveLastError(env, lastError);
+
+	return (jint) result;
+}
+
 /*
  * Class:     org_xidobi_OS
  * Method:    RegOpenKeyExA
@@ -421,6 +542,30 @@ Java_org_xidobi_OS_RegEnumValueA(JNIEnv *env, jobject this,
 	return (jint) result;
 }
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    RegNotifyChangeKeyValue
+ * Signature: (Lorg/xidobi/structs/HKEY;ZIIZ)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_xidobi_OS_RegNotifyChangeKeyValue(JNIEnv *env, jobject this,
+		jobject hKey,
+		jboolean bWatchSubtree,
+		jint dwNotifyFilter,
+		jint hEvent,
+		jboolean fAsynchronous) {
+
+	HKEY *phkey = getHKEY(env, hKey);
+
+	LONG result = RegNotifyChangeKeyValue((HKEY) *phkey,
+										  (BOOL) bWatchSubtree,
+										  (DWORD) dwNotifyFilter,
+										  (HANDLE) hEvent,
+										  (BOOL) fAsynchronous);
+
+	return (jint) result;
+}
+
 /*
  * Class:     org_xidobi_OS
  * Method:    SetCommMask
@@ -559,6 +704,30 @@ Java_org_xidobi_OS_ClearCommBreak(JNIEnv *env, jobject this,
 	return JNI_FALSE;
 }
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    GetCommModemStatus
+ * Signature: (ILorg/xidobi/structs/INT;Lorg/xidobi/structs/INT;)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_org_xidobi_OS_GetCommModemStatus(JNIEnv *env, jobject this,
+		jint hFile,
+		jobject lpModemStat,
+		jobject lastError) {
+
+	DWORD modemStat = 0;
+
+	BOOL result = GetCommModemStatus((HANDLE) hFile, &modemStat);
+
+	preserveLastError(env, lastError);
+
+	setINT(env, lpModemStat, &modemStat);
+
+	if (result)
+		return JNI_TRUE;
+	return JNI_FALSE;
+}
+
 /*
  * Class:     org_xidobi_OS
  * Method:    CancelIo
@@ -697,6 +866,41 @@ Java_org_xidobi_OS_getByteArray(JNIEnv *env, jobject this,
 	return result;
 }
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    setByteArray
+ * Signature: (Lorg/xidobi/structs/NativeByteArray;I[BII)V
+ */
+JNIEXPORT void JNICALL
+Java_org_xidobi_OS_setByteArray(JNIEnv *env, jobject this,
+		jobject nativeByteArray,
+		jint offset,
+		jbyteArray data,
+		jint dataOffset,
+		jint length) {
+
+	jbyte *bytes = getNativeByteArray(env, nativeByteArray);
+	(*env)->GetByteArrayRegion(env, data, dataOffset, length, bytes + offset);
+}
+
+/*
+ * Class:     org_xidobi_OS
+ * Method:    setByteArray_DirectBuffer
+ * Signature: (Lorg/xidobi/structs/NativeByteArray;ILjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL
+Java_org_xidobi_OS_setByteArray_1DirectBuffer(JNIEnv *env, jobject this,
+		jobject nativeByteArray,
+		jint offset,
+		jobject directBuffer,
+		jint position,
+		jint length) {
+
+	jbyte *bytes = getNativeByteArray(env, nativeByteArray);
+	jbyte *buffer = (jbyte *) (*env)->GetDirectBufferAddress(env, directBuffer);
+	CopyMemory(bytes + offset, buffer + position, length);
+}
+
 /*
  * Class:     org_xidobi_OS
  * Method:    getValue_DWORD
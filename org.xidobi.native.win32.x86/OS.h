@@ -40,6 +40,14 @@ JNIEXPORT jboolean JNICALL Java_org_xidobi_OS_GetCommState
 JNIEXPORT jboolean JNICALL Java_org_xidobi_OS_SetCommState
   (JNIEnv *, jobject, jint, jobject, jobject);
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    ApplyCommState
+ * Signature: (ILorg/xidobi/structs/DCB;Lorg/xidobi/structs/INT;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_xidobi_OS_ApplyCommState
+  (JNIEnv *, jobject, jint, jobject, jobject);
+
 /*
  * Class:     org_xidobi_OS
  * Method:    CreateEventA
@@ -56,6 +64,14 @@ JNIEXPORT jint JNICALL Java_org_xidobi_OS_CreateEventA
 JNIEXPORT jboolean JNICALL Java_org_xidobi_OS_WriteFile
   (JNIEnv *, jobject, jint, jbyteArray, jint, jobject, jobject, jobject);
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    WriteFile_NativeByteArray
+ * Signature: (ILorg/xidobi/structs/NativeByteArray;ILorg/xidobi/structs/DWORD;Lorg/xidobi/structs/OVERLAPPED;Lorg/xidobi/structs/INT;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_xidobi_OS_WriteFile_1NativeByteArray
+  (JNIEnv *, jobject, jint, jobject, jint, jobject, jobject, jobject);
+
 /*
  * Class:     org_xidobi_OS
  * Method:    ReadFile
@@ -96,6 +112,14 @@ JNIEXPORT jboolean JNICALL Java_org_xidobi_OS_GetOverlappedResult
 JNIEXPORT jint JNICALL Java_org_xidobi_OS_WaitForSingleObject
   (JNIEnv *, jobject, jint, jint, jobject);
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    WaitForMultipleObjects
+ * Signature: (I[IZILorg/xidobi/structs/INT;)I
+ */
+JNIEXPORT jint JNICALL Java_org_xidobi_OS_WaitForMultipleObjects
+  (JNIEnv *, jobject, jint, jintArray, jboolean, jint, jobject);
+
 /*
  * Class:     org_xidobi_OS
  * Method:    RegOpenKeyExA
@@ -120,6 +144,14 @@ JNIEXPORT jint JNICALL Java_org_xidobi_OS_RegCloseKey
 JNIEXPORT jint JNICALL Java_org_xidobi_OS_RegEnumValueA
   (JNIEnv *, jobject, jobject, jint, jbyteArray, jobject, jint, jobject, jbyteArray, jobject);
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    RegNotifyChangeKeyValue
+ * Signature: (Lorg/xidobi/structs/HKEY;ZIIZ)I
+ */
+JNIEXPORT jint JNICALL Java_org_xidobi_OS_RegNotifyChangeKeyValue
+  (JNIEnv *, jobject, jobject, jboolean, jint, jint, jboolean);
+
 /*
  * Class:     org_xidobi_OS
  * Method:    SetCommMask
@@ -168,6 +200,14 @@ JNIEXPORT jboolean JNICALL Java_org_xidobi_OS_SetCommBreak
 JNIEXPORT jboolean JNICALL Java_org_xidobi_OS_ClearCommBreak
   (JNIEnv *, jobject, jint, jobject);
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    GetCommModemStatus
+ * Signature: (ILorg/xidobi/structs/INT;Lorg/xidobi/structs/INT;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_xidobi_OS_GetCommModemStatus
+  (JNIEnv *, jobject, jint, jobject, jobject);
+
 /*
  * Class:     org_xidobi_OS
  * Method:    CancelIo
@@ -248,6 +288,22 @@ JNIEXPORT jint JNICALL Java_org_xidobi_OS_sizeOf_1DWORD
 JNIEXPORT jbyteArray JNICALL Java_org_xidobi_OS_getByteArray
   (JNIEnv *, jobject, jobject, jint);
 
+/*
+ * Class:     org_xidobi_OS
+ * Method:    setByteArray
+ * Signature: (Lorg/xidobi/structs/NativeByteArray;I[BII)V
+ */
+JNIEXPORT void JNICALL Java_org_xidobi_OS_setByteArray
+  (JNIEnv *, jobject, jobject, jint, jbyteArray, jint, jint);
+
+/*
+ * Class:     org_xidobi_OS
+ * Method:    setByteArray_DirectBuffer
+ * Signature: (Lorg/xidobi/structs/NativeByteArray;ILjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_org_xidobi_OS_setByteArray_1DirectBuffer
+  (JNIEnv *, jobject, jobject, jint, jobject, jint, jint);
+
 /*
  * Class:     org_xidobi_OS
  * Method:    getValue_DWORD
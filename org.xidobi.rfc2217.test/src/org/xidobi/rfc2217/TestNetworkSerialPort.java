@@ -0,0 +1,475 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.SerialPortSettings.from9600bauds8N1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.Thread.State;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xidobi.Deadline;
+import org.xidobi.FlowControl;
+import org.xidobi.GatheringConnection;
+import org.xidobi.LineError;
+import org.xidobi.LineSignal;
+import org.xidobi.LineStatusConnection;
+import org.xidobi.LineStatusEvent;
+import org.xidobi.LineStatusListener;
+import org.xidobi.PurgeableConnection;
+import org.xidobi.ReconfigurableConnection;
+import org.xidobi.ReconnectPolicy;
+import org.xidobi.SerialConnection;
+import org.xidobi.SerialPort;
+import org.xidobi.SerialPortSettings;
+import org.xidobi.TimedReadConnection;
+import org.xidobi.rfc2217.NetworkSerialPort.Protocol;
+
+/**
+ * Tests the classes {@link NetworkSerialPort} and {@link NetworkChannel} against an in-process
+ * {@link Rfc2217Server}, that exports a mocked serial port.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestNetworkSerialPort {
+
+	/** the time in ms to wait for asynchronous operations */
+	private static final int TIMEOUT = 5000;
+
+	/** a policy with short delays */
+	private static final ReconnectPolicy POLICY = ReconnectPolicy.from1sTo60s().initialDelay(10, MILLISECONDS).maxDelay(50, MILLISECONDS).create();
+
+	/** the settings of the exported port */
+	private static final SerialPortSettings SETTINGS = from9600bauds8N1().create();
+
+	/** marks the end of the data of the exported port */
+	private static final byte[] CLOSED = new byte[0];
+
+	@Mock
+	private SerialPort exportedPort;
+	@Mock
+	private FullSerialConnection exportedConnection;
+	@Mock
+	private LineStatusListener listener;
+
+	/** the data, that is returned by the reads of the exported port, is replaced on reconnect */
+	private volatile BlockingQueue<byte[]> received = new LinkedBlockingQueue<byte[]>();
+	/** the data, that was written to the exported port */
+	private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+	/** the terminal server */
+	private Rfc2217Server server;
+
+	/** the address of the exported port */
+	private InetSocketAddress address;
+
+	/** class under test */
+	private NetworkSerialPort port;
+
+	/** the connection of the test, is closed after the test */
+	private SerialConnection connection;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		initMocks(this);
+
+		when(exportedPort.getPortName()).thenReturn("COM1");
+		when(exportedPort.open(SETTINGS)).thenReturn(exportedConnection);
+		when(exportedConnection.getPort()).thenReturn(exportedPort);
+		when(exportedConnection.read()).thenAnswer(new Answer<byte[]>() {
+			public byte[] answer(InvocationOnMock invocation) throws Throwable {
+				BlockingQueue<byte[]> queue = received;
+				byte[] data = queue.take();
+				if (data == CLOSED) {
+					queue.add(CLOSED);
+					throw new IOException("Port COM1 was closed!");
+				}
+				return data;
+			}
+		});
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				received.add(CLOSED);
+				return null;
+			}
+		}).when(exportedConnection).close();
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				for (ByteBuffer buffer : (ByteBuffer[]) invocation.getArguments()[0]) {
+					byte[] bytes = new byte[buffer.remaining()];
+					buffer.get(bytes);
+					synchronized (written) {
+						written.write(bytes);
+					}
+				}
+				return null;
+			}
+		}).when(exportedConnection).write(any(ByteBuffer[].class));
+
+		server = new Rfc2217Server();
+		address = server.export(exportedPort, SETTINGS, new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		port = new NetworkSerialPort("NET1", address, Protocol.RFC2217, POLICY);
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() throws Exception {
+		if (connection != null)
+			connection.close();
+		server.close();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>address == null</code>
+	 * is passed to the constructor.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@SuppressWarnings("unused")
+	public void new_withNullAddress() {
+		new NetworkSerialPort("NET1", null);
+	}
+
+	/**
+	 * Verifies that the settings are negotiated, when the port is opened.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void open() throws Exception {
+		SerialPortSettings settings = from9600bauds8N1().bauds(115200).set(FlowControl.FLOWCONTROL_RTSCTS_IN_OUT).create();
+
+		connection = port.open(settings);
+
+		verify(exportedConnection, timeout(TIMEOUT)).reconfigure(from9600bauds8N1().bauds(115200).create());
+		verify(exportedConnection, timeout(TIMEOUT)).reconfigure(settings);
+		assertThat(connection.getPort(), is((SerialPort) port));
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, when the terminal server doesn't accept the
+	 * settings.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void open_settingsRejected() throws Exception {
+		doThrow(new IOException("Unable to set the control settings!")).when(exportedConnection).reconfigure(any(SerialPortSettings.class));
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Unable to set the control settings (NET1)!");
+
+		port.open(from9600bauds8N1().bauds(115200).create());
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, when the terminal server is not reachable.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void open_unreachable() throws Exception {
+		port = new NetworkSerialPort("NET2", unboundAddress(), Protocol.RFC2217, POLICY);
+
+		exception.expect(IOException.class);
+
+		port.open(SETTINGS);
+	}
+
+	/**
+	 * Verifies that the written data is written to the exported port, including the escaped IAC
+	 * bytes.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write() throws Exception {
+		connection = port.open(SETTINGS);
+
+		connection.write(new byte[] { 1, (byte) 0xFF, 2 });
+		((GatheringConnection) connection).write(new ByteBuffer[] { ByteBuffer.wrap(new byte[] { 3 }), ByteBuffer.wrap(new byte[] { (byte) 0xFF }) });
+
+		awaitWritten(new byte[] { 1, (byte) 0xFF, 2, 3, (byte) 0xFF });
+	}
+
+	/**
+	 * Verifies that the data of the exported port is read, including the escaped IAC bytes.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read() throws Exception {
+		connection = port.open(SETTINGS);
+
+		received.add(new byte[] { 1, (byte) 0xFF, 2 });
+
+		assertThat(readFully(3), is(new byte[] { 1, (byte) 0xFF, 2 }));
+	}
+
+	/**
+	 * Verifies that a read with a deadline returns an empty array, when no data is received.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_deadlineExpired() throws Exception {
+		connection = port.open(SETTINGS);
+
+		assertThat(((TimedReadConnection) connection).read(Deadline.after(20, MILLISECONDS)), is(new byte[0]));
+	}
+
+	/**
+	 * Verifies that a large amount of data is transferred unchanged in both directions, with every
+	 * byte value including IAC.
+	 */
+	@Test(timeout = 4 * TIMEOUT)
+	public void transfer_largeData() throws Exception {
+		byte[] data = new byte[256 * 1024];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i * 7);
+		connection = port.open(SETTINGS);
+
+		for (int i = 0; i < data.length; i += 1000)
+			received.add(copyOfRange(data, i, Math.min(i + 1000, data.length)));
+		connection.write(data);
+
+		assertThat(readFully(data.length), is(data));
+		awaitWritten(data);
+	}
+
+	/**
+	 * Verifies that the new settings are negotiated, when the connection is reconfigured.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void reconfigure() throws Exception {
+		connection = port.open(SETTINGS);
+		SerialPortSettings settings = from9600bauds8N1().bauds(19200).create();
+
+		((ReconfigurableConnection) connection).reconfigure(settings);
+
+		verify(exportedConnection).reconfigure(settings);
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, when the terminal server doesn't accept the
+	 * new settings.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void reconfigure_rejected() throws Exception {
+		connection = port.open(SETTINGS);
+		doThrow(new IOException("Unable to set the control settings!")).when(exportedConnection).reconfigure(any(SerialPortSettings.class));
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Unable to set the control settings (NET1)!");
+
+		((ReconfigurableConnection) connection).reconfigure(from9600bauds8N1().bauds(19200).create());
+	}
+
+	/**
+	 * Verifies that the buffers of the exported port are purged.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void purge() throws Exception {
+		connection = port.open(SETTINGS);
+
+		((PurgeableConnection) connection).purgeInput();
+		((PurgeableConnection) connection).purgeOutput();
+
+		verify(exportedConnection).purgeInput();
+		verify(exportedConnection).purgeOutput();
+	}
+
+	/**
+	 * Verifies that the listeners are notified about the changes of the modem control signals of
+	 * the exported port.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void lineStatusChanged() throws Exception {
+		connection = port.open(SETTINGS);
+		((LineStatusConnection) connection).addLineStatusListener(listener);
+		ArgumentCaptor<LineStatusListener> exportedListener = ArgumentCaptor.forClass(LineStatusListener.class);
+		verify(exportedConnection, timeout(TIMEOUT)).addLineStatusListener(exportedListener.capture());
+
+		exportedListener.getValue().lineStatusChanged(new LineStatusEvent(exportedPort, EnumSet.of(LineSignal.CTS), EnumSet.of(LineSignal.CTS), Collections.<LineError> emptySet()));
+		((TimedReadConnection) connection).read(Deadline.after(200, MILLISECONDS));
+
+		ArgumentCaptor<LineStatusEvent> event = ArgumentCaptor.forClass(LineStatusEvent.class);
+		verify(listener).lineStatusChanged(event.capture());
+		assertThat(event.getValue().getChangedSignals(), is((Object) EnumSet.of(LineSignal.CTS)));
+		assertThat(event.getValue().isActive(LineSignal.CTS), is(true));
+	}
+
+	/**
+	 * Verifies that the connection is re-established, when the terminal server drops it, and that
+	 * the reads continue with the new connection.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_reconnect() throws Exception {
+		connection = port.open(SETTINGS);
+		verify(exportedPort, timeout(TIMEOUT)).open(SETTINGS);
+
+		server.unexport(exportedPort);
+		verify(exportedConnection, timeout(TIMEOUT)).close();
+		// the reader of the previous session keeps the end marker of its queue
+		received = new LinkedBlockingQueue<byte[]>();
+		reexport();
+		received.add(new byte[] { 1, 2, 3 });
+
+		assertThat(readFully(3), is(new byte[] { 1, 2, 3 }));
+		assertThat(connection.isClosed(), is(false));
+	}
+
+	/**
+	 * Verifies that a read, that waits for the re-established connection, is aborted, when the
+	 * connection is closed.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_closedWhileReconnecting() throws Exception {
+		final SerialConnection connection = port.open(SETTINGS);
+		server.unexport(exportedPort);
+
+		FutureTask<byte[]> read = new FutureTask<byte[]>(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return connection.read();
+			}
+		});
+		Thread reader = new Thread(read);
+		reader.start();
+		awaitWaiting(reader);
+		connection.close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port NET1 was closed!");
+
+		try {
+			read.get();
+		}
+		catch (ExecutionException e) {
+			throw (Exception) e.getCause();
+		}
+	}
+
+	/**
+	 * Verifies that the data is sent unchanged with the raw TCP protocol and that the settings
+	 * can't be changed or purged.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void rawProtocol() throws Exception {
+		ServerSocket terminalServer = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		try {
+			port = new NetworkSerialPort("NET2", (InetSocketAddress) terminalServer.getLocalSocketAddress(), Protocol.RAW, POLICY);
+			connection = port.open(SETTINGS);
+			Socket socket = terminalServer.accept();
+
+			connection.write(new byte[] { 1, (byte) 0xFF, 2 });
+			socket.getOutputStream().write(new byte[] { 3, (byte) 0xFF });
+
+			InputStream in = socket.getInputStream();
+			assertThat(new byte[] { (byte) in.read(), (byte) in.read(), (byte) in.read() }, is(new byte[] { 1, (byte) 0xFF, 2 }));
+			assertThat(readFully(2), is(new byte[] { 3, (byte) 0xFF }));
+			assertThat(connection instanceof ReconfigurableConnection, is(false));
+			assertThat(connection instanceof PurgeableConnection, is(false));
+		}
+		finally {
+			terminalServer.close();
+		}
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Reads the given number of bytes from the connection. */
+	private byte[] readFully(int length) throws IOException {
+		return ((TimedReadConnection) connection).readFully(length, Deadline.after(TIMEOUT, MILLISECONDS));
+	}
+
+	/**
+	 * Exports the port again on the same address. The socket of the previous export is released by
+	 * the selector thread of the server, so the bind is retried until it succeeds.
+	 */
+	private void reexport() throws Exception {
+		while (true) {
+			try {
+				server.export(exportedPort, SETTINGS, address);
+				return;
+			}
+			catch (BindException e) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	/** Returns a local address, on which no server is listening. */
+	private static InetSocketAddress unboundAddress() throws IOException {
+		ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		try {
+			return (InetSocketAddress) socket.getLocalSocketAddress();
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	/** Waits until the given thread waits, e.g. for data or for the reconnect. */
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		while (thread.getState() != State.WAITING && thread.getState() != State.TIMED_WAITING)
+			Thread.sleep(1);
+	}
+
+	/** Waits until the given bytes were written to the exported port. */
+	private void awaitWritten(byte[] expected) throws InterruptedException {
+		while (true) {
+			synchronized (written) {
+				if (written.size() >= expected.length) {
+					assertThat(written.toByteArray(), is(expected));
+					return;
+				}
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	/** Returns a copy of the given range. */
+	private static byte[] copyOfRange(byte[] data, int from, int to) {
+		byte[] copy = new byte[to - from];
+		System.arraycopy(data, from, copy, 0, copy.length);
+		return copy;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xidobi.SerialPort;
+
+/**
+ * Tests the class {@link NetworkSerialPortFinder}.
+ * 
+ * @author Christian Schwarz
+ */
+@SuppressWarnings("javadoc")
+public class TestNetworkSerialPortFinder {
+
+	/** class under test */
+	private NetworkSerialPortFinder finder;
+
+	private NetworkSerialPort port;
+
+	@Before
+	public void setUp() {
+		finder = new NetworkSerialPortFinder();
+		port = new NetworkSerialPort("NET1", new InetSocketAddress("localhost", 4001));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>null</code> is added.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void add_withNull() {
+		finder.add(null);
+	}
+
+	/**
+	 * Verifies that an added port is found by its name.
+	 */
+	@Test
+	public void add() {
+		finder.add(port);
+
+		assertThat(finder.get("NET1"), is(sameInstance((SerialPort) port)));
+		assertThat(finder.getAll(), contains((SerialPort) port));
+	}
+
+	/**
+	 * Verifies that an added port replaces the port with the same name.
+	 */
+	@Test
+	public void add_replacesPortWithSameName() {
+		NetworkSerialPort other = new NetworkSerialPort("NET1", new InetSocketAddress("localhost", 4002));
+		finder.add(port);
+
+		finder.add(other);
+
+		assertThat(finder.get("NET1"), is(sameInstance((SerialPort) other)));
+		assertThat(finder.getAll(), contains((SerialPort) other));
+	}
+
+	/**
+	 * Verifies that <code>null</code> is returned for an unknown port name.
+	 */
+	@Test
+	public void get_unknownPort() {
+		assertThat(finder.get("NET1"), is(nullValue()));
+	}
+
+	/**
+	 * Verifies that a removed port is not found anymore.
+	 */
+	@Test
+	public void remove() {
+		finder.add(port);
+
+		finder.remove("NET1");
+
+		assertThat(finder.get("NET1"), is(nullValue()));
+		assertThat(finder.getAll(), is(empty()));
+	}
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.SerialPortSettings.from9600bauds8N1;
+import static org.xidobi.rfc2217.Telnet.BINARY;
+import static org.xidobi.rfc2217.Telnet.COM_PORT_OPTION;
+import static org.xidobi.rfc2217.Telnet.DO;
+import static org.xidobi.rfc2217.Telnet.IAC;
+import static org.xidobi.rfc2217.Telnet.SB;
+import static org.xidobi.rfc2217.Telnet.SE;
+import static org.xidobi.rfc2217.Telnet.SUPPRESS_GO_AHEAD;
+import static org.xidobi.rfc2217.Telnet.WILL;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xidobi.LineError;
+import org.xidobi.LineSignal;
+import org.xidobi.LineStatusEvent;
+import org.xidobi.LineStatusListener;
+import org.xidobi.SerialConnection;
+import org.xidobi.SerialPort;
+import org.xidobi.SerialPortSettings;
+
+/**
+ * Tests the classes {@link Rfc2217Server} and {@link PortSession} with a client, that is
+ * connected over the loopback interface.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestRfc2217Server {
+
+	/** the time in ms to wait for asynchronous operations */
+	private static final int TIMEOUT = 2000;
+
+	/** the initial settings of the port */
+	private static final SerialPortSettings SETTINGS = from9600bauds8N1().create();
+
+	/** the negotiation of the Telnet options, that is sent by the server */
+	//@formatter:off
+	private static final int[] NEGOTIATION = {	IAC, WILL, BINARY, IAC, DO, BINARY,
+												IAC, WILL, SUPPRESS_GO_AHEAD, IAC, DO, SUPPRESS_GO_AHEAD,
+												IAC, DO, COM_PORT_OPTION };
+	//@formatter:on
+
+	/** marks the end of the data of the serial port */
+	private static final byte[] CLOSED = new byte[0];
+
+	@Mock
+	private SerialPort port;
+	@Mock
+	private FullSerialConnection connection;
+	@Mock
+	private SerialPort otherPort;
+	@Mock
+	private SerialConnection otherConnection;
+
+	/** the data, that is returned by the reads of the serial port */
+	private final BlockingQueue<byte[]> received = new LinkedBlockingQueue<byte[]>();
+	/** the data, that was written to the serial port */
+	private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+	/** class under test */
+	private Rfc2217Server server;
+
+	/** the address of the exported port */
+	private InetSocketAddress address;
+
+	/** the connected client */
+	private Socket client;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		initMocks(this);
+
+		when(port.getPortName()).thenReturn("COM1");
+		when(port.open(SETTINGS)).thenReturn(connection);
+		when(connection.getPort()).thenReturn(port);
+		when(connection.read()).thenAnswer(new Answer<byte[]>() {
+			public byte[] answer(InvocationOnMock invocation) throws Throwable {
+				byte[] data = received.take();
+				if (data == CLOSED) {
+					received.add(CLOSED);
+					throw new IOException("Port COM1 was closed!");
+				}
+				return data;
+			}
+		});
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				received.add(CLOSED);
+				return null;
+			}
+		}).when(connection).close();
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				for (ByteBuffer buffer : (ByteBuffer[]) invocation.getArguments()[0]) {
+					byte[] bytes = new byte[buffer.remaining()];
+					buffer.get(bytes);
+					synchronized (written) {
+						written.write(bytes);
+					}
+				}
+				return null;
+			}
+		}).when(connection).write(any(ByteBuffer[].class));
+
+		server = new Rfc2217Server();
+		address = server.export(port, SETTINGS, new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() throws Exception {
+		if (client != null)
+			client.close();
+		server.close();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when
+	 * <code>workerThreads == 0</code> is passed to the constructor.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@SuppressWarnings("unused")
+	public void new_withZeroWorkerThreads() throws Exception {
+		new Rfc2217Server(0);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalStateException} is thrown, when a port is exported twice.
+	 */
+	@Test
+	public void export_twice() throws Exception {
+		exception.expect(IllegalStateException.class);
+		exception.expectMessage("The port COM1 is already exported!");
+
+		server.export(port, SETTINGS, new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+	}
+
+	/**
+	 * Verifies that the server negotiates the Telnet options and opens the serial port, when a
+	 * client connects.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void connect_opensPort() throws Exception {
+		connect();
+
+		assertThat(server.isConnected(port), is(true));
+	}
+
+	/**
+	 * Verifies that the data of the client is written to the serial port and that an escaped IAC
+	 * is unescaped.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write() throws Exception {
+		connect();
+
+		send(1, IAC, IAC, 2);
+
+		awaitWritten(new byte[] { 1, (byte) IAC, 2 });
+	}
+
+	/**
+	 * Verifies that a serial port, whose write blocks, doesn't delay the writes of another client,
+	 * even if the server keeps only one idle worker.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_blockedPortDoesntDelayOtherClients() throws Exception {
+		server.close();
+		server = new Rfc2217Server(1);
+		address = server.export(port, SETTINGS, new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		final CountDownLatch release = new CountDownLatch(1);
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				release.await();
+				return null;
+			}
+		}).when(connection).write(any(ByteBuffer[].class));
+		when(otherPort.getPortName()).thenReturn("COM2");
+		when(otherPort.open(SETTINGS)).thenReturn(otherConnection);
+		when(otherConnection.getPort()).thenReturn(otherPort);
+		when(otherConnection.read()).thenAnswer(new Answer<byte[]>() {
+			public byte[] answer(InvocationOnMock invocation) throws Throwable {
+				release.await();
+				throw new IOException("Port COM2 was closed!");
+			}
+		});
+		InetSocketAddress otherAddress = server.export(otherPort, SETTINGS, new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+
+		Socket other = new Socket(otherAddress.getAddress(), otherAddress.getPort());
+		try {
+			connect();
+			send(1);
+			verify(connection, timeout(TIMEOUT)).write(any(ByteBuffer[].class));
+
+			other.getOutputStream().write(new byte[] { 2 });
+
+			verify(otherConnection, timeout(TIMEOUT)).write(any(byte[].class));
+		}
+		finally {
+			release.countDown();
+			other.close();
+		}
+	}
+
+	/**
+	 * Verifies that the data of the serial port is sent to the client and that an IAC is escaped.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read() throws Exception {
+		connect();
+
+		received.add(new byte[] { 1, (byte) IAC, 2 });
+
+		expect(1, IAC, IAC, 2);
+	}
+
+	/**
+	 * Verifies that the serial port is reconfigured, when the client sets the baud rate, and that
+	 * the server answers with the new baud rate.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void setBaudrate() throws Exception {
+		connect();
+
+		send(IAC, SB, COM_PORT_OPTION, 1, 0, 1, 0xC2, 0x00, IAC, SE);
+
+		expect(IAC, SB, COM_PORT_OPTION, 101, 0, 1, 0xC2, 0x00, IAC, SE);
+		verify(connection).reconfigure(from9600bauds8N1().bauds(115200).create());
+	}
+
+	/**
+	 * Verifies that the server answers with the current baud rate, when the serial port can't be
+	 * reconfigured.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void setBaudrate_unsupported() throws Exception {
+		doThrow(new IOException("Unable to set the control settings!")).when(connection).reconfigure(any(SerialPortSettings.class));
+		connect();
+
+		send(IAC, SB, COM_PORT_OPTION, 1, 0, 1, 0xC2, 0x00, IAC, SE);
+
+		expect(IAC, SB, COM_PORT_OPTION, 101, 0, 0, 0x25, 0x80, IAC, SE);
+	}
+
+	/**
+	 * Verifies that the buffers of the serial port are purged on request of the client.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void purgeData() throws Exception {
+		connect();
+
+		send(IAC, SB, COM_PORT_OPTION, 12, 3, IAC, SE);
+
+		expect(IAC, SB, COM_PORT_OPTION, 112, 3, IAC, SE);
+		verify(connection).purgeInput();
+		verify(connection).purgeOutput();
+	}
+
+	/**
+	 * Verifies that a change of a modem control signal is notified to the client.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void notifyModemState() throws Exception {
+		connect();
+		ArgumentCaptor<LineStatusListener> listener = ArgumentCaptor.forClass(LineStatusListener.class);
+		verify(connection, timeout(TIMEOUT)).addLineStatusListener(listener.capture());
+
+		listener.getValue().lineStatusChanged(new LineStatusEvent(port, EnumSet.of(LineSignal.CTS), EnumSet.of(LineSignal.CTS), Collections.<LineError> emptySet()));
+
+		expect(IAC, SB, COM_PORT_OPTION, 107, 0x11, IAC, SE);
+	}
+
+	/**
+	 * Verifies that a second client is disconnected, while the serial port is used.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void connect_portInUse() throws Exception {
+		connect();
+
+		Socket second = new Socket(address.getAddress(), address.getPort());
+		try {
+			assertThat(second.getInputStream().read(), is(-1));
+		}
+		finally {
+			second.close();
+		}
+	}
+
+	/**
+	 * Verifies that the serial port is closed, when the client disconnects, and that the port can
+	 * be used by the next client.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void disconnect() throws Exception {
+		connect();
+
+		client.close();
+
+		verify(connection, timeout(TIMEOUT)).close();
+		while (server.isConnected(port))
+			Thread.sleep(10);
+	}
+
+	/**
+	 * Verifies that the client is disconnected, when the port is unexported.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void unexport() throws Exception {
+		connect();
+
+		server.unexport(port);
+
+		assertThat(client.getInputStream().read(), is(-1));
+		verify(connection, timeout(TIMEOUT)).close();
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/**
+	 * Connects the client, receives the negotiation of the server and waits until the serial port
+	 * was opened.
+	 */
+	private void connect() throws IOException {
+		client = new Socket(address.getAddress(), address.getPort());
+		client.setSoTimeout(TIMEOUT);
+		expect(NEGOTIATION);
+		verify(port, timeout(TIMEOUT)).open(SETTINGS);
+	}
+
+	/** Sends the given bytes to the server. */
+	private void send(int... bytes) throws IOException {
+		client.getOutputStream().write(bytes(bytes));
+	}
+
+	/** Receives the given bytes from the server. */
+	private void expect(int... bytes) throws IOException {
+		InputStream in = client.getInputStream();
+		byte[] actual = new byte[bytes.length];
+		for (int i = 0; i < actual.length; i++)
+			actual[i] = (byte) in.read();
+		assertThat(actual, is(bytes(bytes)));
+	}
+
+	/** Waits until the given bytes were written to the serial port. */
+	private void awaitWritten(byte[] expected) throws InterruptedException {
+		while (true) {
+			synchronized (written) {
+				if (written.size() >= expected.length) {
+					assertThat(written.toByteArray(), is(expected));
+					return;
+				}
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	/** Returns the given values as bytes. */
+	private static byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++)
+			bytes[i] = (byte) values[i];
+		return bytes;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.xidobi.rfc2217.Telnet.COM_PORT_OPTION;
+import static org.xidobi.rfc2217.Telnet.DO;
+import static org.xidobi.rfc2217.Telnet.IAC;
+import static org.xidobi.rfc2217.Telnet.SB;
+import static org.xidobi.rfc2217.Telnet.SE;
+import static org.xidobi.rfc2217.Telnet.WILL;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the class {@link TelnetDecoder}.
+ * 
+ * @author Christian Schwarz
+ */
+@SuppressWarnings("javadoc")
+public class TestTelnetDecoder {
+
+	/** the class under test */
+	private TelnetDecoder decoder;
+
+	/** records the decoded data and commands */
+	private RecordingHandler handler;
+
+	@Before
+	public void setUp() {
+		decoder = new TelnetDecoder();
+		handler = new RecordingHandler();
+	}
+
+	/**
+	 * Verifies that plain data is passed to the handler as a single slice, without copying it.
+	 */
+	@Test
+	public void decode_data() throws Exception {
+		ByteBuffer input = buffer(1, 2, 3);
+
+		decoder.decode(input, handler);
+
+		assertThat(handler.events, is(asList("data [1, 2, 3]")));
+		assertThat(input.hasRemaining(), is(false));
+	}
+
+	/**
+	 * Verifies that an escaped IAC is passed as data byte 255.
+	 */
+	@Test
+	public void decode_escapedIAC() throws Exception {
+		decoder.decode(buffer(1, IAC, IAC, 2), handler);
+
+		assertThat(handler.events, is(asList("data [1]", "data [-1, 2]")));
+	}
+
+	/**
+	 * Verifies that a negotiation between data is passed in the order of the input.
+	 */
+	@Test
+	public void decode_negotiation() throws Exception {
+		decoder.decode(buffer(1, IAC, WILL, COM_PORT_OPTION, 2), handler);
+
+		assertThat(handler.events, is(asList("data [1]", "negotiation 251 44", "data [2]")));
+	}
+
+	/**
+	 * Verifies that a subnegotiation is decoded and that an escaped IAC in its parameters is
+	 * unescaped.
+	 */
+	@Test
+	public void decode_subnegotiation() throws Exception {
+		decoder.decode(buffer(IAC, SB, COM_PORT_OPTION, 1, 0, 0, IAC, IAC, 0, IAC, SE), handler);
+
+		assertThat(handler.events, is(asList("subnegotiation 44 [1, 0, 0, -1, 0]")));
+	}
+
+	/**
+	 * Verifies that commands, that are split across several inputs, are decoded, when they are
+	 * complete.
+	 */
+	@Test
+	public void decode_splitCommands() throws Exception {
+		decoder.decode(buffer(IAC), handler);
+		decoder.decode(buffer(DO), handler);
+		decoder.decode(buffer(COM_PORT_OPTION, IAC, SB, COM_PORT_OPTION), handler);
+		assertThat(handler.events, is(asList("negotiation 253 44")));
+
+		decoder.decode(buffer(12, 3, IAC), handler);
+		decoder.decode(buffer(SE, 7), handler);
+
+		assertThat(handler.events, is(asList("negotiation 253 44", "subnegotiation 44 [12, 3]", "data [7]")));
+	}
+
+	/**
+	 * Verifies that an unknown command is ignored.
+	 */
+	@Test
+	public void decode_unknownCommand() throws Exception {
+		decoder.decode(buffer(1, IAC, 241, 2), handler);
+
+		assertThat(handler.events, is(asList("data [1]", "data [2]")));
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Returns a buffer containing the given bytes. */
+	private ByteBuffer buffer(int... bytes) {
+		ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+		for (int b : bytes)
+			buffer.put((byte) b);
+		buffer.flip();
+		return buffer;
+	}
+
+	/** Records the calls of the decoder as strings. */
+	private static class RecordingHandler implements TelnetDecoder.Handler {
+
+		/** the recorded calls */
+		private final List<String> events = new ArrayList<String>();
+
+		public void data(ByteBuffer data) {
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			events.add("data " + Arrays.toString(bytes));
+		}
+
+		public void negotiation(int command, int option) {
+			events.add("negotiation " + command + " " + option);
+		}
+
+		public void subnegotiation(int option, byte[] data) {
+			events.add("subnegotiation " + option + " " + Arrays.toString(data));
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.xidobi.rfc2217.Telnet.BINARY;
+import static org.xidobi.rfc2217.Telnet.COM_PORT_OPTION;
+import static org.xidobi.rfc2217.Telnet.DO;
+import static org.xidobi.rfc2217.Telnet.DONT;
+import static org.xidobi.rfc2217.Telnet.IAC;
+import static org.xidobi.rfc2217.Telnet.WILL;
+import static org.xidobi.rfc2217.Telnet.WONT;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the class {@link TelnetOptions}.
+ * 
+ * @author Christian Schwarz
+ */
+@SuppressWarnings("javadoc")
+public class TestTelnetOptions {
+
+	/** an option, that is not supported */
+	private static final int ECHO = 1;
+
+	/** the class under test */
+	private TelnetOptions options;
+
+	@Before
+	public void setUp() {
+		options = new TelnetOptions(new int[] { BINARY }, new int[] { BINARY, COM_PORT_OPTION });
+	}
+
+	/**
+	 * Verifies that all supported options are requested and enabled.
+	 */
+	@Test
+	public void requestAll() {
+		ByteBuffer request = options.requestAll();
+
+		assertThat(bytes(request), is(bytes(IAC, WILL, BINARY, IAC, DO, BINARY, IAC, DO, COM_PORT_OPTION)));
+		assertThat(options.isLocalEnabled(BINARY), is(true));
+		assertThat(options.isRemoteEnabled(COM_PORT_OPTION), is(true));
+	}
+
+	/**
+	 * Verifies that a request for an enabled option is not answered, so that the negotiation
+	 * doesn't loop.
+	 */
+	@Test
+	public void received_confirmation() {
+		options.requestAll();
+
+		assertThat(options.received(DO, BINARY), is(nullValue()));
+		assertThat(options.received(WILL, COM_PORT_OPTION), is(nullValue()));
+	}
+
+	/**
+	 * Verifies that a supported option is enabled and confirmed on request of the remote side.
+	 */
+	@Test
+	public void received_enableSupported() {
+		assertThat(bytes(options.received(WILL, COM_PORT_OPTION)), is(bytes(IAC, DO, COM_PORT_OPTION)));
+		assertThat(options.isRemoteEnabled(COM_PORT_OPTION), is(true));
+	}
+
+	/**
+	 * Verifies that a request for an unsupported option is refused.
+	 */
+	@Test
+	public void received_unsupported() {
+		assertThat(bytes(options.received(DO, ECHO)), is(bytes(IAC, WONT, ECHO)));
+		assertThat(bytes(options.received(WILL, ECHO)), is(bytes(IAC, DONT, ECHO)));
+		assertThat(options.isLocalEnabled(ECHO), is(false));
+		assertThat(options.isRemoteEnabled(ECHO), is(false));
+	}
+
+	/**
+	 * Verifies that an enabled option is disabled and confirmed on request of the remote side.
+	 */
+	@Test
+	public void received_disable() {
+		options.requestAll();
+
+		assertThat(bytes(options.received(DONT, BINARY)), is(bytes(IAC, WONT, BINARY)));
+		assertThat(options.isLocalEnabled(BINARY), is(false));
+		assertThat(options.received(DONT, BINARY), is(nullValue()));
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Returns the remaining bytes of the given buffer. */
+	private byte[] bytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/** Returns the given bytes as array. */
+	private byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++)
+			bytes[i] = (byte) values[i];
+		return bytes;
+	}
+}
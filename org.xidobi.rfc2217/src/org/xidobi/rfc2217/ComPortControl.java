@@ -0,0 +1,495 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static org.xidobi.DataBits.DATABITS_5;
+import static org.xidobi.DataBits.DATABITS_6;
+import static org.xidobi.DataBits.DATABITS_7;
+import static org.xidobi.DataBits.DATABITS_8;
+import static org.xidobi.FlowControl.FLOWCONTROL_NONE;
+import static org.xidobi.FlowControl.FLOWCONTROL_RTSCTS_IN;
+import static org.xidobi.FlowControl.FLOWCONTROL_RTSCTS_IN_OUT;
+import static org.xidobi.FlowControl.FLOWCONTROL_RTSCTS_OUT;
+import static org.xidobi.FlowControl.FLOWCONTROL_XONXOFF_IN;
+import static org.xidobi.FlowControl.FLOWCONTROL_XONXOFF_IN_OUT;
+import static org.xidobi.FlowControl.FLOWCONTROL_XONXOFF_OUT;
+import static org.xidobi.Parity.PARITY_EVEN;
+import static org.xidobi.Parity.PARITY_MARK;
+import static org.xidobi.Parity.PARITY_NONE;
+import static org.xidobi.Parity.PARITY_ODD;
+import static org.xidobi.Parity.PARITY_SPACE;
+import static org.xidobi.StopBits.STOPBITS_1;
+import static org.xidobi.StopBits.STOPBITS_1_5;
+import static org.xidobi.StopBits.STOPBITS_2;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.xidobi.DataBits;
+import org.xidobi.FlowControl;
+import org.xidobi.LineError;
+import org.xidobi.LineSignal;
+import org.xidobi.LineStatusEvent;
+import org.xidobi.Parity;
+import org.xidobi.StopBits;
+
+/**
+ * Maps the values of the Com Port Control Option (RFC 2217) to the {@link org.xidobi.SerialPortSettings
+ * SerialPortSettings} and the {@link LineStatusEvent}s of xidobi and vice versa.
+ * 
+ * @author Christian Schwarz
+ */
+final class ComPortControl {
+
+	//@formatter:off
+	/** SET-CONTROL: requests the outbound flow control */
+	static final int REQUEST_OUTBOUND_FLOW = 0;
+	/** SET-CONTROL: no outbound flow control */
+	static final int OUTBOUND_FLOW_NONE = 1;
+	/** SET-CONTROL: XON/XOFF outbound flow control */
+	static final int OUTBOUND_FLOW_XONXOFF = 2;
+	/** SET-CONTROL: RTS/CTS outbound flow control */
+	static final int OUTBOUND_FLOW_HARDWARE = 3;
+	/** SET-CONTROL: requests the BREAK state */
+	static final int REQUEST_BREAK = 4;
+	/** SET-CONTROL: turns BREAK on */
+	static final int BREAK_ON = 5;
+	/** SET-CONTROL: turns BREAK off */
+	static final int BREAK_OFF = 6;
+	/** SET-CONTROL: requests the DTR state */
+	static final int REQUEST_DTR = 7;
+	/** SET-CONTROL: turns DTR on */
+	static final int DTR_ON = 8;
+	/** SET-CONTROL: turns DTR off */
+	static final int DTR_OFF = 9;
+	/** SET-CONTROL: requests the RTS state */
+	static final int REQUEST_RTS = 10;
+	/** SET-CONTROL: turns RTS on */
+	static final int RTS_ON = 11;
+	/** SET-CONTROL: turns RTS off */
+	static final int RTS_OFF = 12;
+	/** SET-CONTROL: requests the inbound flow control */
+	static final int REQUEST_INBOUND_FLOW = 13;
+	/** SET-CONTROL: no inbound flow control */
+	static final int INBOUND_FLOW_NONE = 14;
+	/** SET-CONTROL: XON/XOFF inbound flow control */
+	static final int INBOUND_FLOW_XONXOFF = 15;
+	/** SET-CONTROL: RTS/CTS inbound flow control */
+	static final int INBOUND_FLOW_HARDWARE = 16;
+	/** SET-CONTROL: DCD outbound flow control */
+	static final int OUTBOUND_FLOW_DCD = 17;
+	/** SET-CONTROL: DTR inbound flow control */
+	static final int INBOUND_FLOW_DTR = 18;
+	/** SET-CONTROL: DSR outbound flow control */
+	static final int OUTBOUND_FLOW_DSR = 19;
+
+	/** PURGE-DATA: discards the receive buffer */
+	static final int PURGE_RECEIVE = 1;
+	/** PURGE-DATA: discards the transmit buffer */
+	static final int PURGE_TRANSMIT = 2;
+	/** PURGE-DATA: discards both buffers */
+	static final int PURGE_BOTH = 3;
+
+	/** NOTIFY-LINESTATE: break detected */
+	static final int LINESTATE_BREAK = 16;
+	/** NOTIFY-LINESTATE: framing error */
+	static final int LINESTATE_FRAMING_ERROR = 8;
+	/** NOTIFY-LINESTATE: parity error */
+	static final int LINESTATE_PARITY_ERROR = 4;
+	/** NOTIFY-LINESTATE: overrun error */
+	static final int LINESTATE_OVERRUN_ERROR = 2;
+
+	/** NOTIFY-MODEMSTATE: carrier detect (RLSD) is on */
+	static final int MODEMSTATE_CD = 128;
+	/** NOTIFY-MODEMSTATE: ring indicator is on */
+	static final int MODEMSTATE_RI = 64;
+	/** NOTIFY-MODEMSTATE: DSR is on */
+	static final int MODEMSTATE_DSR = 32;
+	/** NOTIFY-MODEMSTATE: CTS is on */
+	static final int MODEMSTATE_CTS = 16;
+	/** NOTIFY-MODEMSTATE: carrier detect (RLSD) changed */
+	static final int MODEMSTATE_DELTA_CD = 8;
+	/** NOTIFY-MODEMSTATE: the ring indicator was turned off */
+	static final int MODEMSTATE_TRAILING_EDGE_RI = 4;
+	/** NOTIFY-MODEMSTATE: DSR changed */
+	static final int MODEMSTATE_DELTA_DSR = 2;
+	/** NOTIFY-MODEMSTATE: CTS changed */
+	static final int MODEMSTATE_DELTA_CTS = 1;
+	//@formatter:on
+
+	/** Prevents instantiation. */
+	private ComPortControl() {}
+
+	/**
+	 * Returns the RFC 2217 value of the given data bits.
+	 * 
+	 * @param dataBits
+	 *            the data bits, must not be <code>null</code>
+	 * @return the number of data bits
+	 */
+	static int encode(@Nonnull DataBits dataBits) {
+		// the ordinal of DATABITS_5 is 0
+		return dataBits.ordinal() + 5;
+	}
+
+	/**
+	 * Returns the data bits of the given RFC 2217 value.
+	 * 
+	 * @param value
+	 *            the number of data bits
+	 * @return the data bits, <code>null</code> if the value is not supported
+	 */
+	@CheckForNull
+	static DataBits decodeDataBits(int value) {
+		switch (value) {
+			case 5:
+				return DATABITS_5;
+			case 6:
+				return DATABITS_6;
+			case 7:
+				return DATABITS_7;
+			case 8:
+				return DATABITS_8;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Returns the RFC 2217 value of the given parity.
+	 * 
+	 * @param parity
+	 *            the parity, must not be <code>null</code>
+	 * @return the value of the parity
+	 */
+	static int encode(@Nonnull Parity parity) {
+		switch (parity) {
+			case PARITY_ODD:
+				return 2;
+			case PARITY_EVEN:
+				return 3;
+			case PARITY_MARK:
+				return 4;
+			case PARITY_SPACE:
+				return 5;
+			default:
+				return 1;
+		}
+	}
+
+	/**
+	 * Returns the parity of the given RFC 2217 value.
+	 * 
+	 * @param value
+	 *            the value of the parity
+	 * @return the parity, <code>null</code> if the value is not supported
+	 */
+	@CheckForNull
+	static Parity decodeParity(int value) {
+		switch (value) {
+			case 1:
+				return PARITY_NONE;
+			case 2:
+				return PARITY_ODD;
+			case 3:
+				return PARITY_EVEN;
+			case 4:
+				return PARITY_MARK;
+			case 5:
+				return PARITY_SPACE;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Returns the RFC 2217 value of the given stop bits.
+	 * 
+	 * @param stopBits
+	 *            the stop bits, must not be <code>null</code>
+	 * @return the value of the stop bits
+	 */
+	static int encode(@Nonnull StopBits stopBits) {
+		switch (stopBits) {
+			case STOPBITS_2:
+				return 2;
+			case STOPBITS_1_5:
+				return 3;
+			default:
+				return 1;
+		}
+	}
+
+	/**
+	 * Returns the stop bits of the given RFC 2217 value.
+	 * 
+	 * @param value
+	 *            the value of the stop bits
+	 * @return the stop bits, <code>null</code> if the value is not supported
+	 */
+	@CheckForNull
+	static StopBits decodeStopBits(int value) {
+		switch (value) {
+			case 1:
+				return STOPBITS_1;
+			case 2:
+				return STOPBITS_2;
+			case 3:
+				return STOPBITS_1_5;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Returns the SET-CONTROL value of the outbound part of the given flow control.
+	 * 
+	 * @param flowControl
+	 *            the flow control, must not be <code>null</code>
+	 * @return {@link #OUTBOUND_FLOW_NONE}, {@link #OUTBOUND_FLOW_XONXOFF} or
+	 *         {@link #OUTBOUND_FLOW_HARDWARE}
+	 */
+	static int outboundFlow(@Nonnull FlowControl flowControl) {
+		switch (flowControl) {
+			case FLOWCONTROL_RTSCTS_OUT:
+			case FLOWCONTROL_RTSCTS_IN_OUT:
+				return OUTBOUND_FLOW_HARDWARE;
+			case FLOWCONTROL_XONXOFF_OUT:
+			case FLOWCONTROL_XONXOFF_IN_OUT:
+				return OUTBOUND_FLOW_XONXOFF;
+			default:
+				return OUTBOUND_FLOW_NONE;
+		}
+	}
+
+	/**
+	 * Returns the SET-CONTROL value of the inbound part of the given flow control.
+	 * 
+	 * @param flowControl
+	 *            the flow control, must not be <code>null</code>
+	 * @return {@link #INBOUND_FLOW_NONE}, {@link #INBOUND_FLOW_XONXOFF} or
+	 *         {@link #INBOUND_FLOW_HARDWARE}
+	 */
+	static int inboundFlow(@Nonnull FlowControl flowControl) {
+		switch (flowControl) {
+			case FLOWCONTROL_RTSCTS_IN:
+			case FLOWCONTROL_RTSCTS_IN_OUT:
+				return INBOUND_FLOW_HARDWARE;
+			case FLOWCONTROL_XONXOFF_IN:
+			case FLOWCONTROL_XONXOFF_IN_OUT:
+				return INBOUND_FLOW_XONXOFF;
+			default:
+				return INBOUND_FLOW_NONE;
+		}
+	}
+
+	/**
+	 * Returns the flow control, that combines the given outbound and inbound flow control.
+	 * 
+	 * @param outbound
+	 *            {@link #OUTBOUND_FLOW_NONE}, {@link #OUTBOUND_FLOW_XONXOFF} or
+	 *            {@link #OUTBOUND_FLOW_HARDWARE}
+	 * @param inbound
+	 *            {@link #INBOUND_FLOW_NONE}, {@link #INBOUND_FLOW_XONXOFF} or
+	 *            {@link #INBOUND_FLOW_HARDWARE}
+	 * @return the flow control, <code>null</code> if the combination is not supported, e.g.
+	 *         XON/XOFF on the output with RTS/CTS on the input
+	 */
+	@CheckForNull
+	static FlowControl flowControl(int outbound, int inbound) {
+		//@formatter:off
+		switch (outbound) {
+			case OUTBOUND_FLOW_NONE:
+				return inbound == INBOUND_FLOW_NONE ? FLOWCONTROL_NONE
+						: inbound == INBOUND_FLOW_HARDWARE ? FLOWCONTROL_RTSCTS_IN
+						: inbound == INBOUND_FLOW_XONXOFF ? FLOWCONTROL_XONXOFF_IN
+						: null;
+			case OUTBOUND_FLOW_HARDWARE:
+				return inbound == INBOUND_FLOW_NONE ? FLOWCONTROL_RTSCTS_OUT
+						: inbound == INBOUND_FLOW_HARDWARE ? FLOWCONTROL_RTSCTS_IN_OUT
+						: null;
+			case OUTBOUND_FLOW_XONXOFF:
+				return inbound == INBOUND_FLOW_NONE ? FLOWCONTROL_XONXOFF_OUT
+						: inbound == INBOUND_FLOW_XONXOFF ? FLOWCONTROL_XONXOFF_IN_OUT
+						: null;
+			default:
+				return null;
+		}
+		//@formatter:on
+	}
+
+	/**
+	 * Returns the NOTIFY-LINESTATE bits of the line errors of the given event.
+	 * 
+	 * @param event
+	 *            the line status event, must not be <code>null</code>
+	 * @return the line state bits, 0 if no error occurred
+	 */
+	static int lineState(@Nonnull LineStatusEvent event) {
+		int state = 0;
+		for (LineError error : event.getErrors()) {
+			switch (error) {
+				case BREAK:
+					state |= LINESTATE_BREAK;
+					break;
+				case FRAMING:
+					state |= LINESTATE_FRAMING_ERROR;
+					break;
+				case PARITY:
+					state |= LINESTATE_PARITY_ERROR;
+					break;
+				case OVERRUN:
+					state |= LINESTATE_OVERRUN_ERROR;
+					break;
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Returns the NOTIFY-MODEMSTATE bits of the modem control signals of the given event.
+	 * 
+	 * @param event
+	 *            the line status event, must not be <code>null</code>
+	 * @return the modem state bits
+	 */
+	static int modemState(@Nonnull LineStatusEvent event) {
+		int state = 0;
+		for (LineSignal signal : event.getActiveSignals())
+			state |= modemStateBit(signal);
+		for (LineSignal signal : event.getChangedSignals()) {
+			switch (signal) {
+				case CTS:
+					state |= MODEMSTATE_DELTA_CTS;
+					break;
+				case DSR:
+					state |= MODEMSTATE_DELTA_DSR;
+					break;
+				case RING:
+					if (!event.isActive(signal))
+						state |= MODEMSTATE_TRAILING_EDGE_RI;
+					break;
+				case RLSD:
+					state |= MODEMSTATE_DELTA_CD;
+					break;
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Returns the line errors of the given NOTIFY-LINESTATE bits.
+	 * 
+	 * @param lineState
+	 *            the line state bits
+	 * @return the line errors, never <code>null</code>
+	 */
+	@Nonnull
+	static Set<LineError> lineErrors(int lineState) {
+		Set<LineError> errors = EnumSet.noneOf(LineError.class);
+		if ((lineState & LINESTATE_BREAK) != 0)
+			errors.add(LineError.BREAK);
+		if ((lineState & LINESTATE_FRAMING_ERROR) != 0)
+			errors.add(LineError.FRAMING);
+		if ((lineState & LINESTATE_PARITY_ERROR) != 0)
+			errors.add(LineError.PARITY);
+		if ((lineState & LINESTATE_OVERRUN_ERROR) != 0)
+			errors.add(LineError.OVERRUN);
+		return errors;
+	}
+
+	/**
+	 * Returns the modem control signals, that are on according to the given NOTIFY-MODEMSTATE
+	 * bits.
+	 * 
+	 * @param modemState
+	 *            the modem state bits
+	 * @return the active signals, never <code>null</code>
+	 */
+	@Nonnull
+	static Set<LineSignal> activeSignals(int modemState) {
+		Set<LineSignal> signals = EnumSet.noneOf(LineSignal.class);
+		for (LineSignal signal : LineSignal.values()) {
+			if ((modemState & modemStateBit(signal)) != 0)
+				signals.add(signal);
+		}
+		return signals;
+	}
+
+	/**
+	 * Returns the modem control signals, that changed their state according to the given
+	 * NOTIFY-MODEMSTATE bits.
+	 * 
+	 * @param modemState
+	 *            the modem state bits
+	 * @return the changed signals, never <code>null</code>
+	 */
+	@Nonnull
+	static Set<LineSignal> changedSignals(int modemState) {
+		Set<LineSignal> signals = EnumSet.noneOf(LineSignal.class);
+		if ((modemState & MODEMSTATE_DELTA_CTS) != 0)
+			signals.add(LineSignal.CTS);
+		if ((modemState & MODEMSTATE_DELTA_DSR) != 0)
+			signals.add(LineSignal.DSR);
+		if ((modemState & MODEMSTATE_TRAILING_EDGE_RI) != 0)
+			signals.add(LineSignal.RING);
+		if ((modemState & MODEMSTATE_DELTA_CD) != 0)
+			signals.add(LineSignal.RLSD);
+		return signals;
+	}
+
+	/** Returns the NOTIFY-MODEMSTATE bit of the given signal, when it is on. */
+	private static int modemStateBit(LineSignal signal) {
+		switch (signal) {
+			case CTS:
+				return MODEMSTATE_CTS;
+			case DSR:
+				return MODEMSTATE_DSR;
+			case RING:
+				return MODEMSTATE_RI;
+			default:
+				return MODEMSTATE_CD;
+		}
+	}
+
+	/**
+	 * Returns the 4 bytes of the given value in network byte order, e.g. for SET-BAUDRATE.
+	 * 
+	 * @param value
+	 *            the value
+	 * @return the bytes, never <code>null</code>
+	 */
+	@Nonnull
+	static byte[] encodeInt(int value) {
+		return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+	}
+
+	/**
+	 * Returns the value of the given 4 bytes in network byte order, e.g. of SET-BAUDRATE.
+	 * 
+	 * @param data
+	 *            the bytes, must not be <code>null</code>
+	 * @param offset
+	 *            the index of the first byte
+	 * @return the value
+	 */
+	static int decodeInt(@Nonnull byte[] data, int offset) {
+		return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,967 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static java.lang.System.nanoTime;
+import static java.nio.channels.SelectionKey.OP_CONNECT;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.xidobi.rfc2217.ComPortControl.DTR_OFF;
+import static org.xidobi.rfc2217.ComPortControl.DTR_ON;
+import static org.xidobi.rfc2217.ComPortControl.INBOUND_FLOW_NONE;
+import static org.xidobi.rfc2217.ComPortControl.LINESTATE_BREAK;
+import static org.xidobi.rfc2217.ComPortControl.LINESTATE_FRAMING_ERROR;
+import static org.xidobi.rfc2217.ComPortControl.LINESTATE_OVERRUN_ERROR;
+import static org.xidobi.rfc2217.ComPortControl.LINESTATE_PARITY_ERROR;
+import static org.xidobi.rfc2217.ComPortControl.PURGE_RECEIVE;
+import static org.xidobi.rfc2217.ComPortControl.PURGE_TRANSMIT;
+import static org.xidobi.rfc2217.ComPortControl.RTS_OFF;
+import static org.xidobi.rfc2217.ComPortControl.RTS_ON;
+import static org.xidobi.rfc2217.ComPortControl.activeSignals;
+import static org.xidobi.rfc2217.ComPortControl.changedSignals;
+import static org.xidobi.rfc2217.ComPortControl.encode;
+import static org.xidobi.rfc2217.ComPortControl.encodeInt;
+import static org.xidobi.rfc2217.ComPortControl.inboundFlow;
+import static org.xidobi.rfc2217.ComPortControl.lineErrors;
+import static org.xidobi.rfc2217.ComPortControl.outboundFlow;
+import static org.xidobi.rfc2217.Rfc2217Server.closeQuietly;
+import static org.xidobi.rfc2217.Telnet.BINARY;
+import static org.xidobi.rfc2217.Telnet.COM_PORT_OPTION;
+import static org.xidobi.rfc2217.Telnet.NOTIFY_LINESTATE;
+import static org.xidobi.rfc2217.Telnet.NOTIFY_MODEMSTATE;
+import static org.xidobi.rfc2217.Telnet.PURGE_DATA;
+import static org.xidobi.rfc2217.Telnet.SERVER_OFFSET;
+import static org.xidobi.rfc2217.Telnet.SET_BAUDRATE;
+import static org.xidobi.rfc2217.Telnet.SET_CONTROL;
+import static org.xidobi.rfc2217.Telnet.SET_DATASIZE;
+import static org.xidobi.rfc2217.Telnet.SET_LINESTATE_MASK;
+import static org.xidobi.rfc2217.Telnet.SET_MODEMSTATE_MASK;
+import static org.xidobi.rfc2217.Telnet.SET_PARITY;
+import static org.xidobi.rfc2217.Telnet.SET_STOPSIZE;
+import static org.xidobi.rfc2217.Telnet.SUPPRESS_GO_AHEAD;
+import static org.xidobi.rfc2217.Telnet.comPortCommand;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.xidobi.Deadline;
+import org.xidobi.LineSignal;
+import org.xidobi.LineStatusEvent;
+import org.xidobi.LineStatusListener;
+import org.xidobi.SerialPortSettings;
+import org.xidobi.rfc2217.NetworkSerialPort.Protocol;
+import org.xidobi.spi.GatheringWriter;
+import org.xidobi.spi.LineStatusReader;
+import org.xidobi.spi.Reader;
+import org.xidobi.spi.Writer;
+
+/**
+ * The TCP connection of a {@link NetworkSerialPort}, that is used as {@link Reader} and
+ * {@link Writer} of the {@link NetworkSerialConnection}.
+ * <p>
+ * The socket is non-blocking, the reading and the writing thread wait with their own
+ * {@link Selector}. The received bytes are decoded by the thread, that reads. A thread, that waits
+ * for the answers of the terminal server, e.g. to a new baud rate, decodes the received bytes
+ * itself, if no other thread reads at the moment. The decoded data is kept, until it is read.
+ * <p>
+ * When the socket fails, the thread that notices the failure discards the socket. The next thread,
+ * that needs the socket, connects again according to the {@link org.xidobi.ReconnectPolicy
+ * ReconnectPolicy} and negotiates the current settings.
+ * 
+ * @author Christian Schwarz
+ */
+final class NetworkChannel implements Reader, LineStatusReader, Writer, GatheringWriter {
+
+	/** the time in milliseconds to wait for a TCP connection */
+	private static final int CONNECT_TIMEOUT = 5000;
+	/** the time in milliseconds to wait for the answers of the terminal server */
+	private static final int ANSWER_TIMEOUT = 5000;
+	/** the interval in milliseconds to check, if the answers of the terminal server arrived */
+	private static final int ANSWER_POLL_INTERVAL = 50;
+
+	/** the size of the buffer for the received bytes */
+	private static final int INPUT_BUFFER_SIZE = 4 * 1024;
+	/** the size of the buffer for the escaped data, that is written */
+	private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+	/** the options, that the client performs */
+	private static final int[] LOCAL_OPTIONS = { BINARY, SUPPRESS_GO_AHEAD, COM_PORT_OPTION };
+	/** the options, that the terminal server is allowed to perform */
+	private static final int[] REMOTE_OPTIONS = { BINARY, SUPPRESS_GO_AHEAD };
+
+	/** the line errors, that the terminal server should notify */
+	private static final int LINESTATE_MASK = LINESTATE_BREAK | LINESTATE_FRAMING_ERROR | LINESTATE_PARITY_ERROR | LINESTATE_OVERRUN_ERROR;
+	/** the modem state bits, that the terminal server should notify */
+	private static final int MODEMSTATE_MASK = 0xFF;
+
+	/** the result of a read, whose deadline expired */
+	private static final byte[] NO_DATA = new byte[0];
+
+	/** the port, never <code>null</code> */
+	private final NetworkSerialPort port;
+	/** <code>true</code>, if the settings are negotiated with RFC 2217 */
+	private final boolean isTelnet;
+
+	/** guards the reads of the socket and the input buffer */
+	private final Lock inputLock = new ReentrantLock();
+	/** guards the writes to the socket and the output buffer */
+	private final Lock outputLock = new ReentrantLock();
+	/** ensures, that only one thread connects at a time */
+	private final Lock connectLock = new ReentrantLock();
+
+	/** waits until the socket is readable, is guarded by the inputLock */
+	private final Selector readSelector;
+	/** waits until the socket is writable, is guarded by the outputLock */
+	private final Selector writeSelector;
+	/** the received bytes, is guarded by the inputLock */
+	private final ByteBuffer input = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
+	/** the escaped data, that was not written yet, is guarded by the outputLock */
+	private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+
+	/** the decoded data, that was not read yet, is guarded by <code>this</code> */
+	private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+	/** the current TCP connection, <code>null</code> if the connection was lost */
+	@Nullable
+	private volatile Link link;
+	/** the failed attempts to connect since the connection was lost, is guarded by the connectLock */
+	private int failedAttempts;
+	/** the value of {@link System#nanoTime()} for the next attempt to connect, is guarded by the connectLock */
+	private long nextAttempt;
+	/** randomizes the reconnect delays, is guarded by the connectLock */
+	private final Random random = new Random();
+
+	/** the settings, that are negotiated, never <code>null</code> */
+	private volatile SerialPortSettings settings;
+	/** is notified about line status changes, <code>null</code> if there is none */
+	@Nullable
+	private volatile LineStatusListener listener;
+	/** the last notified modem state bits */
+	private volatile int modemState;
+
+	/** is released, when this channel is closed */
+	private final CountDownLatch closed = new CountDownLatch(1);
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this channel is closed
+	 * <li> <code>false</code> if this channel is open
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a new channel, that is not connected.
+	 * 
+	 * @param port
+	 *            the port, must not be <code>null</code>
+	 * @param settings
+	 *            the settings to negotiate, must not be <code>null</code>
+	 * @throws IOException
+	 *             if the selectors couldn't be opened
+	 */
+	NetworkChannel(	@Nonnull NetworkSerialPort port,
+					@Nonnull SerialPortSettings settings) throws IOException {
+		this.port = port;
+		this.settings = settings;
+		isTelnet = port.getProtocol() == Protocol.RFC2217;
+		readSelector = Selector.open();
+		try {
+			writeSelector = Selector.open();
+		}
+		catch (IOException e) {
+			readSelector.close();
+			throw e;
+		}
+	}
+
+	/** Returns <code>true</code>, if the settings are negotiated with RFC 2217. */
+	boolean isTelnet() {
+		return isTelnet;
+	}
+
+	/**
+	 * Connects to the terminal server for the first time and negotiates the settings. Doesn't
+	 * retry, if the connection fails.
+	 * 
+	 * @throws IOException
+	 *             if the terminal server is not reachable or didn't accept the settings
+	 */
+	void connect() throws IOException {
+		connectLock.lock();
+		try {
+			link = establish(true);
+		}
+		finally {
+			connectLock.unlock();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read() throws IOException {
+		return read(null);
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read(@Nullable Deadline deadline) throws IOException {
+		lock(inputLock);
+		try {
+			while (true) {
+				byte[] data = takeReceived();
+				if (data != null)
+					return data;
+				if (deadline != null && deadline.isExpired())
+					return NO_DATA;
+
+				Link link = connected(deadline);
+				if (link == null)
+					return NO_DATA;
+				receive(link, deadline);
+			}
+		}
+		finally {
+			inputLock.unlock();
+		}
+	}
+
+	/** {@inheritDoc} */
+	public void write(@Nonnull byte[] data) throws IOException {
+		write(new ByteBuffer[] { ByteBuffer.wrap(data) }, data.length);
+	}
+
+	/** {@inheritDoc} */
+	public void write(@Nonnull ByteBuffer[] data, int length) throws IOException {
+		lock(outputLock);
+		try {
+			for (ByteBuffer buffer : data) {
+				ByteBuffer src = buffer.duplicate();
+				while (src.hasRemaining()) {
+					if (isTelnet)
+						Telnet.escape(src, output);
+					else
+						copy(src, output);
+					if (!output.hasRemaining())
+						flush();
+				}
+			}
+			flush();
+		}
+		finally {
+			outputLock.unlock();
+		}
+	}
+
+	/** {@inheritDoc} */
+	public void setLineStatusListener(@Nullable LineStatusListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Negotiates the given settings with the terminal server. If the connection is lost, the
+	 * settings are negotiated, when the connection is established again. Doesn't wait for the
+	 * connection, so that the connection can be closed in the meantime.
+	 * 
+	 * @throws IOException
+	 *             if the terminal server didn't accept the settings or didn't answer in time
+	 */
+	void reconfigure(@Nonnull SerialPortSettings settings) throws IOException {
+		SerialPortSettings previous = this.settings;
+		this.settings = settings;
+		Link link = this.link;
+		if (link == null)
+			return;
+		try {
+			List<ByteBuffer> commands = new ArrayList<ByteBuffer>();
+			link.addSettingsCommands(commands, previous, settings);
+			sendAndAwaitAnswers(link, commands);
+		}
+		catch (IOException e) {
+			this.settings = previous;
+			throw e;
+		}
+	}
+
+	/**
+	 * Discards the buffered data of the terminal server and the received data, that was not read
+	 * yet.
+	 * 
+	 * @throws IOException
+	 *             if the terminal server didn't answer in time
+	 */
+	void purge(boolean input, boolean output) throws IOException {
+		if (input) {
+			synchronized (this) {
+				received.reset();
+			}
+		}
+
+		// the buffers of a lost connection are discarded by the terminal server anyway
+		Link link = this.link;
+		if (link == null)
+			return;
+		List<ByteBuffer> commands = new ArrayList<ByteBuffer>();
+		link.addCommand(commands, PURGE_DATA, new byte[] { (byte) ((input ? PURGE_RECEIVE : 0) | (output ? PURGE_TRANSMIT : 0)) });
+		sendAndAwaitAnswers(link, commands);
+	}
+
+	/** {@inheritDoc} */
+	public void close() {
+		isClosed = true;
+		closed.countDown();
+		Link link = this.link;
+		if (link != null)
+			closeQuietly(link.channel);
+		readSelector.wakeup();
+		writeSelector.wakeup();
+	}
+
+	/** {@inheritDoc} */
+	public void dispose() {
+		closeQuietly(readSelector);
+		closeQuietly(writeSelector);
+	}
+
+	/**
+	 * Returns the current connection or connects again, if the connection was lost. The attempts
+	 * to connect are delayed according to the reconnect policy.
+	 * 
+	 * @param deadline
+	 *            the deadline, <code>null</code> to wait until the connection is established
+	 * @return the connection, <code>null</code> if the deadline expired
+	 * @throws IOException
+	 *             if this channel was closed or the thread was interrupted
+	 */
+	@CheckForNull
+	private Link connected(@Nullable Deadline deadline) throws IOException {
+		Link link = this.link;
+		if (link != null)
+			return link;
+
+		try {
+			if (deadline == null)
+				connectLock.lockInterruptibly();
+			else if (!connectLock.tryLock(deadline.remaining(NANOSECONDS), NANOSECONDS))
+				return null;
+		}
+		catch (InterruptedException e) {
+			throw interrupted();
+		}
+		try {
+			while (this.link == null) {
+				long delay = nextAttempt - nanoTime();
+				if (deadline != null && deadline.remaining(NANOSECONDS) < delay) {
+					await(deadline.remaining(NANOSECONDS));
+					return null;
+				}
+				await(delay);
+
+				try {
+					this.link = establish(false);
+					failedAttempts = 0;
+				}
+				catch (IOException e) {
+					nextAttempt = nanoTime() + MILLISECONDS.toNanos(port.getReconnectPolicy().getDelay(failedAttempts++, random.nextDouble()));
+				}
+			}
+			// a thread, that waits for the lost connection, must use the new one
+			readSelector.wakeup();
+			writeSelector.wakeup();
+			return this.link;
+		}
+		finally {
+			connectLock.unlock();
+		}
+	}
+
+	/**
+	 * Discards the given connection, because it failed. Has no effect, if the connection was
+	 * already discarded.
+	 * 
+	 * @throws IOException
+	 *             if this channel was closed
+	 */
+	private void broken(@Nonnull Link link) throws IOException {
+		closeQuietly(link.channel);
+		if (isClosed)
+			throw closedException();
+		// a thread, that waits for the socket, must notice the failure
+		readSelector.wakeup();
+		writeSelector.wakeup();
+
+		connectLock.lock();
+		try {
+			if (this.link != link)
+				return;
+			this.link = null;
+			failedAttempts = 0;
+			nextAttempt = nanoTime() + MILLISECONDS.toNanos(port.getReconnectPolicy().getDelay(failedAttempts++, random.nextDouble()));
+		}
+		finally {
+			connectLock.unlock();
+		}
+	}
+
+	/**
+	 * Connects to the terminal server and negotiates the settings.
+	 * 
+	 * @param isFirst
+	 *            <code>true</code>, if the settings must be accepted by the terminal server. A
+	 *            re-established connection is used with the settings of the terminal server,
+	 *            because they won't be accepted by the next attempt either.
+	 * @return the new connection, never <code>null</code>
+	 * @throws IOException
+	 *             if the connection failed or the terminal server didn't accept the settings
+	 */
+	@Nonnull
+	private Link establish(boolean isFirst) throws IOException {
+		if (isClosed)
+			throw closedException();
+
+		SocketChannel channel = SocketChannel.open();
+		Selector selector = null;
+		try {
+			channel.configureBlocking(false);
+			// the data is batched by the writer, so it must be sent without delay
+			channel.socket().setTcpNoDelay(true);
+			channel.socket().setKeepAlive(true);
+			selector = Selector.open();
+
+			Deadline deadline = Deadline.after(CONNECT_TIMEOUT, MILLISECONDS);
+			if (!channel.connect(port.getAddress())) {
+				channel.register(selector, OP_CONNECT);
+				while (!channel.finishConnect())
+					select(selector, deadline, "Connect to " + port.getAddress() + " timed out!");
+			}
+
+			Link link = new Link(channel);
+			if (isTelnet)
+				link.negotiate(selector, isFirst);
+			if (isClosed)
+				throw closedException();
+			return link;
+		}
+		catch (IOException e) {
+			closeQuietly(channel);
+			throw e;
+		}
+		finally {
+			if (selector != null)
+				closeQuietly(selector);
+		}
+	}
+
+	/**
+	 * Waits until the given selector selects a channel.
+	 * 
+	 * @throws IOException
+	 *             with the given message, if the deadline expired
+	 */
+	private void select(Selector selector, Deadline deadline, String message) throws IOException {
+		long timeout = deadline.remaining(MILLISECONDS);
+		if (timeout <= 0 || selector.select(timeout) == 0 && deadline.isExpired())
+			throw new IOException(message);
+		selector.selectedKeys().clear();
+		if (isClosed)
+			throw closedException();
+	}
+
+	/**
+	 * Receives the available bytes of the given connection and decodes them. Waits until bytes
+	 * are available or the deadline expires. Must be called with the inputLock.
+	 */
+	private void receive(Link link, @Nullable Deadline deadline) throws IOException {
+		try {
+			if (link.readKey == null)
+				link.readKey = link.channel.register(readSelector, OP_READ);
+			if (deadline == null)
+				readSelector.select();
+			else {
+				long timeout = deadline.remaining(MILLISECONDS);
+				if (timeout <= 0)
+					readSelector.selectNow();
+				else
+					readSelector.select(timeout);
+			}
+			readSelector.selectedKeys().clear();
+			if (isClosed)
+				throw closedException();
+
+			if (link.channel.read(input) < 0)
+				throw new EOFException("The connection was closed by the terminal server!");
+			input.flip();
+			link.decode(input);
+		}
+		catch (ClosedSelectorException e) {
+			throw closedException();
+		}
+		catch (IOException e) {
+			broken(link);
+			return;
+		}
+		finally {
+			input.clear();
+		}
+		link.sendAnswers();
+	}
+
+	/**
+	 * Writes the escaped data of the output buffer. If the connection fails, the data is discarded,
+	 * because the terminal server can't tell, which part of it was received. Must be called with
+	 * the outputLock.
+	 */
+	private void flush() throws IOException {
+		output.flip();
+		try {
+			Link link = connected(null);
+			try {
+				link.writeAnswers();
+				writeFully(link, output);
+			}
+			catch (IOException e) {
+				output.position(output.limit());
+				broken(link);
+			}
+		}
+		finally {
+			output.compact();
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffer to the given connection. Must be called with
+	 * the outputLock.
+	 */
+	private void writeFully(Link link, ByteBuffer buffer) throws IOException {
+		try {
+			while (buffer.hasRemaining()) {
+				if (link.channel.write(buffer) > 0)
+					continue;
+				if (link.writeKey == null)
+					link.writeKey = link.channel.register(writeSelector, OP_WRITE);
+				writeSelector.select();
+				writeSelector.selectedKeys().clear();
+				if (isClosed)
+					throw closedException();
+				if (link != this.link)
+					throw new EOFException("The connection was lost!");
+			}
+		}
+		catch (ClosedSelectorException e) {
+			throw closedException();
+		}
+	}
+
+	/**
+	 * Sends the given commands and waits for the answers of the terminal server.
+	 * 
+	 * @throws IOException
+	 *             if the answers differ from the commands or didn't arrive in time
+	 */
+	private void sendAndAwaitAnswers(Link link, List<ByteBuffer> commands) throws IOException {
+		if (commands.isEmpty())
+			return;
+
+		// the connection can't be closed, while this method waits, so a blocked writer is not
+		// waited for infinitely
+		try {
+			if (!outputLock.tryLock(ANSWER_TIMEOUT, MILLISECONDS))
+				throw new IOException("The commands couldn't be sent in time, because of a pending write (" + port.getPortName() + ")!");
+		}
+		catch (InterruptedException e) {
+			throw interrupted();
+		}
+		try {
+			for (ByteBuffer command : commands)
+				writeFully(link, command);
+		}
+		catch (IOException e) {
+			// the commands are sent again with the current settings, when the connection is
+			// re-established
+			broken(link);
+			return;
+		}
+		finally {
+			outputLock.unlock();
+		}
+
+		Deadline deadline = Deadline.after(ANSWER_TIMEOUT, MILLISECONDS);
+		while (!link.isAnswered()) {
+			if (link != this.link)
+				return;
+			if (isClosed)
+				throw closedException();
+			if (deadline.isExpired())
+				throw new IOException("The terminal server didn't answer in time (" + port.getPortName() + ")!");
+
+			// decodes the answers itself, if no other thread reads at the moment
+			if (inputLock.tryLock()) {
+				try {
+					receive(link, Deadline.after(ANSWER_POLL_INTERVAL, MILLISECONDS));
+				}
+				finally {
+					inputLock.unlock();
+				}
+			}
+			else
+				link.awaitAnswers(ANSWER_POLL_INTERVAL);
+		}
+		link.checkAccepted();
+	}
+
+	/** Returns the decoded data, that was not read yet, or <code>null</code> if there is none. */
+	@CheckForNull
+	private synchronized byte[] takeReceived() {
+		if (received.size() == 0)
+			return null;
+		byte[] data = received.toByteArray();
+		received.reset();
+		return data;
+	}
+
+	/** Adds the given decoded data to the received data. */
+	private synchronized void addReceived(ByteBuffer data) {
+		byte[] bytes = new byte[data.remaining()];
+		data.get(bytes);
+		received.write(bytes, 0, bytes.length);
+	}
+
+	/** Notifies the listener about the given line errors. */
+	private void lineStateChanged(int lineState) {
+		LineStatusListener listener = this.listener;
+		if (listener != null)
+			listener.lineStatusChanged(new LineStatusEvent(port, Collections.<LineSignal> emptySet(), activeSignals(modemState), lineErrors(lineState)));
+	}
+
+	/** Notifies the listener about the given changes of the modem control signals. */
+	private void modemStateChanged(int modemState) {
+		this.modemState = modemState;
+		LineStatusListener listener = this.listener;
+		if (listener != null)
+			listener.lineStatusChanged(new LineStatusEvent(port, changedSignals(modemState), activeSignals(modemState), lineErrors(0)));
+	}
+
+	/**
+	 * Waits the given time, unless this channel is closed.
+	 * 
+	 * @throws IOException
+	 *             if this channel was closed or the thread was interrupted
+	 */
+	private void await(long nanos) throws IOException {
+		try {
+			if (closed.await(nanos, NANOSECONDS))
+				throw closedException();
+		}
+		catch (InterruptedException e) {
+			throw interrupted();
+		}
+	}
+
+	/**
+	 * Acquires the given lock.
+	 * 
+	 * @throws InterruptedIOException
+	 *             if the thread was interrupted
+	 */
+	private static void lock(Lock lock) throws InterruptedIOException {
+		try {
+			lock.lockInterruptibly();
+		}
+		catch (InterruptedException e) {
+			throw interrupted();
+		}
+	}
+
+	/** Returns the exception for an interrupted thread and restores the interrupted status. */
+	private static InterruptedIOException interrupted() {
+		Thread.currentThread().interrupt();
+		return new InterruptedIOException("The thread for the I/O operation is interrupted!");
+	}
+
+	/** Returns the exception for an I/O operation on a closed channel. */
+	private IOException closedException() {
+		return new IOException("Port " + port.getPortName() + " was closed!");
+	}
+
+	/**
+	 * Copies the remaining data of the source buffer to the target buffer, as far as it fits.
+	 */
+	private static void copy(ByteBuffer src, ByteBuffer dst) {
+		int length = Math.min(src.remaining(), dst.remaining());
+		int limit = src.limit();
+		src.limit(src.position() + length);
+		dst.put(src);
+		src.limit(limit);
+	}
+
+	/**
+	 * A TCP connection to the terminal server with its own Telnet state.
+	 */
+	private final class Link implements TelnetDecoder.Handler {
+
+		/** the socket, never <code>null</code> */
+		private final SocketChannel channel;
+		/** splits the received bytes into data and commands */
+		private final TelnetDecoder decoder = new TelnetDecoder();
+		/** the negotiated Telnet options */
+		private final TelnetOptions options = new TelnetOptions(LOCAL_OPTIONS, REMOTE_OPTIONS);
+
+		/** the registration at the readSelector, is guarded by the inputLock */
+		private SelectionKey readKey;
+		/** the registration at the writeSelector, is guarded by the outputLock */
+		private SelectionKey writeKey;
+
+		/** the expected answers of the terminal server in their order, is guarded by this */
+		private final LinkedList<byte[]> expectedAnswers = new LinkedList<byte[]>();
+		/** <code>true</code>, if an answer differed from the command, is guarded by this */
+		private boolean isRejected;
+		/** the answers to Telnet negotiations, that were not sent yet, is guarded by this */
+		private final List<ByteBuffer> answers = new ArrayList<ByteBuffer>();
+
+		/** Creates a new link for the given connected socket. */
+		private Link(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Negotiates the Telnet options and the settings on the given selector.
+		 * 
+		 * @throws IOException
+		 *             if the terminal server didn't answer in time or didn't accept the settings
+		 */
+		private void negotiate(Selector selector, boolean isStrict) throws IOException {
+			List<ByteBuffer> commands = new ArrayList<ByteBuffer>();
+			commands.add(options.requestAll());
+			addSettingsCommands(commands, null, settings);
+			addCommand(commands, SET_LINESTATE_MASK, new byte[] { (byte) LINESTATE_MASK });
+			addCommand(commands, SET_MODEMSTATE_MASK, new byte[] { (byte) MODEMSTATE_MASK });
+
+			SelectionKey key = channel.register(selector, OP_WRITE);
+			Deadline deadline = Deadline.after(ANSWER_TIMEOUT, MILLISECONDS);
+			for (ByteBuffer command : commands) {
+				while (command.hasRemaining()) {
+					if (channel.write(command) == 0)
+						select(selector, deadline, "Negotiation with " + port.getAddress() + " timed out!");
+				}
+			}
+
+			key.interestOps(OP_READ);
+			ByteBuffer buffer = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+			while (!isAnswered()) {
+				select(selector, deadline, "The terminal server " + port.getAddress() + " didn't answer in time!");
+				if (channel.read(buffer) < 0)
+					throw new EOFException("The connection was closed by the terminal server " + port.getAddress() + "!");
+				buffer.flip();
+				decode(buffer);
+				buffer.clear();
+				for (ByteBuffer answer : takeAnswers())
+					channel.write(answer);
+			}
+			try {
+				checkAccepted();
+			}
+			catch (IOException e) {
+				if (isStrict)
+					throw e;
+				// a re-established connection is used with the settings of the terminal server
+			}
+		}
+
+		/**
+		 * Adds the commands for the settings, that differ from the previous settings.
+		 * 
+		 * @param previous
+		 *            the previous settings, <code>null</code> to add the commands for all settings
+		 */
+		private void addSettingsCommands(List<ByteBuffer> commands, @Nullable SerialPortSettings previous, SerialPortSettings settings) {
+			if (previous == null || previous.getBauds() != settings.getBauds())
+				addCommand(commands, SET_BAUDRATE, encodeInt(settings.getBauds()));
+			if (previous == null || previous.getDataBits() != settings.getDataBits())
+				addCommand(commands, SET_DATASIZE, new byte[] { (byte) encode(settings.getDataBits()) });
+			if (previous == null || previous.getParity() != settings.getParity())
+				addCommand(commands, SET_PARITY, new byte[] { (byte) encode(settings.getParity()) });
+			if (previous == null || previous.getStopBits() != settings.getStopBits())
+				addCommand(commands, SET_STOPSIZE, new byte[] { (byte) encode(settings.getStopBits()) });
+			if (previous == null || previous.getFlowControl() != settings.getFlowControl()) {
+				// the inbound flow control is switched off first, so that the terminal server
+				// never sees a mix of XON/XOFF and hardware flow control
+				addCommand(commands, SET_CONTROL, new byte[] { (byte) INBOUND_FLOW_NONE });
+				addCommand(commands, SET_CONTROL, new byte[] { (byte) outboundFlow(settings.getFlowControl()) });
+				addCommand(commands, SET_CONTROL, new byte[] { (byte) inboundFlow(settings.getFlowControl()) });
+			}
+			if (previous == null || previous.isDTR() != settings.isDTR())
+				addCommand(commands, SET_CONTROL, new byte[] { (byte) (settings.isDTR() ? DTR_ON : DTR_OFF) });
+			if (previous == null || previous.isRTS() != settings.isRTS())
+				addCommand(commands, SET_CONTROL, new byte[] { (byte) (settings.isRTS() ? RTS_ON : RTS_OFF) });
+		}
+
+		/**
+		 * Adds the given com port command and expects the terminal server to answer with the same
+		 * value.
+		 */
+		private void addCommand(List<ByteBuffer> commands, int command, byte[] value) {
+			commands.add(comPortCommand(command, value));
+
+			byte[] answer = new byte[1 + value.length];
+			answer[0] = (byte) (SERVER_OFFSET + command);
+			System.arraycopy(value, 0, answer, 1, value.length);
+			synchronized (this) {
+				expectedAnswers.add(answer);
+			}
+		}
+
+		/** Decodes the given received bytes. */
+		private void decode(ByteBuffer input) throws IOException {
+			if (isTelnet)
+				decoder.decode(input, this);
+			else
+				addReceived(input);
+		}
+
+		/** {@inheritDoc} */
+		public void data(@Nonnull ByteBuffer data) {
+			addReceived(data);
+		}
+
+		/** {@inheritDoc} */
+		public void negotiation(int command, int option) {
+			ByteBuffer answer = options.received(command, option);
+			if (answer == null)
+				return;
+			synchronized (this) {
+				answers.add(answer);
+				// the terminal server refused RFC 2217, the expected answers won't arrive
+				if (!options.isLocalEnabled(COM_PORT_OPTION))
+					notifyAll();
+			}
+		}
+
+		/** {@inheritDoc} */
+		public void subnegotiation(int option, @Nonnull byte[] data) {
+			if (option != COM_PORT_OPTION || data.length < 2)
+				return;
+
+			int command = data[0] & 0xFF;
+			if (command == SERVER_OFFSET + NOTIFY_LINESTATE)
+				lineStateChanged(data[1] & 0xFF);
+			else if (command == SERVER_OFFSET + NOTIFY_MODEMSTATE)
+				modemStateChanged(data[1] & 0xFF);
+			else
+				answered(data);
+		}
+
+		/** Compares the given answer of the terminal server with the expected answer. */
+		private synchronized void answered(byte[] answer) {
+			if (expectedAnswers.isEmpty() || expectedAnswers.getFirst()[0] != answer[0])
+				return;
+			if (!Arrays.equals(expectedAnswers.removeFirst(), answer))
+				isRejected = true;
+			notifyAll();
+		}
+
+		/**
+		 * Returns <code>true</code>, if all expected answers arrived.
+		 * 
+		 * @throws IOException
+		 *             if the terminal server refused RFC 2217
+		 */
+		private synchronized boolean isAnswered() throws IOException {
+			if (!options.isLocalEnabled(COM_PORT_OPTION))
+				throw new IOException("The terminal server " + port.getAddress() + " doesn't support RFC 2217!");
+			return expectedAnswers.isEmpty();
+		}
+
+		/**
+		 * Checks, that the answers matched the commands, and resets the check.
+		 * 
+		 * @throws IOException
+		 *             if an answer differed from the command
+		 */
+		private synchronized void checkAccepted() throws IOException {
+			if (!isRejected)
+				return;
+			isRejected = false;
+			throw new IOException("Unable to set the control settings (" + port.getPortName() + ")! The terminal server " + port.getAddress() + " didn't accept them.");
+		}
+
+		/** Waits at most the given time for the next answer. */
+		private synchronized void awaitAnswers(long millis) throws IOException {
+			try {
+				if (!expectedAnswers.isEmpty())
+					wait(millis);
+			}
+			catch (InterruptedException e) {
+				throw interrupted();
+			}
+		}
+
+		/** Returns and removes the answers to Telnet negotiations, that were not sent yet. */
+		private synchronized List<ByteBuffer> takeAnswers() {
+			if (answers.isEmpty())
+				return Collections.emptyList();
+			List<ByteBuffer> result = new ArrayList<ByteBuffer>(answers);
+			answers.clear();
+			return result;
+		}
+
+		/**
+		 * Sends the answers to Telnet negotiations, if no other thread writes at the moment.
+		 * Otherwise the writing thread sends them.
+		 */
+		private void sendAnswers() throws IOException {
+			if (!outputLock.tryLock())
+				return;
+			try {
+				writeAnswers();
+			}
+			catch (IOException e) {
+				broken(this);
+			}
+			finally {
+				outputLock.unlock();
+			}
+		}
+
+		/** Writes the answers to Telnet negotiations. Must be called with the outputLock. */
+		private void writeAnswers() throws IOException {
+			for (ByteBuffer answer : takeAnswers())
+				writeFully(this, answer);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import javax.annotation.Nonnull;
+
+import org.xidobi.spi.BasicSerialConnection;
+
+/**
+ * The connection to a {@link NetworkSerialPort}, whose I/O operations are done by a
+ * {@link NetworkChannel}. A raw TCP connection transmits only the data, the connections, that
+ * negotiate the control settings with RFC 2217, are {@link TelnetSerialConnection}s.
+ * 
+ * @author Christian Schwarz
+ */
+class NetworkSerialConnection extends BasicSerialConnection {
+
+	/**
+	 * Creates a new connection.
+	 * 
+	 * @param port
+	 *            the port, must not be <code>null</code>
+	 * @param channel
+	 *            the connected channel, must not be <code>null</code>
+	 */
+	NetworkSerialConnection(@Nonnull NetworkSerialPort port,
+							@Nonnull NetworkChannel channel) {
+		super(port, channel, channel);
+	}
+}
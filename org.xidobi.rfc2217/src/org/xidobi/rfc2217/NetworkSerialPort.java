@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.xidobi.ReconnectPolicy;
+import org.xidobi.SerialConnection;
+import org.xidobi.SerialPort;
+import org.xidobi.SerialPortSettings;
+
+/**
+ * A {@link SerialPort} of a terminal server, that is connected over TCP. With
+ * {@link Protocol#RFC2217} the settings are negotiated with the Telnet Com Port Control Option
+ * (RFC 2217), e.g. with an {@link Rfc2217Server}. With {@link Protocol#RAW} the data is sent
+ * unchanged and the settings must be configured at the terminal server.
+ * <p>
+ * The socket is used in non-blocking mode with Nagle's algorithm disabled. The written data is
+ * escaped into a single buffer, so that a write of several buffers is sent in one TCP segment if
+ * possible. When the TCP connection is lost, it is re-established in the background according to
+ * the {@link ReconnectPolicy} and the settings are negotiated again. In the meantime reads and
+ * writes block, the data that was in transit may be lost. Only the first connect of
+ * {@link #open(SerialPortSettings)} fails immediately.
+ * 
+ * <pre>
+ * SerialPort port = new NetworkSerialPort(&quot;COM1&quot;, new InetSocketAddress(&quot;moxa&quot;, 4001));
+ * SerialConnection connection = port.open(settings);
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see NetworkSerialPortFinder
+ */
+public class NetworkSerialPort implements SerialPort {
+
+	/** The protocol, that is used on the TCP connection. */
+	public static enum Protocol {
+		/** the Telnet Com Port Control Option (RFC 2217), the settings are negotiated */
+		RFC2217,
+		/** raw TCP, the data is sent unchanged and the settings can't be changed */
+		RAW
+	}
+
+	/** the name of this port, never <code>null</code> */
+	private final String portName;
+	/** the address of the terminal server, never <code>null</code> */
+	private final InetSocketAddress address;
+	/** the protocol, that is used on the TCP connection, never <code>null</code> */
+	private final Protocol protocol;
+	/** the delays between the attempts to re-establish a lost connection, never <code>null</code> */
+	private final ReconnectPolicy policy;
+
+	/**
+	 * Creates a new port, that is connected with RFC 2217 and the default reconnect policy (see
+	 * {@link ReconnectPolicy#from1sTo60s()}).
+	 * 
+	 * @param portName
+	 *            the name of this port, must not be <code>null</code>
+	 * @param address
+	 *            the address of the terminal server, must not be <code>null</code>
+	 */
+	public NetworkSerialPort(	@Nonnull String portName,
+								@Nonnull InetSocketAddress address) {
+		this(portName, address, Protocol.RFC2217, ReconnectPolicy.from1sTo60s().create());
+	}
+
+	/**
+	 * Creates a new port.
+	 * 
+	 * @param portName
+	 *            the name of this port, must not be <code>null</code>
+	 * @param address
+	 *            the address of the terminal server, must not be <code>null</code>
+	 * @param protocol
+	 *            the protocol, that is used on the TCP connection, must not be <code>null</code>
+	 * @param policy
+	 *            the delays between the attempts to re-establish a lost connection, must not be
+	 *            <code>null</code>
+	 */
+	public NetworkSerialPort(	@Nonnull String portName,
+								@Nonnull InetSocketAddress address,
+								@Nonnull Protocol protocol,
+								@Nonnull ReconnectPolicy policy) {
+		this.portName = checkArgumentNotNull(portName, "portName");
+		this.address = checkArgumentNotNull(address, "address");
+		this.protocol = checkArgumentNotNull(protocol, "protocol");
+		this.policy = checkArgumentNotNull(policy, "policy");
+	}
+
+	/**
+	 * Connects to the terminal server and negotiates the given settings.
+	 * 
+	 * @param settings
+	 *            the control settings for the port, must not be <code>null</code>
+	 * @return the connection, never <code>null</code>
+	 * @throws IOException
+	 *             if the terminal server is not reachable or doesn't accept the settings
+	 */
+	@Nonnull
+	public SerialConnection open(@Nonnull SerialPortSettings settings) throws IOException {
+		checkArgumentNotNull(settings, "settings");
+		NetworkChannel channel = new NetworkChannel(this, settings);
+		try {
+			channel.connect();
+		}
+		catch (IOException e) {
+			channel.close();
+			channel.dispose();
+			throw e;
+		}
+		if (channel.isTelnet())
+			return new TelnetSerialConnection(this, channel);
+		return new NetworkSerialConnection(this, channel);
+	}
+
+	/**
+	 * Returns the address of the terminal server.
+	 * 
+	 * @return the address, never <code>null</code>
+	 */
+	@Nonnull
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns the protocol, that is used on the TCP connection.
+	 * 
+	 * @return the protocol, never <code>null</code>
+	 */
+	@Nonnull
+	public Protocol getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * Returns the delays between the attempts to re-establish a lost connection.
+	 * 
+	 * @return the reconnect policy, never <code>null</code>
+	 */
+	@Nonnull
+	public ReconnectPolicy getReconnectPolicy() {
+		return policy;
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public String getPortName() {
+		return portName;
+	}
+
+	/** {@inheritDoc} */
+	@Nullable
+	public String getDescription() {
+		return protocol == Protocol.RFC2217 ? "RFC 2217 port at " + address : "TCP port at " + address;
+	}
+
+	@Override
+	public String toString() {
+		return "NetworkSerialPort [portName=" + portName + ", address=" + address + ", protocol=" + protocol + "]";
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.xidobi.SerialPort;
+import org.xidobi.SerialPortFinder;
+
+/**
+ * A {@link SerialPortFinder} for the {@link NetworkSerialPort}s of terminal servers. Unlike local
+ * ports, network ports can't be detected, so they are added and removed by the application, e.g.
+ * from its configuration.
+ * 
+ * <pre>
+ * NetworkSerialPortFinder finder = new NetworkSerialPortFinder();
+ * finder.add(new NetworkSerialPort(&quot;COM1&quot;, new InetSocketAddress(&quot;moxa&quot;, 4001)));
+ * SerialPort port = finder.get(&quot;COM1&quot;);
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see NetworkSerialPort
+ */
+public class NetworkSerialPortFinder implements SerialPortFinder {
+
+	/** the ports by their names */
+	private final Map<String, NetworkSerialPort> ports = new ConcurrentHashMap<String, NetworkSerialPort>();
+
+	/**
+	 * Adds the given port. A port with the same name is replaced.
+	 * 
+	 * @param port
+	 *            the port to add, must not be <code>null</code>
+	 */
+	public void add(@Nonnull NetworkSerialPort port) {
+		checkArgumentNotNull(port, "port");
+		ports.put(port.getPortName(), port);
+	}
+
+	/**
+	 * Removes the port with the given name. Has no effect, if there is no such port. Open
+	 * connections of the port are not closed.
+	 * 
+	 * @param portName
+	 *            the name of the port, must not be <code>null</code>
+	 */
+	public void remove(@Nonnull String portName) {
+		checkArgumentNotNull(portName, "portName");
+		ports.remove(portName);
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public Set<SerialPort> getAll() {
+		return new HashSet<SerialPort>(ports.values());
+	}
+
+	/** {@inheritDoc} */
+	@CheckForNull
+	public SerialPort get(@Nonnull String portName) {
+		checkArgumentNotNull(portName, "portName");
+		return ports.get(portName);
+	}
+}
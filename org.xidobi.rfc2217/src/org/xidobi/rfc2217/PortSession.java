@@ -0,0 +1,740 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static org.xidobi.rfc2217.ComPortControl.BREAK_OFF;
+import static org.xidobi.rfc2217.ComPortControl.BREAK_ON;
+import static org.xidobi.rfc2217.ComPortControl.DTR_OFF;
+import static org.xidobi.rfc2217.ComPortControl.DTR_ON;
+import static org.xidobi.rfc2217.ComPortControl.INBOUND_FLOW_DTR;
+import static org.xidobi.rfc2217.ComPortControl.INBOUND_FLOW_HARDWARE;
+import static org.xidobi.rfc2217.ComPortControl.INBOUND_FLOW_NONE;
+import static org.xidobi.rfc2217.ComPortControl.INBOUND_FLOW_XONXOFF;
+import static org.xidobi.rfc2217.ComPortControl.OUTBOUND_FLOW_DCD;
+import static org.xidobi.rfc2217.ComPortControl.OUTBOUND_FLOW_DSR;
+import static org.xidobi.rfc2217.ComPortControl.OUTBOUND_FLOW_HARDWARE;
+import static org.xidobi.rfc2217.ComPortControl.OUTBOUND_FLOW_NONE;
+import static org.xidobi.rfc2217.ComPortControl.OUTBOUND_FLOW_XONXOFF;
+import static org.xidobi.rfc2217.ComPortControl.PURGE_RECEIVE;
+import static org.xidobi.rfc2217.ComPortControl.PURGE_TRANSMIT;
+import static org.xidobi.rfc2217.ComPortControl.REQUEST_BREAK;
+import static org.xidobi.rfc2217.ComPortControl.REQUEST_DTR;
+import static org.xidobi.rfc2217.ComPortControl.REQUEST_INBOUND_FLOW;
+import static org.xidobi.rfc2217.ComPortControl.REQUEST_OUTBOUND_FLOW;
+import static org.xidobi.rfc2217.ComPortControl.REQUEST_RTS;
+import static org.xidobi.rfc2217.ComPortControl.RTS_OFF;
+import static org.xidobi.rfc2217.ComPortControl.RTS_ON;
+import static org.xidobi.rfc2217.ComPortControl.decodeDataBits;
+import static org.xidobi.rfc2217.ComPortControl.decodeInt;
+import static org.xidobi.rfc2217.ComPortControl.decodeParity;
+import static org.xidobi.rfc2217.ComPortControl.decodeStopBits;
+import static org.xidobi.rfc2217.ComPortControl.encode;
+import static org.xidobi.rfc2217.ComPortControl.encodeInt;
+import static org.xidobi.rfc2217.ComPortControl.flowControl;
+import static org.xidobi.rfc2217.ComPortControl.inboundFlow;
+import static org.xidobi.rfc2217.ComPortControl.outboundFlow;
+import static org.xidobi.rfc2217.Rfc2217Server.closeQuietly;
+import static org.xidobi.rfc2217.Telnet.BINARY;
+import static org.xidobi.rfc2217.Telnet.COM_PORT_OPTION;
+import static org.xidobi.rfc2217.Telnet.FLOWCONTROL_RESUME;
+import static org.xidobi.rfc2217.Telnet.FLOWCONTROL_SUSPEND;
+import static org.xidobi.rfc2217.Telnet.NOTIFY_LINESTATE;
+import static org.xidobi.rfc2217.Telnet.NOTIFY_MODEMSTATE;
+import static org.xidobi.rfc2217.Telnet.PURGE_DATA;
+import static org.xidobi.rfc2217.Telnet.SERVER_OFFSET;
+import static org.xidobi.rfc2217.Telnet.SET_BAUDRATE;
+import static org.xidobi.rfc2217.Telnet.SET_CONTROL;
+import static org.xidobi.rfc2217.Telnet.SET_DATASIZE;
+import static org.xidobi.rfc2217.Telnet.SET_LINESTATE_MASK;
+import static org.xidobi.rfc2217.Telnet.SET_MODEMSTATE_MASK;
+import static org.xidobi.rfc2217.Telnet.SET_PARITY;
+import static org.xidobi.rfc2217.Telnet.SET_STOPSIZE;
+import static org.xidobi.rfc2217.Telnet.SIGNATURE;
+import static org.xidobi.rfc2217.Telnet.SUPPRESS_GO_AHEAD;
+import static org.xidobi.rfc2217.Telnet.comPortCommand;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.xidobi.DataBits;
+import org.xidobi.FlowControl;
+import org.xidobi.LineStatusConnection;
+import org.xidobi.LineStatusEvent;
+import org.xidobi.LineStatusListener;
+import org.xidobi.Parity;
+import org.xidobi.PurgeableConnection;
+import org.xidobi.ReconfigurableConnection;
+import org.xidobi.SerialConnection;
+import org.xidobi.SerialPortSettings;
+import org.xidobi.StopBits;
+import org.xidobi.flow.ConnectionPublisher;
+import org.xidobi.flow.Subscriber;
+import org.xidobi.flow.Subscription;
+import org.xidobi.rfc2217.Rfc2217Server.ExportedPort;
+import org.xidobi.spi.ByteBuffers;
+
+/**
+ * The connection of a client to an exported serial port of the {@link Rfc2217Server}.
+ * <p>
+ * The socket and the buffers for the client are only accessed by the selector thread. The
+ * received bytes are decoded and written to the serial port by a worker thread. In the meantime
+ * the socket is not read, so a slow serial port throttles the client. The tasks of a session are
+ * run one after another by a {@link SerialExecutor}, only the closing of the serial port is run
+ * concurrently, because it aborts a blocked write. The data of the serial port
+ * is published by a {@link ConnectionPublisher}, the next data is only requested, when the
+ * previous data fits into the output buffer and the client didn't suspend the transmission.
+ * 
+ * @author Christian Schwarz
+ */
+final class PortSession implements Subscriber<ByteBuffer>, LineStatusListener, TelnetDecoder.Handler {
+
+	/** the size of the buffer for the bytes received from the client */
+	private static final int INPUT_BUFFER_SIZE = 4 * 1024;
+	/** the size of the buffer for the escaped data of the serial port */
+	private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+	/** the options, that the server performs */
+	private static final int[] LOCAL_OPTIONS = { BINARY, SUPPRESS_GO_AHEAD };
+	/** the options, that the client is allowed to perform */
+	private static final int[] REMOTE_OPTIONS = { BINARY, SUPPRESS_GO_AHEAD, COM_PORT_OPTION };
+
+	/** the server, never <code>null</code> */
+	private final Rfc2217Server server;
+	/** the exported serial port, never <code>null</code> */
+	private final ExportedPort export;
+	/** the socket of the client, never <code>null</code> */
+	private final SocketChannel channel;
+	/** runs the tasks of this session one after another, never <code>null</code> */
+	private final Executor worker;
+
+	/** the bytes received from the client, is decoded by a worker, while the socket isn't read */
+	private final ByteBuffer input = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
+	/** the escaped data of the serial port, that is sent to the client */
+	private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+	/** the commands, that are sent to the client before the data */
+	private final LinkedList<ByteBuffer> replies = new LinkedList<ByteBuffer>();
+
+	/** the registration of the socket, <code>null</code> until the session was started */
+	private SelectionKey key;
+	/** the data of the serial port, that doesn't fit into the output buffer yet */
+	private ByteBuffer pending;
+	/** requests the data of the serial port, <code>null</code> until the port was opened */
+	private Subscription subscription;
+	/** <code>true</code>, if data was requested from the serial port */
+	private boolean isRequested;
+	/** <code>true</code>, if the client suspended the transmission of data */
+	private boolean isSuspended;
+	/** <code>true</code>, if the serial port was opened */
+	private boolean isOpen;
+	/** <code>true</code>, while a worker decodes the input */
+	private boolean isProcessing;
+	/** <code>true</code>, if this session was closed */
+	private volatile boolean isClosed;
+
+	/** the connection to the serial port, <code>null</code> until the port was opened */
+	private volatile SerialConnection connection;
+	/** <code>true</code>, if the serial port was closed, is guarded by <code>this</code> */
+	private boolean isPortClosed;
+	/** the settings, that are applied to the serial port, is only accessed by the workers */
+	private SerialPortSettings settings;
+	/** splits the input into data and commands, is only accessed by the workers */
+	private final TelnetDecoder decoder = new TelnetDecoder();
+	/** the negotiated Telnet options, is only accessed by the workers after the start */
+	private final TelnetOptions options = new TelnetOptions(LOCAL_OPTIONS, REMOTE_OPTIONS);
+	/** the decoded data, that is written to the serial port before the next command */
+	private final List<ByteBuffer> data = new ArrayList<ByteBuffer>();
+
+	/** the line state bits, that are notified to the client */
+	private volatile int lineStateMask = 0;
+	/** the modem state bits, that are notified to the client */
+	private volatile int modemStateMask = 0xFF;
+	/** the last notified modem state, is only accessed by the thread, that reads the port */
+	private int modemState;
+
+	/**
+	 * Creates a new session.
+	 * 
+	 * @param server
+	 *            the server, must not be <code>null</code>
+	 * @param export
+	 *            the exported serial port, must not be <code>null</code>
+	 * @param channel
+	 *            the non-blocking socket of the client, must not be <code>null</code>
+	 */
+	PortSession(@Nonnull Rfc2217Server server,
+				@Nonnull ExportedPort export,
+				@Nonnull SocketChannel channel) {
+		this.server = server;
+		this.export = export;
+		this.channel = channel;
+		worker = server.newSerialExecutor();
+	}
+
+	/** Returns the exported serial port of this session. */
+	@Nonnull
+	ExportedPort getExport() {
+		return export;
+	}
+
+	/**
+	 * Registers the socket, negotiates the Telnet options and opens the serial port in the
+	 * background. Must be called by the selector thread.
+	 */
+	void start(@Nonnull Selector selector) throws IOException {
+		key = channel.register(selector, 0, this);
+		queueReply(options.requestAll());
+		submit(new Runnable() {
+			public void run() {
+				openPort();
+			}
+		});
+	}
+
+	/**
+	 * Reads from the socket or writes to the socket. Must be called by the selector thread.
+	 * 
+	 * @param readyOps
+	 *            the operations, the socket is ready for
+	 */
+	void ready(int readyOps) {
+		if ((readyOps & OP_READ) != 0)
+			read();
+		if ((readyOps & OP_WRITE) != 0)
+			flush();
+	}
+
+	/**
+	 * Closes the socket of the client and the serial port in the background. Must be called by
+	 * the selector thread. Calling this method more than once has no effect.
+	 */
+	void close() {
+		if (isClosed)
+			return;
+		isClosed = true;
+		if (key != null)
+			key.cancel();
+		closeQuietly(channel);
+		pending = null;
+		replies.clear();
+
+		// a write to the serial port, that blocks, is aborted by closing the port, so the port is
+		// closed by another worker than the tasks of this session
+		if (!server.submit(new Runnable() {
+			public void run() {
+				closePort();
+			}
+		}))
+			closePort();
+	}
+
+	/** Opens the serial port, is run by a worker. */
+	private void openPort() {
+		SerialConnection connection;
+		try {
+			connection = export.port.open(export.settings);
+		}
+		catch (IOException e) {
+			openFailed();
+			return;
+		}
+		catch (RuntimeException e) {
+			openFailed();
+			throw e;
+		}
+
+		settings = export.settings;
+		if (connection instanceof LineStatusConnection)
+			((LineStatusConnection) connection).addLineStatusListener(this);
+		this.connection = connection;
+		if (isClosed) {
+			closePort();
+			return;
+		}
+		execute(new Runnable() {
+			public void run() {
+				opened();
+			}
+		});
+	}
+
+	/** Closes this session, because the serial port couldn't be opened. */
+	private void openFailed() {
+		execute(new Runnable() {
+			public void run() {
+				close();
+				server.closed(PortSession.this);
+			}
+		});
+	}
+
+	/** Starts to read the socket and the serial port, is run by the selector thread. */
+	private void opened() {
+		if (isClosed)
+			return;
+		new ConnectionPublisher(connection).subscribe(this);
+		isOpen = true;
+		requestData();
+		updateInterest();
+	}
+
+	/**
+	 * Closes the serial port and releases it for the next client. Has no effect, if the port was
+	 * not opened yet or was already closed.
+	 */
+	private synchronized void closePort() {
+		SerialConnection connection = this.connection;
+		if (connection == null || isPortClosed)
+			return;
+		isPortClosed = true;
+		closeQuietly(connection);
+		execute(new Runnable() {
+			public void run() {
+				server.closed(PortSession.this);
+			}
+		});
+	}
+
+	/** Reads from the socket and passes the received bytes to a worker. */
+	private void read() {
+		int count;
+		try {
+			count = channel.read(input);
+		}
+		catch (IOException e) {
+			close();
+			return;
+		}
+		if (count < 0) {
+			close();
+			return;
+		}
+		if (input.position() == 0)
+			return;
+
+		isProcessing = true;
+		updateInterest();
+		if (!submit(new Runnable() {
+			public void run() {
+				process();
+			}
+		}))
+			close();
+	}
+
+	/** Decodes the input and writes the data to the serial port, is run by a worker. */
+	private void process() {
+		input.flip();
+		try {
+			decoder.decode(input, this);
+			writeData();
+		}
+		catch (IOException e) {
+			execute(new Runnable() {
+				public void run() {
+					close();
+				}
+			});
+			return;
+		}
+		finally {
+			data.clear();
+			input.clear();
+		}
+
+		execute(new Runnable() {
+			public void run() {
+				isProcessing = false;
+				updateInterest();
+			}
+		});
+	}
+
+	/** {@inheritDoc} */
+	public void data(@Nonnull ByteBuffer data) {
+		this.data.add(data);
+	}
+
+	/** {@inheritDoc} */
+	public void negotiation(int command, int option) throws IOException {
+		writeData();
+		ByteBuffer answer = options.received(command, option);
+		if (answer != null)
+			reply(answer);
+	}
+
+	/** {@inheritDoc} */
+	public void subnegotiation(int option, @Nonnull byte[] data) throws IOException {
+		writeData();
+		if (option != COM_PORT_OPTION || data.length == 0)
+			return;
+
+		int command = data[0] & 0xFF;
+		int value = data.length > 1 ? data[1] & 0xFF : 0;
+		switch (command) {
+			case SIGNATURE:
+				// a signature of the client is ignored, an empty signature requests ours
+				if (data.length == 1)
+					reply(comPortCommand(SERVER_OFFSET + SIGNATURE, ascii(Rfc2217Server.SIGNATURE)));
+				return;
+			case SET_BAUDRATE:
+				if (data.length >= 5 && decodeInt(data, 1) > 0)
+					reconfigure(SerialPortSettings.from(settings).bauds(decodeInt(data, 1)).create());
+				reply(comPortCommand(SERVER_OFFSET + SET_BAUDRATE, encodeInt(settings.getBauds())));
+				return;
+			case SET_DATASIZE:
+				DataBits dataBits = decodeDataBits(value);
+				if (dataBits != null)
+					reconfigure(SerialPortSettings.from(settings).set(dataBits).create());
+				reply(comPortCommand(SERVER_OFFSET + SET_DATASIZE, encode(settings.getDataBits())));
+				return;
+			case SET_PARITY:
+				Parity parity = decodeParity(value);
+				if (parity != null)
+					reconfigure(SerialPortSettings.from(settings).set(parity).create());
+				reply(comPortCommand(SERVER_OFFSET + SET_PARITY, encode(settings.getParity())));
+				return;
+			case SET_STOPSIZE:
+				StopBits stopBits = decodeStopBits(value);
+				if (stopBits != null)
+					reconfigure(SerialPortSettings.from(settings).set(stopBits).create());
+				reply(comPortCommand(SERVER_OFFSET + SET_STOPSIZE, encode(settings.getStopBits())));
+				return;
+			case SET_CONTROL:
+				reply(comPortCommand(SERVER_OFFSET + SET_CONTROL, control(value)));
+				return;
+			case FLOWCONTROL_SUSPEND:
+			case FLOWCONTROL_RESUME:
+				final boolean suspend = command == FLOWCONTROL_SUSPEND;
+				execute(new Runnable() {
+					public void run() {
+						suspend(suspend);
+					}
+				});
+				return;
+			case SET_LINESTATE_MASK:
+				lineStateMask = value;
+				reply(comPortCommand(SERVER_OFFSET + SET_LINESTATE_MASK, value));
+				return;
+			case SET_MODEMSTATE_MASK:
+				modemStateMask = value;
+				reply(comPortCommand(SERVER_OFFSET + SET_MODEMSTATE_MASK, value));
+				return;
+			case PURGE_DATA:
+				purge(value);
+				reply(comPortCommand(SERVER_OFFSET + PURGE_DATA, value));
+				return;
+			default:
+				// unknown commands are ignored
+				return;
+		}
+	}
+
+	/**
+	 * Changes the flow control, DTR or RTS, or returns their state.
+	 * 
+	 * @return the value of the answer to the client
+	 */
+	private int control(int value) {
+		FlowControl flowControl = settings.getFlowControl();
+		switch (value) {
+			case OUTBOUND_FLOW_NONE:
+			case OUTBOUND_FLOW_XONXOFF:
+			case OUTBOUND_FLOW_HARDWARE:
+				reconfigure(flowControl(value, inboundFlow(flowControl)));
+				return outboundFlow(settings.getFlowControl());
+			case REQUEST_OUTBOUND_FLOW:
+			case OUTBOUND_FLOW_DCD:
+			case OUTBOUND_FLOW_DSR:
+				return outboundFlow(flowControl);
+			case INBOUND_FLOW_NONE:
+			case INBOUND_FLOW_XONXOFF:
+			case INBOUND_FLOW_HARDWARE:
+				reconfigure(flowControl(outboundFlow(flowControl), value));
+				return inboundFlow(settings.getFlowControl());
+			case REQUEST_INBOUND_FLOW:
+			case INBOUND_FLOW_DTR:
+				return inboundFlow(flowControl);
+			case DTR_ON:
+			case DTR_OFF:
+				reconfigure(SerialPortSettings.from(settings).dtr(value == DTR_ON).create());
+				return settings.isDTR() ? DTR_ON : DTR_OFF;
+			case REQUEST_DTR:
+				return settings.isDTR() ? DTR_ON : DTR_OFF;
+			case RTS_ON:
+			case RTS_OFF:
+				reconfigure(SerialPortSettings.from(settings).rts(value == RTS_ON).create());
+				return settings.isRTS() ? RTS_ON : RTS_OFF;
+			case REQUEST_RTS:
+				return settings.isRTS() ? RTS_ON : RTS_OFF;
+			case REQUEST_BREAK:
+			case BREAK_ON:
+			case BREAK_OFF:
+				// BREAK is not supported by the serial connection
+				return BREAK_OFF;
+			default:
+				return value;
+		}
+	}
+
+	/** Applies the given flow control, if the combination is supported. */
+	private void reconfigure(@CheckForNull FlowControl flowControl) {
+		if (flowControl != null)
+			reconfigure(SerialPortSettings.from(settings).set(flowControl).create());
+	}
+
+	/**
+	 * Applies the given settings to the serial port. If they can't be applied, e.g. because the
+	 * connection is not a {@link ReconfigurableConnection}, the current settings are kept and the
+	 * client is answered with them.
+	 */
+	private void reconfigure(SerialPortSettings settings) {
+		if (settings.equals(this.settings) || !(connection instanceof ReconfigurableConnection))
+			return;
+		try {
+			((ReconfigurableConnection) connection).reconfigure(settings);
+			this.settings = settings;
+		}
+		catch (IOException e) {
+			// the settings are not supported by the driver
+		}
+		catch (UnsupportedOperationException e) {
+			// the changed settings can't be applied while the port is open
+		}
+		catch (IllegalArgumentException e) {
+			// the settings are an invalid combination
+		}
+	}
+
+	/**
+	 * Discards the buffers of the serial port. Nothing is discarded, if the connection is not a
+	 * {@link PurgeableConnection}.
+	 */
+	private void purge(int value) throws IOException {
+		if (!(connection instanceof PurgeableConnection))
+			return;
+		PurgeableConnection purgeable = (PurgeableConnection) connection;
+		try {
+			if ((value & PURGE_RECEIVE) != 0) {
+				purgeable.purgeInput();
+				execute(new Runnable() {
+					public void run() {
+						pending = null;
+						requestData();
+					}
+				});
+			}
+			if ((value & PURGE_TRANSMIT) != 0)
+				purgeable.purgeOutput();
+		}
+		catch (UnsupportedOperationException e) {
+			// the buffers of the serial connection can't be purged
+		}
+	}
+
+	/** Writes the decoded data to the serial port. */
+	private void writeData() throws IOException {
+		if (data.isEmpty())
+			return;
+		ByteBuffers.write(connection, data.toArray(new ByteBuffer[data.size()]));
+		data.clear();
+	}
+
+	/**
+	 * Notifies the client about the line errors and the changes of the modem control signals,
+	 * according to the masks of the client.
+	 */
+	public void lineStatusChanged(@Nonnull LineStatusEvent event) {
+		int lineState = ComPortControl.lineState(event) & lineStateMask;
+		if (lineState != 0)
+			reply(comPortCommand(SERVER_OFFSET + NOTIFY_LINESTATE, lineState));
+
+		int mask = modemStateMask;
+		int state = ComPortControl.modemState(event);
+		// the lower bits signal the changes, the upper bits the state of the signals
+		boolean changed = (state & mask & 0x0F) != 0 || ((state ^ modemState) & mask & 0xF0) != 0;
+		modemState = state;
+		if (changed)
+			reply(comPortCommand(SERVER_OFFSET + NOTIFY_MODEMSTATE, state & mask));
+	}
+
+	/** {@inheritDoc} */
+	public void onSubscribe(@Nonnull Subscription subscription) {
+		// is called by the selector thread, that subscribes
+		this.subscription = subscription;
+	}
+
+	/** {@inheritDoc} */
+	public void onNext(@Nonnull final ByteBuffer data) {
+		execute(new Runnable() {
+			public void run() {
+				received(data);
+			}
+		});
+	}
+
+	/** {@inheritDoc} */
+	public void onError(@Nonnull Throwable throwable) {
+		onComplete();
+	}
+
+	/** {@inheritDoc} */
+	public void onComplete() {
+		execute(new Runnable() {
+			public void run() {
+				close();
+			}
+		});
+	}
+
+	/** Sends the data, that was received by the serial port, to the client. */
+	private void received(ByteBuffer data) {
+		isRequested = false;
+		if (isClosed)
+			return;
+		pending = data;
+		flush();
+	}
+
+	/** Suspends or resumes the transmission of data to the client. */
+	private void suspend(boolean suspend) {
+		isSuspended = suspend;
+		requestData();
+	}
+
+	/** Sends the given command to the client, can be called by any thread. */
+	private void reply(final ByteBuffer reply) {
+		execute(new Runnable() {
+			public void run() {
+				queueReply(reply);
+			}
+		});
+	}
+
+	/** Queues the given command for the client and sends it as soon as possible. */
+	private void queueReply(ByteBuffer reply) {
+		if (isClosed)
+			return;
+		replies.add(reply);
+		flush();
+	}
+
+	/**
+	 * Writes the commands and the data to the socket, as far as the socket accepts them, and
+	 * refills the output buffer with the pending data.
+	 */
+	private void flush() {
+		if (isClosed)
+			return;
+		try {
+			while (!replies.isEmpty()) {
+				ByteBuffer reply = replies.getFirst();
+				channel.write(reply);
+				if (reply.hasRemaining())
+					break;
+				replies.removeFirst();
+			}
+
+			if (pending != null) {
+				Telnet.escape(pending, output);
+				if (!pending.hasRemaining())
+					pending = null;
+			}
+			if (replies.isEmpty() && output.position() > 0) {
+				output.flip();
+				channel.write(output);
+				output.compact();
+			}
+		}
+		catch (IOException e) {
+			close();
+			return;
+		}
+
+		// the output buffer may have space for the rest of the pending data
+		if (pending != null && output.position() == 0)
+			flush();
+		else {
+			requestData();
+			updateInterest();
+		}
+	}
+
+	/**
+	 * Requests the next data from the serial port, if the previous data was sent, the output
+	 * buffer is at least half empty and the client didn't suspend the transmission.
+	 */
+	private void requestData() {
+		if (isClosed || isRequested || isSuspended || pending != null || subscription == null)
+			return;
+		if (output.remaining() < OUTPUT_BUFFER_SIZE / 2)
+			return;
+		isRequested = true;
+		subscription.request(1);
+	}
+
+	/** Updates the operations, that the selector waits for. */
+	private void updateInterest() {
+		if (isClosed || !key.isValid())
+			return;
+		int ops = 0;
+		if (isOpen && !isProcessing)
+			ops |= OP_READ;
+		if (!replies.isEmpty() || output.position() > 0 || pending != null)
+			ops |= OP_WRITE;
+		key.interestOps(ops);
+	}
+
+	/** Runs the given task on the selector thread. */
+	private void execute(Runnable task) {
+		server.execute(task);
+	}
+
+	/**
+	 * Runs the given task on a worker thread, after the previous tasks of this session.
+	 * 
+	 * @return <code>false</code>, if the server was closed and the task is not run
+	 */
+	private boolean submit(Runnable task) {
+		try {
+			worker.execute(task);
+			return true;
+		}
+		catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/** Returns the ASCII bytes of the given string. */
+	private static byte[] ascii(String s) {
+		byte[] bytes = new byte[s.length()];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) s.charAt(i);
+		return bytes;
+	}
+}
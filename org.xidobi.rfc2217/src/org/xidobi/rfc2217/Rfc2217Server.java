@@ -0,0 +1,499 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static java.nio.channels.SelectionKey.OP_ACCEPT;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.xidobi.SerialPort;
+import org.xidobi.SerialPortFinder;
+import org.xidobi.SerialPortSettings;
+
+/**
+ * Exports serial ports over TCP with the Telnet Com Port Control Option (RFC 2217), so that they
+ * can be used by remote clients like a local port. Every exported port listens on its own TCP
+ * port. A serial port is opened, when a client connects, and closed, when the client disconnects.
+ * Only one client can be connected to a serial port at a time, further clients are disconnected.
+ * <p>
+ * The client can change the baud rate, data bits, parity, stop bits, flow control, DTR and RTS.
+ * The changes are applied with
+ * {@link org.xidobi.ReconfigurableConnection#reconfigure(SerialPortSettings)
+ * ReconfigurableConnection.reconfigure(SerialPortSettings)}, the client is answered with the
+ * settings, that are actually applied. The changes of the modem control signals and the line errors are
+ * notified according to the masks of the client. BREAK is not supported.
+ * <p>
+ * All sockets are served by a single selector thread with direct buffers. The opening, the writes,
+ * the changes of the settings and the closing of the serial ports are done by worker threads. The
+ * tasks of a client are run one after another, so every client uses at most one worker at a time.
+ * Because these tasks block, the pool keeps a few idle workers and starts further workers on
+ * demand, so a serial port, whose write blocks, doesn't delay the other clients. Because the reads
+ * of a {@link org.xidobi.SerialConnection SerialConnection} block, each connected serial port is
+ * read by its own thread (see {@link org.xidobi.flow.ConnectionPublisher ConnectionPublisher}).
+ * Exported ports without a client don't use a thread.
+ * <p>
+ * <i><b>Hint:</b> So the server needs one thread for the selector, one reading thread per
+ * connected client and one worker per client, whose write or change of the settings currently
+ * blocks. Every thread reserves a stack of the default size of the JVM (see <code>-Xss</code>).
+ * A server with a few hundred connected clients needs as many threads, the thread limit of the
+ * process and the stack size should be planned accordingly.</i>
+ * <p>
+ * <b>IMPORTANT:</b> The server must be closed, when it is not used anymore! Closing the server
+ * disconnects all clients and closes their serial ports.
+ * 
+ * <pre>
+ * Rfc2217Server server = new Rfc2217Server();
+ * server.exportAll(SerialPortProvider.getSerialPortFinder(), settings, null, 7000);
+ * ...
+ * server.close();
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ */
+public class Rfc2217Server implements Closeable {
+
+	/** default number of idle worker threads, that are kept */
+	private static final int DEFAULT_WORKER_THREADS = 2;
+
+	/** the signature, that is sent to the clients */
+	static final String SIGNATURE = "xidobi";
+
+	/** waits for the sockets of all exported ports and clients, never <code>null</code> */
+	private final Selector selector;
+	/** writes to the serial ports and applies the settings, starts workers on demand */
+	private final ExecutorService workers;
+	/** the thread, that runs the selector, never <code>null</code> */
+	private final Thread selectorThread;
+
+	/** the tasks, that are run by the selector thread */
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	/** the exported ports by their serial port */
+	private final Map<SerialPort, ExportedPort> exports = new ConcurrentHashMap<SerialPort, ExportedPort>();
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this server is closed
+	 * <li> <code>false</code> if this server is not closed
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a new server with {@value #DEFAULT_WORKER_THREADS} worker threads.
+	 * 
+	 * @throws IOException
+	 *             if the selector couldn't be opened
+	 */
+	public Rfc2217Server() throws IOException {
+		this(DEFAULT_WORKER_THREADS);
+	}
+
+	/**
+	 * Creates a new server.
+	 * 
+	 * @param workerThreads
+	 *            the number of idle threads, that are kept to write to the serial ports and to
+	 *            apply the settings, must be greater than 0. Further threads are started on demand
+	 *            and terminated, after they were idle for a minute.
+	 * @throws IOException
+	 *             if the selector couldn't be opened
+	 */
+	public Rfc2217Server(@Nonnegative int workerThreads) throws IOException {
+		checkArgument(workerThreads > 0, "workerThreads", "Expected a value greater than 0!");
+		selector = Selector.open();
+		workers = new ThreadPoolExecutor(workerThreads, Integer.MAX_VALUE, 60, SECONDS, new SynchronousQueue<Runnable>(), new ServerThreadFactory("xidobi rfc2217 worker "));
+		selectorThread = new ServerThreadFactory("xidobi rfc2217 selector").newThread(new Runnable() {
+			public void run() {
+				select();
+			}
+		});
+		selectorThread.start();
+	}
+
+	/**
+	 * Exports the given serial port on the given address. The serial port is opened with the given
+	 * settings, when a client connects. The settings can be changed by the client for the duration
+	 * of its connection.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param settings
+	 *            the initial control settings of the serial port, must not be <code>null</code>
+	 * @param address
+	 *            the address to listen on, must not be <code>null</code>. If the TCP port is 0,
+	 *            a free port is chosen.
+	 * @return the address, the serial port is exported on, never <code>null</code>
+	 * @throws IOException
+	 *             if the address couldn't be bound
+	 * @exception IllegalStateException
+	 *                if the serial port is already exported or this server was closed
+	 */
+	@Nonnull
+	public InetSocketAddress export(@Nonnull SerialPort port, @Nonnull SerialPortSettings settings, @Nonnull InetSocketAddress address) throws IOException {
+		checkArgumentNotNull(port, "port");
+		checkArgumentNotNull(settings, "settings");
+		checkArgumentNotNull(address, "address");
+		if (isClosed)
+			throw new IllegalStateException("The server was already closed!");
+		if (exports.containsKey(port))
+			throw new IllegalStateException("The port " + port.getPortName() + " is already exported!");
+
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		try {
+			channel.socket().setReuseAddress(true);
+			channel.socket().bind(address);
+			channel.configureBlocking(false);
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		final ExportedPort export = new ExportedPort(port, settings, channel);
+		exports.put(port, export);
+		execute(new Runnable() {
+			public void run() {
+				register(export);
+			}
+		});
+		return (InetSocketAddress) channel.socket().getLocalSocketAddress();
+	}
+
+	/**
+	 * Exports all serial ports of the given finder on consecutive TCP ports, in the order of their
+	 * names.
+	 * 
+	 * @param finder
+	 *            finds the serial ports, must not be <code>null</code>
+	 * @param settings
+	 *            the initial control settings of the serial ports, must not be <code>null</code>
+	 * @param host
+	 *            the address to listen on, <code>null</code> to listen on all local addresses
+	 * @param firstPort
+	 *            the TCP port of the first serial port, 0 to choose free ports
+	 * @return the addresses of the exported ports by their names, never <code>null</code>
+	 * @throws IOException
+	 *             if an address couldn't be bound, the ports exported before stay exported
+	 */
+	@Nonnull
+	public Map<String, InetSocketAddress> exportAll(@Nonnull SerialPortFinder finder, @Nonnull SerialPortSettings settings, InetAddress host, @Nonnegative int firstPort) throws IOException {
+		checkArgumentNotNull(finder, "finder");
+		checkArgument(firstPort >= 0 && firstPort <= 0xFFFF, "firstPort", "Expected a value between 0 and 65535!");
+
+		List<SerialPort> ports = new ArrayList<SerialPort>(finder.getAll());
+		Collections.sort(ports, new Comparator<SerialPort>() {
+			public int compare(SerialPort a, SerialPort b) {
+				return a.getPortName().compareTo(b.getPortName());
+			}
+		});
+
+		Map<String, InetSocketAddress> addresses = new LinkedHashMap<String, InetSocketAddress>();
+		int tcpPort = firstPort;
+		for (SerialPort port : ports) {
+			if (exports.containsKey(port))
+				continue;
+			addresses.put(port.getPortName(), export(port, settings, new InetSocketAddress(host, tcpPort)));
+			if (tcpPort > 0)
+				tcpPort++;
+		}
+		return addresses;
+	}
+
+	/**
+	 * Stops the export of the given serial port. A connected client is disconnected. Has no effect,
+	 * if the port is not exported.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 */
+	public void unexport(@Nonnull SerialPort port) {
+		checkArgumentNotNull(port, "port");
+		final ExportedPort export = exports.remove(port);
+		if (export == null)
+			return;
+		execute(new Runnable() {
+			public void run() {
+				close(export);
+			}
+		});
+	}
+
+	/**
+	 * Returns <code>true</code>, if a client is connected to the given serial port.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @return <code>true</code>, if the port is exported and has a client
+	 */
+	public boolean isConnected(@Nonnull SerialPort port) {
+		checkArgumentNotNull(port, "port");
+		ExportedPort export = exports.get(port);
+		return export != null && export.session != null;
+	}
+
+	/**
+	 * Disconnects all clients, closes their serial ports and stops the threads of this server.
+	 * Calling this method more than once has no effect.
+	 */
+	public void close() {
+		if (isClosed)
+			return;
+		isClosed = true;
+		exports.clear();
+		selector.wakeup();
+		try {
+			selectorThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		workers.shutdown();
+	}
+
+	/**
+	 * Runs the given task on the selector thread.
+	 * 
+	 * @return <code>false</code>, if this server was closed and the task is not run
+	 */
+	boolean execute(Runnable task) {
+		if (isClosed)
+			return false;
+		tasks.add(task);
+		selector.wakeup();
+		return true;
+	}
+
+	/**
+	 * Returns a new executor, that runs the given tasks one after another on the worker threads.
+	 * The executor throws a {@link RejectedExecutionException}, if this server was closed.
+	 */
+	@Nonnull
+	Executor newSerialExecutor() {
+		return new SerialExecutor(workers);
+	}
+
+	/**
+	 * Runs the given task on a worker thread.
+	 * 
+	 * @return <code>false</code>, if this server was closed and the task is not run
+	 */
+	boolean submit(Runnable task) {
+		try {
+			workers.execute(task);
+			return true;
+		}
+		catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/** Is called by the selector thread, when the given session was closed. */
+	void closed(PortSession session) {
+		ExportedPort export = session.getExport();
+		if (export.session == session)
+			export.session = null;
+	}
+
+	/** Runs the selector until this server is closed. */
+	private void select() {
+		try {
+			while (!isClosed) {
+				selector.select();
+				runTasks();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable())
+						accept((ExportedPort) key.attachment());
+					else
+						((PortSession) key.attachment()).ready(key.readyOps());
+				}
+			}
+		}
+		catch (IOException e) {
+			uncaughtException(e);
+		}
+		catch (ClosedSelectorException e) {
+			// the server was closed
+		}
+		finally {
+			closeAll();
+		}
+	}
+
+	/** Runs the tasks, that were passed to {@link #execute(Runnable)}. */
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null)
+			task.run();
+	}
+
+	/** Registers the socket of the given exported port, so that clients are accepted. */
+	private void register(ExportedPort export) {
+		try {
+			export.channel.register(selector, OP_ACCEPT, export);
+		}
+		catch (IOException e) {
+			exports.remove(export.port);
+			close(export);
+		}
+	}
+
+	/** Accepts a client of the given exported port. */
+	private void accept(ExportedPort export) {
+		SocketChannel channel;
+		try {
+			channel = export.channel.accept();
+			if (channel == null)
+				return;
+		}
+		catch (IOException e) {
+			return;
+		}
+
+		if (export.session != null) {
+			// the serial port is used by another client
+			closeQuietly(channel);
+			return;
+		}
+
+		try {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			PortSession session = new PortSession(this, export, channel);
+			export.session = session;
+			session.start(selector);
+		}
+		catch (IOException e) {
+			closeQuietly(channel);
+		}
+	}
+
+	/** Closes the socket of the given exported port and disconnects its client. */
+	private void close(ExportedPort export) {
+		closeQuietly(export.channel);
+		PortSession session = export.session;
+		if (session != null)
+			session.close();
+	}
+
+	/** Closes all exported ports, all sessions and the selector. */
+	private void closeAll() {
+		isClosed = true;
+		runTasks();
+		for (SelectionKey key : selector.keys()) {
+			Object attachment = key.attachment();
+			if (attachment instanceof ExportedPort)
+				close((ExportedPort) attachment);
+		}
+		closeQuietly(selector);
+	}
+
+	/** Closes the given resource and ignores an {@link IOException}. */
+	static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch (IOException e) {
+			// nothing we can do
+		}
+	}
+
+	/** Passes the given exception to the handler of the current thread. */
+	static void uncaughtException(Throwable e) {
+		Thread thread = Thread.currentThread();
+		thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+	}
+
+	/** A serial port, that is exported on a TCP port. */
+	static final class ExportedPort {
+
+		/** the exported serial port, never <code>null</code> */
+		final SerialPort port;
+		/** the initial settings of the serial port, never <code>null</code> */
+		final SerialPortSettings settings;
+		/** accepts the clients, never <code>null</code> */
+		final ServerSocketChannel channel;
+		/** the session of the connected client, is only changed by the selector thread */
+		volatile PortSession session;
+
+		/** Creates a new exported port. */
+		private ExportedPort(	SerialPort port,
+								SerialPortSettings settings,
+								ServerSocketChannel channel) {
+			this.port = port;
+			this.settings = settings;
+			this.channel = channel;
+		}
+	}
+
+	/** Creates the daemon threads of this server. */
+	private static final class ServerThreadFactory implements ThreadFactory {
+
+		/** the name of the threads */
+		private final String name;
+		/** counts the created threads */
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		/** Creates a factory for threads with the given name. */
+		private ServerThreadFactory(String name) {
+			this.name = name;
+		}
+
+		/** {@inheritDoc} */
+		public Thread newThread(Runnable runnable) {
+			String threadName = name.endsWith(" ") ? name + threadNumber.incrementAndGet() : name;
+			Thread thread = new Thread(runnable, threadName);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
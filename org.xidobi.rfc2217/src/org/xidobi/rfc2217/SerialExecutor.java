@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Runs the tasks of a {@link PortSession} one after another on the worker threads of the
+ * {@link Rfc2217Server}. The queued tasks are run by a single worker, so a session uses at most
+ * one worker at a time. An exception of a task is passed to the handler of the worker thread and
+ * doesn't stop the following tasks.
+ * 
+ * @author Christian Schwarz
+ */
+final class SerialExecutor implements Executor {
+
+	/** the executor of the worker threads, never <code>null</code> */
+	private final Executor workers;
+
+	/** the tasks, that are not run yet, guarded by <code>this</code> */
+	private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+	/** <code>true</code>, while a worker runs the tasks, guarded by <code>this</code> */
+	private boolean isRunning;
+
+	/** runs the queued tasks until the queue is empty */
+	private final Runnable runner = new Runnable() {
+		public void run() {
+			runTasks();
+		}
+	};
+
+	/**
+	 * Creates a new serial executor.
+	 * 
+	 * @param workers
+	 *            the executor of the worker threads, must not be <code>null</code>
+	 */
+	SerialExecutor(@Nonnull Executor workers) {
+		this.workers = workers;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception RejectedExecutionException
+	 *                if the executor of the worker threads was shut down
+	 */
+	public synchronized void execute(@Nonnull Runnable task) {
+		tasks.add(task);
+		if (isRunning)
+			return;
+		try {
+			workers.execute(runner);
+			isRunning = true;
+		}
+		catch (RejectedExecutionException e) {
+			tasks.clear();
+			throw e;
+		}
+	}
+
+	/** Runs the queued tasks, is run by a worker. */
+	private void runTasks() {
+		Runnable task;
+		while ((task = nextTask()) != null) {
+			try {
+				task.run();
+			}
+			catch (RuntimeException e) {
+				Rfc2217Server.uncaughtException(e);
+			}
+		}
+	}
+
+	/** Returns the next task or <code>null</code>, if all tasks were run. */
+	private synchronized Runnable nextTask() {
+		Runnable task = tasks.poll();
+		if (task == null)
+			isRunning = false;
+		return task;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The constants of the Telnet protocol (RFC 854) and of the Telnet Com Port Control Option (RFC
+ * 2217), and the encoding of the Telnet commands.
+ * 
+ * @author Christian Schwarz
+ */
+final class Telnet {
+
+	/** Interpret As Command, escapes the commands and itself in the data stream */
+	static final int IAC = 255;
+	/** refuses to perform an option, or demands to stop it */
+	static final int DONT = 254;
+	/** requests to perform an option, or confirms that it is performed */
+	static final int DO = 253;
+	/** refuses to perform an option, or confirms that it is stopped */
+	static final int WONT = 252;
+	/** offers to perform an option, or confirms that it is performed */
+	static final int WILL = 251;
+	/** the begin of a subnegotiation */
+	static final int SB = 250;
+	/** the end of a subnegotiation */
+	static final int SE = 240;
+
+	/** option: the data is transmitted as 8 bit binary data (RFC 856) */
+	static final int BINARY = 0;
+	/** option: the Go Ahead command is not sent (RFC 858) */
+	static final int SUPPRESS_GO_AHEAD = 3;
+	/** option: the Com Port Control Option (RFC 2217) */
+	static final int COM_PORT_OPTION = 44;
+
+	/** the offset of the commands sent by the access server to the client commands */
+	static final int SERVER_OFFSET = 100;
+
+	//@formatter:off
+	/** com port command: requests or sends the signature of the access server */
+	static final int SIGNATURE = 0;
+	/** com port command: sets or requests the baud rate */
+	static final int SET_BAUDRATE = 1;
+	/** com port command: sets or requests the data bits */
+	static final int SET_DATASIZE = 2;
+	/** com port command: sets or requests the parity */
+	static final int SET_PARITY = 3;
+	/** com port command: sets or requests the stop bits */
+	static final int SET_STOPSIZE = 4;
+	/** com port command: sets or requests the flow control, BREAK, DTR and RTS */
+	static final int SET_CONTROL = 5;
+	/** com port command: notifies the client about line errors */
+	static final int NOTIFY_LINESTATE = 6;
+	/** com port command: notifies the client about changes of the modem control signals */
+	static final int NOTIFY_MODEMSTATE = 7;
+	/** com port command: the client can't receive further data */
+	static final int FLOWCONTROL_SUSPEND = 8;
+	/** com port command: the client can receive data again */
+	static final int FLOWCONTROL_RESUME = 9;
+	/** com port command: sets the line state bits, that are notified */
+	static final int SET_LINESTATE_MASK = 10;
+	/** com port command: sets the modem state bits, that are notified */
+	static final int SET_MODEMSTATE_MASK = 11;
+	/** com port command: discards the buffers of the serial port */
+	static final int PURGE_DATA = 12;
+	//@formatter:on
+
+	/** Prevents instantiation. */
+	private Telnet() {}
+
+	/**
+	 * Returns the encoded negotiation of an option, e.g. <code>IAC WILL BINARY</code>.
+	 * 
+	 * @param command
+	 *            {@link #WILL}, {@link #WONT}, {@link #DO} or {@link #DONT}
+	 * @param option
+	 *            the negotiated option
+	 * @return the encoded command, never <code>null</code>
+	 */
+	@Nonnull
+	static ByteBuffer negotiation(int command, int option) {
+		return ByteBuffer.wrap(new byte[] { (byte) IAC, (byte) command, (byte) option });
+	}
+
+	/**
+	 * Returns the encoded subnegotiation of the Com Port Control Option. The IAC bytes in the
+	 * value are escaped.
+	 * 
+	 * @param command
+	 *            the com port command
+	 * @param value
+	 *            the value of the command, must not be <code>null</code>
+	 * @return the encoded command, never <code>null</code>
+	 */
+	@Nonnull
+	static ByteBuffer comPortCommand(int command, @Nonnull byte[] value) {
+		ByteBuffer buffer = ByteBuffer.allocate(6 + 2 * value.length);
+		buffer.put((byte) IAC).put((byte) SB).put((byte) COM_PORT_OPTION).put((byte) command);
+		escape(ByteBuffer.wrap(value), buffer);
+		buffer.put((byte) IAC).put((byte) SE);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Returns the encoded subnegotiation of the Com Port Control Option with a value of a single
+	 * byte.
+	 * 
+	 * @param command
+	 *            the com port command
+	 * @param value
+	 *            the value of the command, between 0 and 255
+	 * @return the encoded command, never <code>null</code>
+	 */
+	@Nonnull
+	static ByteBuffer comPortCommand(int command, int value) {
+		return comPortCommand(command, new byte[] { (byte) value });
+	}
+
+	/**
+	 * Copies the remaining data of the source buffer to the target buffer and doubles the IAC
+	 * bytes. Stops, when the target buffer is full, so that the source buffer may have remaining
+	 * data.
+	 * 
+	 * @param src
+	 *            the data, must not be <code>null</code>
+	 * @param dst
+	 *            receives the escaped data, must not be <code>null</code>
+	 */
+	static void escape(@Nonnull ByteBuffer src, @Nonnull ByteBuffer dst) {
+		while (src.hasRemaining()) {
+			byte b = src.get(src.position());
+			if (b == (byte) IAC) {
+				if (dst.remaining() < 2)
+					return;
+				dst.put(b);
+			}
+			else if (!dst.hasRemaining())
+				return;
+			dst.put(b);
+			src.position(src.position() + 1);
+		}
+	}
+}
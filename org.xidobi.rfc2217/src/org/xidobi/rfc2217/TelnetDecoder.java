@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static org.xidobi.rfc2217.Telnet.DO;
+import static org.xidobi.rfc2217.Telnet.DONT;
+import static org.xidobi.rfc2217.Telnet.IAC;
+import static org.xidobi.rfc2217.Telnet.SB;
+import static org.xidobi.rfc2217.Telnet.SE;
+import static org.xidobi.rfc2217.Telnet.WILL;
+import static org.xidobi.rfc2217.Telnet.WONT;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Splits a Telnet stream into the data and the commands. The data is not copied, the
+ * {@link Handler} receives the parts of the input buffer between the commands. A command, that is
+ * split across several inputs, is reported, when it is complete.
+ * <p>
+ * <b>IMPORTANT:</b> A decoder keeps the state of the stream and must not be used by several
+ * threads at the same time!
+ * 
+ * @author Christian Schwarz
+ */
+final class TelnetDecoder {
+
+	/** the maximum length of a subnegotiation, the bytes beyond are discarded */
+	private static final int MAX_SUBNEGOTIATION_LENGTH = 64;
+
+	/** The states of the decoder. */
+	private static enum State {
+		/** decodes data */
+		DATA,
+		/** an IAC was received */
+		IAC,
+		/** WILL, WONT, DO or DONT was received, the option follows */
+		NEGOTIATION,
+		/** SB was received, the option follows */
+		SUBNEGOTIATION_OPTION,
+		/** collects the bytes of a subnegotiation */
+		SUBNEGOTIATION,
+		/** an IAC was received during a subnegotiation */
+		SUBNEGOTIATION_IAC
+	}
+
+	/** Receives the decoded data and commands. */
+	interface Handler {
+
+		/**
+		 * Is called with a part of the data.
+		 * 
+		 * @param data
+		 *            a view of the input, that is only valid until the decoding of the input has
+		 *            finished, never <code>null</code>
+		 */
+		void data(@Nonnull ByteBuffer data) throws IOException;
+
+		/**
+		 * Is called when a negotiation of an option was received.
+		 * 
+		 * @param command
+		 *            {@link Telnet#WILL}, {@link Telnet#WONT}, {@link Telnet#DO} or
+		 *            {@link Telnet#DONT}
+		 * @param option
+		 *            the negotiated option
+		 */
+		void negotiation(int command, int option) throws IOException;
+
+		/**
+		 * Is called when a subnegotiation was received.
+		 * 
+		 * @param option
+		 *            the option of the subnegotiation
+		 * @param data
+		 *            the unescaped parameters of the subnegotiation, never <code>null</code>
+		 */
+		void subnegotiation(int option, @Nonnull byte[] data) throws IOException;
+	}
+
+	/** the current state */
+	private State state = State.DATA;
+	/** the received WILL, WONT, DO or DONT */
+	private int command;
+	/** the option of the current subnegotiation */
+	private int option;
+	/** the parameters of the current subnegotiation */
+	private final byte[] subnegotiation = new byte[MAX_SUBNEGOTIATION_LENGTH];
+	/** the number of parameters of the current subnegotiation */
+	private int subnegotiationLength;
+
+	/**
+	 * Decodes the remaining bytes of the given buffer. All bytes are consumed.
+	 * 
+	 * @param input
+	 *            the received bytes, must not be <code>null</code>
+	 * @param handler
+	 *            receives the data and the commands in their order, must not be <code>null</code>
+	 * @throws IOException
+	 *             if the handler throws an {@link IOException}
+	 */
+	void decode(@Nonnull ByteBuffer input, @Nonnull Handler handler) throws IOException {
+		int dataStart = input.position();
+		int limit = input.limit();
+
+		for (int i = input.position(); i < limit; i++) {
+			int b = input.get(i) & 0xFF;
+			switch (state) {
+				case DATA:
+					if (b == IAC) {
+						data(input, dataStart, i, handler);
+						state = State.IAC;
+					}
+					continue;
+				case IAC:
+					dataStart = i + 1;
+					state = State.DATA;
+					if (b == IAC)
+						// an escaped IAC is the first byte of the following data
+						dataStart = i;
+					else if (b == WILL || b == WONT || b == DO || b == DONT) {
+						command = b;
+						state = State.NEGOTIATION;
+					}
+					else if (b == SB)
+						state = State.SUBNEGOTIATION_OPTION;
+					// other commands like NOP or GA are ignored
+					continue;
+				case NEGOTIATION:
+					dataStart = i + 1;
+					state = State.DATA;
+					handler.negotiation(command, b);
+					continue;
+				case SUBNEGOTIATION_OPTION:
+					option = b;
+					subnegotiationLength = 0;
+					state = State.SUBNEGOTIATION;
+					continue;
+				case SUBNEGOTIATION:
+					if (b == IAC)
+						state = State.SUBNEGOTIATION_IAC;
+					else
+						addToSubnegotiation(b);
+					continue;
+				case SUBNEGOTIATION_IAC:
+					if (b == IAC) {
+						addToSubnegotiation(b);
+						state = State.SUBNEGOTIATION;
+						continue;
+					}
+					dataStart = i + 1;
+					state = State.DATA;
+					if (b == SE) {
+						byte[] data = new byte[subnegotiationLength];
+						System.arraycopy(subnegotiation, 0, data, 0, subnegotiationLength);
+						handler.subnegotiation(option, data);
+					}
+					// an unterminated subnegotiation is discarded
+					continue;
+			}
+		}
+
+		if (state == State.DATA)
+			data(input, dataStart, limit, handler);
+		input.position(limit);
+	}
+
+	/** Passes the given range of the input to the handler, if it is not empty. */
+	private void data(ByteBuffer input, int start, int end, Handler handler) throws IOException {
+		if (start >= end)
+			return;
+		ByteBuffer data = input.duplicate();
+		data.limit(end);
+		data.position(start);
+		handler.data(data);
+	}
+
+	/** Adds the given byte to the parameters of the current subnegotiation. */
+	private void addToSubnegotiation(int b) {
+		if (subnegotiationLength < subnegotiation.length)
+			subnegotiation[subnegotiationLength++] = (byte) b;
+	}
+}
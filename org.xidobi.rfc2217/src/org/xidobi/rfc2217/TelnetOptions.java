@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static org.xidobi.rfc2217.Telnet.DO;
+import static org.xidobi.rfc2217.Telnet.DONT;
+import static org.xidobi.rfc2217.Telnet.WILL;
+import static org.xidobi.rfc2217.Telnet.WONT;
+import static org.xidobi.rfc2217.Telnet.negotiation;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Keeps the state of the negotiated Telnet options of a connection and answers the negotiations
+ * of the remote side. The requests of the remote side are not answered, if they confirm the
+ * current state, so that the negotiation can't loop (see RFC 854).
+ * <p>
+ * <b>IMPORTANT:</b> The options must not be used by several threads at the same time!
+ * 
+ * @author Christian Schwarz
+ */
+final class TelnetOptions {
+
+	/** the number of Telnet options */
+	private static final int OPTIONS = 256;
+
+	/** <code>true</code> for the options, that the local side is willing to perform */
+	private final boolean[] localSupported = new boolean[OPTIONS];
+	/** <code>true</code> for the options, that the remote side is allowed to perform */
+	private final boolean[] remoteSupported = new boolean[OPTIONS];
+	/** <code>true</code> for the options, that are performed by the local side */
+	private final boolean[] localEnabled = new boolean[OPTIONS];
+	/** <code>true</code> for the options, that are performed by the remote side */
+	private final boolean[] remoteEnabled = new boolean[OPTIONS];
+
+	/**
+	 * Creates the options.
+	 * 
+	 * @param local
+	 *            the options, that the local side is willing to perform, must not be
+	 *            <code>null</code>
+	 * @param remote
+	 *            the options, that the remote side is allowed to perform, must not be
+	 *            <code>null</code>
+	 */
+	TelnetOptions(@Nonnull int[] local, @Nonnull int[] remote) {
+		for (int option : local)
+			localSupported[option] = true;
+		for (int option : remote)
+			remoteSupported[option] = true;
+	}
+
+	/**
+	 * Returns the requests to enable all supported options, that are not enabled yet. The options
+	 * are considered enabled, until the remote side refuses them.
+	 * 
+	 * @return the encoded requests, never <code>null</code>
+	 */
+	@Nonnull
+	ByteBuffer requestAll() {
+		ByteBuffer requests = ByteBuffer.allocate(2 * OPTIONS * 3);
+		for (int option = 0; option < OPTIONS; option++) {
+			if (localSupported[option] && !localEnabled[option]) {
+				localEnabled[option] = true;
+				requests.put(negotiation(WILL, option));
+			}
+			if (remoteSupported[option] && !remoteEnabled[option]) {
+				remoteEnabled[option] = true;
+				requests.put(negotiation(DO, option));
+			}
+		}
+		requests.flip();
+		return requests;
+	}
+
+	/**
+	 * Updates the state of the given option and returns the answer for the remote side.
+	 * 
+	 * @param command
+	 *            the received {@link Telnet#WILL}, {@link Telnet#WONT}, {@link Telnet#DO} or
+	 *            {@link Telnet#DONT}
+	 * @param option
+	 *            the negotiated option
+	 * @return the encoded answer, <code>null</code> if no answer is needed
+	 */
+	@CheckForNull
+	ByteBuffer received(int command, int option) {
+		switch (command) {
+			case DO:
+				if (!localSupported[option])
+					return negotiation(WONT, option);
+				return change(localEnabled, option, true, WILL, WONT);
+			case DONT:
+				return change(localEnabled, option, false, WILL, WONT);
+			case WILL:
+				if (!remoteSupported[option])
+					return negotiation(DONT, option);
+				return change(remoteEnabled, option, true, DO, DONT);
+			case WONT:
+				return change(remoteEnabled, option, false, DO, DONT);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Changes the state of the option and returns the confirmation, if the state was changed.
+	 */
+	private ByteBuffer change(boolean[] enabled, int option, boolean enable, int yes, int no) {
+		// a request, that matches the current state, confirms it and is not answered
+		if (enabled[option] == enable)
+			return null;
+		enabled[option] = enable;
+		return negotiation(enable ? yes : no, option);
+	}
+
+	/**
+	 * Returns <code>true</code>, if the given option is performed by the local side.
+	 * 
+	 * @param option
+	 *            the option
+	 * @return <code>true</code>, if the option is enabled
+	 */
+	boolean isLocalEnabled(int option) {
+		return localEnabled[option];
+	}
+
+	/**
+	 * Returns <code>true</code>, if the given option is performed by the remote side.
+	 * 
+	 * @param option
+	 *            the option
+	 * @return <code>true</code>, if the option is enabled
+	 */
+	boolean isRemoteEnabled(int option) {
+		return remoteEnabled[option];
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.rfc2217;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import org.xidobi.PurgeableConnection;
+import org.xidobi.ReconfigurableConnection;
+import org.xidobi.SerialPortSettings;
+
+/**
+ * The connection to a {@link NetworkSerialPort}, that negotiates the control settings with the
+ * terminal server by the COM-PORT-OPTION of RFC 2217. The buffers of the terminal server are
+ * purged by the same option.
+ * 
+ * @author Christian Schwarz
+ */
+final class TelnetSerialConnection extends NetworkSerialConnection implements ReconfigurableConnection, PurgeableConnection {
+
+	/** reads, writes and negotiates the settings, never <code>null</code> */
+	private final NetworkChannel channel;
+
+	/**
+	 * Creates a new connection.
+	 * 
+	 * @param port
+	 *            the port, must not be <code>null</code>
+	 * @param channel
+	 *            the connected channel, that uses the Telnet protocol, must not be
+	 *            <code>null</code>
+	 */
+	TelnetSerialConnection(	@Nonnull NetworkSerialPort port,
+							@Nonnull NetworkChannel channel) {
+		super(port, channel);
+		this.channel = channel;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The settings are sent to the terminal server, which answers with the applied settings.
+	 */
+	public void reconfigure(@Nonnull SerialPortSettings settings) throws IOException {
+		checkArgumentNotNull(settings, "settings");
+		lockOpenPort();
+		try {
+			channel.reconfigure(settings);
+		}
+		finally {
+			unlockOpenPort();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The buffer of the terminal server is purged, the data, that was received but not read yet, is
+	 * discarded as well.
+	 */
+	public void purgeInput() throws IOException {
+		lockOpenPort();
+		try {
+			channel.purge(true, false);
+			discardReceivedData();
+		}
+		finally {
+			unlockOpenPort();
+		}
+	}
+
+	/** {@inheritDoc} */
+	public void purgeOutput() throws IOException {
+		lockOpenPort();
+		try {
+			channel.purge(false, true);
+		}
+		finally {
+			unlockOpenPort();
+		}
+	}
+}
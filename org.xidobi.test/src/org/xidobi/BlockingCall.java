@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.Thread.State.BLOCKED;
+import static java.lang.Thread.State.TERMINATED;
+import static java.lang.Thread.State.TIMED_WAITING;
+import static java.lang.Thread.State.WAITING;
+
+import java.lang.Thread.State;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs a blocking call in a background thread, so that a test can release the call, e.g. by
+ * closing the connection, and verify its result afterwards. Failures of the call are rethrown by
+ * {@link #get()}, so they are reported to the test.
+ * 
+ * @author Christian Schwarz
+ * @param <T>
+ *            the result type of the call
+ */
+final class BlockingCall<T> {
+
+	/** the task, that executes the call */
+	private final FutureTask<T> task;
+
+	/** the thread, that executes the task */
+	private final Thread thread;
+
+	/** Starts the given call in a new thread. */
+	private BlockingCall(Callable<T> call) {
+		task = new FutureTask<T>(call);
+		thread = new Thread(task, "blocking call");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts the given call in a new thread.
+	 * 
+	 * @param call
+	 *            the call, that is expected to block
+	 * @return the started call
+	 */
+	static <T> BlockingCall<T> start(Callable<T> call) {
+		return new BlockingCall<T>(call);
+	}
+
+	/**
+	 * Waits until the thread of the call is blocked or waiting, or the call is finished.
+	 * 
+	 * @return this call
+	 * @throws InterruptedException
+	 *             if the test thread was interrupted
+	 */
+	BlockingCall<T> awaitBlocked() throws InterruptedException {
+		while (true) {
+			State state = thread.getState();
+			if (state == WAITING || state == TIMED_WAITING || state == BLOCKED || state == TERMINATED)
+				return this;
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Waits until the call is finished and returns its result. An exception of the call is
+	 * rethrown unchanged.
+	 * 
+	 * @return the result of the call
+	 * @throws Exception
+	 *             the failure of the call
+	 */
+	T get() throws Exception {
+		try {
+			return task.get();
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw (Error) cause;
+		}
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.FlowControl.FLOWCONTROL_RTSCTS_IN_OUT;
+import static org.xidobi.Parity.PARITY_EVEN;
+import static org.xidobi.SerialPortSettings.from9600bauds8N1;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+
+/**
+ * Tests the classes {@link AutoBaudDetector} and {@link AutoBaudResult}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestAutoBaudDetector {
+
+	/** the time in ms to wait for asynchronous operations */
+	private static final int TIMEOUT = 5000;
+
+	/** printable data, that is received with the right baud rate */
+	private static final byte[] TEXT = "Hello\r\n".getBytes();
+	/** data, that is received with a wrong baud rate */
+	private static final byte[] GARBAGE = { (byte) 0x80, (byte) 0xfe, 0x00, (byte) 0x9c, 0x03, (byte) 0xff, 0x11 };
+	/** data with some printable characters */
+	private static final byte[] MIXED = { 'a', 'b', 'c', (byte) 0x80, (byte) 0xfe, 0x00, 0x01 };
+
+	/** the candidate settings */
+	private static final List<SerialPortSettings> CANDIDATES = AutoBaudDetector.candidates(from9600bauds8N1().create(), 9600, 19200, 38400);
+
+	@Mock
+	private SerialPort port;
+
+	/** the connection to detect */
+	private FakeConnection connection;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() {
+		initMocks(this);
+		when(port.getPortName()).thenReturn("COM1");
+		connection = new FakeConnection();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, if no candidates are passed.
+	 */
+	@Test
+	@SuppressWarnings("unused")
+	public void new_withoutCandidates() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >candidates< is invalid! Expected at least one candidate!");
+
+		new AutoBaudDetector(Collections.<SerialPortSettings> emptyList(), 1, SECONDS);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, if the time budget is 0.
+	 */
+	@Test
+	@SuppressWarnings("unused")
+	public void new_withZeroBudget() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >timeBudget< is invalid! Expected a value greater than 0!");
+
+		new AutoBaudDetector(CANDIDATES, 0, SECONDS);
+	}
+
+	/**
+	 * Verifies that the candidates have the given baud rates and the other values of the template.
+	 */
+	@Test
+	public void candidates() {
+		SerialPortSettings template = from9600bauds8N1().set(PARITY_EVEN).set(FLOWCONTROL_RTSCTS_IN_OUT).rts(false).create();
+
+		List<SerialPortSettings> result = AutoBaudDetector.candidates(template, 4800, 57600);
+
+		assertThat(result.size(), is(2));
+		assertThat(result.get(0).getBauds(), is(4800));
+		assertThat(result.get(1).getBauds(), is(57600));
+		assertThat(result.get(1).getParity(), is(PARITY_EVEN));
+		assertThat(result.get(1).getFlowControl(), is(FLOWCONTROL_RTSCTS_IN_OUT));
+		assertThat(result.get(1).isRTS(), is(false));
+	}
+
+	/**
+	 * Verifies that the detection settles on the first candidate, that receives a full sample of
+	 * valid data, and the remaining candidates are not tried.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void detect_settlesOnValidData() throws Exception {
+		connection.receive(19200, TEXT);
+		AutoBaudDetector detector = new AutoBaudDetector(CANDIDATES, null, 20, 3, SECONDS);
+
+		AutoBaudResult result = detector.detect(connection);
+
+		assertThat(result.getSettings().getBauds(), is(19200));
+		assertThat(result.getScore(), is(1.0));
+		assertThat(result.isDetected(), is(true));
+		assertThat(connection.applied, contains(9600, 19200));
+	}
+
+	/**
+	 * Verifies that the candidate with the best score is applied again, if no candidate received
+	 * only valid data within the time budget.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void detect_bestScoreWithinBudget() throws Exception {
+		connection.receive(9600, MIXED);
+		connection.receive(19200, GARBAGE);
+		AutoBaudDetector detector = new AutoBaudDetector(CANDIDATES.subList(0, 2), 200, MILLISECONDS);
+
+		AutoBaudResult result = detector.detect(connection);
+
+		assertThat(result.getSettings().getBauds(), is(9600));
+		assertThat(connection.applied, contains(9600, 19200, 9600));
+	}
+
+	/**
+	 * Verifies that framing and parity errors decrease the score of a candidate.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void detect_lineErrorsDecreaseScore() throws Exception {
+		connection.receive(9600, TEXT);
+		connection.receive(19200, TEXT);
+		connection.lineErrors.put(9600, EnumSet.of(LineError.FRAMING, LineError.PARITY));
+		AutoBaudDetector detector = new AutoBaudDetector(CANDIDATES.subList(0, 2), 200, MILLISECONDS);
+
+		AutoBaudResult result = detector.detect(connection);
+
+		assertThat(result.getSettings().getBauds(), is(19200));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the connection can't read
+	 * with a deadline.
+	 */
+	@Test
+	public void detect_withoutTimedRead() throws Exception {
+		AutoBaudDetector detector = new AutoBaudDetector(CANDIDATES, 150, MILLISECONDS);
+
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >connection< is invalid! Expected a TimedReadConnection!");
+
+		detector.detect(mock(ReconfigurableConnection.class));
+	}
+
+	/**
+	 * Verifies that the probe is written after each candidate was applied.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void detect_writesProbe() throws Exception {
+		byte[] probe = "AT\r".getBytes();
+		connection.receive(9600, GARBAGE);
+		connection.receive(19200, GARBAGE);
+		AutoBaudDetector detector = new AutoBaudDetector(CANDIDATES.subList(0, 2), probe, 10, 100, MILLISECONDS);
+
+		detector.detect(connection);
+
+		assertThat(connection.written.size(), is(2));
+		assertThat(connection.written.get(1), is(probe));
+	}
+
+	/**
+	 * Verifies that the first candidate is applied, if no data was received within the time
+	 * budget.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void detect_noData() throws Exception {
+		AutoBaudDetector detector = new AutoBaudDetector(CANDIDATES, 150, MILLISECONDS);
+
+		AutoBaudResult result = detector.detect(connection);
+
+		assertThat(result.isDetected(), is(false));
+		assertThat(result.getSettings().getBauds(), is(9600));
+		assertThat(connection.applied, contains(9600, 19200, 38400, 9600));
+	}
+
+	/**
+	 * Verifies that the result contains the detected connection.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void detect_resultContainsConnection() throws Exception {
+		connection.receive(9600, TEXT);
+		AutoBaudDetector detector = new AutoBaudDetector(CANDIDATES, null, 5, 1, SECONDS);
+
+		AutoBaudResult result = detector.detect(connection);
+
+		assertThat(result.getConnection(), is((SerialConnection) connection));
+		assertThat(connection.isClosed(), is(false));
+	}
+
+	/**
+	 * Verifies that the data is read by the thread, that calls the detection, and that no read is
+	 * pending after the detection returned.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void detect_readsOnCallingThread() throws Exception {
+		connection.receive(19200, TEXT);
+		AutoBaudDetector detector = new AutoBaudDetector(CANDIDATES, null, 20, 300, MILLISECONDS);
+
+		detector.detect(connection);
+
+		assertThat(new HashSet<Thread>(connection.readers), is(Collections.singleton(Thread.currentThread())));
+		assertThat(connection.pendingReads.get(), is(0));
+	}
+
+	/**
+	 * Verifies that the connection is closed and the exception is thrown, if a read fails.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void detect_readFails() throws Exception {
+		connection.readFailure = new IOException("read failed");
+		AutoBaudDetector detector = new AutoBaudDetector(CANDIDATES, 1, SECONDS);
+
+		exception.expect(IOException.class);
+		exception.expectMessage("read failed");
+
+		try {
+			detector.detect(connection);
+		}
+		finally {
+			assertThat(connection.isClosed(), is(true));
+		}
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/**
+	 * A connection, that receives the data configured for the applied baud rate every few
+	 * milliseconds. It can only be read with a deadline.
+	 */
+	private class FakeConnection implements LineStatusConnection, ReconfigurableConnection, TimedReadConnection {
+
+		/** the data per baud rate */
+		private final Map<Integer, byte[]> data = new ConcurrentHashMap<Integer, byte[]>();
+		/** the line errors per baud rate, that are reported with the data */
+		private final Map<Integer, EnumSet<LineError>> lineErrors = new ConcurrentHashMap<Integer, EnumSet<LineError>>();
+		/** the applied baud rates */
+		private final List<Integer> applied = new CopyOnWriteArrayList<Integer>();
+		/** the written data */
+		private final List<byte[]> written = new CopyOnWriteArrayList<byte[]>();
+		/** released, when the connection is closed */
+		private final CountDownLatch closed = new CountDownLatch(1);
+		/** thrown by read, if not null */
+		private volatile IOException readFailure;
+		/** the threads, that read from the connection */
+		private final List<Thread> readers = new CopyOnWriteArrayList<Thread>();
+		/** the number of reads, that didn't return yet */
+		private final AtomicInteger pendingReads = new AtomicInteger();
+		/** the added line status listeners */
+		private final List<LineStatusListener> listeners = new CopyOnWriteArrayList<LineStatusListener>();
+
+		/** Configures the data, that is received with the given baud rate. */
+		private void receive(int bauds, byte[] bytes) {
+			data.put(bauds, bytes);
+		}
+
+		public void write(byte[] bytes) throws IOException {
+			written.add(bytes);
+		}
+
+		public byte[] read() throws IOException {
+			throw new AssertionError("Expected a read with a deadline!");
+		}
+
+		public byte[] read(Deadline deadline) throws IOException {
+			readers.add(Thread.currentThread());
+			pendingReads.incrementAndGet();
+			try {
+				if (readFailure != null)
+					throw readFailure;
+				while (!deadline.isExpired()) {
+					try {
+						if (closed.await(2, MILLISECONDS))
+							throw new IOException("Port COM1 was closed!");
+					}
+					catch (InterruptedException e) {
+						throw new IOException(e.getMessage());
+					}
+					Integer bauds = applied.isEmpty() ? null : applied.get(applied.size() - 1);
+					if (bauds == null || !data.containsKey(bauds))
+						continue;
+					EnumSet<LineError> errors = lineErrors.get(bauds);
+					if (errors != null) {
+						for (LineStatusListener listener : listeners)
+							listener.lineStatusChanged(new LineStatusEvent(port, EnumSet.noneOf(LineSignal.class), EnumSet.noneOf(LineSignal.class), errors));
+					}
+					return data.get(bauds);
+				}
+				return new byte[0];
+			}
+			finally {
+				pendingReads.decrementAndGet();
+			}
+		}
+
+		public void close() throws IOException {
+			closed.countDown();
+		}
+
+		public boolean isClosed() {
+			return closed.getCount() == 0;
+		}
+
+		public SerialPort getPort() {
+			return port;
+		}
+
+		public void reconfigure(SerialPortSettings settings) throws IOException {
+			applied.add(settings.getBauds());
+		}
+
+		public void addLineStatusListener(LineStatusListener listener) {
+			listeners.add(listener);
+		}
+
+		public void removeLineStatusListener(LineStatusListener listener) {
+			listeners.remove(listener);
+		}
+
+		public byte[] read(long timeout, TimeUnit unit) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		public byte[] readFully(int length, Deadline deadline) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.xidobi.CaptureRecord.Direction.READ;
+import static org.xidobi.CaptureRecord.Direction.WRITE;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the classes {@link CaptureWriter} and {@link CaptureReader}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestCaptureWriter {
+
+	/** some data */
+	private static final byte[] DATA = { 1, 2, 3 };
+
+	/** the directory of the capture */
+	private File directory;
+
+	/** class under test */
+	private CaptureWriter writer;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	/** provides the directory of the capture */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		directory = new File(folder.getRoot(), "capture");
+		writer = new CaptureWriter(directory);
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() throws Exception {
+		writer.close();
+	}
+
+	/**
+	 * Verifies that the appended data can be read in the same order with the directions and
+	 * ascending timestamps.
+	 */
+	@Test
+	public void roundtrip() throws Exception {
+		writer.append(WRITE, DATA);
+		writer.append(READ, new byte[] { 4, 5 });
+		writer.append(READ, new byte[0]);
+		writer.close();
+
+		CaptureReader reader = new CaptureReader(directory);
+		CaptureRecord first = reader.read();
+		CaptureRecord second = reader.read();
+		CaptureRecord third = reader.read();
+
+		assertThat(first.getDirection(), is(WRITE));
+		assertThat(first.getData(), is(DATA));
+		assertThat(second.getDirection(), is(READ));
+		assertThat(second.getData(), is(new byte[] { 4, 5 }));
+		assertThat(second.getTimestamp(), is(greaterThanOrEqualTo(first.getTimestamp())));
+		assertThat(third.getData(), is(new byte[0]));
+		assertThat(reader.read(), is(nullValue()));
+		reader.close();
+	}
+
+	/**
+	 * Verifies that the appended data is copied, so later changes of the array are not captured.
+	 */
+	@Test
+	public void append_copiesData() throws Exception {
+		byte[] data = DATA.clone();
+		writer.append(WRITE, data);
+		data[0] = 9;
+		writer.close();
+
+		CaptureReader reader = new CaptureReader(directory);
+		assertThat(reader.read().getData(), is(DATA));
+		reader.close();
+	}
+
+	/**
+	 * Verifies that a new segment is started, when a segment is full, and that a record larger
+	 * than a segment is written into an enlarged segment.
+	 */
+	@Test
+	public void segmentRollover() throws Exception {
+		writer.close();
+		directory = new File(folder.getRoot(), "small");
+		writer = new CaptureWriter(directory, 64);
+
+		for (int i = 0; i < 10; i++)
+			writer.append(WRITE, new byte[] { (byte) i });
+		writer.append(READ, new byte[100]);
+		writer.close();
+
+		assertThat(CaptureReader.listSegments(directory).length > 1, is(true));
+
+		CaptureReader reader = new CaptureReader(directory);
+		for (int i = 0; i < 10; i++)
+			assertThat(reader.read().getData(), is(new byte[] { (byte) i }));
+		assertThat(reader.read().getData().length, is(100));
+		assertThat(reader.read(), is(nullValue()));
+		reader.close();
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, if the directory already contains a
+	 * capture.
+	 */
+	@Test
+	public void new_existingCapture() throws Exception {
+		writer.append(WRITE, DATA);
+		writer.close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("already contains a capture!");
+
+		new CaptureWriter(directory);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, if the segment size is 0.
+	 */
+	@Test
+	public void new_zeroSegmentSize() throws Exception {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >segmentSize< is invalid! Expected a value greater than 0!");
+
+		new CaptureWriter(folder.newFolder("other"), 0);
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, if data is appended after the capture was
+	 * closed.
+	 */
+	@Test
+	public void append_afterClose() throws Exception {
+		writer.close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("was already closed!");
+
+		writer.append(WRITE, DATA);
+	}
+
+	/**
+	 * Verifies that closing the capture twice has no effect.
+	 */
+	@Test
+	public void close_twice() throws Exception {
+		writer.close();
+		writer.close();
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, if a directory without a capture is read.
+	 */
+	@Test
+	public void newReader_noCapture() throws Exception {
+		exception.expect(IOException.class);
+		exception.expectMessage("doesn't contain a capture!");
+
+		new CaptureReader(folder.newFolder("empty"));
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.CaptureRecord.Direction.READ;
+import static org.xidobi.CaptureRecord.Direction.WRITE;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+/**
+ * Tests the class {@link CapturingSerialConnection}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestCapturingSerialConnection {
+
+	/** some data */
+	private static final byte[] DATA = { 1, 2, 3 };
+
+	/** decorated connection */
+	@Mock
+	private FullSerialConnection connection;
+	/** writes the capture */
+	@Mock
+	private CaptureWriter capture;
+
+	/** class under test */
+	private CapturingSerialConnection capturing;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() {
+		initMocks(this);
+		capturing = new CapturingSerialConnection(connection, capture);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, if the connection is
+	 * <code>null</code>.
+	 */
+	@Test
+	public void new_nullConnection() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >connection< must not be null!");
+
+		new CapturingSerialConnection(null, capture);
+	}
+
+	/**
+	 * Verifies that written data is captured before it is written to the decorated connection.
+	 */
+	@Test
+	public void write() throws Exception {
+		capturing.write(DATA);
+
+		InOrder inOrder = inOrder(capture, connection);
+		inOrder.verify(capture).append(WRITE, DATA);
+		inOrder.verify(connection).write(DATA);
+	}
+
+	/**
+	 * Verifies that read data is captured and returned.
+	 */
+	@Test
+	public void read() throws Exception {
+		when(connection.read()).thenReturn(DATA);
+
+		assertThat(capturing.read(), is(DATA));
+
+		verify(capture).append(READ, DATA);
+	}
+
+	/**
+	 * Verifies that the capture is closed, even if the decorated connection couldn't be closed.
+	 */
+	@Test
+	public void close_connectionFails() throws Exception {
+		doThrow(new IOException("close failed")).when(connection).close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("close failed");
+
+		try {
+			capturing.close();
+		}
+		finally {
+			verify(capture).close();
+		}
+	}
+
+	/**
+	 * Verifies that the state of the decorated connection is returned.
+	 */
+	@Test
+	public void isClosed() {
+		when(connection.isClosed()).thenReturn(true);
+
+		assertThat(capturing.isClosed(), is(true));
+	}
+
+	/**
+	 * Verifies that the reconfiguration is delegated to the decorated connection.
+	 */
+	@Test
+	public void reconfigure() throws Exception {
+		SerialPortSettings settings = SerialPortSettings.from9600bauds8N1().create();
+
+		capturing.reconfigure(settings);
+
+		verify(connection).reconfigure(settings);
+	}
+
+	/**
+	 * Verifies that an {@link UnsupportedOperationException} is thrown, when the decorated
+	 * connection is not a {@link ReconfigurableConnection}.
+	 */
+	@Test
+	public void reconfigure_notSupported() throws Exception {
+		SerialConnection plain = mock(SerialConnection.class);
+		SerialPort port = mock(SerialPort.class);
+		when(plain.getPort()).thenReturn(port);
+		when(port.getPortName()).thenReturn("COM1");
+
+		exception.expect(UnsupportedOperationException.class);
+		exception.expectMessage("The connection to port COM1 can't be reconfigured!");
+
+		new CapturingSerialConnection(plain, capture).reconfigure(SerialPortSettings.from9600bauds8N1().create());
+	}
+
+	/**
+	 * Verifies that an {@link UnsupportedOperationException} is thrown, when the decorated
+	 * connection is not a {@link PurgeableConnection}.
+	 */
+	@Test
+	public void purgeInput_notSupported() throws Exception {
+		SerialConnection plain = mock(SerialConnection.class);
+		SerialPort port = mock(SerialPort.class);
+		when(plain.getPort()).thenReturn(port);
+		when(port.getPortName()).thenReturn("COM1");
+
+		exception.expect(UnsupportedOperationException.class);
+		exception.expectMessage("The buffers of port COM1 can't be purged!");
+
+		new CapturingSerialConnection(plain, capture).purgeInput();
+	}
+}
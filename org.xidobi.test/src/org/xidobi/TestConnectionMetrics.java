@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.management.ManagementFactory.getPlatformMBeanServer;
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashSet;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the class {@link ConnectionMetrics}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestConnectionMetrics {
+
+	/** class under test */
+	private ConnectionMetrics metrics;
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() {
+		metrics = new ConnectionMetrics("COM1");
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() {
+		metrics.unregister();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when
+	 * <code>portName == null</code> is passed to the constructor.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@SuppressWarnings("unused")
+	public void new_withNullPortName() {
+		new ConnectionMetrics(null);
+	}
+
+	/**
+	 * Verifies that the read and write operations are counted.
+	 */
+	@Test
+	public void readAndWrite() {
+		metrics.readCompleted(10);
+		metrics.readCompleted(20);
+		metrics.readFailed();
+		metrics.writeCompleted(5, 1000);
+		metrics.writeFailed();
+
+		assertThat(metrics.getReads(), is(2L));
+		assertThat(metrics.getBytesRead(), is(30L));
+		assertThat(metrics.getReadSizeMean(), is(15.0));
+		assertThat(metrics.getReadSizeMax(), is(20L));
+		assertThat(metrics.getReadErrors(), is(1L));
+		assertThat(metrics.getWrites(), is(1L));
+		assertThat(metrics.getBytesWritten(), is(5L));
+		assertThat(metrics.getWriteTimeMax(), is(1000L));
+		assertThat(metrics.getWriteErrors(), is(1L));
+	}
+
+	/**
+	 * Verifies that each line error is counted separately.
+	 */
+	@Test
+	public void lineErrorsDetected() {
+		metrics.lineErrorsDetected(new HashSet<LineError>(asList(LineError.OVERRUN, LineError.FRAMING)));
+		metrics.lineErrorsDetected(new HashSet<LineError>(asList(LineError.OVERRUN)));
+
+		assertThat(metrics.getOverrunErrors(), is(2L));
+		assertThat(metrics.getFramingErrors(), is(1L));
+		assertThat(metrics.getParityErrors(), is(0L));
+		assertThat(metrics.getLineErrors(LineError.OVERRUN), is(2L));
+	}
+
+	/**
+	 * Verifies that the metrics are accessible via JMX after they were registered and are removed
+	 * after they were unregistered.
+	 */
+	@Test
+	public void registerAndUnregister() throws Exception {
+		MBeanServer server = getPlatformMBeanServer();
+		ObjectName name = new ObjectName("org.xidobi:type=SerialConnection,port=\"COM1\"");
+		metrics.readCompleted(7);
+
+		metrics.register();
+		assertThat(server.getAttribute(name, "BytesRead"), is((Object) 7L));
+		assertThat(server.getAttribute(name, "PortName"), is((Object) "COM1"));
+
+		metrics.unregister();
+		assertThat(server.isRegistered(name), is(false));
+	}
+
+	/**
+	 * Verifies that registered metrics of the same port are replaced.
+	 */
+	@Test
+	public void register_replacesMetricsOfSamePort() throws Exception {
+		ConnectionMetrics previous = new ConnectionMetrics("COM1");
+		previous.readCompleted(1);
+		previous.register();
+
+		metrics.register();
+
+		assertThat(getPlatformMBeanServer().getAttribute(metrics.getObjectName(), "BytesRead"), is((Object) 0L));
+	}
+
+	/**
+	 * Verifies that the replaced metrics of a connection, that is closed after the port was opened
+	 * again, don't unregister the metrics of the new connection.
+	 */
+	@Test
+	public void unregister_replacedMetricsKeepNewMetrics() throws Exception {
+		ConnectionMetrics previous = new ConnectionMetrics("COM1");
+		previous.register();
+		metrics.readCompleted(7);
+		metrics.register();
+
+		previous.unregister();
+
+		assertThat(getPlatformMBeanServer().getAttribute(metrics.getObjectName(), "BytesRead"), is((Object) 7L));
+	}
+}
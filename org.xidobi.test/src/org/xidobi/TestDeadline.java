@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests the class {@link Deadline}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestDeadline {
+
+	/**
+	 * Verifies that a deadline with a timeout of 0 is expired and has no remaining time.
+	 */
+	@Test
+	public void after_zeroTimeout() {
+		Deadline deadline = Deadline.after(0, SECONDS);
+
+		assertThat(deadline.isExpired(), is(true));
+		assertThat(deadline.remaining(MILLISECONDS), is(0L));
+	}
+
+	/**
+	 * Verifies that a deadline is not expired before the timeout elapsed.
+	 */
+	@Test
+	public void after_timeout() {
+		Deadline deadline = Deadline.after(60, SECONDS);
+
+		assertThat(deadline.isExpired(), is(false));
+		assertThat(deadline.remaining(MILLISECONDS), is(greaterThan(59000L)));
+		assertThat(deadline.remaining(MILLISECONDS), is(lessThanOrEqualTo(60000L)));
+	}
+
+	/**
+	 * Verifies that a huge timeout doesn't overflow.
+	 */
+	@Test
+	public void after_hugeTimeout() {
+		Deadline deadline = Deadline.after(Long.MAX_VALUE, DAYS);
+
+		assertThat(deadline.isExpired(), is(false));
+		assertThat(deadline.remaining(DAYS), is(greaterThan(365L)));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a negative timeout is
+	 * passed.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void after_negativeTimeout() {
+		Deadline.after(-1, SECONDS);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>null</code> is
+	 * passed as unit.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void after_nullUnit() {
+		Deadline.after(1, null);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Tests the class {@link Histogram}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestHistogram {
+
+	/** class under test */
+	private Histogram histogram;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() {
+		histogram = new Histogram();
+	}
+
+	/**
+	 * Verifies that an empty histogram returns 0 for all values.
+	 */
+	@Test
+	public void empty() {
+		assertThat(histogram.getCount(), is(0L));
+		assertThat(histogram.getMean(), is(0.0));
+		assertThat(histogram.getMax(), is(0L));
+		assertThat(histogram.getValueAtPercentile(99), is(0L));
+	}
+
+	/**
+	 * Verifies that the count, mean and maximum of the recorded values are exact.
+	 */
+	@Test
+	public void record() {
+		histogram.record(1);
+		histogram.record(2);
+		histogram.record(9);
+
+		assertThat(histogram.getCount(), is(3L));
+		assertThat(histogram.getMean(), is(4.0));
+		assertThat(histogram.getMax(), is(9L));
+	}
+
+	/**
+	 * Verifies that negative values are recorded as 0.
+	 */
+	@Test
+	public void record_negative() {
+		histogram.record(-5);
+
+		assertThat(histogram.getCount(), is(1L));
+		assertThat(histogram.getMax(), is(0L));
+		assertThat(histogram.getValueAtPercentile(100), is(0L));
+	}
+
+	/**
+	 * Verifies that the value at a percentile is the upper bound of the bucket, that contains the
+	 * percentile.
+	 */
+	@Test
+	public void getValueAtPercentile() {
+		for (int i = 0; i < 99; i++)
+			histogram.record(100);
+		histogram.record(5000);
+
+		assertThat(histogram.getValueAtPercentile(50), is(127L));
+		assertThat(histogram.getValueAtPercentile(99), is(127L));
+		assertThat(histogram.getValueAtPercentile(100), is(5000L));
+	}
+
+	/**
+	 * Verifies that the value at a percentile is not greater than the maximum.
+	 */
+	@Test
+	public void getValueAtPercentile_notGreaterThanMax() {
+		histogram.record(Long.MAX_VALUE);
+
+		assertThat(histogram.getValueAtPercentile(50), is(Long.MAX_VALUE));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a percentile greater than
+	 * 100 is passed.
+	 */
+	@Test
+	public void getValueAtPercentile_greaterThan100() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >percentile< is invalid! Expected a value between 0 and 100!");
+
+		histogram.getValueAtPercentile(101);
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.SerialPortSettings.from9600bauds8N1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+
+/**
+ * Tests the class {@link PacedSerialConnection}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestPacedSerialConnection {
+
+	/** the maximum time in milliseconds to wait for a write */
+	private static final int TIMEOUT = 5000;
+	/** the tolerance in milliseconds for the delay of a write */
+	private static final long TOLERANCE = 50;
+
+	/** class under test */
+	private PacedSerialConnection paced;
+
+	/** releases the waiting writers */
+	private WritePacer pacer;
+
+	@Mock
+	private FullSerialConnection connection;
+	@Mock
+	private SerialPort port;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		initMocks(this);
+
+		when(port.getPortName()).thenReturn("COM1");
+		when(connection.getPort()).thenReturn(port);
+		pacer = new WritePacer();
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() throws Exception {
+		pacer.close();
+	}
+
+	/**
+	 * Verifies that the first write is not delayed.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_first() throws Exception {
+		paced = newPaced(Pacing.fromBytesPerSecond(100));
+
+		long duration = timeWrite(new byte[50]);
+
+		assertThat(duration, lessThan(TOLERANCE));
+		verify(connection).write(new byte[50]);
+	}
+
+	/**
+	 * Verifies that the next write is delayed by the transmit time of the previous write.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_delayedByRate() throws Exception {
+		paced = newPaced(Pacing.fromBytesPerSecond(1000));
+		paced.write(new byte[200]);
+
+		long duration = timeWrite(new byte[1]);
+
+		assertThat(duration, greaterThanOrEqualTo(200 - TOLERANCE));
+		assertThat(duration, lessThan(200 + TOLERANCE * 2));
+	}
+
+	/**
+	 * Verifies that the writes of {@link ByteBuffer}s are paced by their remaining bytes.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_buffersDelayedByRate() throws Exception {
+		paced = newPaced(Pacing.fromBytesPerSecond(1000));
+		ByteBuffer[] buffers = { ByteBuffer.allocate(100), ByteBuffer.allocate(100) };
+		paced.write(buffers);
+
+		long duration = timeWrite(new byte[1]);
+
+		assertThat(duration, greaterThanOrEqualTo(200 - TOLERANCE));
+		verify(connection).write(buffers);
+	}
+
+	/**
+	 * Verifies that the writes are not delayed as long as they fit into the burst.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_burst() throws Exception {
+		paced = newPaced(Pacing.fromBytesPerSecond(1000).burst(300));
+		paced.write(new byte[200]);
+
+		long duration = timeWrite(new byte[100]);
+		assertThat(duration, lessThan(TOLERANCE));
+
+		duration = timeWrite(new byte[100]);
+		assertThat(duration, greaterThanOrEqualTo(100 - TOLERANCE));
+	}
+
+	/**
+	 * Verifies that the next write is delayed by the frame gap after the end of the previous write.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_frameGap() throws Exception {
+		paced = newPaced(Pacing.fromBytesPerSecond(100000).frameGap(200, MILLISECONDS));
+		paced.write(new byte[1]);
+
+		long duration = timeWrite(new byte[1]);
+
+		assertThat(duration, greaterThanOrEqualTo(200 - TOLERANCE));
+		assertThat(duration, lessThan(200 + TOLERANCE * 2));
+	}
+
+	/**
+	 * Verifies that a writer, that waits for the pacing, is released by {@link
+	 * PacedSerialConnection#close()} and throws an {@link IOException}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void close_releasesWaitingWrite() throws Exception {
+		paced = newPaced(Pacing.fromBytesPerSecond(1));
+		paced.write(new byte[60]);
+		BlockingCall<Void> write = BlockingCall.start(new Callable<Void>() {
+			public Void call() throws Exception {
+				paced.write(new byte[1]);
+				return null;
+			}
+		}).awaitBlocked();
+		paced.close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port COM1 was closed!");
+
+		write.get();
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, when the connection is closed.
+	 */
+	@Test
+	public void write_closed() throws Exception {
+		paced = newPaced(Pacing.fromBytesPerSecond(100));
+		paced.close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port COM1 was closed!");
+
+		paced.write(new byte[1]);
+	}
+
+	/**
+	 * Verifies that the decorated connection is closed.
+	 */
+	@Test
+	public void close() throws Exception {
+		paced = newPaced(Pacing.fromBytesPerSecond(100));
+
+		paced.close();
+
+		assertThat(paced.isClosed(), is(true));
+		verify(connection).close();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalStateException} is thrown, when a write must wait for a
+	 * closed pacer.
+	 */
+	@Test
+	public void write_pacerClosed() throws Exception {
+		paced = newPaced(Pacing.fromBytesPerSecond(1));
+		paced.write(new byte[60]);
+		pacer.close();
+
+		exception.expect(IllegalStateException.class);
+		exception.expectMessage("The write pacer was closed!");
+
+		paced.write(new byte[1]);
+	}
+
+	/**
+	 * Verifies that the writes are paced with the rate of the new settings, after the connection
+	 * was reconfigured with a higher baud rate.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void reconfigure_rateOfSettings() throws Exception {
+		paced = newPaced(Pacing.from(from9600bauds8N1().create()));
+		SerialPortSettings settings = from9600bauds8N1().bauds(19200).create();
+
+		paced.reconfigure(settings);
+		paced.write(new byte[384]);
+		long duration = timeWrite(new byte[1]);
+
+		verify(connection).reconfigure(settings);
+		assertThat(paced.getPacing().getBytesPerSecond(), is(1920));
+		assertThat(duration, greaterThanOrEqualTo(200 - TOLERANCE));
+		assertThat(duration, lessThan(200 + TOLERANCE * 2));
+	}
+
+	/**
+	 * Verifies that an explicitly specified rate is kept, when the connection is reconfigured.
+	 */
+	@Test
+	public void reconfigure_explicitRate() throws Exception {
+		Pacing pacing = Pacing.fromBytesPerSecond(1000).create();
+		paced = new PacedSerialConnection(connection, pacing, pacer);
+
+		paced.reconfigure(from9600bauds8N1().bauds(19200).create());
+
+		assertThat(paced.getPacing(), is(pacing));
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Creates a new paced connection with the pacing of the given builder. */
+	private PacedSerialConnection newPaced(Pacing.PacingBuilder pacing) {
+		return new PacedSerialConnection(connection, pacing.create(), pacer);
+	}
+
+	/** Writes the given data and returns the duration of the write in milliseconds. */
+	private long timeWrite(byte[] data) throws IOException {
+		long start = System.nanoTime();
+		paced.write(data);
+		return NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.xidobi.DataBits.DATABITS_7;
+import static org.xidobi.Parity.PARITY_EVEN;
+import static org.xidobi.StopBits.STOPBITS_2;
+
+import org.junit.Test;
+
+/**
+ * Tests the class {@link Pacing}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestPacing {
+
+	/**
+	 * Verifies that the default values of the builder are no burst and no frame gap.
+	 */
+	@Test
+	public void fromBytesPerSecond() {
+		Pacing pacing = Pacing.fromBytesPerSecond(100).create();
+
+		assertThat(pacing.getBytesPerSecond(), is(100));
+		assertThat(pacing.getBurst(), is(0));
+		assertThat(pacing.getFrameGap(MILLISECONDS), is(0L));
+	}
+
+	/**
+	 * Verifies that the values of the builder are used.
+	 */
+	@Test
+	public void create() {
+		Pacing pacing = Pacing.fromBytesPerSecond(100).bytesPerSecond(200).burst(16).frameGap(5, MILLISECONDS).create();
+
+		assertThat(pacing.getBytesPerSecond(), is(200));
+		assertThat(pacing.getBurst(), is(16));
+		assertThat(pacing.getFrameGap(MILLISECONDS), is(5L));
+	}
+
+	/**
+	 * Verifies that a character of 9600 bauds 8N1 consists of 10 bits, so 960 characters are
+	 * transmitted per second.
+	 */
+	@Test
+	public void from_9600bauds8N1() {
+		Pacing pacing = Pacing.from(SerialPortSettings.from9600bauds8N1().create()).create();
+
+		assertThat(pacing.getBytesPerSecond(), is(960));
+	}
+
+	/**
+	 * Verifies that the start bit, the data bits, the parity bit and the stop bits of the settings
+	 * are counted: 1 + 7 + 1 + 2 bits at 1100 bauds are 100 characters per second.
+	 */
+	@Test
+	public void from_7E2() {
+		SerialPortSettings settings = SerialPortSettings.from9600bauds8N1().bauds(1100).set(DATABITS_7).set(PARITY_EVEN).set(STOPBITS_2).create();
+
+		Pacing pacing = Pacing.from(settings).create();
+
+		assertThat(pacing.getBytesPerSecond(), is(100));
+	}
+
+	/**
+	 * Verifies that a rate of the settings is calculated again for new settings, while burst and
+	 * frame gap are kept.
+	 */
+	@Test
+	public void withRateOf_rateOfSettings() {
+		Pacing pacing = Pacing.from(SerialPortSettings.from9600bauds8N1().create()).burst(16).frameGap(5, MILLISECONDS).create();
+
+		Pacing result = pacing.withRateOf(SerialPortSettings.from9600bauds8N1().bauds(19200).create());
+
+		assertThat(result.getBytesPerSecond(), is(1920));
+		assertThat(result.getBurst(), is(16));
+		assertThat(result.getFrameGap(MILLISECONDS), is(5L));
+		assertThat(result.isRateOfSettings(), is(true));
+	}
+
+	/**
+	 * Verifies that an explicitly specified rate is not changed by new settings.
+	 */
+	@Test
+	public void withRateOf_explicitRate() {
+		Pacing pacing = Pacing.from(SerialPortSettings.from9600bauds8N1().create()).bytesPerSecond(100).create();
+
+		Pacing result = pacing.withRateOf(SerialPortSettings.from9600bauds8N1().bauds(19200).create());
+
+		assertThat(result.getBytesPerSecond(), is(100));
+		assertThat(result.isRateOfSettings(), is(false));
+	}
+
+	/**
+	 * Verifies that the transmit time is calculated from the rate.
+	 */
+	@Test
+	public void transmitNanos() {
+		Pacing pacing = Pacing.fromBytesPerSecond(1000).create();
+
+		assertThat(pacing.transmitNanos(5), is(MILLISECONDS.toNanos(5)));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the rate is 0.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void bytesPerSecond_zero() {
+		Pacing.fromBytesPerSecond(0);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a negative burst is passed.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void burst_negative() {
+		Pacing.fromBytesPerSecond(100).burst(-1);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a negative frame gap is
+	 * passed.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void frameGap_negative() {
+		Pacing.fromBytesPerSecond(100).frameGap(-1, MILLISECONDS);
+	}
+}
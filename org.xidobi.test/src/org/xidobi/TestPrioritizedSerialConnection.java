@@ -0,0 +1,289 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.PrioritizedSerialConnection.Priority.HIGH;
+import static org.xidobi.PrioritizedSerialConnection.Priority.LOW;
+import static org.xidobi.PrioritizedSerialConnection.Priority.NORMAL;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xidobi.PrioritizedSerialConnection.Priority;
+
+/**
+ * Tests the class {@link PrioritizedSerialConnection}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestPrioritizedSerialConnection {
+
+	/** the maximum time in milliseconds to wait for the writes */
+	private static final int TIMEOUT = 5000;
+
+	/** class under test */
+	private PrioritizedSerialConnection prioritized;
+
+	@Mock
+	private SerialConnection connection;
+	@Mock
+	private SerialPort port;
+
+	/** the first byte of each frame, in the order they were written to the decorated connection */
+	private final List<Byte> written = new CopyOnWriteArrayList<Byte>();
+	/** blocks the writes of the decorated connection until it is released */
+	private final CountDownLatch writeReleased = new CountDownLatch(1);
+	/** is released, when the first write of the decorated connection was started */
+	private final CountDownLatch writeStarted = new CountDownLatch(1);
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		initMocks(this);
+
+		when(port.getPortName()).thenReturn("COM1");
+		when(connection.getPort()).thenReturn(port);
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				written.add(((byte[]) invocation.getArguments()[0])[0]);
+				writeStarted.countDown();
+				writeReleased.await();
+				return null;
+			}
+		}).when(connection).write(any(byte[].class));
+
+		prioritized = new PrioritizedSerialConnection(connection);
+	}
+
+	/**
+	 * Verifies that a write without priority is passed to the decorated connection.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write() throws Exception {
+		writeReleased.countDown();
+
+		prioritized.write(new byte[] { 1 });
+
+		verify(connection).write(new byte[] { 1 });
+		assertThat(prioritized.getWaitTime(NORMAL).getCount(), is(1L));
+	}
+
+	/**
+	 * Verifies that the {@link ByteBuffer}s are concatenated, if the decorated connection is not a
+	 * {@link GatheringConnection}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_buffers() throws Exception {
+		ByteBuffer[] buffers = { ByteBuffer.wrap(new byte[] { 1 }), ByteBuffer.wrap(new byte[] { 2 }) };
+		writeReleased.countDown();
+
+		prioritized.write(buffers, LOW);
+
+		verify(connection).write(new byte[] { 1, 2 });
+		assertThat(buffers[1].remaining(), is(0));
+		assertThat(prioritized.getWaitTime(LOW).getCount(), is(1L));
+	}
+
+	/**
+	 * Verifies that the waiting writes are written by priority, and in the order of their arrival
+	 * within the same priority.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_byPriority() throws Exception {
+		writeInBackground(0, NORMAL);
+		writeStarted.await();
+
+		writeInBackground(1, LOW);
+		awaitQueuedWrites(LOW, 1);
+		writeInBackground(2, NORMAL);
+		awaitQueuedWrites(NORMAL, 1);
+		writeInBackground(3, HIGH);
+		awaitQueuedWrites(HIGH, 1);
+		writeInBackground(4, HIGH);
+		awaitQueuedWrites(HIGH, 2);
+
+		writeReleased.countDown();
+		awaitWrites(5);
+
+		assertThat(written, contains((byte) 0, (byte) 3, (byte) 4, (byte) 2, (byte) 1));
+		assertThat(prioritized.getQueuedWrites(LOW), is(0));
+	}
+
+	/**
+	 * Verifies that the time, that a write waited for its turn, is recorded.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_recordsWaitTime() throws Exception {
+		writeInBackground(0, LOW);
+		writeStarted.await();
+		writeInBackground(1, HIGH);
+		awaitQueuedWrites(HIGH, 1);
+		Thread.sleep(10);
+
+		writeReleased.countDown();
+		awaitWrites(2);
+
+		assertThat(prioritized.getWaitTime(HIGH).getMax(), is(greaterThan(0L)));
+	}
+
+	/**
+	 * Verifies that the waiting writes are released by {@link PrioritizedSerialConnection#close()}
+	 * and throw an {@link IOException}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void close_releasesWaitingWrites() throws Exception {
+		writeInBackground(0, NORMAL);
+		writeStarted.await();
+		AtomicReference<Exception> failure = writeInBackground(1, HIGH);
+		awaitQueuedWrites(HIGH, 1);
+
+		prioritized.close();
+		while (failure.get() == null)
+			Thread.sleep(1);
+
+		assertThat(failure.get().getMessage(), is("Port COM1 was closed!"));
+		assertThat(prioritized.getQueuedWrites(HIGH), is(0));
+		verify(connection).close();
+		writeReleased.countDown();
+	}
+
+	/**
+	 * Verifies that an interrupted write is removed from its lane and throws an
+	 * {@link InterruptedIOException}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void write_interrupted() throws Exception {
+		writeInBackground(0, NORMAL);
+		writeStarted.await();
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					prioritized.write(new byte[] { 1 }, LOW);
+				}
+				catch (Exception e) {
+					failure.set(e);
+				}
+			}
+		};
+		writer.start();
+		awaitQueuedWrites(LOW, 1);
+
+		writer.interrupt();
+		writer.join();
+
+		assertThat(failure.get(), is(instanceOf(InterruptedIOException.class)));
+		assertThat(prioritized.getQueuedWrites(LOW), is(0));
+		writeReleased.countDown();
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, when the connection is closed.
+	 */
+	@Test
+	public void write_closed() throws Exception {
+		prioritized.close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port COM1 was closed!");
+
+		prioritized.write(new byte[] { 1 }, HIGH);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>null</code> is passed
+	 * as priority.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void write_nullPriority() throws Exception {
+		prioritized.write(new byte[] { 1 }, null);
+	}
+
+	/**
+	 * Verifies that an {@link UnsupportedOperationException} is thrown by a timed read, when the
+	 * decorated connection is not a {@link TimedReadConnection}.
+	 */
+	@Test
+	public void read_withoutTimedRead() throws Exception {
+		exception.expect(UnsupportedOperationException.class);
+		exception.expectMessage("The connection to port COM1 can't read with a timeout!");
+
+		prioritized.read(Deadline.after(1, SECONDS));
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/**
+	 * Writes a frame, that starts with the given byte, with the given priority in a new thread.
+	 * 
+	 * @return receives the failure of the write
+	 */
+	private AtomicReference<Exception> writeInBackground(final int frame, final Priority priority) {
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					prioritized.write(new byte[] { (byte) frame }, priority);
+				}
+				catch (Exception e) {
+					failure.set(e);
+				}
+			}
+		}.start();
+		return failure;
+	}
+
+	/** Waits until the given number of writes waits in the lane of the given priority. */
+	private void awaitQueuedWrites(Priority priority, int writes) throws InterruptedException {
+		while (prioritized.getQueuedWrites(priority) < writes)
+			Thread.sleep(1);
+	}
+
+	/** Waits until the given number of frames was written. */
+	private void awaitWrites(int writes) throws InterruptedException {
+		while (written.size() < writes)
+			Thread.sleep(1);
+	}
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static junit.framework.Assert.fail;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.ReadAheadSerialConnection.OverflowPolicy.BLOCK;
+import static org.xidobi.ReadAheadSerialConnection.OverflowPolicy.DROP_OLDEST;
+import static org.xidobi.ReadAheadSerialConnection.OverflowPolicy.FAIL;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xidobi.ReadAheadSerialConnection.OverflowPolicy;
+
+/**
+ * Tests the class {@link ReadAheadSerialConnection}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestReadAheadSerialConnection {
+
+	/** the maximum time in milliseconds to wait for the pump */
+	private static final int TIMEOUT = 5000;
+	/**
+	 * the timestamp of the first chunk, that is received by the decorated connection, the
+	 * following chunks are 1 ns later each
+	 */
+	private static final long TIMESTAMP = 4711;
+
+	/** class under test */
+	private ReadAheadSerialConnection readAhead;
+
+	@Mock
+	private FullSerialConnection connection;
+	@Mock
+	private SerialPort port;
+
+	/** the data or failures, that are returned by the reads of the decorated connection */
+	private final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+	/** the number of chunks, that were returned by the decorated connection, only used by the pump */
+	private long chunks;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		initMocks(this);
+
+		when(port.getPortName()).thenReturn("COM1");
+		when(connection.getPort()).thenReturn(port);
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				Object next = received.take();
+				if (next instanceof IOException)
+					throw (IOException) next;
+				byte[] data = (byte[]) next;
+				((ReceivedData) invocation.getArguments()[0]).set(data, data.length, TIMESTAMP + chunks++);
+				return null;
+			}
+		}).when(connection).read(any(ReceivedData.class));
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				received.add(new IOException("Port COM1 was closed!"));
+				return null;
+			}
+		}).when(connection).close();
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() throws Exception {
+		if (readAhead != null)
+			readAhead.close();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the capacity is not a power
+	 * of 2.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@SuppressWarnings("unused")
+	public void new_capacityNotPowerOf2() {
+		new ReadAheadSerialConnection(connection, 1000, BLOCK);
+	}
+
+	/**
+	 * Verifies that the data, that was pumped in several chunks, is returned by a single read.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+		received.add(new byte[] { 1, 2 });
+		received.add(new byte[] { 3 });
+		awaitBufferedBytes(3);
+
+		assertThat(readAhead.read(), is(new byte[] { 1, 2, 3 }));
+		assertThat(readAhead.getBufferedBytes(), is(0));
+	}
+
+	/**
+	 * Verifies that the buffered data is discarded by
+	 * {@link ReadAheadSerialConnection#purgeInput()} and the input buffer of the decorated
+	 * connection is purged.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void purgeInput() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+		received.add(new byte[] { 1, 2 });
+		awaitBufferedBytes(2);
+
+		readAhead.purgeInput();
+		received.add(new byte[] { 3 });
+
+		verify(connection).purgeInput();
+		assertThat(readAhead.read(), is(new byte[] { 3 }));
+	}
+
+	/**
+	 * Verifies that the data is returned with the timestamp of the decorated connection, when it
+	 * is read into a {@link ReceivedData}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_receivedData() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+		received.add(new byte[] { 1, 2 });
+		ReceivedData result = new ReceivedData();
+
+		readAhead.read(result);
+
+		assertThat(result.toByteArray(), is(new byte[] { 1, 2 }));
+		assertThat(result.getTimestamp(), is(TIMESTAMP));
+	}
+
+	/**
+	 * Verifies that the data of several chunks is returned with the timestamp of the oldest chunk,
+	 * when it is read into a {@link ReceivedData}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_receivedData_oldestChunk() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+		received.add(new byte[] { 1, 2 });
+		received.add(new byte[] { 3 });
+		received.add(new byte[] { 4 });
+		awaitBufferedBytes(4);
+		ReceivedData result = new ReceivedData();
+
+		readAhead.read(result);
+
+		assertThat(result.toByteArray(), is(new byte[] { 1, 2, 3, 4 }));
+		assertThat(result.getTimestamp(), is(TIMESTAMP));
+	}
+
+	/**
+	 * Verifies that the remaining bytes of a partially taken chunk keep the timestamp of the chunk
+	 * and the bytes of the following chunk get their own timestamp afterwards.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_receivedData_partiallyTakenChunk() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+		received.add(new byte[] { 1, 2 });
+		assertThat(readAhead.readFully(1, Deadline.after(1, SECONDS)), is(new byte[] { 1 }));
+		received.add(new byte[] { 3 });
+		awaitBufferedBytes(2);
+		ReceivedData result = new ReceivedData();
+
+		readAhead.read(result);
+
+		assertThat(result.toByteArray(), is(new byte[] { 2, 3 }));
+		assertThat(result.getTimestamp(), is(TIMESTAMP));
+
+		received.add(new byte[] { 4 });
+		readAhead.read(result);
+
+		assertThat(result.toByteArray(), is(new byte[] { 4 }));
+		assertThat(result.getTimestamp(), is(TIMESTAMP + 2));
+	}
+
+	/**
+	 * Verifies that the timestamp of the oldest remaining chunk is returned, after the oldest data
+	 * was discarded with {@link OverflowPolicy#DROP_OLDEST}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_receivedData_afterDropOldest() throws Exception {
+		readAhead = newReadAhead(4, DROP_OLDEST);
+		received.add(new byte[] { 1, 2 });
+		received.add(new byte[] { 3, 4 });
+		received.add(new byte[] { 5, 6 });
+		awaitDroppedBytes(2);
+		ReceivedData result = new ReceivedData();
+
+		readAhead.read(result);
+
+		assertThat(result.toByteArray(), is(new byte[] { 3, 4, 5, 6 }));
+		assertThat(result.getTimestamp(), is(TIMESTAMP + 1));
+	}
+
+	/**
+	 * Verifies that the data wraps around the end of the ring buffer.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_wrapsAround() throws Exception {
+		readAhead = newReadAhead(4, BLOCK);
+		received.add(new byte[] { 1, 2, 3 });
+		assertThat(readAhead.readFully(3, Deadline.after(1, SECONDS)), is(new byte[] { 1, 2, 3 }));
+
+		received.add(new byte[] { 4, 5, 6 });
+
+		assertThat(readAhead.readFully(3, Deadline.after(1, SECONDS)), is(new byte[] { 4, 5, 6 }));
+	}
+
+	/**
+	 * Verifies that an empty array is returned, when no data was received before the deadline
+	 * expired.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_deadlineExpired() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+
+		assertThat(readAhead.read(10, MILLISECONDS), is(new byte[0]));
+	}
+
+	/**
+	 * Verifies that <code>readFully(...)</code> waits for all bytes and leaves the remaining bytes
+	 * in the ring buffer.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void readFully() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+		received.add(new byte[] { 1, 2 });
+		received.add(new byte[] { 3, 4, 5 });
+
+		assertThat(readAhead.readFully(4, Deadline.after(1, SECONDS)), is(new byte[] { 1, 2, 3, 4 }));
+		assertThat(readAhead.read(), is(new byte[] { 5 }));
+	}
+
+	/**
+	 * Verifies that an {@link InterruptedIOException} is thrown, when the deadline of
+	 * <code>readFully(...)</code> expires, and the received bytes stay in the ring buffer.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void readFully_deadlineExpired() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+		received.add(new byte[] { 1 });
+		awaitBufferedBytes(1);
+
+		try {
+			readAhead.readFully(4, Deadline.after(10, MILLISECONDS));
+			fail("expected an InterruptedIOException");
+		}
+		catch (InterruptedIOException e) {
+			assertThat(e.bytesTransferred, is(1));
+		}
+		assertThat(readAhead.read(), is(new byte[] { 1 }));
+	}
+
+	/**
+	 * Verifies that the pump waits for space with {@link OverflowPolicy#BLOCK} and no data is
+	 * lost.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void overflow_BLOCK() throws Exception {
+		readAhead = newReadAhead(4, BLOCK);
+		received.add(new byte[] { 1, 2, 3, 4, 5, 6 });
+		awaitBufferedBytes(4);
+
+		assertThat(readAhead.read(), is(new byte[] { 1, 2, 3, 4 }));
+		assertThat(readAhead.read(), is(new byte[] { 5, 6 }));
+		assertThat(readAhead.getDroppedBytes(), is(0L));
+	}
+
+	/**
+	 * Verifies that the oldest data is discarded with {@link OverflowPolicy#DROP_OLDEST}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void overflow_DROP_OLDEST() throws Exception {
+		readAhead = newReadAhead(4, DROP_OLDEST);
+		received.add(new byte[] { 1, 2, 3 });
+		received.add(new byte[] { 4, 5, 6 });
+		awaitDroppedBytes(2);
+
+		assertThat(readAhead.read(), is(new byte[] { 3, 4, 5, 6 }));
+	}
+
+	/**
+	 * Verifies that the buffered data is returned and an {@link IOException} is thrown afterwards
+	 * with {@link OverflowPolicy#FAIL}. The decorated connection is closed.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void overflow_FAIL() throws Exception {
+		readAhead = newReadAhead(4, FAIL);
+		received.add(new byte[] { 1, 2, 3, 4, 5, 6 });
+		verify(connection, timeout(TIMEOUT)).close();
+
+		assertThat(readAhead.read(), is(new byte[] { 1, 2, 3, 4 }));
+
+		exception.expect(IOException.class);
+		exception.expectMessage("The read-ahead buffer of port COM1 overflowed!");
+
+		readAhead.read();
+	}
+
+	/**
+	 * Verifies that the failure of the decorated connection is thrown after the data, that was
+	 * received before.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_failureAfterData() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+		received.add(new byte[] { 1 });
+		received.add(new IOException("lost"));
+
+		assertThat(readAhead.read(), is(new byte[] { 1 }));
+
+		exception.expect(IOException.class);
+		exception.expectMessage("lost");
+
+		readAhead.read();
+	}
+
+	/**
+	 * Verifies that a blocked read is released, when the connection is closed.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void close_releasesBlockedRead() throws Exception {
+		readAhead = newReadAhead(16, BLOCK);
+		BlockingCall<byte[]> read = BlockingCall.start(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return readAhead.read();
+			}
+		}).awaitBlocked();
+		readAhead.close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port COM1 was closed!");
+
+		read.get();
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Creates a new read-ahead connection with the given capacity and policy. */
+	private ReadAheadSerialConnection newReadAhead(int capacity, OverflowPolicy policy) {
+		return new ReadAheadSerialConnection(connection, capacity, policy);
+	}
+
+	/** Waits until the given number of bytes is buffered. */
+	private void awaitBufferedBytes(int bytes) throws InterruptedException {
+		while (readAhead.getBufferedBytes() < bytes)
+			Thread.sleep(1);
+	}
+
+	/** Waits until the given number of bytes was dropped. */
+	private void awaitDroppedBytes(long bytes) throws InterruptedException {
+		while (readAhead.getDroppedBytes() < bytes)
+			Thread.sleep(1);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Tests the class {@link ReceivedData}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestReceivedData {
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	/**
+	 * Verifies that a new holder is empty.
+	 */
+	@Test
+	public void new_isEmpty() {
+		ReceivedData data = new ReceivedData(16);
+
+		assertThat(data.getLength(), is(0));
+		assertThat(data.getData().length, is(16));
+		assertThat(data.toByteArray(), is(new byte[0]));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the capacity is negative.
+	 */
+	@Test
+	@SuppressWarnings("unused")
+	public void new_negativeCapacity() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >capacity< is invalid! Expected a value greater or equal to 0!");
+
+		new ReceivedData(-1);
+	}
+
+	/**
+	 * Verifies that the data and the timestamp are stored and the buffer is reused, if it is large
+	 * enough.
+	 */
+	@Test
+	public void set_reusesBuffer() {
+		ReceivedData data = new ReceivedData(4);
+		byte[] buffer = data.getData();
+
+		data.set(new byte[] { 1, 2, 3 }, 2, 4711L);
+
+		assertThat(data.getData(), is(sameInstance(buffer)));
+		assertThat(data.getLength(), is(2));
+		assertThat(data.getTimestamp(), is(4711L));
+		assertThat(data.toByteArray(), is(new byte[] { 1, 2 }));
+	}
+
+	/**
+	 * Verifies that the buffer grows, if the data doesn't fit.
+	 */
+	@Test
+	public void set_growsBuffer() {
+		ReceivedData data = new ReceivedData();
+
+		data.set(new byte[] { 1, 2, 3 }, 3, 4711L);
+
+		assertThat(data.getData().length, is(3));
+		assertThat(data.toByteArray(), is(new byte[] { 1, 2, 3 }));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the length is greater than
+	 * the length of the data.
+	 */
+	@Test
+	public void set_lengthTooLarge() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >length< is invalid!");
+
+		new ReceivedData().set(new byte[2], 3, 0);
+	}
+
+	/**
+	 * Verifies that the data of a connection, that is not a {@link TimestampingConnection}, is
+	 * stamped, when its read returns.
+	 */
+	@Test
+	public void readFrom_withoutTimestamp() throws Exception {
+		SerialConnection connection = mock(SerialConnection.class);
+		when(connection.read()).thenReturn(new byte[] { 1, 2 });
+		ReceivedData data = new ReceivedData();
+
+		long before = System.nanoTime();
+		data.readFrom(connection);
+
+		assertThat(data.toByteArray(), is(new byte[] { 1, 2 }));
+		assertThat(data.getTimestamp() - before, is(greaterThanOrEqualTo(0L)));
+		assertThat(System.nanoTime() - data.getTimestamp(), is(greaterThanOrEqualTo(0L)));
+	}
+}
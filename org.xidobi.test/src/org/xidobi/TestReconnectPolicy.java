@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Tests the class {@link ReconnectPolicy}.
+ * 
+ * @author Tobias Breler
+ */
+public class TestReconnectPolicy {
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	/**
+	 * Verifies that the default values of the builder are 1 s initial delay, 60 s maximum delay and
+	 * a jitter of 0.5.
+	 */
+	@Test
+	public void from1sTo60s() {
+		ReconnectPolicy policy = ReconnectPolicy.from1sTo60s().create();
+
+		assertThat(policy.getInitialDelay(SECONDS), is(1L));
+		assertThat(policy.getMaxDelay(SECONDS), is(60L));
+		assertThat(policy.getJitter(), is(0.5));
+	}
+
+	/**
+	 * Verifies that the values of the builder are used.
+	 */
+	@Test
+	public void create() {
+		ReconnectPolicy policy = ReconnectPolicy.from1sTo60s().initialDelay(100, MILLISECONDS).maxDelay(5, SECONDS).jitter(0.2).create();
+
+		assertThat(policy.getInitialDelay(MILLISECONDS), is(100L));
+		assertThat(policy.getMaxDelay(MILLISECONDS), is(5000L));
+		assertThat(policy.getJitter(), is(0.2));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalStateException} is thrown, when the initial delay is greater
+	 * than the maximum delay.
+	 */
+	@Test
+	public void create_initialDelayGreaterThanMaxDelay() {
+		exception.expect(IllegalStateException.class);
+		exception.expectMessage("The initial delay must not be greater than the maximum delay!");
+
+		ReconnectPolicy.from1sTo60s().initialDelay(2, SECONDS).maxDelay(1, SECONDS).create();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a negative initial delay is
+	 * passed.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void initialDelay_negative() {
+		ReconnectPolicy.from1sTo60s().initialDelay(-1, SECONDS);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>null</code> is passed
+	 * as unit of the maximum delay.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void maxDelay_withNullUnit() {
+		ReconnectPolicy.from1sTo60s().maxDelay(1, null);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a jitter greater than 1 is
+	 * passed.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void jitter_greaterThan1() {
+		ReconnectPolicy.from1sTo60s().jitter(1.1);
+	}
+
+	/**
+	 * Verifies that the delay is doubled after each failed attempt, until the maximum delay is
+	 * reached.
+	 */
+	@Test
+	public void getDelay_exponentialBackoff() {
+		ReconnectPolicy policy = ReconnectPolicy.from1sTo60s().maxDelay(5, SECONDS).jitter(0).create();
+
+		assertThat(policy.getDelay(0, 0.9), is(1000L));
+		assertThat(policy.getDelay(1, 0.9), is(2000L));
+		assertThat(policy.getDelay(2, 0.9), is(4000L));
+		assertThat(policy.getDelay(3, 0.9), is(5000L));
+		assertThat(policy.getDelay(Integer.MAX_VALUE, 0.9), is(5000L));
+	}
+
+	/**
+	 * Verifies that the random part of the delay is subtracted according to the jitter.
+	 */
+	@Test
+	public void getDelay_withJitter() {
+		ReconnectPolicy policy = ReconnectPolicy.from1sTo60s().jitter(0.5).create();
+
+		assertThat(policy.getDelay(0, 0), is(1000L));
+		assertThat(policy.getDelay(0, 0.5), is(750L));
+		assertThat(policy.getDelay(1, 0.5), is(1500L));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a negative number of failed
+	 * attempts is passed.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getDelay_negativeFailedAttempts() {
+		ReconnectPolicy.from1sTo60s().create().getDelay(-1, 0);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.xidobi.CaptureRecord.Direction.READ;
+import static org.xidobi.CaptureRecord.Direction.WRITE;
+import static org.xidobi.ReplaySerialPort.MAX_SPEED;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the class {@link ReplaySerialPort}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestReplaySerialPort {
+
+	/** the settings to open the port */
+	private static final SerialPortSettings SETTINGS = SerialPortSettings.from9600bauds8N1().create();
+
+	/** the directory of the capture */
+	private File directory;
+
+	/** the opened connection */
+	private SerialConnection connection;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	/** provides the directory of the capture */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		directory = new File(folder.getRoot(), "capture");
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() throws Exception {
+		if (connection != null)
+			connection.close();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, if the speed is 0.
+	 */
+	@Test
+	public void new_zeroSpeed() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >speed< is invalid! Expected a value greater than 0!");
+
+		new ReplaySerialPort("COM1", directory, 0);
+	}
+
+	/**
+	 * Verifies that only the read data is replayed and an {@link IOException} is thrown, when the
+	 * end of the capture is reached.
+	 */
+	@Test
+	public void read_maxSpeed() throws Exception {
+		CaptureWriter writer = new CaptureWriter(directory);
+		writer.append(WRITE, new byte[] { 1 });
+		writer.append(READ, new byte[] { 2, 3 });
+		writer.append(WRITE, new byte[] { 4 });
+		writer.append(READ, new byte[] { 5 });
+		writer.close();
+
+		connection = new ReplaySerialPort("COM1", directory, MAX_SPEED).open(SETTINGS);
+		connection.write(new byte[] { 6 });
+
+		assertThat(connection.read(), is(new byte[] { 2, 3 }));
+		assertThat(connection.read(), is(new byte[] { 5 }));
+
+		exception.expect(IOException.class);
+		exception.expectMessage("The end of the capture was reached!");
+
+		connection.read();
+	}
+
+	/**
+	 * Verifies that the captured timing is replayed accelerated by the given speed.
+	 */
+	@Test
+	public void read_speed() throws Exception {
+		CaptureWriter writer = new CaptureWriter(directory);
+		writer.append(READ, new byte[] { 1 });
+		Thread.sleep(400);
+		writer.append(READ, new byte[] { 2 });
+		writer.close();
+
+		connection = new ReplaySerialPort("COM1", directory, 2).open(SETTINGS);
+		long start = nanoTime();
+		connection.read();
+		connection.read();
+		long elapsed = NANOSECONDS.toMillis(nanoTime() - start);
+
+		assertThat(elapsed, is(greaterThanOrEqualTo(150L)));
+		assertThat(elapsed, is(lessThan(400L)));
+	}
+
+	/**
+	 * Verifies that a {@link IOException} is thrown, if the directory doesn't contain a capture.
+	 */
+	@Test
+	public void open_noCapture() throws Exception {
+		exception.expect(IOException.class);
+		exception.expectMessage("doesn't contain a capture!");
+
+		new ReplaySerialPort("COM1", folder.getRoot(), 1).open(SETTINGS);
+	}
+
+	/**
+	 * Verifies that the port name and the description are returned.
+	 */
+	@Test
+	public void getPortName() {
+		ReplaySerialPort port = new ReplaySerialPort("COM1", directory, 1);
+
+		assertThat(port.getPortName(), is("COM1"));
+		assertThat(port.getDescription(), is("Replay of " + directory));
+	}
+}
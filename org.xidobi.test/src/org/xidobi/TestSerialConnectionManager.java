@@ -0,0 +1,492 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static junit.framework.Assert.fail;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.SerialPortSettings.from9600bauds8N1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the classes {@link SerialConnectionManager} and {@link ManagedConnection}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestSerialConnectionManager {
+
+	/** the time in ms to wait for asynchronous operations */
+	private static final int TIMEOUT = 2000;
+
+	/** a policy with short delays */
+	private static final ReconnectPolicy POLICY = ReconnectPolicy.from1sTo60s().initialDelay(10, MILLISECONDS).maxDelay(50, MILLISECONDS).create();
+
+	/** the settings to open the port */
+	private static final SerialPortSettings SETTINGS = from9600bauds8N1().create();
+
+	/** some data */
+	private static final byte[] DATA = { 1, 2, 3 };
+
+	/** class under test */
+	private SerialConnectionManager manager;
+
+	@Mock
+	private SerialPort port;
+	@Mock
+	private FullSerialConnection connection;
+	@Mock
+	private SerialConnection secondConnection;
+	@Mock
+	private LineStatusListener listener;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		initMocks(this);
+
+		when(port.getPortName()).thenReturn("COM1");
+
+		manager = new SerialConnectionManager(POLICY, 1, 4);
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() throws Exception {
+		manager.close();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>policy == null</code>
+	 * is passed to the constructor.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@SuppressWarnings("unused")
+	public void new_withNullPolicy() {
+		new SerialConnectionManager(null, 1, 0);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when
+	 * <code>maxConcurrentOpens == 0</code> is passed to the constructor.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@SuppressWarnings("unused")
+	public void new_withZeroMaxConcurrentOpens() {
+		new SerialConnectionManager(POLICY, 0, 0);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalStateException} is thrown, when a port is opened after the
+	 * manager was closed.
+	 */
+	@Test
+	public void open_afterClose() throws Exception {
+		manager.close();
+
+		exception.expect(IllegalStateException.class);
+		exception.expectMessage("The connection manager was already closed!");
+
+		manager.open(port, SETTINGS);
+	}
+
+	/**
+	 * Verifies that the port is opened in the background and the data is read from the opened
+	 * connection.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void open_read() throws Exception {
+		when(port.open(SETTINGS)).thenReturn(connection);
+		when(connection.read()).thenReturn(DATA);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+
+		assertThat(managed.read(), is(DATA));
+		assertThat(managed.isConnected(), is(true));
+		assertThat(managed.getPort(), is(port));
+	}
+
+	/**
+	 * Verifies that the port is opened again after a failed attempt.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void open_retriesAfterFailure() throws Exception {
+		when(port.open(SETTINGS)).thenThrow(new IOException()).thenReturn(connection);
+		when(connection.read()).thenReturn(DATA);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+
+		assertThat(managed.read(), is(DATA));
+		verify(port, timeout(TIMEOUT).times(2)).open(SETTINGS);
+	}
+
+	/**
+	 * Verifies that the port is re-opened, when a read fails, and the read continues on the new
+	 * connection.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_reconnectsOnLostConnection() throws Exception {
+		when(port.open(SETTINGS)).thenReturn(connection, secondConnection);
+		when(connection.read()).thenThrow(new IOException("lost"));
+		when(secondConnection.read()).thenReturn(DATA);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+
+		assertThat(managed.read(), is(DATA));
+		verify(connection).close();
+	}
+
+	/**
+	 * Verifies that a lost connection is closed by a thread of the manager and not by the thread,
+	 * that noticed the failure.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_lostConnectionClosedByManager() throws Exception {
+		final BlockingQueue<String> closingThreads = new LinkedBlockingQueue<String>();
+		when(port.open(SETTINGS)).thenReturn(connection, secondConnection);
+		when(connection.read()).thenThrow(new IOException("lost"));
+		when(secondConnection.read()).thenReturn(DATA);
+		doAnswer(new Answer<Void>() {
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				closingThreads.add(Thread.currentThread().getName());
+				return null;
+			}
+		}).when(connection).close();
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		managed.read();
+
+		assertThat(closingThreads.take(), startsWith("xidobi connection manager"));
+	}
+
+	/**
+	 * Verifies that a read with a deadline returns an empty array, when the port is not connected
+	 * before the deadline expires.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void read_deadlineExpiredWhileNotConnected() throws Exception {
+		when(port.open(SETTINGS)).thenThrow(new IOException());
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+
+		assertThat(managed.read(50, MILLISECONDS), is(new byte[0]));
+	}
+
+	/**
+	 * Verifies that an expired deadline of <code>readFully(...)</code> is passed to the caller and
+	 * the underlying connection is not treated as lost.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void readFully_deadlineExpired() throws Exception {
+		Deadline deadline = Deadline.after(1, SECONDS);
+		when(port.open(SETTINGS)).thenReturn(connection);
+		when(connection.readFully(4, deadline)).thenThrow(new InterruptedIOException("Read timed out"));
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+
+		try {
+			managed.readFully(4, deadline);
+			fail("expected an InterruptedIOException");
+		}
+		catch (InterruptedIOException expected) {}
+		verify(connection, never()).close();
+		assertThat(managed.isConnected(), is(true));
+	}
+
+	/**
+	 * Verifies that data written while the port is not connected is buffered and written, when the
+	 * port was opened.
+	 */
+	@Test
+	public void write_buffersWhileNotConnected() throws Exception {
+		when(port.open(SETTINGS)).thenThrow(new IOException()).thenReturn(connection);
+		manager.close();
+		manager = new SerialConnectionManager(ReconnectPolicy.from1sTo60s().initialDelay(200, MILLISECONDS).create(), 1, 4);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		verify(port, timeout(TIMEOUT)).open(SETTINGS);
+		managed.write(DATA);
+
+		verify(connection, timeout(TIMEOUT)).write(DATA);
+	}
+
+	/**
+	 * Verifies that the remaining bytes of buffers, that are written while the port is not
+	 * connected, are buffered and written, when the port was opened.
+	 */
+	@Test
+	public void write_byteBuffersWhileNotConnected() throws Exception {
+		when(port.open(SETTINGS)).thenThrow(new IOException()).thenReturn(connection);
+		manager.close();
+		manager = new SerialConnectionManager(ReconnectPolicy.from1sTo60s().initialDelay(200, MILLISECONDS).create(), 1, 4);
+		ByteBuffer[] buffers = { ByteBuffer.wrap(new byte[] { 1 }), ByteBuffer.wrap(new byte[] { 2, 3 }) };
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		verify(port, timeout(TIMEOUT)).open(SETTINGS);
+		managed.write(buffers);
+
+		assertThat(buffers[0].hasRemaining() || buffers[1].hasRemaining(), is(false));
+		verify(connection, timeout(TIMEOUT)).write(new byte[] { 1, 2, 3 });
+	}
+
+	/**
+	 * Verifies that the data, that was buffered while the port was not connected, is discarded by
+	 * {@link ManagedConnection#purgeOutput()}.
+	 */
+	@Test
+	public void purgeOutput_whileNotConnected() throws Exception {
+		when(port.open(SETTINGS)).thenThrow(new IOException()).thenReturn(connection);
+		manager.close();
+		manager = new SerialConnectionManager(ReconnectPolicy.from1sTo60s().initialDelay(200, MILLISECONDS).create(), 1, 4);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		verify(port, timeout(TIMEOUT)).open(SETTINGS);
+		managed.write(DATA);
+		managed.purgeOutput();
+		awaitConnected(managed);
+
+		verify(connection, never()).write(DATA);
+	}
+
+	/**
+	 * Verifies that the buffered data is written before new data.
+	 */
+	@Test
+	public void write_bufferedDataFirst() throws Exception {
+		byte[] next = { 4 };
+		when(port.open(SETTINGS)).thenReturn(connection, secondConnection);
+		doThrow(new IOException("lost")).when(connection).write(DATA);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		verify(port, timeout(TIMEOUT)).open(SETTINGS);
+		awaitConnected(managed);
+
+		managed.write(DATA);
+		awaitConnected(managed);
+		managed.write(next);
+
+		InOrder inOrder = inOrder(secondConnection);
+		inOrder.verify(secondConnection).write(DATA);
+		inOrder.verify(secondConnection).write(next);
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, when the write buffer is full.
+	 */
+	@Test
+	public void write_bufferFull() throws Exception {
+		when(port.open(SETTINGS)).thenThrow(new IOException());
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		managed.write(DATA);
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port COM1 is not connected and the write buffer is full!");
+
+		managed.write(DATA);
+	}
+
+	/**
+	 * Verifies that the underlying connection is closed and no reconnect is attempted, when the
+	 * managed connection is closed.
+	 */
+	@Test
+	public void close() throws Exception {
+		when(port.open(SETTINGS)).thenReturn(connection);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		awaitConnected(managed);
+		managed.close();
+
+		verify(connection).close();
+		verify(port).open(SETTINGS);
+		assertThat(managed.isClosed(), is(true));
+		assertThat(managed.isConnected(), is(false));
+	}
+
+	/**
+	 * Verifies that a blocked read is released with an {@link IOException}, when the managed
+	 * connection is closed.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void close_releasesBlockedRead() throws Exception {
+		when(port.open(SETTINGS)).thenThrow(new IOException());
+		final ManagedConnection managed = manager.open(port, SETTINGS);
+
+		BlockingCall<byte[]> read = BlockingCall.start(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return managed.read();
+			}
+		}).awaitBlocked();
+		managed.close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port COM1 was closed!");
+
+		read.get();
+	}
+
+	/**
+	 * Verifies that all managed connections are closed, when the manager is closed.
+	 */
+	@Test
+	public void closeManager() throws Exception {
+		when(port.open(SETTINGS)).thenReturn(connection);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		awaitConnected(managed);
+		manager.close();
+
+		assertThat(managed.isClosed(), is(true));
+		verify(connection).close();
+	}
+
+	/**
+	 * Verifies that no further attempt to open the port is made, after the managed connection was
+	 * closed.
+	 */
+	@Test
+	public void close_stopsReconnect() throws Exception {
+		manager.close();
+		manager = new SerialConnectionManager(ReconnectPolicy.from1sTo60s().initialDelay(100, MILLISECONDS).create(), 1, 4);
+		when(port.open(SETTINGS)).thenThrow(new IOException());
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		verify(port, timeout(TIMEOUT)).open(SETTINGS);
+		managed.close();
+		Thread.sleep(300);
+
+		verify(port, times(1)).open(any(SerialPortSettings.class));
+	}
+
+	/**
+	 * Verifies that the line status events of the underlying connection are forwarded to the
+	 * listeners of the managed connection.
+	 */
+	@Test
+	public void addLineStatusListener() throws Exception {
+		when(port.open(SETTINGS)).thenReturn(connection);
+		LineStatusEvent event = new LineStatusEvent(port, Collections.singleton(LineSignal.DSR), Collections.<LineSignal> emptySet(), Collections.<LineError> emptySet());
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		managed.addLineStatusListener(listener);
+		awaitConnected(managed);
+
+		ArgumentCaptor<LineStatusListener> forwarder = ArgumentCaptor.forClass(LineStatusListener.class);
+		verify(connection).addLineStatusListener(forwarder.capture());
+		forwarder.getValue().lineStatusChanged(event);
+
+		verify(listener).lineStatusChanged(event);
+	}
+
+	/**
+	 * Verifies that the new settings are applied to the current connection.
+	 */
+	@Test
+	public void reconfigure_whileConnected() throws Exception {
+		SerialPortSettings changed = from9600bauds8N1().bauds(19200).create();
+		when(port.open(SETTINGS)).thenReturn(connection);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		awaitConnected(managed);
+		managed.reconfigure(changed);
+
+		verify(connection).reconfigure(changed);
+	}
+
+	/**
+	 * Verifies that the new settings are used, when the port is re-opened.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void reconfigure_usedOnReconnect() throws Exception {
+		SerialPortSettings changed = from9600bauds8N1().bauds(19200).create();
+		when(port.open(SETTINGS)).thenReturn(connection);
+		when(port.open(changed)).thenReturn(secondConnection);
+		when(connection.read()).thenThrow(new IOException("lost"));
+		when(secondConnection.read()).thenReturn(DATA);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		awaitConnected(managed);
+		managed.reconfigure(changed);
+
+		assertThat(managed.read(), is(DATA));
+		verify(port).open(changed);
+	}
+
+	/**
+	 * Verifies that the port is re-opened with the new settings, when the current connection is
+	 * not a {@link ReconfigurableConnection}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void reconfigure_notReconfigurable() throws Exception {
+		SerialPortSettings changed = from9600bauds8N1().bauds(19200).create();
+		when(port.open(SETTINGS)).thenReturn(secondConnection);
+		when(port.open(changed)).thenReturn(connection);
+		when(connection.read()).thenReturn(DATA);
+
+		ManagedConnection managed = manager.open(port, SETTINGS);
+		awaitConnected(managed);
+		managed.reconfigure(changed);
+
+		assertThat(managed.read(), is(DATA));
+		verify(secondConnection).close();
+		verify(port).open(changed);
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Waits until the given connection is connected. */
+	private void awaitConnected(ManagedConnection managed) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (!managed.isConnected() && System.currentTimeMillis() < end)
+			Thread.sleep(5);
+		assertThat(managed.isConnected(), is(true));
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the class {@link SerialPortBatch}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestSerialPortBatch {
+
+	/** the settings to open the ports */
+	private static final SerialPortSettings SETTINGS = SerialPortSettings.from9600bauds8N1().create();
+
+	@Mock
+	private SerialPort port1;
+	@Mock
+	private SerialPort port2;
+	@Mock
+	private SerialConnection connection1;
+	@Mock
+	private SerialConnection connection2;
+
+	/** class under test */
+	private SerialPortBatch batch;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		initMocks(this);
+
+		when(port1.open(SETTINGS)).thenReturn(connection1);
+		when(port2.open(SETTINGS)).thenReturn(connection2);
+		when(connection1.getPort()).thenReturn(port1);
+		when(connection2.getPort()).thenReturn(port2);
+
+		batch = new SerialPortBatch(2);
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() {
+		batch.close();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, if the maximum concurrency is
+	 * 0.
+	 */
+	@Test
+	public void new_zeroConcurrency() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >maxConcurrency< is invalid! Expected a value greater than 0!");
+
+		new SerialPortBatch(0);
+	}
+
+	/**
+	 * Verifies that all ports are opened and the results are returned in the given order.
+	 */
+	@Test(timeout = 5000)
+	public void openAll() throws Exception {
+		Map<SerialPort, BatchResult> results = batch.openAll(settingsFor(port2, port1));
+
+		assertThat(results.keySet(), contains(port2, port1));
+		assertThat(results.get(port1).isSuccess(), is(true));
+		assertThat(results.get(port1).getConnection(), is(connection1));
+		assertThat(results.get(port2).getConnection(), is(connection2));
+	}
+
+	/**
+	 * Verifies that a port, that couldn't be opened, doesn't affect the other ports.
+	 */
+	@Test(timeout = 5000)
+	public void openAll_portFails() throws Exception {
+		IOException failure = new IOException("Port in use (COM1)!");
+		when(port1.open(SETTINGS)).thenThrow(failure);
+
+		Map<SerialPort, BatchResult> results = batch.openAll(settingsFor(port1, port2));
+
+		assertThat(results.get(port1).isSuccess(), is(false));
+		assertThat(results.get(port1).getFailure(), is(sameInstance((Exception) failure)));
+		assertThat(results.get(port1).getConnection(), is(nullValue()));
+		assertThat(results.get(port2).isSuccess(), is(true));
+	}
+
+	/**
+	 * Verifies that no more ports than the maximum concurrency are opened at the same time.
+	 */
+	@Test(timeout = 5000)
+	public void openAll_concurrencyLimit() throws Exception {
+		final AtomicInteger current = new AtomicInteger();
+		final AtomicInteger max = new AtomicInteger();
+		Map<SerialPort, SerialPortSettings> settings = new LinkedHashMap<SerialPort, SerialPortSettings>();
+		for (int i = 0; i < 10; i++) {
+			SerialPort port = mock(SerialPort.class);
+			when(port.open(SETTINGS)).thenAnswer(new Answer<SerialConnection>() {
+				@Override
+				public SerialConnection answer(InvocationOnMock invocation) throws Throwable {
+					int running = current.incrementAndGet();
+					synchronized (max) {
+						max.set(Math.max(max.get(), running));
+					}
+					Thread.sleep(20);
+					current.decrementAndGet();
+					return connection1;
+				}
+			});
+			settings.put(port, SETTINGS);
+		}
+
+		Map<SerialPort, BatchResult> results = batch.openAll(settings);
+
+		assertThat(results.size(), is(10));
+		assertThat(max.get(), is(lessThanOrEqualTo(2)));
+	}
+
+	/**
+	 * Verifies that all connections are closed and a failure of one connection doesn't affect the
+	 * others.
+	 */
+	@Test(timeout = 5000)
+	public void closeAll() throws Exception {
+		IOException failure = new IOException("close failed");
+		doThrow(failure).when(connection1).close();
+
+		Map<SerialPort, BatchResult> results = batch.closeAll(asList(connection1, connection2));
+
+		verify(connection2).close();
+		assertThat(results.get(port1).getFailure(), is(sameInstance((Exception) failure)));
+		assertThat(results.get(port1).getConnection(), is(connection1));
+		assertThat(results.get(port2).isSuccess(), is(true));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalStateException} is thrown, if the batch was already closed.
+	 */
+	@Test
+	public void openAll_afterClose() throws Exception {
+		batch.close();
+
+		exception.expect(IllegalStateException.class);
+		exception.expectMessage("The batch was already closed!");
+
+		batch.openAll(settingsFor(port1));
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Returns the given ports mapped to the default settings. */
+	private Map<SerialPort, SerialPortSettings> settingsFor(SerialPort... ports) {
+		Map<SerialPort, SerialPortSettings> settings = new LinkedHashMap<SerialPort, SerialPortSettings>();
+		for (SerialPort port : ports)
+			settings.put(port, SETTINGS);
+		return settings;
+	}
+}
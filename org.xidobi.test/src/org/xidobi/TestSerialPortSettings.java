@@ -15,8 +15,11 @@
  */
 package org.xidobi;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.xidobi.DataBits.DATABITS_5;
 import static org.xidobi.DataBits.DATABITS_6;
@@ -279,4 +282,142 @@ public class TestSerialPortSettings {
 		assertThat(result.isDTR(), is(false));
 	}
 
+
+	/**
+	 * Verifies that settings with the same values are equal and have the same hash code.
+	 */
+	@Test
+	public void equals_sameValues() {
+		SerialPortSettings settings = builder.bauds(19200).set(PARITY_ODD).rts(false).create();
+		SerialPortSettings other = SerialPortSettings.from9600bauds8N1().bauds(19200).set(PARITY_ODD).rts(false).create();
+
+		assertThat(settings, is(other));
+		assertThat(settings.hashCode(), is(other.hashCode()));
+	}
+
+	/**
+	 * Verifies that settings with different values are not equal.
+	 */
+	@Test
+	public void equals_differentValues() {
+		SerialPortSettings settings = builder.create();
+
+		assertThat(settings, is(not(SerialPortSettings.from9600bauds8N1().bauds(19200).create())));
+		assertThat(settings, is(not(SerialPortSettings.from9600bauds8N1().dtr(false).create())));
+		assertThat(settings.equals(null), is(false));
+	}
+
+	/**
+	 * Verifies the default XON/XOFF limits and special characters.
+	 */
+	@Test
+	public void create_withDefaultCharacters() {
+		SerialPortSettings result = builder.create();
+
+		assertThat(result.getXonLimit(), is(2048));
+		assertThat(result.getXoffLimit(), is(512));
+		assertThat(result.getXonChar(), is((char) 0x11));
+		assertThat(result.getXoffChar(), is((char) 0x13));
+		assertThat(result.getErrorChar(), is(nullValue()));
+		assertThat(result.getEofChar(), is((char) 0x1A));
+		assertThat(result.getEventChar(), is((char) 0x00));
+	}
+
+	/**
+	 * Verifies that the XON/XOFF limits and special characters are set.
+	 */
+	@Test
+	public void create_withCharacters() {
+		SerialPortSettings result = builder.xonLimit(100).xoffLimit(200).xonChar('a').xoffChar('b').errorChar('?').eofChar('c').eventChar('\n').create();
+
+		assertThat(result.getXonLimit(), is(100));
+		assertThat(result.getXoffLimit(), is(200));
+		assertThat(result.getXonChar(), is('a'));
+		assertThat(result.getXoffChar(), is('b'));
+		assertThat(result.getErrorChar(), is('?'));
+		assertThat(result.getEofChar(), is('c'));
+		assertThat(result.getEventChar(), is('\n'));
+	}
+
+	/**
+	 * Verifies that the error character of a builder created from settings is removed by
+	 * {@link SerialPortSettingsBuilder#noErrorChar()}.
+	 */
+	@Test
+	public void noErrorChar() {
+		SerialPortSettings settings = builder.errorChar('?').create();
+
+		SerialPortSettings result = SerialPortSettings.from(settings).noErrorChar().create();
+
+		assertThat(result.getErrorChar(), is(nullValue()));
+		assertThat(result, is(builder.noErrorChar().create()));
+	}
+
+	/**
+	 * Verifies that {@link SerialPortSettings#toString()} contains all values, the characters are
+	 * shown with their hexadecimal code.
+	 */
+	@Test
+	public void toString_containsAllValues() {
+		SerialPortSettings result = builder.errorChar('?').eventChar('\n').lineMode(true).create();
+
+		assertThat(result.toString(), is("SerialPortSettings [bauds=9600, dataBits=DATABITS_8, stopBits=STOPBITS_1, parity=PARITY_NONE, flowControl=FLOWCONTROL_NONE, rts=true, dtr=true, xonLimit=2048, xoffLimit=512, xonChar=0x11, xoffChar=0x13, errorChar=0x3F, eofChar=0x1A, eventChar=0x0A, lineMode=true, rs485=false, echoSuppression=false]"));
+		assertThat(builder.noErrorChar().create().toString(), containsString("errorChar=none"));
+	}
+
+	/**
+	 * Verifies that the line mode is disabled by default and can be enabled.
+	 */
+	@Test
+	public void create_withLineMode() {
+		assertThat(builder.create().isLineMode(), is(false));
+		assertThat(builder.lineMode(true).create().isLineMode(), is(true));
+	}
+
+	/**
+	 * Verifies that the RS-485 mode and the echo suppression are disabled by default and can be
+	 * enabled.
+	 */
+	@Test
+	public void create_withRS485() {
+		SerialPortSettings defaults = builder.create();
+		assertThat(defaults.isRS485(), is(false));
+		assertThat(defaults.isEchoSuppression(), is(false));
+
+		SerialPortSettings result = builder.rs485(true).echoSuppression(true).create();
+
+		assertThat(result.isRS485(), is(true));
+		assertThat(result.isEchoSuppression(), is(true));
+		assertThat(result.equals(defaults), is(false));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a limit doesn't fit into
+	 * a WORD.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void xonLimit_tooLarge() {
+		builder.xonLimit(65536);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a character doesn't fit
+	 * into a byte.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void eventChar_tooLarge() {
+		builder.eventChar('\u0100');
+	}
+
+	/**
+	 * Verifies that a builder created from settings has all values of the settings.
+	 */
+	@Test
+	public void from_copiesAllValues() {
+		SerialPortSettings settings = builder.bauds(3000000).set(DATABITS_6).set(PARITY_SPACE).rts(false).xoffLimit(64).errorChar('#').eventChar('\n').lineMode(true).rs485(true).echoSuppression(true).create();
+
+		SerialPortSettings result = SerialPortSettings.from(settings).create();
+
+		assertThat(result, is(settings));
+	}
 }
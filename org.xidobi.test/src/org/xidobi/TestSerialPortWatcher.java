@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xidobi.spi.PortChangeNotifier;
+import org.xidobi.spi.PortChangeNotifierProvider;
+
+/**
+ * Tests the class {@link SerialPortWatcher}.
+ * 
+ * @author Tobias Breler
+ */
+public class TestSerialPortWatcher {
+
+	/** the time in ms to wait for asynchronous notifications */
+	private static final int NOTIFICATION_TIMEOUT = 2000;
+
+	/** class under test */
+	private SerialPortWatcher watcher;
+
+	@Mock
+	private SerialPortFinder finder;
+	@Mock
+	private PortChangeNotifier notifier;
+	@Mock
+	private SerialPortListener listener;
+	@Mock
+	private SerialPort com1;
+	@Mock
+	private SerialPort com2;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		initMocks(this);
+
+		when(com1.getPortName()).thenReturn("COM1");
+		when(com2.getPortName()).thenReturn("COM2");
+		when(notifier.awaitChange(anyLong(), any(TimeUnit.class))).thenAnswer(changeOnce());
+
+		watcher = new SerialPortWatcher(finder, notifier);
+		watcher.addListener(listener);
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() {
+		watcher.close();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>finder == null</code>
+	 * is passed to the constructor.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@SuppressWarnings("unused")
+	public void new_withNullFinder() {
+		new SerialPortWatcher(null, notifier);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when
+	 * <code>notifier == null</code> is passed to the constructor.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@SuppressWarnings("unused")
+	public void new_withNullNotifier() {
+		new SerialPortWatcher(finder, null);
+	}
+
+	/**
+	 * Verifies that the notifier of the finder is used, when the finder implements
+	 * {@link PortChangeNotifierProvider}.
+	 */
+	@Test
+	public void new_withPortChangeNotifierProvider() {
+		SerialPortFinder providingFinder = mock(SerialPortFinder.class, withSettings().extraInterfaces(PortChangeNotifierProvider.class));
+		when(((PortChangeNotifierProvider) providingFinder).newPortChangeNotifier()).thenReturn(notifier);
+
+		new SerialPortWatcher(providingFinder).close();
+
+		verify(notifier).close();
+	}
+
+	/**
+	 * Verifies that the serial ports, that are installed when the watcher is started, are not
+	 * reported to the listeners, but returned by {@link SerialPortWatcher#getPorts()}.
+	 */
+	@Test
+	public void start_initialPortsAreNotReported() {
+		when(finder.getAll()).thenReturn(ports(com1));
+
+		watcher.start();
+
+		assertThat(watcher.getPorts(), contains(com1));
+		verify(listener, never()).portAdded(any(SerialPort.class));
+	}
+
+	/**
+	 * Verifies that the listener is notified, when a serial port was added.
+	 */
+	@Test
+	public void portAdded() {
+		when(finder.getAll()).thenReturn(ports(com1)).thenReturn(ports(com1, com2));
+
+		watcher.start();
+
+		verify(listener, timeout(NOTIFICATION_TIMEOUT)).portAdded(com2);
+		verify(listener, never()).portAdded(com1);
+		verify(listener, never()).portRemoved(any(SerialPort.class));
+	}
+
+	/**
+	 * Verifies that the listener is notified, when a serial port was removed.
+	 */
+	@Test
+	public void portRemoved() {
+		when(finder.getAll()).thenReturn(ports(com1, com2)).thenReturn(ports(com2));
+
+		watcher.start();
+
+		verify(listener, timeout(NOTIFICATION_TIMEOUT)).portRemoved(com1);
+		verify(listener, never()).portAdded(any(SerialPort.class));
+	}
+
+	/**
+	 * Verifies that the other listeners are notified, when a listener throws an exception.
+	 */
+	@Test
+	public void portAdded_listenerThrowsException() {
+		SerialPortListener listener2 = mock(SerialPortListener.class);
+		doThrow(new RuntimeException()).when(listener).portAdded(com1);
+		watcher.addListener(listener2);
+		when(finder.getAll()).thenReturn(ports()).thenReturn(ports(com1));
+
+		watcher.start();
+
+		verify(listener2, timeout(NOTIFICATION_TIMEOUT)).portAdded(com1);
+	}
+
+	/**
+	 * Verifies that a removed listener is not notified.
+	 */
+	@Test
+	public void removeListener() {
+		when(finder.getAll()).thenReturn(ports()).thenReturn(ports(com1));
+		watcher.removeListener(listener);
+
+		watcher.start();
+
+		verify(finder, timeout(NOTIFICATION_TIMEOUT).times(2)).getAll();
+		verify(listener, never()).portAdded(any(SerialPort.class));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalStateException} is thrown, when the watcher is started twice.
+	 */
+	@Test
+	public void start_twice() {
+		when(finder.getAll()).thenReturn(ports());
+		watcher.start();
+
+		exception.expect(IllegalStateException.class);
+		exception.expectMessage("The watcher was already started!");
+
+		watcher.start();
+	}
+
+	/**
+	 * Verifies that an {@link IllegalStateException} is thrown, when a closed watcher is started.
+	 */
+	@Test
+	public void start_afterClose() {
+		watcher.close();
+
+		exception.expect(IllegalStateException.class);
+		exception.expectMessage("The watcher was already closed!");
+
+		watcher.start();
+	}
+
+	/**
+	 * Verifies that the notifier is closed, when the started watcher is closed.
+	 */
+	@Test
+	public void close_closesNotifier() {
+		when(finder.getAll()).thenReturn(ports());
+		watcher.start();
+
+		watcher.close();
+
+		verify(notifier).close();
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Returns a {@link Set} with the given ports. */
+	private Set<SerialPort> ports(SerialPort... ports) {
+		return new HashSet<SerialPort>(asList(ports));
+	}
+
+	/**
+	 * Returns an answer, that reports a change on the first call and waits for the given timeout
+	 * on all subsequent calls.
+	 */
+	private Answer<Boolean> changeOnce() {
+		return new Answer<Boolean>() {
+
+			private boolean changed;
+
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				if (!changed)
+					return changed = true;
+
+				long timeout = (Long) invocation.getArguments()[0];
+				TimeUnit unit = (TimeUnit) invocation.getArguments()[1];
+				unit.sleep(timeout);
+				return false;
+			}
+		};
+	}
+}
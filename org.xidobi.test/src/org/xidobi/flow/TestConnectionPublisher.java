@@ -0,0 +1,243 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.flow;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.xidobi.SerialConnection;
+import org.xidobi.SerialPort;
+
+/**
+ * Tests the class {@link ConnectionPublisher}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestConnectionPublisher {
+
+	/** some data */
+	private static final byte[] DATA = { 1, 2, 3 };
+
+	@Mock
+	private SerialConnection connection;
+	@Mock
+	private SerialPort port;
+
+	/** receives the published data */
+	private RecordingSubscriber subscriber;
+
+	/** class under test */
+	private ConnectionPublisher publisher;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() throws Exception {
+		initMocks(this);
+
+		when(connection.getPort()).thenReturn(port);
+		when(port.getPortName()).thenReturn("COM1");
+		when(connection.read()).thenReturn(DATA);
+
+		subscriber = new RecordingSubscriber();
+		publisher = new ConnectionPublisher(connection);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, if the connection is
+	 * <code>null</code>.
+	 */
+	@Test
+	public void new_nullConnection() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >connection< must not be null!");
+
+		new ConnectionPublisher(null);
+	}
+
+	/**
+	 * Verifies that the connection is not read, while the subscriber didn't request any data.
+	 */
+	@Test(timeout = 5000)
+	public void subscribe_noDemand() throws Exception {
+		publisher.subscribe(subscriber);
+		Thread.sleep(50);
+
+		verify(connection, never()).read();
+		assertThat(subscriber.subscription, is(instanceOf(Subscription.class)));
+	}
+
+	/**
+	 * Verifies that the connection is read only as often as requested.
+	 */
+	@Test(timeout = 5000)
+	public void request() throws Exception {
+		publisher.subscribe(subscriber);
+		subscriber.expect(2);
+		subscriber.subscription.request(2);
+
+		subscriber.await();
+		Thread.sleep(50);
+
+		verify(connection, times(2)).read();
+		assertThat(subscriber.items.size(), is(2));
+		assertThat(subscriber.items.get(0), is(ByteBuffer.wrap(DATA)));
+	}
+
+	/**
+	 * Verifies that the connection is closed and the subscriber is not notified, when the
+	 * subscription is cancelled.
+	 */
+	@Test(timeout = 5000)
+	public void cancel() throws Exception {
+		publisher.subscribe(subscriber);
+		subscriber.subscription.cancel();
+		Thread.sleep(50);
+
+		verify(connection).close();
+		assertThat(subscriber.completed, is(false));
+		assertThat(subscriber.error, is(nullValue()));
+	}
+
+	/**
+	 * Verifies that the subscriber is completed, when the connection is closed by someone else.
+	 */
+	@Test(timeout = 5000)
+	public void read_connectionClosed() throws Exception {
+		when(connection.read()).thenThrow(new IOException("Port COM1 was closed!"));
+		when(connection.isClosed()).thenReturn(true);
+
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(1);
+
+		subscriber.await();
+		assertThat(subscriber.completed, is(true));
+		assertThat(subscriber.error, is(nullValue()));
+	}
+
+	/**
+	 * Verifies that the subscriber is notified about a failed read.
+	 */
+	@Test(timeout = 5000)
+	public void read_fails() throws Exception {
+		IOException failure = new IOException("read failed");
+		when(connection.read()).thenThrow(failure);
+
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(1);
+
+		subscriber.await();
+		assertThat(subscriber.error, is(sameInstance((Throwable) failure)));
+	}
+
+	/**
+	 * Verifies that the subscriber is notified with an {@link IllegalArgumentException} and the
+	 * connection is closed, if 0 items are requested.
+	 */
+	@Test(timeout = 5000)
+	public void request_zero() throws Exception {
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(0);
+
+		subscriber.await();
+		assertThat(subscriber.error, is(instanceOf(IllegalArgumentException.class)));
+		verify(connection).close();
+	}
+
+	/**
+	 * Verifies that a second subscriber is notified with an {@link IllegalStateException}.
+	 */
+	@Test(timeout = 5000)
+	public void subscribe_twice() throws Exception {
+		publisher.subscribe(new RecordingSubscriber());
+		publisher.subscribe(subscriber);
+
+		assertThat(subscriber.error, is(instanceOf(IllegalStateException.class)));
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Records the received items and signals. */
+	private static final class RecordingSubscriber implements Subscriber<ByteBuffer> {
+
+		/** the received items */
+		private final List<ByteBuffer> items = new CopyOnWriteArrayList<ByteBuffer>();
+		/** the subscription */
+		private volatile Subscription subscription;
+		/** the received error */
+		private volatile Throwable error;
+		/** <code>true</code>, if completed */
+		private volatile boolean completed;
+		/** is released, when the expected number of items or a terminal signal was received */
+		private volatile CountDownLatch latch = new CountDownLatch(1);
+
+		/** Expects the given number of items. */
+		private void expect(int count) {
+			latch = new CountDownLatch(count);
+		}
+
+		/** Blocks until the expected items or a terminal signal was received. */
+		private void await() throws InterruptedException {
+			assertThat(latch.await(2, SECONDS), is(true));
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(ByteBuffer item) {
+			items.add(item);
+			latch.countDown();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			latch.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+			latch.countDown();
+		}
+	}
+}
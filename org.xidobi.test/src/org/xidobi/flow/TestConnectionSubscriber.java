@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.flow;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.xidobi.SerialConnection;
+import org.xidobi.SerialPort;
+
+/**
+ * Tests the class {@link ConnectionSubscriber}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestConnectionSubscriber {
+
+	/** some data */
+	private static final byte[] DATA = { 1, 2, 3 };
+
+	@Mock
+	private SerialConnection connection;
+	@Mock
+	private Subscription subscription;
+
+	/** class under test */
+	private ConnectionSubscriber subscriber;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() {
+		initMocks(this);
+
+		subscriber = new ConnectionSubscriber(connection);
+	}
+
+	/**
+	 * Verifies that a single item is requested on subscription.
+	 */
+	@Test
+	public void onSubscribe() {
+		subscriber.onSubscribe(subscription);
+
+		verify(subscription).request(1);
+	}
+
+	/**
+	 * Verifies that a second subscription is cancelled.
+	 */
+	@Test
+	public void onSubscribe_twice() {
+		Subscription second = mock(Subscription.class);
+		subscriber.onSubscribe(subscription);
+		subscriber.onSubscribe(second);
+
+		verify(second).cancel();
+		verify(second, never()).request(1);
+	}
+
+	/**
+	 * Verifies that the remaining bytes of a buffer are written, before the next item is
+	 * requested.
+	 */
+	@Test
+	public void onNext() throws Exception {
+		subscriber.onSubscribe(subscription);
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 0, 1, 2, 3 });
+		buffer.get();
+
+		subscriber.onNext(buffer);
+
+		InOrder inOrder = inOrder(connection, subscription);
+		inOrder.verify(subscription).request(1);
+		inOrder.verify(connection).write(DATA);
+		inOrder.verify(subscription).request(1);
+	}
+
+	/**
+	 * Verifies that the subscription is cancelled and the subscriber is terminated, if a write
+	 * fails.
+	 */
+	@Test
+	public void onNext_writeFails() throws Exception {
+		IOException failure = new IOException("write failed");
+		doThrow(failure).when(connection).write(DATA);
+		subscriber.onSubscribe(subscription);
+
+		subscriber.onNext(ByteBuffer.wrap(DATA));
+
+		verify(subscription).cancel();
+		assertThat(subscriber.isTerminated(), is(true));
+		assertThat(subscriber.getFailure(), is(sameInstance((Throwable) failure)));
+	}
+
+	/**
+	 * Verifies that the subscriber is terminated without failure, when the publisher completes.
+	 */
+	@Test
+	public void onComplete() throws Exception {
+		subscriber.onSubscribe(subscription);
+		subscriber.onComplete();
+
+		assertThat(subscriber.awaitTermination(0, SECONDS), is(true));
+		assertThat(subscriber.getFailure(), is(nullValue()));
+	}
+
+	/**
+	 * Verifies that the data of a {@link ConnectionPublisher} is written to the connection, until
+	 * the published connection is closed.
+	 */
+	@Test(timeout = 5000)
+	public void subscribe_connectionPublisher() throws Exception {
+		SerialConnection source = mock(SerialConnection.class);
+		SerialPort port = mock(SerialPort.class);
+		when(source.getPort()).thenReturn(port);
+		when(source.read()).thenReturn(DATA).thenThrow(new IOException("Port COM1 was closed!"));
+		when(source.isClosed()).thenReturn(true);
+
+		new ConnectionPublisher(source).subscribe(subscriber);
+
+		assertThat(subscriber.awaitTermination(2, SECONDS), is(true));
+		assertThat(subscriber.getFailure(), is(nullValue()));
+		verify(connection).write(DATA);
+	}
+}
@@ -15,24 +15,44 @@
  */
 package org.xidobi.spi;
 
+import static java.lang.management.ManagementFactory.getPlatformMBeanServer;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static junit.framework.Assert.fail;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.xidobi.ConnectionMetrics;
+import org.xidobi.Deadline;
+import org.xidobi.GatheringConnection;
+import org.xidobi.LineError;
+import org.xidobi.LineSignal;
+import org.xidobi.LineStatusEvent;
+import org.xidobi.LineStatusListener;
+import org.xidobi.ReceivedData;
 import org.xidobi.SerialConnection;
 import org.xidobi.SerialPort;
+import org.xidobi.TimedReadConnection;
 
 /**
  * Tests the class {@link BasicSerialConnection}
@@ -63,6 +83,9 @@ public class TestBasicSerialConnection {
 	@Mock
 	private Writer writer;
 
+	@Mock
+	private LineStatusListener listener;
+
 	/** needed to verify exceptions */
 	@Rule
 	public ExpectedException exception = ExpectedException.none();
@@ -273,7 +296,7 @@ public class TestBasicSerialConnection {
 		exception.expect(IllegalArgumentException.class);
 		exception.expectMessage("Argument >data< must not be null!");
 
-		port.write(null);
+		port.write((byte[]) null);
 	}
 
 	/**
@@ -287,6 +310,67 @@ public class TestBasicSerialConnection {
 		verify(writer).write(BYTES);
 	}
 
+	/**
+	 * Verifies that {@link GatheringConnection#write(ByteBuffer[])} passes the buffers to a
+	 * {@link GatheringWriter} and consumes them afterwards.
+	 */
+	@Test
+	public void write_buffersWithGatheringWriter() throws Exception {
+		Writer gatheringWriter = mock(Writer.class, withSettings().extraInterfaces(GatheringWriter.class));
+		port = new _BasicSerialConnection(portHandle, reader, gatheringWriter);
+		ByteBuffer[] buffers = { ByteBuffer.wrap(new byte[] { 1, 2 }), ByteBuffer.wrap(new byte[] { 3 }) };
+
+		port.write(buffers);
+
+		verify((GatheringWriter) gatheringWriter).write(buffers, 3);
+		verify(gatheringWriter, never()).write(any(byte[].class));
+		assertThat(buffers[0].hasRemaining() || buffers[1].hasRemaining(), is(false));
+	}
+
+	/**
+	 * Verifies that {@link GatheringConnection#write(ByteBuffer[])} concatenates the buffers, if the
+	 * writer doesn't implement {@link GatheringWriter}.
+	 */
+	@Test
+	public void write_buffersConcatenated() throws Exception {
+		ByteBuffer[] buffers = { ByteBuffer.wrap(new byte[] { 1, 2 }), ByteBuffer.wrap(new byte[] { 3 }) };
+
+		port.write(buffers);
+
+		verify(writer).write(new byte[] { 1, 2, 3 });
+		assertThat(buffers[0].hasRemaining() || buffers[1].hasRemaining(), is(false));
+	}
+
+	/**
+	 * Verifies that the buffers are not consumed and the port is closed, if the write fails.
+	 */
+	@Test
+	public void write_buffersClosePortOnIOException() throws Exception {
+		doThrow(IO_EXCEPTION).when(writer).write(new byte[] { 1, 2 });
+		ByteBuffer[] buffers = { ByteBuffer.wrap(new byte[] { 1, 2 }) };
+
+		try {
+			port.write(buffers);
+			fail("expected an IOException");
+		}
+		catch (IOException e) {
+			assertThat(buffers[0].remaining(), is(2));
+			assertThat(port.isClosed(), is(true));
+		}
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the buffers contain
+	 * <code>null</code>.
+	 */
+	@Test
+	public void write_buffersContainNull() throws Exception {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >buffers[1]< must not be null!");
+
+		port.write(new ByteBuffer[] { ByteBuffer.allocate(1), null });
+	}
+
 	/**
 	 * Verifies that in case of an {@link IOException} the port will be closed
 	 */
@@ -356,6 +440,114 @@ public class TestBasicSerialConnection {
 		verify(reader).read();
 	}
 
+	/**
+	 * Verifies that {@link TimedReadConnection#read(Deadline)} is delegated to
+	 * {@link Reader#read(Deadline)} and that the port stays open, when the deadline expired.
+	 */
+	@Test
+	public void read_withDeadline() throws IOException {
+		Deadline deadline = Deadline.after(1, SECONDS);
+		when(reader.read(deadline)).thenReturn(new byte[0]);
+
+		byte[] result = port.read(deadline);
+
+		assertThat(result, is(new byte[0]));
+		assertThat(port.isClosed(), is(false));
+	}
+
+	/**
+	 * Verifies that {@link TimedReadConnection#readFully(int, Deadline)} collects the data of several
+	 * reads and that the bytes beyond the length are returned by the next read.
+	 */
+	@Test
+	public void readFully() throws IOException {
+		Deadline deadline = Deadline.after(1, SECONDS);
+		when(reader.read(deadline)).thenReturn(new byte[] { 1, 2 }, new byte[] { 3, 4, 5 });
+
+		assertThat(port.readFully(4, deadline), is(new byte[] { 1, 2, 3, 4 }));
+		assertThat(port.read(), is(new byte[] { 5 }));
+		verify(reader, never()).read();
+	}
+
+	/**
+	 * Verifies that an {@link InterruptedIOException} is thrown, when the deadline of
+	 * {@link TimedReadConnection#readFully(int, Deadline)} expires. The received bytes are returned by
+	 * the next read and the port stays open.
+	 */
+	@Test
+	public void readFully_deadlineExpired() throws IOException {
+		Deadline deadline = Deadline.after(1, SECONDS);
+		when(reader.read(deadline)).thenReturn(new byte[] { 1, 2 }, new byte[0]);
+
+		try {
+			port.readFully(4, deadline);
+			fail("expected an InterruptedIOException");
+		}
+		catch (InterruptedIOException e) {
+			assertThat(e.getMessage(), is("Read timed out on port COM1! Received 2 of 4 bytes."));
+			assertThat(e.bytesTransferred, is(2));
+		}
+
+		assertThat(port.isClosed(), is(false));
+		assertThat(port.read(deadline), is(new byte[] { 1, 2 }));
+	}
+
+	/**
+	 * Verifies that {@link SerialConnection#read(ReceivedData)} stores the data with the timestamp
+	 * of a {@link TimestampingReader}.
+	 */
+	@Test
+	public void read_receivedDataWithTimestampOfReader() throws IOException {
+		Reader timestampingReader = mock(Reader.class, withSettings().extraInterfaces(TimestampingReader.class));
+		when(timestampingReader.read()).thenReturn(new byte[] { 1, 2 });
+		when(((TimestampingReader) timestampingReader).getReceiveTimestamp()).thenReturn(4711L);
+		port = new _BasicSerialConnection(portHandle, timestampingReader, writer);
+		ReceivedData result = new ReceivedData();
+
+		port.read(result);
+
+		assertThat(result.toByteArray(), is(new byte[] { 1, 2 }));
+		assertThat(result.getTimestamp(), is(4711L));
+	}
+
+	/**
+	 * Verifies that {@link SerialConnection#read(ReceivedData)} stamps the data, when the reader
+	 * returns it, if the reader doesn't implement {@link TimestampingReader}.
+	 */
+	@Test
+	public void read_receivedDataStampedOnReturn() throws IOException {
+		when(reader.read()).thenReturn(new byte[] { 1, 2 });
+		ReceivedData result = new ReceivedData();
+
+		long before = System.nanoTime();
+		port.read(result);
+		long after = System.nanoTime();
+
+		assertThat(result.toByteArray(), is(new byte[] { 1, 2 }));
+		assertThat(result.getTimestamp() >= before && result.getTimestamp() <= after, is(true));
+	}
+
+	/**
+	 * Verifies that the bytes, that were left by {@link TimedReadConnection#readFully(int, Deadline)},
+	 * keep the timestamp of the read, that received them.
+	 */
+	@Test
+	public void read_receivedDataLeftByReadFully() throws IOException {
+		Reader timestampingReader = mock(Reader.class, withSettings().extraInterfaces(TimestampingReader.class));
+		Deadline deadline = Deadline.after(1, SECONDS);
+		when(timestampingReader.read(deadline)).thenReturn(new byte[] { 1, 2, 3 });
+		when(((TimestampingReader) timestampingReader).getReceiveTimestamp()).thenReturn(4711L, 4712L);
+		port = new _BasicSerialConnection(portHandle, timestampingReader, writer);
+		port.readFully(2, deadline);
+		ReceivedData result = new ReceivedData();
+
+		port.read(result);
+
+		assertThat(result.toByteArray(), is(new byte[] { 3 }));
+		assertThat(result.getTimestamp(), is(4711L));
+		verify(timestampingReader, never()).read();
+	}
+
 	/**
 	 * Verifies that in case of an {@link IOException} the port will be closed
 	 */
@@ -398,6 +590,134 @@ public class TestBasicSerialConnection {
 		assertThat(port.isClosed(), is(true));
 	}
 
+	/**
+	 * Verifies that the added {@link LineStatusListener}s are notified, when the reader implements
+	 * {@link LineStatusReader} and reports a line status change.
+	 */
+	@Test
+	public void addLineStatusListener() {
+		LineStatusListener dispatcher = newConnectionWithLineStatusReader();
+		LineStatusEvent event = newLineStatusEvent();
+
+		dispatcher.lineStatusChanged(event);
+
+		verify(listener).lineStatusChanged(event);
+	}
+
+	/**
+	 * Verifies that a removed {@link LineStatusListener} is not notified anymore.
+	 */
+	@Test
+	public void removeLineStatusListener() {
+		LineStatusListener dispatcher = newConnectionWithLineStatusReader();
+		port.removeLineStatusListener(listener);
+
+		dispatcher.lineStatusChanged(newLineStatusEvent());
+
+		verify(listener, never()).lineStatusChanged(any(LineStatusEvent.class));
+	}
+
+	/**
+	 * Verifies that an exception thrown by a {@link LineStatusListener} is passed to the
+	 * {@link Thread.UncaughtExceptionHandler} and the other listeners are notified anyway.
+	 */
+	@Test
+	public void lineStatusChanged_listenerThrowsException() {
+		LineStatusListener dispatcher = newConnectionWithLineStatusReader();
+		LineStatusListener failingListener = mock(LineStatusListener.class);
+		LineStatusEvent event = newLineStatusEvent();
+		RuntimeException failure = new RuntimeException();
+		doThrow(failure).when(failingListener).lineStatusChanged(event);
+		port.removeLineStatusListener(listener);
+		port.addLineStatusListener(failingListener);
+		port.addLineStatusListener(listener);
+
+		Thread.UncaughtExceptionHandler handler = mock(Thread.UncaughtExceptionHandler.class);
+		Thread.UncaughtExceptionHandler oldHandler = Thread.currentThread().getUncaughtExceptionHandler();
+		Thread.currentThread().setUncaughtExceptionHandler(handler);
+		try {
+			dispatcher.lineStatusChanged(event);
+		}
+		finally {
+			Thread.currentThread().setUncaughtExceptionHandler(oldHandler);
+		}
+
+		verify(handler).uncaughtException(Thread.currentThread(), failure);
+		verify(listener).lineStatusChanged(event);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>null</code> is added
+	 * as {@link LineStatusListener}.
+	 */
+	@Test
+	public void addLineStatusListener_withNull() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >listener< must not be null!");
+
+		port.addLineStatusListener(null);
+	}
+
+	/**
+	 * Verifies that the read and write operations are recorded, when the connection is created
+	 * with metrics.
+	 */
+	@Test
+	public void metrics_readAndWrite() throws IOException {
+		ConnectionMetrics metrics = new ConnectionMetrics("COM1");
+		port = new _BasicSerialConnection(portHandle, reader, writer, metrics);
+		when(reader.read()).thenReturn(new byte[3]);
+
+		port.read();
+		port.write(new byte[2]);
+
+		assertThat(port.getMetrics(), is(metrics));
+		assertThat(metrics.getBytesRead(), is(3L));
+		assertThat(metrics.getReads(), is(1L));
+		assertThat(metrics.getBytesWritten(), is(2L));
+		assertThat(metrics.getWrites(), is(1L));
+		port.close();
+	}
+
+	/**
+	 * Verifies that a failed read operation is recorded.
+	 */
+	@Test
+	public void metrics_readFailed() throws IOException {
+		ConnectionMetrics metrics = new ConnectionMetrics("COM1");
+		port = new _BasicSerialConnection(portHandle, reader, writer, metrics);
+		when(reader.read()).thenThrow(IO_EXCEPTION);
+
+		try {
+			port.read();
+			fail("Expected an IOException!");
+		}
+		catch (IOException e) {
+			// expected
+		}
+
+		assertThat(metrics.getReadErrors(), is(1L));
+	}
+
+	/**
+	 * Verifies that the metrics are passed to a reader, that implements
+	 * {@link InstrumentedIoOperation}, and are registered until the connection is closed.
+	 */
+	@Test
+	public void metrics_registeredUntilClose() throws Exception {
+		ConnectionMetrics metrics = new ConnectionMetrics("COM1");
+		Reader instrumentedReader = mock(Reader.class, withSettings().extraInterfaces(InstrumentedIoOperation.class));
+
+		port = new _BasicSerialConnection(portHandle, instrumentedReader, writer, metrics);
+
+		verify((InstrumentedIoOperation) instrumentedReader).setMetrics(metrics);
+		assertThat(getPlatformMBeanServer().isRegistered(metrics.getObjectName()), is(true));
+
+		port.close();
+
+		assertThat(getPlatformMBeanServer().isRegistered(metrics.getObjectName()), is(false));
+	}
+
 	/**
 	 * Verifies that {@link AbstractSerialConnection#portClosedException()} returns an
 	 * {@link IOException} with a message 'Port ??? is closed!'.
@@ -422,8 +742,131 @@ public class TestBasicSerialConnection {
 		assertThat(result.getMessage(), is("Port COM1 was closed! Additional message."));
 	}
 
+	/**
+	 * Verifies that the port can be closed, after the lock of
+	 * {@link BasicSerialConnection#lockOpenPort()} was released.
+	 */
+	@Test
+	public void lockOpenPort_unlocked() throws Exception {
+		port.lockOpenPort();
+		port.unlockOpenPort();
+
+		port.close();
+
+		assertThat(port.isClosed(), is(true));
+		verify(portInternal).closeInternal();
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown by
+	 * {@link BasicSerialConnection#lockOpenPort()}, when the port is closed.
+	 */
+	@Test
+	public void lockOpenPort_portIsClosed() throws Exception {
+		port.close();
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port COM1 was closed!");
+
+		port.lockOpenPort();
+	}
+
+	/**
+	 * Verifies that {@link BasicSerialConnection#discardReceivedData()} discards the data, that was
+	 * left by {@link TimedReadConnection#readFully(int, Deadline)}.
+	 */
+	@Test
+	public void discardReceivedData() throws Exception {
+		Deadline deadline = Deadline.after(1, SECONDS);
+		when(reader.read(deadline)).thenReturn(new byte[] { 1, 2, 3 }, new byte[] { 4 });
+		port.readFully(2, deadline);
+
+		port.discardReceivedData();
+
+		assertThat(port.read(deadline), is(new byte[] { 4 }));
+	}
+
+	/**
+	 * Verifies that the echo of the written bytes is removed from the received data, when the
+	 * echo suppression is enabled. A read, that received only the echo, waits for further data.
+	 */
+	@Test
+	public void read_echoSuppressed() throws Exception {
+		port.setEchoSuppression(true);
+		when(reader.read()).thenReturn(new byte[] { 1, 2 }, new byte[] { 3, 4, 5 });
+
+		port.write(new byte[] { 1, 2, 3 });
+
+		assertThat(port.read(), is(new byte[] { 4, 5 }));
+		verify(reader, times(2)).read();
+	}
+
+	/**
+	 * Verifies that an empty array is returned, when only the echo was received before the
+	 * deadline expired.
+	 */
+	@Test
+	public void read_echoSuppressedUntilDeadline() throws Exception {
+		Deadline deadline = Deadline.after(1, SECONDS);
+		port.setEchoSuppression(true);
+		when(reader.read(deadline)).thenReturn(new byte[] { 1, 2 }, new byte[0]);
+
+		port.write(new ByteBuffer[] { ByteBuffer.wrap(new byte[] { 1 }), ByteBuffer.wrap(new byte[] { 2 }) });
+
+		assertThat(port.read(deadline), is(new byte[0]));
+		assertThat(port.isClosed(), is(false));
+	}
+
+	/**
+	 * Verifies that the received data is returned unchanged, when the echo suppression is
+	 * disabled.
+	 */
+	@Test
+	public void read_echoNotSuppressed() throws Exception {
+		when(reader.read()).thenReturn(new byte[] { 1, 2, 3 });
+
+		port.write(new byte[] { 1, 2 });
+
+		assertThat(port.read(), is(new byte[] { 1, 2, 3 }));
+	}
+
+	/**
+	 * Verifies that the expected echo is discarded by
+	 * {@link BasicSerialConnection#discardReceivedData()}, so that the received data is returned
+	 * unchanged.
+	 */
+	@Test
+	public void discardReceivedData_discardsExpectedEcho() throws Exception {
+		port.setEchoSuppression(true);
+		when(reader.read()).thenReturn(new byte[] { 1, 2 });
+		port.write(new byte[] { 1, 2 });
+
+		port.discardReceivedData();
+
+		assertThat(port.read(), is(new byte[] { 1, 2 }));
+	}
+
 	// Utilities for this Testclass ///////////////////////////////////////////////////////////
 
+	/**
+	 * Creates a connection with a reader, that implements {@link LineStatusReader}, adds the
+	 * listener and returns the dispatcher, that was passed to the reader.
+	 */
+	private LineStatusListener newConnectionWithLineStatusReader() {
+		Reader lineStatusReader = mock(Reader.class, withSettings().extraInterfaces(LineStatusReader.class));
+		port = new _BasicSerialConnection(portHandle, lineStatusReader, writer);
+		port.addLineStatusListener(listener);
+
+		ArgumentCaptor<LineStatusListener> dispatcher = ArgumentCaptor.forClass(LineStatusListener.class);
+		verify((LineStatusReader) lineStatusReader).setLineStatusListener(dispatcher.capture());
+		return dispatcher.getValue();
+	}
+
+	/** Returns a new event with a changed CTS signal. */
+	private LineStatusEvent newLineStatusEvent() {
+		return new LineStatusEvent(portHandle, Collections.singleton(LineSignal.CTS), Collections.singleton(LineSignal.CTS), Collections.<LineError> emptySet());
+	}
+
 	public class _BasicSerialConnection extends BasicSerialConnection {
 
 		public _BasicSerialConnection(	SerialPort port,
@@ -432,6 +875,13 @@ public class TestBasicSerialConnection {
 			super(port, reader, writer);
 		}
 
+		public _BasicSerialConnection(	SerialPort port,
+										Reader reader,
+										Writer writer,
+										ConnectionMetrics metrics) {
+			super(port, reader, writer, metrics);
+		}
+
 		@Override
 		protected void closeInternal() throws IOException {
 			portInternal.closeInternal();
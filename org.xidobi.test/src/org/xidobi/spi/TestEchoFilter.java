@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the class {@link EchoFilter}.
+ * 
+ * @author Christian Schwarz
+ */
+@SuppressWarnings("javadoc")
+public class TestEchoFilter {
+
+	/** the class under test */
+	private EchoFilter filter;
+
+	@Before
+	public void setUp() {
+		filter = new EchoFilter();
+	}
+
+	/**
+	 * Verifies that the received data is returned unchanged, when no bytes were sent.
+	 */
+	@Test
+	public void filter_nothingSent() {
+		byte[] data = { 1, 2, 3 };
+
+		assertThat(filter.filter(data), is(sameInstance(data)));
+	}
+
+	/**
+	 * Verifies that an echo, that is received in several parts, is removed.
+	 */
+	@Test
+	public void filter_echoInParts() {
+		filter.sent(new byte[] { 1, 2, 3, 4 });
+
+		assertThat(filter.filter(new byte[] { 1 }), is(new byte[0]));
+		assertThat(filter.filter(new byte[] { 2, 3 }), is(new byte[0]));
+		assertThat(filter.filter(new byte[] { 4, 5, 6 }), is(new byte[] { 5, 6 }));
+		assertThat(filter.getExpectedBytes(), is(0));
+	}
+
+	/**
+	 * Verifies that the expected echo is discarded, when a received byte doesn't match, e.g.
+	 * because the echo was corrupted by a collision.
+	 */
+	@Test
+	public void filter_corruptedEcho() {
+		filter.sent(new byte[] { 1, 2, 3 });
+
+		assertThat(filter.filter(new byte[] { 1, 7, 3 }), is(new byte[] { 7, 3 }));
+		assertThat(filter.getExpectedBytes(), is(0));
+		assertThat(filter.filter(new byte[] { 3 }), is(new byte[] { 3 }));
+	}
+
+	/**
+	 * Verifies that the echo is recognized, when the recorded bytes wrap around the end of the
+	 * buffer and when the buffer grows.
+	 */
+	@Test
+	public void filter_wrapAroundAndGrow() {
+		filter.sent(new byte[200]);
+		filter.filter(new byte[150]);
+
+		byte[] data = newData(300);
+		filter.sent(data);
+
+		assertThat(filter.getExpectedBytes(), is(350));
+		assertThat(filter.filter(new byte[50]), is(new byte[0]));
+		assertThat(filter.filter(data), is(new byte[0]));
+	}
+
+	/**
+	 * Verifies that the oldest bytes are discarded, when more than
+	 * {@link EchoFilter#MAX_CAPACITY} bytes are expected.
+	 */
+	@Test
+	public void sent_moreThanMaxCapacity() {
+		filter.sent(new byte[] { 1, 2, 3 });
+		byte[] data = newData(EchoFilter.MAX_CAPACITY);
+
+		filter.sent(data);
+
+		assertThat(filter.getExpectedBytes(), is(EchoFilter.MAX_CAPACITY));
+		assertThat(filter.filter(data), is(new byte[0]));
+	}
+
+	/**
+	 * Verifies that the expected echo is discarded by {@link EchoFilter#clear()}.
+	 */
+	@Test
+	public void clear() {
+		filter.sent(new byte[] { 1, 2, 3 });
+
+		filter.clear();
+
+		assertThat(filter.filter(new byte[] { 1, 2 }), is(new byte[] { 1, 2 }));
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Returns an array of the given length with a repeating sequence of values. */
+	private byte[] newData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+			data[i] = (byte) (i % 251 + 1);
+		return data;
+	}
+}
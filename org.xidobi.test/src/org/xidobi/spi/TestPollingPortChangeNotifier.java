@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Tests the class {@link PollingPortChangeNotifier}.
+ * 
+ * @author Tobias Breler
+ */
+public class TestPollingPortChangeNotifier {
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the interval is 0.
+	 */
+	@Test
+	@SuppressWarnings("unused")
+	public void new_withZeroInterval() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >interval< is invalid!");
+
+		new PollingPortChangeNotifier(0, MILLISECONDS);
+	}
+
+	/**
+	 * Verifies that <code>false</code> is returned, when the timeout elapses before the interval.
+	 */
+	@Test
+	public void awaitChange_timeoutBeforeInterval() throws Exception {
+		PollingPortChangeNotifier notifier = new PollingPortChangeNotifier(60000, MILLISECONDS);
+
+		boolean result = notifier.awaitChange(0, MILLISECONDS);
+
+		assertThat(result, is(false));
+	}
+
+	/**
+	 * Verifies that <code>true</code> is returned, when the interval elapses before the timeout.
+	 */
+	@Test
+	public void awaitChange_intervalBeforeTimeout() throws Exception {
+		PollingPortChangeNotifier notifier = new PollingPortChangeNotifier(10, MILLISECONDS);
+
+		boolean result = notifier.awaitChange(10000, MILLISECONDS);
+
+		assertThat(result, is(true));
+	}
+}
@@ -16,6 +16,7 @@
 package org.xidobi;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -45,6 +46,7 @@ import static org.xidobi.structs.DCB.NOPARITY;
 import static org.xidobi.structs.DCB.ODDPARITY;
 import static org.xidobi.structs.DCB.RTS_CONTROL_ENABLE;
 import static org.xidobi.structs.DCB.RTS_CONTROL_HANDSHAKE;
+import static org.xidobi.structs.DCB.RTS_CONTROL_TOGGLE;
 import static org.xidobi.structs.DCB.SPACEPARITY;
 
 import org.junit.Before;
@@ -520,6 +522,240 @@ public class TestDCBConfigurator {
 		assertThat(dcb.fDtrControl, is(0));
 	}
 
+	/**
+	 * Verifies that the {@link DCB} is configured completely, when the current settings are
+	 * unknown.
+	 */
+	@Test
+	public void reconfigureDCB_withoutCurrentSettings() {
+		mockSerialPortSettings(9600, DATABITS_8, STOPBITS_1, PARITY_EVEN, FLOWCONTROL_NONE, true, true);
+
+		boolean changed = configurator.reconfigureDCB(dcb, null, settings);
+
+		assertThat(changed, is(true));
+		assertThat(dcb.BaudRate, is(9600));
+		assertThat(dcb.ByteSize, is((byte) 8));
+		assertThat(dcb.Parity, is((byte) EVENPARITY));
+	}
+
+	/**
+	 * Verifies that only the values, that differ from the current settings, are set on the DCB
+	 * struct.
+	 */
+	@Test
+	public void reconfigureDCB_changedBauds() {
+		SerialPortSettings current = SerialPortSettings.from9600bauds8N1().create();
+		SerialPortSettings changed = SerialPortSettings.from9600bauds8N1().bauds(115200).create();
+		dcb.ByteSize = 7;
+		dcb.Parity = (byte) MARKPARITY;
+
+		boolean result = configurator.reconfigureDCB(dcb, current, changed);
+
+		assertThat(result, is(true));
+		assertThat(dcb.BaudRate, is(115200));
+		assertThat(dcb.ByteSize, is((byte) 7));
+		assertThat(dcb.Parity, is((byte) MARKPARITY));
+	}
+
+	/**
+	 * Verifies that nothing is set on the DCB struct, when the settings are equal.
+	 */
+	@Test
+	public void reconfigureDCB_unchanged() {
+		SerialPortSettings current = SerialPortSettings.from9600bauds8N1().create();
+		SerialPortSettings same = SerialPortSettings.from9600bauds8N1().create();
+		dcb.BaudRate = 4800;
+
+		boolean result = configurator.reconfigureDCB(dcb, current, same);
+
+		assertThat(result, is(false));
+		assertThat(dcb.BaudRate, is(4800));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the new settings are an
+	 * invalid combination.
+	 */
+	@Test
+	public void reconfigureDCB_invalidSettings() {
+		SerialPortSettings current = SerialPortSettings.from9600bauds8N1().create();
+		mockSerialPortSettings(9600, DATABITS_5, STOPBITS_2, IGNORE_PARITY, IGNORE_FLOWCONTROL, IGNORE, IGNORE);
+
+		exception.expect(IllegalArgumentException.class);
+
+		configurator.reconfigureDCB(dcb, current, settings);
+	}
+
+	/**
+	 * Verifies that the template is configured with the values of the serial port settings.
+	 */
+	@Test
+	public void getTemplate() {
+		SerialPortSettings settings = SerialPortSettings.from9600bauds8N1().bauds(57600).set(PARITY_ODD).create();
+
+		DCB template = configurator.getTemplate(settings);
+
+		assertThat(template.BaudRate, is(57600));
+		assertThat(template.ByteSize, is((byte) 8));
+		assertThat(template.Parity, is((byte) ODDPARITY));
+	}
+
+	/**
+	 * Verifies that the same template is returned for equal serial port settings.
+	 */
+	@Test
+	public void getTemplate_cached() {
+		DCB template = configurator.getTemplate(SerialPortSettings.from9600bauds8N1().create());
+
+		DCB result = configurator.getTemplate(SerialPortSettings.from9600bauds8N1().create());
+
+		assertThat(result, is(sameInstance(template)));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the serial port settings
+	 * are an invalid combination.
+	 */
+	@Test
+	public void getTemplate_invalidSettings() {
+		mockSerialPortSettings(9600, DATABITS_5, STOPBITS_2, IGNORE_PARITY, IGNORE_FLOWCONTROL, IGNORE, IGNORE);
+
+		exception.expect(IllegalArgumentException.class);
+
+		configurator.getTemplate(settings);
+	}
+
+	/**
+	 * Verifies that the XON/XOFF limits and the special characters from the serial port settings
+	 * are set on the DCB struct.
+	 */
+	@Test
+	public void configureDCB_withCharacters() {
+		SerialPortSettings settings = SerialPortSettings.from9600bauds8N1().xonLimit(4096).xoffLimit(1024).xonChar('Q').xoffChar('S').eofChar('\n').eventChar('\r').create();
+
+		configurator.configureDCB(dcb, settings);
+
+		assertThat(dcb.XonLim, is((short) 4096));
+		assertThat(dcb.XoffLim, is((short) 1024));
+		assertThat(dcb.XonChar, is('Q'));
+		assertThat(dcb.XoffChar, is('S'));
+		assertThat(dcb.EofChar, is('\n'));
+		assertThat(dcb.EvtChar, is('\r'));
+		assertThat(dcb.fErrorChar, is(0));
+	}
+
+	/**
+	 * Verifies that the replacement of bytes with parity errors is enabled, when an error
+	 * character is set.
+	 */
+	@Test
+	public void configureDCB_withErrorChar() {
+		SerialPortSettings settings = SerialPortSettings.from9600bauds8N1().errorChar('?').create();
+
+		configurator.configureDCB(dcb, settings);
+
+		assertThat(dcb.fErrorChar, is(1));
+		assertThat(dcb.ErrorChar, is('?'));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the XON and XOFF
+	 * characters are equal.
+	 */
+	@Test
+	public void configureDCB_withEqualXonXoffChars() {
+		SerialPortSettings settings = SerialPortSettings.from9600bauds8N1().xonChar('X').xoffChar('X').create();
+
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Invalid serial port settings! The XON and XOFF characters must be different.");
+
+		configurator.configureDCB(dcb, settings);
+	}
+
+	/**
+	 * Verifies that a changed XOFF limit is set on the DCB struct, when the settings are
+	 * reconfigured.
+	 */
+	@Test
+	public void reconfigureDCB_changedXoffLimit() {
+		SerialPortSettings current = SerialPortSettings.from9600bauds8N1().create();
+		SerialPortSettings changed = SerialPortSettings.from(current).xoffLimit(128).create();
+
+		boolean result = configurator.reconfigureDCB(dcb, current, changed);
+
+		assertThat(result, is(true));
+		assertThat(dcb.XoffLim, is((short) 128));
+	}
+
+	/**
+	 * Verifies that RTS is toggled by the driver, when the RS-485 mode is enabled.
+	 */
+	@Test
+	public void configureDCB_withRS485() {
+		SerialPortSettings settings = SerialPortSettings.from9600bauds8N1().rts(false).rs485(true).create();
+
+		configurator.configureDCB(dcb, settings);
+
+		assertThat(dcb.fRtsControl, is(RTS_CONTROL_TOGGLE));
+	}
+
+	/**
+	 * Verifies that the RS-485 mode can be combined with a RTS/CTS flow control on the output.
+	 */
+	@Test
+	public void configureDCB_withRS485AndRtsCtsOut() {
+		SerialPortSettings settings = SerialPortSettings.from9600bauds8N1().set(FLOWCONTROL_RTSCTS_OUT).rs485(true).create();
+
+		configurator.configureDCB(dcb, settings);
+
+		assertThat(dcb.fRtsControl, is(RTS_CONTROL_TOGGLE));
+		assertThat(dcb.fOutxCtsFlow, is(1));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when the RS-485 mode is
+	 * combined with a RTS/CTS flow control on the input.
+	 */
+	@Test
+	public void configureDCB_withRS485AndRtsCtsIn() {
+		SerialPortSettings settings = SerialPortSettings.from9600bauds8N1().set(FLOWCONTROL_RTSCTS_IN_OUT).rs485(true).create();
+
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Invalid serial port settings! The RS-485 mode can't be combined with a RTS/CTS flow control on the input.");
+
+		configurator.configureDCB(dcb, settings);
+	}
+
+	/**
+	 * Verifies that RTS is set as configured, when the RS-485 mode is disabled by a
+	 * reconfiguration.
+	 */
+	@Test
+	public void reconfigureDCB_disabledRS485() {
+		SerialPortSettings current = SerialPortSettings.from9600bauds8N1().rs485(true).create();
+		SerialPortSettings changed = SerialPortSettings.from(current).rs485(false).create();
+		dcb.fRtsControl = RTS_CONTROL_TOGGLE;
+
+		boolean result = configurator.reconfigureDCB(dcb, current, changed);
+
+		assertThat(result, is(true));
+		assertThat(dcb.fRtsControl, is(RTS_CONTROL_ENABLE));
+	}
+
+	/**
+	 * Verifies that nothing is set on the DCB struct, when only the echo suppression is changed,
+	 * because it is not configured by the driver.
+	 */
+	@Test
+	public void reconfigureDCB_changedEchoSuppression() {
+		SerialPortSettings current = SerialPortSettings.from9600bauds8N1().create();
+		SerialPortSettings changed = SerialPortSettings.from(current).echoSuppression(true).create();
+
+		boolean result = configurator.reconfigureDCB(dcb, current, changed);
+
+		assertThat(result, is(false));
+	}
+
 	// Utilities for this Testclass ///////////////////////////////////////////////////////////
 
 	/** Mocks the values of a {@link SerialPortSettings}. */
@@ -531,5 +767,7 @@ public class TestDCBConfigurator {
 		when(settings.getFlowControl()).thenReturn(flowControl);
 		when(settings.isRTS()).thenReturn(rts);
 		when(settings.isDTR()).thenReturn(dtr);
+		when(settings.getXonChar()).thenReturn((char) 0x11);
+		when(settings.getXoffChar()).thenReturn((char) 0x13);
 	}
 }
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.WinApi.ERROR_INVALID_HANDLE;
+import static org.xidobi.WinApi.ERROR_OPERATION_ABORTED;
+import static org.xidobi.WinApi.INFINITE;
+import static org.xidobi.WinApi.MAXIMUM_WAIT_OBJECTS;
+import static org.xidobi.WinApi.WAIT_FAILED;
+import static org.xidobi.WinApi.WAIT_OBJECT_0;
+import static org.xidobi.WinApi.WAIT_TIMEOUT;
+
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xidobi.structs.INT;
+
+/**
+ * Tests the class {@link EventPoller}.
+ * 
+ * @author Christian Schwarz
+ */
+public class TestEventPoller {
+
+	/** handle of an event, that is waited for */
+	private static final int EVENT = 7;
+	/** handle of an event, that was closed */
+	private static final int INVALID_EVENT = 9;
+
+	/** the events, that are in the signaled state */
+	private final Set<Integer> signaled = new CopyOnWriteArraySet<Integer>();
+	/** the handles of the created wake up events */
+	private final AtomicInteger nextEvent = new AtomicInteger(100);
+	/** counts the calls of <code>WaitForMultipleObjects</code> with invalid arguments */
+	private final AtomicInteger invalidWaits = new AtomicInteger();
+
+	@Mock
+	private WinApi os;
+
+	/** receives the error code of a failed wait */
+	private INT lastError;
+
+	/** class under test */
+	private EventPoller poller;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() {
+		initMocks(this);
+
+		when(os.CreateEventA(0, false, false, null)).thenAnswer(createEvent());
+		doAnswer(setEvent()).when(os).SetEvent(anyInt());
+		doAnswer(waitForMultipleObjects()).when(os).WaitForMultipleObjects(anyInt(), any(int[].class), anyBoolean(), anyInt());
+		when(os.WaitForSingleObject(INVALID_EVENT, 0)).thenReturn(WAIT_FAILED);
+		when(os.GetLastError()).thenReturn(ERROR_INVALID_HANDLE);
+
+		lastError = new INT(0);
+		poller = new EventPoller(os);
+	}
+
+	@After
+	@SuppressWarnings("javadoc")
+	public void tearDown() {
+		poller.close();
+		assertThat(invalidWaits.get(), is(0));
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, if the timeout is negative and
+	 * not <code>INFINITE</code>.
+	 */
+	@Test
+	public void await_negativeTimeout() throws Exception {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >milliseconds< is invalid! Expected a value greater or equal to 0 or INFINITE!");
+
+		poller.await(EVENT, -2, lastError);
+	}
+
+	/**
+	 * Verifies that a thread, that waits <code>INFINITE</code>, is unparked, when the event is
+	 * signaled by another thread.
+	 */
+	@Test(timeout = 5000)
+	public void await_infinite() throws Exception {
+		signalLater(EVENT, 50);
+
+		assertThat(poller.await(EVENT, INFINITE, lastError), is(WAIT_OBJECT_0));
+	}
+
+	/**
+	 * Verifies that <code>WAIT_OBJECT_0</code> is returned, if the event is already signaled.
+	 */
+	@Test(timeout = 5000)
+	public void await_signaled() throws Exception {
+		signaled.add(EVENT);
+
+		assertThat(poller.await(EVENT, 1000, lastError), is(WAIT_OBJECT_0));
+	}
+
+	/**
+	 * Verifies that a parked thread is unparked, when the event is signaled by another thread.
+	 */
+	@Test(timeout = 5000)
+	public void await_signaledLater() throws Exception {
+		signalLater(EVENT, 50);
+
+		long start = nanoTime();
+		int result = poller.await(EVENT, 2000, lastError);
+		long elapsed = NANOSECONDS.toMillis(nanoTime() - start);
+
+		assertThat(result, is(WAIT_OBJECT_0));
+		assertThat(elapsed, is(lessThan(1000L)));
+	}
+
+	/**
+	 * Verifies that <code>WAIT_TIMEOUT</code> is returned, if the event isn't signaled in time,
+	 * and that the event can be awaited again afterwards.
+	 */
+	@Test(timeout = 5000)
+	public void await_timeout() throws Exception {
+		long start = nanoTime();
+		int result = poller.await(EVENT, 50, lastError);
+		long elapsed = NANOSECONDS.toMillis(nanoTime() - start);
+
+		assertThat(result, is(WAIT_TIMEOUT));
+		assertThat(elapsed, is(greaterThanOrEqualTo(45L)));
+
+		signaled.add(EVENT);
+		assertThat(poller.await(EVENT, 1000, lastError), is(WAIT_OBJECT_0));
+	}
+
+	/**
+	 * Verifies that <code>WAIT_FAILED</code> and the error code are returned, if the event can't
+	 * be monitored, while the other events are still monitored.
+	 */
+	@Test(timeout = 5000)
+	public void await_invalidEvent() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Integer> other = executor.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					return poller.await(EVENT, 2000, new INT(0));
+				}
+			});
+
+			assertThat(poller.await(INVALID_EVENT, 1000, lastError), is(WAIT_FAILED));
+			assertThat(lastError.value, is(ERROR_INVALID_HANDLE));
+
+			signaled.add(EVENT);
+			assertThat(other.get(2, SECONDS), is(WAIT_OBJECT_0));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Verifies that an {@link InterruptedIOException} is thrown, if the waiting thread is
+	 * interrupted.
+	 */
+	@Test(timeout = 5000)
+	public void await_interrupted() throws Exception {
+		Thread.currentThread().interrupt();
+
+		exception.expect(InterruptedIOException.class);
+		exception.expectMessage("The thread for the I/O operation is interrupted!");
+
+		poller.await(EVENT, 1000, lastError);
+	}
+
+	/**
+	 * Verifies that the waiting threads return <code>WAIT_FAILED</code> with
+	 * <code>ERROR_OPERATION_ABORTED</code>, when the poller is closed.
+	 */
+	@Test(timeout = 5000)
+	public void close_abortsWaiters() throws Exception {
+		closeLater(50);
+
+		assertThat(poller.await(EVENT, 2000, lastError), is(WAIT_FAILED));
+		assertThat(lastError.value, is(ERROR_OPERATION_ABORTED));
+	}
+
+	/**
+	 * Verifies that <code>WAIT_FAILED</code> with <code>ERROR_OPERATION_ABORTED</code> is
+	 * returned, if the poller was already closed.
+	 */
+	@Test
+	public void await_afterClose() throws Exception {
+		poller.close();
+
+		assertThat(poller.await(EVENT, 1000, lastError), is(WAIT_FAILED));
+		assertThat(lastError.value, is(ERROR_OPERATION_ABORTED));
+	}
+
+	/**
+	 * Verifies that a second poller thread is started, if more events are awaited than a single
+	 * <code>WaitForMultipleObjects</code> call can monitor.
+	 */
+	@Test(timeout = 10000)
+	public void await_manyEvents() throws Exception {
+		int count = EventPoller.EVENTS_PER_THREAD + 10;
+		ExecutorService executor = Executors.newFixedThreadPool(count);
+		try {
+			Set<Future<Integer>> results = new HashSet<Future<Integer>>();
+			for (int i = 0; i < count; i++) {
+				final int event = 1000 + i;
+				results.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						return poller.await(event, 5000, new INT(0));
+					}
+				}));
+			}
+
+			Thread.sleep(200);
+			for (int i = 0; i < count; i++)
+				signaled.add(1000 + i);
+
+			for (Future<Integer> result : results)
+				assertThat(result.get(5, SECONDS), is(WAIT_OBJECT_0));
+			verify(os, times(2)).CreateEventA(0, false, false, null);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// Utilities for this Testclass ///////////////////////////////////////////////////////////
+
+	/** Signals the given event after the given delay in another thread. */
+	private void signalLater(final int event, final long delay) {
+		new Thread() {
+			@Override
+			public void run() {
+				sleepUninterruptibly(delay);
+				signaled.add(event);
+			}
+		}.start();
+	}
+
+	/** Closes the poller after the given delay in another thread. */
+	private void closeLater(final long delay) {
+		new Thread() {
+			@Override
+			public void run() {
+				sleepUninterruptibly(delay);
+				poller.close();
+			}
+		}.start();
+	}
+
+	/** Sleeps uninterruptibly. */
+	private static void sleepUninterruptibly(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Returns the handle of a new event. */
+	private Answer<Integer> createEvent() {
+		return new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				return nextEvent.getAndIncrement();
+			}
+		};
+	}
+
+	/** Sets the given event to the signaled state. */
+	private Answer<Boolean> setEvent() {
+		return new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				signaled.add((Integer) invocation.getArguments()[0]);
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Simulates <code>WaitForMultipleObjects</code>: Returns the index of the first signaled event,
+	 * fails for invalid events and returns <code>WAIT_TIMEOUT</code>, if no event was signaled
+	 * within a short time. The wake up events are reset automatically.
+	 */
+	private Answer<Integer> waitForMultipleObjects() {
+		return new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				int count = (Integer) invocation.getArguments()[0];
+				int[] handles = (int[]) invocation.getArguments()[1];
+
+				Set<Integer> distinct = new HashSet<Integer>();
+				for (int i = 0; i < count; i++)
+					distinct.add(handles[i]);
+				if (count > MAXIMUM_WAIT_OBJECTS || distinct.size() != count)
+					invalidWaits.incrementAndGet();
+				if (distinct.contains(INVALID_EVENT))
+					return WAIT_FAILED;
+
+				for (int attempt = 0; attempt < 10; attempt++) {
+					for (int i = 0; i < count; i++) {
+						if (!signaled.contains(handles[i]))
+							continue;
+						if (handles[i] >= 100 && handles[i] < 1000)
+							signaled.remove(handles[i]);
+						return WAIT_OBJECT_0 + i;
+					}
+					Thread.sleep(1);
+				}
+				return WAIT_TIMEOUT;
+			}
+		};
+	}
+}
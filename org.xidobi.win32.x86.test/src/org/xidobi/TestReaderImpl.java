@@ -15,15 +15,26 @@
  */
 package org.xidobi;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.SerialPortImpl.COMM_EVENTS;
+import static org.xidobi.WinApi.CE_FRAME;
+import static org.xidobi.WinApi.CE_OVERRUN;
 import static org.xidobi.WinApi.ERROR_ACCESS_DENIED;
 import static org.xidobi.WinApi.ERROR_BAD_COMMAND;
 import static org.xidobi.WinApi.ERROR_GEN_FAILURE;
@@ -31,18 +42,32 @@ import static org.xidobi.WinApi.ERROR_INVALID_HANDLE;
 import static org.xidobi.WinApi.ERROR_IO_PENDING;
 import static org.xidobi.WinApi.ERROR_NOT_READY;
 import static org.xidobi.WinApi.ERROR_OPERATION_ABORTED;
+import static org.xidobi.WinApi.EV_CTS;
 import static org.xidobi.WinApi.EV_RXCHAR;
+import static org.xidobi.WinApi.EV_RXFLAG;
+import static org.xidobi.WinApi.EV_TXEMPTY;
+import static org.xidobi.WinApi.INFINITE;
+import static org.xidobi.WinApi.MS_CTS_ON;
+import static org.xidobi.WinApi.MS_DSR_ON;
 import static org.xidobi.WinApi.WAIT_ABANDONED;
 import static org.xidobi.WinApi.WAIT_FAILED;
 import static org.xidobi.WinApi.WAIT_OBJECT_0;
 import static org.xidobi.WinApi.WAIT_TIMEOUT;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -97,6 +122,12 @@ public class TestReaderImpl {
 	@Mock
 	private SerialPort port;
 
+	@Mock
+	private LineStatusListener listener;
+
+	@Mock
+	private EventPoller poller;
+
 	/** the class under test */
 	private ReaderImpl reader;
 
@@ -534,6 +565,129 @@ public class TestReaderImpl {
 		assertThat(result, is(DATA));
 	}
 
+	/**
+	 * Verifies that the time to wait for the communication event is recorded, when metrics are
+	 * set.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_recordsWaitTime() throws IOException {
+		//@formatter:off
+		ConnectionMetrics metrics = new ConnectionMetrics("COM1");
+		reader.setMetrics(metrics);
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_RXCHAR);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		//@formatter:on
+
+		reader.read();
+
+		assertThat(metrics.getWaitTime().getCount(), is(1L));
+	}
+
+	/**
+	 * Verifies that the {@link LineStatusListener} is notified with the changed and the active
+	 * signals, when <code>WaitCommEvent(...)</code> signals a changed CTS line.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_notifiesLineStatusListenerAboutChangedSignal() throws IOException {
+		//@formatter:off
+		reader.setLineStatusListener(listener);
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_CTS | EV_RXCHAR);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		doAnswer(withModemStatus(MS_CTS_ON | MS_DSR_ON)).when(os).GetCommModemStatus(eq(DUMMY_PORT_HANDLE), anyINT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		//@formatter:on
+
+		byte[] result = reader.read();
+
+		assertThat(result, is(DATA));
+		LineStatusEvent event = captureLineStatusEvent();
+		assertThat(event.getPort(), is(port));
+		assertThat(event.getChangedSignals(), contains(LineSignal.CTS));
+		assertThat(event.getActiveSignals(), contains(LineSignal.CTS, LineSignal.DSR));
+		assertThat(event.getErrors(), is(empty()));
+	}
+
+	/**
+	 * Verifies that the {@link LineStatusListener} is notified about the line errors, that are
+	 * returned by <code>ClearCommError(...)</code>.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_notifiesLineStatusListenerAboutLineErrors() throws IOException {
+		//@formatter:off
+		reader.setLineStatusListener(listener);
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_RXCHAR);
+		doAnswer(withErrors(DATA.length, CE_FRAME | CE_OVERRUN)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		doAnswer(withModemStatus(0)).when(os).GetCommModemStatus(eq(DUMMY_PORT_HANDLE), anyINT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		//@formatter:on
+
+		reader.read();
+
+		LineStatusEvent event = captureLineStatusEvent();
+		assertThat(event.getChangedSignals(), is(empty()));
+		assertThat(event.getActiveSignals(), is(empty()));
+		assertThat(event.getErrors(), contains(LineError.FRAMING, LineError.OVERRUN));
+	}
+
+	/**
+	 * Verifies that the {@link LineStatusListener} is not notified and the modem status is not
+	 * retrieved, when only data arrived.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_withoutLineStatusChange() throws IOException {
+		//@formatter:off
+		reader.setLineStatusListener(listener);
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_RXCHAR);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		//@formatter:on
+
+		reader.read();
+
+		verify(os, never()).GetCommModemStatus(eq(DUMMY_PORT_HANDLE), anyINT());
+		verify(listener, never()).lineStatusChanged(any(LineStatusEvent.class));
+	}
+
+	/**
+	 * Verifies that a {@link NativeCodeException} is thrown, when a signal changed and
+	 * <code>GetCommModemStatus(...)</code> fails unexpected.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_GetCommModemStatusFailed() throws IOException {
+		//@formatter:off
+		reader.setLineStatusListener(listener);
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_CTS);
+		doAnswer(withAvailableBytes(0, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.GetCommModemStatus(eq(DUMMY_PORT_HANDLE), anyINT())).thenReturn(false);
+		when(os.GetLastError()).thenReturn(DUMMY_ERROR_CODE);
+		//@formatter:on
+
+		exception.expect(NativeCodeException.class);
+		exception.expectMessage("GetCommModemStatus failed unexpected!");
+
+		reader.read();
+	}
+
 	/**
 	 * Verifies that a {@link NativeCodeException} is thrown, when <code>ReadFile(...)</code>
 	 * returns <code>false</code> and the last error code is not <code>ERROR_IO_PENDING</code> or
@@ -959,6 +1113,89 @@ public class TestReaderImpl {
 		assertThat(result, is(DATA));
 	}
 
+	/**
+	 * Verifies that the reader waits with the {@link EventPoller} instead of
+	 * <code>WaitForSingleObject</code>, if a poller is used.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_withPoller() throws IOException {
+		reader = new ReaderImpl(port, os, DUMMY_PORT_HANDLE, poller);
+
+		//@formatter:off
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(false);
+		when(os.GetLastError()).thenReturn(ERROR_IO_PENDING);
+		when(poller.await(eq(DUMMY_EVENT_HANDLE), eq(INFINITE), anyINT())).thenReturn(WAIT_OBJECT_0);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_RXCHAR);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		// @formatter:on
+
+		byte[] result = reader.read();
+
+		assertThat(result, is(DATA));
+		verify(os, never()).WaitForSingleObject(anyInt(), anyInt());
+	}
+
+	/**
+	 * Verifies that an idle reader, that waits with the {@link EventPoller} longer than the read
+	 * timeout, stays registered at the poller instead of registering again after each timeout.
+	 * 
+	 * @throws IOException
+	 */
+	@Test(timeout = 5000)
+	public void read_withPollerIdle() throws IOException {
+		reader = new ReaderImpl(port, os, DUMMY_PORT_HANDLE, poller);
+
+		//@formatter:off
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(false);
+		when(os.GetLastError()).thenReturn(ERROR_IO_PENDING);
+		when(poller.await(eq(DUMMY_EVENT_HANDLE), anyInt(), anyINT())).thenAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				// the event is signaled after three read timeouts
+				int milliseconds = (Integer) invocation.getArguments()[1];
+				if (milliseconds != INFINITE && milliseconds < 300) {
+					Thread.sleep(milliseconds);
+					return WAIT_TIMEOUT;
+				}
+				Thread.sleep(300);
+				return WAIT_OBJECT_0;
+			}
+		});
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_RXCHAR);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		// @formatter:on
+
+		assertThat(reader.read(), is(DATA));
+		verify(poller, times(1)).await(eq(DUMMY_EVENT_HANDLE), anyInt(), anyINT());
+		verify(poller).await(eq(DUMMY_EVENT_HANDLE), eq(INFINITE), anyINT());
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, when the {@link EventPoller} fails with
+	 * <code>ERROR_OPERATION_ABORTED</code>, e.g. because the poller was closed.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_withPollerAborted() throws IOException {
+		reader = new ReaderImpl(port, os, DUMMY_PORT_HANDLE, poller);
+
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(false);
+		when(os.GetLastError()).thenReturn(ERROR_IO_PENDING);
+		doAnswer(withLastError(ERROR_OPERATION_ABORTED, WAIT_FAILED)).when(poller).await(eq(DUMMY_EVENT_HANDLE), eq(INFINITE), anyINT());
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port COM1 was closed! I/O operation has been aborted.");
+
+		reader.read();
+	}
+
 	/**
 	 * Verifies that all handles are disposed, when the reader is closed.
 	 * 
@@ -987,6 +1224,277 @@ public class TestReaderImpl {
 		verify(os).free(PTR_EVT_MASK);
 	}
 
+	/**
+	 * Verifies that an empty array is returned, when the deadline expires while
+	 * <code>WaitCommEvent(...)</code> is pending, and that the next read continues the pending
+	 * wait instead of calling <code>WaitCommEvent(...)</code> again.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_deadlineExpiredWhileWaitCommEventPending() throws IOException {
+		//@formatter:off
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(false);
+		when(os.GetLastError()).thenReturn(ERROR_IO_PENDING);
+		when(os.WaitForSingleObject(DUMMY_EVENT_HANDLE, 0)).thenReturn(WAIT_TIMEOUT);
+		when(os.WaitForSingleObject(DUMMY_EVENT_HANDLE, 100)).thenReturn(WAIT_OBJECT_0);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_RXCHAR);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		//@formatter:on
+
+		assertThat(reader.read(Deadline.after(0, MILLISECONDS)), is(new byte[0]));
+		assertThat(reader.read(), is(DATA));
+
+		verify(os, times(1)).WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED());
+		verify(os, times(1)).ResetEvent(DUMMY_EVENT_HANDLE);
+	}
+
+	/**
+	 * Verifies that in line mode only the first complete line is returned and the second line is
+	 * returned by the next read without waiting for another communication event.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_lineModeReturnsCompleteLines() throws IOException {
+		//@formatter:off
+		reader = new ReaderImpl(port, os, DUMMY_PORT_HANDLE, null, '\n');
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_RXFLAG);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(new byte[] { 'a', '\n', 'b', 'c', '\n' });
+		//@formatter:on
+
+		assertThat(reader.read(), is(new byte[] { 'a', '\n' }));
+		assertThat(reader.read(), is(new byte[] { 'b', 'c', '\n' }));
+
+		verify(os, times(1)).WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED());
+	}
+
+	/**
+	 * Verifies that the returned data is stamped, when the wait for its communication event
+	 * completed.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_receiveTimestamp() throws IOException {
+		//@formatter:off
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_RXCHAR);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		//@formatter:on
+
+		long before = System.nanoTime();
+		reader.read();
+		long after = System.nanoTime();
+
+		assertThat(reader.getReceiveTimestamp() >= before && reader.getReceiveTimestamp() <= after, is(true));
+	}
+
+	/**
+	 * Verifies that in line mode no data is read, when the communication event doesn't signal the
+	 * reception of the line terminator.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void read_lineModeWaitsForTerminator() throws IOException {
+		//@formatter:off
+		reader = new ReaderImpl(port, os, DUMMY_PORT_HANDLE, null, '\n');
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_CTS, EV_RXFLAG);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		doAnswer(withModemStatus(0)).when(os).GetCommModemStatus(eq(DUMMY_PORT_HANDLE), anyINT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(new byte[] { 'a', 'b', 'c', 'd', '\n' });
+		//@formatter:on
+
+		byte[] result = reader.read();
+
+		assertThat(result, is(new byte[] { 'a', 'b', 'c', 'd', '\n' }));
+		verify(os, times(2)).WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED());
+		verify(os, times(1)).ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED());
+	}
+
+	/**
+	 * Verifies that {@link ReaderImpl#drain()} returns immediately, when the output buffer of the
+	 * driver is empty.
+	 * 
+	 * @throws IOException
+	 */
+	@Test(timeout = 5000)
+	public void drain_outputBufferEmpty() throws IOException {
+		doAnswer(withOutputQueue(0, 0)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+
+		reader.drain();
+
+		verify(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		verify(os, never()).SetCommMask(anyInt(), anyInt());
+	}
+
+	/**
+	 * Verifies that {@link ReaderImpl#drain()} registers <code>EV_TXEMPTY</code> and waits for it
+	 * itself, when no thread reads. The other received events are handled by the next read, and
+	 * the registration is removed, when the drain returns.
+	 * 
+	 * @throws Exception
+	 */
+	@Test(timeout = 5000)
+	public void drain_awaitsEV_TXEMPTYWithoutRead() throws Exception {
+		final AtomicBoolean transmitted = new AtomicBoolean();
+		//@formatter:off
+		doAnswer(withTransmission(transmitted)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.SetCommMask(eq(DUMMY_PORT_HANDLE), anyInt())).thenReturn(true);
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				transmitted.set(true);
+				return EV_TXEMPTY | EV_RXCHAR;
+			}
+		});
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		//@formatter:on
+
+		reader.drain();
+
+		InOrder inOrder = inOrder(os);
+		inOrder.verify(os).SetCommMask(DUMMY_PORT_HANDLE, COMM_EVENTS | EV_TXEMPTY);
+		inOrder.verify(os).WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED());
+		inOrder.verify(os).SetCommMask(DUMMY_PORT_HANDLE, COMM_EVENTS);
+
+		assertThat(reader.read(), is(DATA));
+		verify(os, times(1)).WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED());
+	}
+
+	/**
+	 * Verifies that {@link ReaderImpl#drain()} is woken up by <code>EV_TXEMPTY</code>, that is
+	 * received by the reading thread. The pending <code>WaitCommEvent</code>, that is completed
+	 * without events by the registration of <code>EV_TXEMPTY</code>, is started again.
+	 * 
+	 * @throws Exception
+	 */
+	@Test(timeout = 5000)
+	public void drain_wokenUpByEV_TXEMPTY() throws Exception {
+		final AtomicBoolean transmitted = new AtomicBoolean();
+		final CountDownLatch maskChanged = new CountDownLatch(1);
+		//@formatter:off
+		doAnswer(withTransmission(transmitted)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.SetCommMask(eq(DUMMY_PORT_HANDLE), anyInt())).thenReturn(true);
+		when(os.SetCommMask(DUMMY_PORT_HANDLE, COMM_EVENTS | EV_TXEMPTY)).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				maskChanged.countDown();
+				return true;
+			}
+		});
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(false, true);
+		when(os.GetLastError()).thenReturn(ERROR_IO_PENDING);
+		when(os.WaitForSingleObject(DUMMY_EVENT_HANDLE, 100)).thenAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				maskChanged.await();
+				return WAIT_OBJECT_0;
+			}
+		});
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(0).thenAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				transmitted.set(true);
+				return EV_TXEMPTY | EV_RXCHAR;
+			}
+		});
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		//@formatter:on
+		Future<byte[]> read = readInBackground();
+		verify(os, timeout(1000)).WaitForSingleObject(DUMMY_EVENT_HANDLE, 100);
+
+		Future<Void> drain = drainInBackground();
+
+		assertThat(read.get(), is(DATA));
+		drain.get();
+		verify(os, times(2)).WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED());
+		verify(os).SetCommMask(DUMMY_PORT_HANDLE, COMM_EVENTS);
+	}
+
+	/**
+	 * Verifies that the line errors, that are cleared by {@link ReaderImpl#drain()}, are reported
+	 * with the next communication event.
+	 * 
+	 * @throws IOException
+	 */
+	@Test(timeout = 5000)
+	public void drain_lineErrorsReportedByNextRead() throws IOException {
+		//@formatter:off
+		reader.setLineStatusListener(listener);
+		doAnswer(withOutputQueue(0, CE_FRAME)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		reader.drain();
+
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(EV_RXCHAR);
+		doAnswer(withAvailableBytes(DATA.length, true)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		doAnswer(withModemStatus(0)).when(os).GetCommModemStatus(eq(DUMMY_PORT_HANDLE), anyINT());
+		when(os.ReadFile(eq(DUMMY_PORT_HANDLE), any(NativeByteArray.class), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getByteArray(any(NativeByteArray.class), eq(DATA.length))).thenReturn(DATA);
+		//@formatter:on
+
+		reader.read();
+
+		assertThat(captureLineStatusEvent().getErrors(), contains(LineError.FRAMING));
+	}
+
+	/**
+	 * Verifies that a waiting {@link ReaderImpl#drain()} is released and throws an
+	 * {@link IOException}, when the reader is closed.
+	 * 
+	 * @throws Exception
+	 */
+	@Test(timeout = 5000)
+	public void drain_releasedByClose() throws Exception {
+		doAnswer(withOutputQueue(DATA.length, 0)).when(os).ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT());
+		when(os.SetCommMask(eq(DUMMY_PORT_HANDLE), anyInt())).thenReturn(true);
+		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(false);
+		when(os.GetLastError()).thenReturn(ERROR_IO_PENDING);
+		when(os.WaitForSingleObject(eq(DUMMY_EVENT_HANDLE), anyInt())).thenReturn(WAIT_TIMEOUT);
+		Future<Void> drain = drainInBackground();
+		verify(os, timeout(1000)).WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED());
+
+		reader.close();
+
+		try {
+			drain.get();
+			fail("IOException expected!");
+		}
+		catch (ExecutionException e) {
+			assertThat(e.getCause().getMessage(), is("Port COM1 was closed!"));
+		}
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown by {@link ReaderImpl#drain()}, when
+	 * <code>ClearCommError(...)</code> fails with <code>ERROR_INVALID_HANDLE</code>.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void drain_ClearCommErrorFailsWithERROR_INVALID_HANDLE() throws IOException {
+		when(os.ClearCommError(eq(DUMMY_PORT_HANDLE), anyINT(), anyCOMSTAT())).thenReturn(false);
+		when(os.GetLastError()).thenReturn(ERROR_INVALID_HANDLE);
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Port COM1 was closed! I/O operation failed, because the handle is invalid.");
+
+		reader.drain();
+	}
+
 	// Utilities for this Testclass ///////////////////////////////////////////////////////////
 
 	/** matches any {@link OVERLAPPED} */
@@ -1024,6 +1532,120 @@ public class TestReaderImpl {
 		};
 	}
 
+	/**
+	 * Returns an {@link Answer} that sets the <code>availableBytes</code> on the
+	 * <code>COMSTAT</code> parameter, the given <code>errors</code> on the <code>lpErrors</code>
+	 * parameter and returns <code>true</code>.
+	 */
+	private Answer<Boolean> withErrors(final int availableByte, final int errors) {
+		return new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				INT lpErrors = (INT) invocation.getArguments()[1];
+				lpErrors.value = errors;
+				COMSTAT comstat = (COMSTAT) invocation.getArguments()[2];
+				comstat.cbInQue = availableByte;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns an {@link Answer} that sets the number of bytes in the output buffer on the
+	 * <code>COMSTAT</code> parameter, the given <code>errors</code> on the <code>lpErrors</code>
+	 * parameter and returns <code>true</code>.
+	 */
+	private Answer<Boolean> withOutputQueue(final int outputBytes, final int errors) {
+		return new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				INT lpErrors = (INT) invocation.getArguments()[1];
+				lpErrors.value = errors;
+				COMSTAT comstat = (COMSTAT) invocation.getArguments()[2];
+				comstat.cbOutQue = outputBytes;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns an {@link Answer} that sets the number of available bytes to the length of
+	 * {@link #DATA} and the size of the output buffer to 0, after the given flag was set.
+	 */
+	private Answer<Boolean> withTransmission(final AtomicBoolean transmitted) {
+		return new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				COMSTAT comstat = (COMSTAT) invocation.getArguments()[2];
+				comstat.cbInQue = DATA.length;
+				comstat.cbOutQue = transmitted.get() ? 0 : DATA.length;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Reads from the reader in a new thread. A failure of the read is reported by
+	 * {@link Future#get()}.
+	 */
+	private Future<byte[]> readInBackground() {
+		FutureTask<byte[]> read = new FutureTask<byte[]>(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return reader.read();
+			}
+		});
+		new Thread(read).start();
+		return read;
+	}
+
+	/**
+	 * Drains the reader in a new thread. A failure of the drain is reported by
+	 * {@link Future#get()}.
+	 */
+	private Future<Void> drainInBackground() {
+		FutureTask<Void> drain = new FutureTask<Void>(new Callable<Void>() {
+			public Void call() throws Exception {
+				reader.drain();
+				return null;
+			}
+		});
+		new Thread(drain).start();
+		return drain;
+	}
+
+	/**
+	 * Returns an {@link Answer} that sets the given <code>modemStatus</code> on the
+	 * <code>lpModemStat</code> parameter and returns <code>true</code>.
+	 */
+	private Answer<Boolean> withModemStatus(final int modemStatus) {
+		return new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				INT lpModemStat = (INT) invocation.getArguments()[1];
+				lpModemStat.value = modemStatus;
+				return true;
+			}
+		};
+	}
+
+	/** Returns the event, that was passed to the line status listener. */
+	private LineStatusEvent captureLineStatusEvent() {
+		ArgumentCaptor<LineStatusEvent> event = ArgumentCaptor.forClass(LineStatusEvent.class);
+		verify(listener).lineStatusChanged(event.capture());
+		return event.getValue();
+	}
+
+	/** Sets the given error code to the <code>INT</code> argument and returns the given result. */
+	private Answer<Integer> withLastError(final int errorCode, final int result) {
+		return new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				((INT) invocation.getArguments()[2]).value = errorCode;
+				return result;
+			}
+		};
+	}
+
 	/** Mocks <code>WaitCommEvent</code> to fail with the given error code. */
 	private void mockWaitCommEventFailsWith(int errorCode) {
 		when(os.WaitCommEvent(eq(DUMMY_PORT_HANDLE), anyDWORD(), anyOVERLAPPED())).thenReturn(false);
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.WinApi.ERROR_INVALID_PARAMETER;
+import static org.xidobi.WinApi.ERROR_SUCCESS;
+import static org.xidobi.WinApi.HKEY_LOCAL_MACHINE;
+import static org.xidobi.WinApi.KEY_READ;
+import static org.xidobi.WinApi.REG_NOTIFY_CHANGE_LAST_SET;
+import static org.xidobi.WinApi.REG_NOTIFY_CHANGE_NAME;
+import static org.xidobi.WinApi.REG_NOTIFY_THREAD_AGNOSTIC;
+import static org.xidobi.WinApi.WAIT_FAILED;
+import static org.xidobi.WinApi.WAIT_OBJECT_0;
+import static org.xidobi.WinApi.WAIT_TIMEOUT;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.xidobi.spi.NativeCodeException;
+import org.xidobi.structs.HKEY;
+
+/**
+ * Tests the class {@link RegistryChangeNotifier}.
+ * 
+ * @author Tobias Breler
+ */
+public class TestRegistryChangeNotifier {
+
+	/** Some unspecified error code */
+	private static final int AN_ERROR_CODE = 123;
+	/** Size of HKEY */
+	private static final int SIZE_OF_HKEY = 1;
+	/** Pointer to HKEY */
+	private static final int HKEY_POINTER = 2;
+	/** handle of the notification event */
+	private static final int EVENT_HANDLE = 3;
+	/** the watched subkey */
+	private static final String SUBKEY = "HARDWARE\\DEVICEMAP\\SERIALCOMM\\";
+	/** the expected notify filter */
+	private static final int NOTIFY_FILTER = REG_NOTIFY_CHANGE_NAME | REG_NOTIFY_CHANGE_LAST_SET | REG_NOTIFY_THREAD_AGNOSTIC;
+	/** the expected notify filter on Windows versions before Windows 8 */
+	private static final int LEGACY_NOTIFY_FILTER = REG_NOTIFY_CHANGE_NAME | REG_NOTIFY_CHANGE_LAST_SET;
+
+	@Mock
+	private WinApi os;
+
+	/** expected exceptions */
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Before
+	@SuppressWarnings("javadoc")
+	public void setUp() {
+		initMocks(this);
+
+		when(os.sizeOf_HKEY()).thenReturn(SIZE_OF_HKEY);
+		when(os.malloc(SIZE_OF_HKEY)).thenReturn(HKEY_POINTER);
+		when(os.RegOpenKeyExA(eq(HKEY_LOCAL_MACHINE), eq(SUBKEY), eq(0), eq(KEY_READ), any(HKEY.class))).thenReturn(ERROR_SUCCESS);
+		when(os.CreateEventA(0, true, false, null)).thenReturn(EVENT_HANDLE);
+		when(os.ResetEvent(EVENT_HANDLE)).thenReturn(true);
+		when(os.RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true))).thenReturn(ERROR_SUCCESS);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>os == null</code> is
+	 * passed to the constructor.
+	 */
+	@SuppressWarnings("unused")
+	@Test(expected = IllegalArgumentException.class)
+	public void new_withNullOS() {
+		new RegistryChangeNotifier(null, SUBKEY);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when <code>subKey == null</code>
+	 * is passed to the constructor.
+	 */
+	@SuppressWarnings("unused")
+	@Test(expected = IllegalArgumentException.class)
+	public void new_withNullSubKey() {
+		new RegistryChangeNotifier(os, null);
+	}
+
+	/**
+	 * Verifies that the asynchronous notification is registered, when a new instance is created.
+	 */
+	@Test
+	public void new_registersNotification() {
+		new RegistryChangeNotifier(os, SUBKEY);
+
+		verify(os).ResetEvent(EVENT_HANDLE);
+		verify(os).RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true));
+	}
+
+	/**
+	 * Verifies that the notification is registered without {@link WinApi#REG_NOTIFY_THREAD_AGNOSTIC},
+	 * when Windows doesn't support it, and that the flag is not tried again for the following
+	 * registrations.
+	 */
+	@Test
+	public void new_threadAgnosticNotSupported() {
+		when(os.RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true))).thenReturn(ERROR_INVALID_PARAMETER);
+		when(os.RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(LEGACY_NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true))).thenReturn(ERROR_SUCCESS);
+		when(os.WaitForSingleObject(EVENT_HANDLE, 0)).thenReturn(WAIT_OBJECT_0);
+		RegistryChangeNotifier notifier = new RegistryChangeNotifier(os, SUBKEY);
+
+		notifier.hasChanged();
+
+		verify(os, times(1)).RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true));
+		verify(os, times(2)).RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(LEGACY_NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true));
+	}
+
+	/**
+	 * Verifies that a {@link NativeCodeException} is thrown and the HKEY is disposed, when the
+	 * subkey can't be opened.
+	 */
+	@Test
+	@SuppressWarnings("unused")
+	public void new_whenRegOpenKeyExAFails() {
+		when(os.RegOpenKeyExA(eq(HKEY_LOCAL_MACHINE), eq(SUBKEY), eq(0), eq(KEY_READ), any(HKEY.class))).thenReturn(AN_ERROR_CODE);
+
+		exception.expect(NativeCodeException.class);
+		exception.expectMessage("Couldn't open Windows Registry for subkey >" + SUBKEY + "<!");
+
+		try {
+			new RegistryChangeNotifier(os, SUBKEY);
+		}
+		finally {
+			verify(os).free(HKEY_POINTER);
+			verify(os, never()).CreateEventA(anyInt(), eq(true), eq(false), any(String.class));
+		}
+	}
+
+	/**
+	 * Verifies that a {@link NativeCodeException} is thrown and the subkey is closed, when the
+	 * event can't be created.
+	 */
+	@Test
+	@SuppressWarnings("unused")
+	public void new_whenCreateEventAFails() {
+		when(os.CreateEventA(0, true, false, null)).thenReturn(0);
+		when(os.GetLastError()).thenReturn(AN_ERROR_CODE);
+
+		exception.expect(NativeCodeException.class);
+		exception.expectMessage("Create registry notification event failed!\r\nError-Code " + AN_ERROR_CODE);
+
+		try {
+			new RegistryChangeNotifier(os, SUBKEY);
+		}
+		finally {
+			verify(os).RegCloseKey(any(HKEY.class));
+			verify(os).free(HKEY_POINTER);
+		}
+	}
+
+	/**
+	 * Verifies that a {@link NativeCodeException} is thrown and all native resources are released,
+	 * when the notification can't be registered.
+	 */
+	@Test
+	@SuppressWarnings("unused")
+	public void new_whenRegNotifyChangeKeyValueFails() {
+		when(os.RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true))).thenReturn(AN_ERROR_CODE);
+
+		exception.expect(NativeCodeException.class);
+		exception.expectMessage("RegNotifyChangeKeyValue failed unexpected!\r\nError-Code " + AN_ERROR_CODE);
+
+		try {
+			new RegistryChangeNotifier(os, SUBKEY);
+		}
+		finally {
+			verify(os).RegCloseKey(any(HKEY.class));
+			verify(os).CloseHandle(EVENT_HANDLE);
+			verify(os).free(HKEY_POINTER);
+		}
+	}
+
+	/**
+	 * Verifies that <code>false</code> is returned, when the event was not signaled.
+	 */
+	@Test
+	public void hasChanged_notSignaled() {
+		when(os.WaitForSingleObject(EVENT_HANDLE, 0)).thenReturn(WAIT_TIMEOUT);
+		RegistryChangeNotifier notifier = new RegistryChangeNotifier(os, SUBKEY);
+
+		boolean result = notifier.hasChanged();
+
+		assertThat(result, is(false));
+		verify(os, times(1)).RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true));
+	}
+
+	/**
+	 * Verifies that <code>true</code> is returned and the notification is registered again, when
+	 * the event was signaled.
+	 */
+	@Test
+	public void hasChanged_signaled() {
+		when(os.WaitForSingleObject(EVENT_HANDLE, 0)).thenReturn(WAIT_OBJECT_0);
+		RegistryChangeNotifier notifier = new RegistryChangeNotifier(os, SUBKEY);
+
+		boolean result = notifier.hasChanged();
+
+		assertThat(result, is(true));
+		verify(os, times(2)).ResetEvent(EVENT_HANDLE);
+		verify(os, times(2)).RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true));
+	}
+
+	/**
+	 * Verifies that a {@link NativeCodeException} is thrown, when the state of the event can't be
+	 * determined.
+	 */
+	@Test
+	public void hasChanged_waitFailed() {
+		when(os.WaitForSingleObject(EVENT_HANDLE, 0)).thenReturn(WAIT_FAILED);
+		when(os.GetLastError()).thenReturn(AN_ERROR_CODE);
+		RegistryChangeNotifier notifier = new RegistryChangeNotifier(os, SUBKEY);
+
+		exception.expect(NativeCodeException.class);
+		exception.expectMessage("WaitForSingleObject failed unexpected!\r\nError-Code " + AN_ERROR_CODE);
+
+		notifier.hasChanged();
+	}
+
+	/**
+	 * Verifies that the native wait uses the given timeout in milliseconds and that
+	 * <code>true</code> is returned, when the event was signaled.
+	 */
+	@Test
+	public void awaitChange_signaled() throws Exception {
+		when(os.WaitForSingleObject(EVENT_HANDLE, 2000)).thenReturn(WAIT_OBJECT_0);
+		RegistryChangeNotifier notifier = new RegistryChangeNotifier(os, SUBKEY);
+
+		boolean result = notifier.awaitChange(2, SECONDS);
+
+		assertThat(result, is(true));
+		verify(os, times(2)).RegNotifyChangeKeyValue(any(HKEY.class), eq(false), eq(NOTIFY_FILTER), eq(EVENT_HANDLE), eq(true));
+	}
+
+	/**
+	 * Verifies that <code>false</code> is returned, when the timeout elapsed.
+	 */
+	@Test
+	public void awaitChange_timeout() throws Exception {
+		when(os.WaitForSingleObject(EVENT_HANDLE, 2000)).thenReturn(WAIT_TIMEOUT);
+		RegistryChangeNotifier notifier = new RegistryChangeNotifier(os, SUBKEY);
+
+		boolean result = notifier.awaitChange(2, SECONDS);
+
+		assertThat(result, is(false));
+	}
+
+	/**
+	 * Verifies that an {@link InterruptedException} is thrown and the native wait is not invoked,
+	 * when the thread was interrupted.
+	 */
+	@Test
+	public void awaitChange_interrupted() throws Exception {
+		RegistryChangeNotifier notifier = new RegistryChangeNotifier(os, SUBKEY);
+		Thread.currentThread().interrupt();
+
+		exception.expect(InterruptedException.class);
+
+		try {
+			notifier.awaitChange(2, SECONDS);
+		}
+		finally {
+			verify(os, never()).WaitForSingleObject(EVENT_HANDLE, 2000);
+		}
+	}
+
+	/**
+	 * Verifies that an {@link IllegalStateException} is thrown, when the notifier was already
+	 * closed.
+	 */
+	@Test
+	public void hasChanged_afterClose() {
+		RegistryChangeNotifier notifier = new RegistryChangeNotifier(os, SUBKEY);
+		notifier.close();
+
+		exception.expect(IllegalStateException.class);
+		exception.expectMessage("The registry notifier for subkey >" + SUBKEY + "< was already closed!");
+
+		notifier.hasChanged();
+	}
+
+	/**
+	 * Verifies that all native resources are released exactly once, when the notifier is closed
+	 * twice.
+	 */
+	@Test
+	public void close_releasesResources() {
+		RegistryChangeNotifier notifier = new RegistryChangeNotifier(os, SUBKEY);
+
+		notifier.close();
+		notifier.close();
+
+		verify(os, times(1)).RegCloseKey(any(HKEY.class));
+		verify(os, times(1)).CloseHandle(EVENT_HANDLE);
+		verify(os, times(1)).free(HKEY_POINTER);
+	}
+}
@@ -15,10 +15,16 @@
  */
 package org.xidobi;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.SerialPortSettings.from9600bauds8N1;
 import static org.xidobi.WinApi.ERROR_ACCESS_DENIED;
 import static org.xidobi.WinApi.ERROR_FILE_NOT_FOUND;
 import static org.xidobi.WinApi.EV_RXCHAR;
@@ -31,13 +37,19 @@ import static org.xidobi.WinApi.PURGE_RXCLEAR;
 import static org.xidobi.WinApi.PURGE_TXABORT;
 import static org.xidobi.WinApi.PURGE_TXCLEAR;
 
+import java.io.IOException;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.xidobi.spi.NativeCodeException;
+import org.xidobi.structs.COMSTAT;
+import org.xidobi.structs.DCB;
 import org.xidobi.structs.DWORD;
+import org.xidobi.structs.INT;
 import org.xidobi.structs.OVERLAPPED;
 
 /**
@@ -56,6 +68,9 @@ public class TestSerialConnectionImpl {
 
 	private static final int DUMMY_ERROR_CODE = 1324;
 
+	/** the settings, that were applied when the port was opened */
+	private static final SerialPortSettings SETTINGS = from9600bauds8N1().create();
+
 	/** pointer to an {@link OVERLAPPED}-struct */
 	private int ptrOverlapped = 1;
 	/** pointer to an {@link DWORD} */
@@ -415,6 +430,127 @@ public class TestSerialConnectionImpl {
 		}
 	}
 
+	/**
+	 * Verifies that the changed settings are applied to the open port with
+	 * <code>GetCommState</code> and <code>SetCommState</code>.
+	 */
+	@Test
+	@SuppressWarnings("resource")
+	public void reconfigure_changedSettings() throws Exception {
+		serialConnectionImpl = new SerialConnectionImpl(port, os, handle, null, new DCBConfigurator(), SETTINGS);
+		when(os.GetCommState(eq(handle), any(DCB.class))).thenReturn(true);
+		when(os.SetCommState(eq(handle), any(DCB.class))).thenReturn(true);
+
+		serialConnectionImpl.reconfigure(from9600bauds8N1().bauds(19200).create());
+
+		ArgumentCaptor<DCB> dcb = ArgumentCaptor.forClass(DCB.class);
+		verify(os).SetCommState(eq(handle), dcb.capture());
+		assertThat(dcb.getValue().BaudRate, is(19200));
+	}
+
+	/**
+	 * Verifies that <code>SetCommState</code> is not called, when the settings are equal to the
+	 * applied settings.
+	 */
+	@Test
+	@SuppressWarnings("resource")
+	public void reconfigure_unchangedSettings() throws Exception {
+		serialConnectionImpl = new SerialConnectionImpl(port, os, handle, null, new DCBConfigurator(), SETTINGS);
+		when(os.GetCommState(eq(handle), any(DCB.class))).thenReturn(true);
+
+		serialConnectionImpl.reconfigure(from9600bauds8N1().create());
+
+		verify(os, never()).SetCommState(eq(handle), any(DCB.class));
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, when <code>SetCommState</code> fails.
+	 */
+	@Test
+	public void reconfigure_SetCommStateFails() throws Exception {
+		when(os.GetCommState(eq(handle), any(DCB.class))).thenReturn(true);
+		when(os.SetCommState(eq(handle), any(DCB.class))).thenReturn(false);
+		when(os.GetLastError()).thenReturn(DUMMY_ERROR_CODE);
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Unable to set the control settings (COM1)!");
+
+		serialConnectionImpl.reconfigure(SETTINGS);
+	}
+
+	/**
+	 * Verifies that an {@link UnsupportedOperationException} is thrown and no settings are applied,
+	 * when the line mode should be changed while the port is open.
+	 */
+	@Test
+	@SuppressWarnings("resource")
+	public void reconfigure_changedLineMode() throws Exception {
+		serialConnectionImpl = new SerialConnectionImpl(port, os, handle, null, new DCBConfigurator(), SETTINGS);
+
+		exception.expect(UnsupportedOperationException.class);
+		exception.expectMessage("The line mode of port (COM1) can't be changed while it is open!");
+
+		try {
+			serialConnectionImpl.reconfigure(from9600bauds8N1().lineMode(true).eventChar('\n').create());
+		}
+		finally {
+			verify(os, never()).SetCommState(eq(handle), any(DCB.class));
+		}
+	}
+
+	/**
+	 * Verifies that only the input buffer is cleared by {@link SerialConnectionImpl#purgeInput()}
+	 * and the pending read is not aborted.
+	 */
+	@Test
+	public void purgeInput() throws Exception {
+		when(os.PurgeComm(handle, PURGE_RXCLEAR)).thenReturn(true);
+
+		serialConnectionImpl.purgeInput();
+
+		verify(os).PurgeComm(handle, PURGE_RXCLEAR);
+	}
+
+	/**
+	 * Verifies that only the output buffer is cleared by {@link SerialConnectionImpl#purgeOutput()}
+	 * and the pending write is not aborted.
+	 */
+	@Test
+	public void purgeOutput() throws Exception {
+		when(os.PurgeComm(handle, PURGE_TXCLEAR)).thenReturn(true);
+
+		serialConnectionImpl.purgeOutput();
+
+		verify(os).PurgeComm(handle, PURGE_TXCLEAR);
+	}
+
+	/**
+	 * Verifies that an {@link IOException} is thrown, when <code>PurgeComm</code> fails.
+	 */
+	@Test
+	public void purgeOutput_PurgeCommFails() throws Exception {
+		when(os.PurgeComm(handle, PURGE_TXCLEAR)).thenReturn(false);
+		when(os.GetLastError()).thenReturn(DUMMY_ERROR_CODE);
+
+		exception.expect(IOException.class);
+		exception.expectMessage("Unable to purge the buffers of port (COM1)!");
+
+		serialConnectionImpl.purgeOutput();
+	}
+
+	/**
+	 * Verifies that {@link SerialConnectionImpl#drain()} returns immediately, when the output
+	 * buffer of the driver is empty.
+	 */
+	@Test
+	public void drain_outputBufferEmpty() throws Exception {
+		when(os.ClearCommError(eq(handle), any(INT.class), any(COMSTAT.class))).thenReturn(true);
+
+		serialConnectionImpl.drain();
+
+		verify(os).ClearCommError(eq(handle), any(INT.class), any(COMSTAT.class));
+	}
+
 	// Utilities for this Testclass ///////////////////////////////////////////////////////////
 
 	/** Verifies that all native resources are closed or disposed. */
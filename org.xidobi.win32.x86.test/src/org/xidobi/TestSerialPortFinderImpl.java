@@ -18,15 +18,18 @@ package org.xidobi;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -35,6 +38,8 @@ import static org.xidobi.WinApi.ERROR_NO_MORE_ITEMS;
 import static org.xidobi.WinApi.ERROR_SUCCESS;
 import static org.xidobi.WinApi.HKEY_LOCAL_MACHINE;
 import static org.xidobi.WinApi.KEY_READ;
+import static org.xidobi.WinApi.WAIT_OBJECT_0;
+import static org.xidobi.WinApi.WAIT_TIMEOUT;
 
 import java.util.Set;
 
@@ -48,6 +53,7 @@ import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.xidobi.spi.NativeCodeException;
+import org.xidobi.spi.PortChangeNotifier;
 import org.xidobi.structs.HKEY;
 import org.xidobi.structs.INT;
 
@@ -65,6 +71,8 @@ public class TestSerialPortFinderImpl {
 	private static final int SIZE_OF_HKEY = 1;
 	/** Pointer to HKEY */
 	private static final int HKEY_POINTER = 2;
+	/** handle of the registry notification event */
+	private static final int EVENT_HANDLE = 3;
 	/** Subkey for serial ports in the Windows Registry */
 	private static final String HARDWARE_DEVICEMAP_SERIALCOMM = "HARDWARE\\DEVICEMAP\\SERIALCOMM\\";
 
@@ -86,6 +94,8 @@ public class TestSerialPortFinderImpl {
 
 		when(os.sizeOf_HKEY()).thenReturn(SIZE_OF_HKEY);
 		when(os.malloc(SIZE_OF_HKEY)).thenReturn(HKEY_POINTER);
+		when(os.CreateEventA(0, true, false, null)).thenReturn(EVENT_HANDLE);
+		when(os.ResetEvent(EVENT_HANDLE)).thenReturn(true);
 	}
 
 	/**
@@ -256,8 +266,135 @@ public class TestSerialPortFinderImpl {
 		assertThat(result, is(notNullValue()));
 	}
 
+	/**
+	 * Verifies that the Windows Registry is enumerated only once, when a port is looked up twice
+	 * within the time to live of the port index.
+	 */
+	@Test
+	public void get_usesPortIndexWithinTtl() {
+		finder = new SerialPortFinderImpl(os, 60000);
+		withOneSerialPortInRegistry();
+
+		SerialPort result1 = finder.get("COM1");
+		SerialPort result2 = finder.get("COM1");
+
+		assertThat(result1, is(notNullValue()));
+		assertThat(result2, is(result1));
+		verify(os, times(1)).RegEnumValueA(any(HKEY.class), eq(0), any(byte[].class), any(INT.class), eq(0), any(INT.class), any(byte[].class), any(INT.class));
+		verify(os, never()).WaitForSingleObject(EVENT_HANDLE, 0);
+	}
+
+	/**
+	 * Verifies that the port index is reused after the time to live is expired, when the Windows
+	 * Registry reports no change.
+	 */
+	@Test
+	public void get_registryNotChanged() {
+		finder = new SerialPortFinderImpl(os, 0);
+		withOneSerialPortInRegistry();
+		when(os.WaitForSingleObject(EVENT_HANDLE, 0)).thenReturn(WAIT_TIMEOUT);
+
+		SerialPort result1 = finder.get("COM1");
+		SerialPort result2 = finder.get("COM1");
+
+		assertThat(result2, is(result1));
+		verify(os, times(1)).RegEnumValueA(any(HKEY.class), eq(0), any(byte[].class), any(INT.class), eq(0), any(INT.class), any(byte[].class), any(INT.class));
+		verify(os, times(1)).RegNotifyChangeKeyValue(any(HKEY.class), eq(false), anyInt(), eq(EVENT_HANDLE), eq(true));
+	}
+
+	/**
+	 * Verifies that the port index is rebuilt after the time to live is expired, when the Windows
+	 * Registry reports a change.
+	 */
+	@Test
+	public void get_registryChanged() {
+		finder = new SerialPortFinderImpl(os, 0);
+		withOneSerialPortInRegistry();
+		when(os.WaitForSingleObject(EVENT_HANDLE, 0)).thenReturn(WAIT_OBJECT_0);
+
+		finder.get("COM1");
+		SerialPort result = finder.get("COM1");
+
+		assertThat(result, is(notNullValue()));
+		verify(os, times(2)).RegEnumValueA(any(HKEY.class), eq(0), any(byte[].class), any(INT.class), eq(0), any(INT.class), any(byte[].class), any(INT.class));
+		verify(os, times(2)).RegNotifyChangeKeyValue(any(HKEY.class), eq(false), anyInt(), eq(EVENT_HANDLE), eq(true));
+	}
+
+	/**
+	 * Verifies that the subkey and the event of the change notification are released, when the
+	 * finder is closed.
+	 */
+	@Test
+	public void close() {
+		withOneSerialPortInRegistry();
+		finder.get("COM1");
+
+		finder.close();
+		finder.close();
+
+		verify(os, times(2)).RegCloseKey(any(HKEY.class));
+		verify(os).CloseHandle(EVENT_HANDLE);
+	}
+
+	/**
+	 * Verifies that a closed finder enumerates the Windows Registry after the time to live is
+	 * expired, without registering a new change notification.
+	 */
+	@Test
+	public void get_afterClose() {
+		finder = new SerialPortFinderImpl(os, 0);
+		withOneSerialPortInRegistry();
+		finder.get("COM1");
+		finder.close();
+
+		SerialPort result = finder.get("COM1");
+
+		assertThat(result, is(notNullValue()));
+		verify(os, times(2)).RegEnumValueA(any(HKEY.class), eq(0), any(byte[].class), any(INT.class), eq(0), any(INT.class), any(byte[].class), any(INT.class));
+		verify(os, times(1)).CreateEventA(0, true, false, null);
+	}
+
+	/**
+	 * Verifies that an {@link IllegalArgumentException} is thrown, when a negative time to live is
+	 * passed to the constructor.
+	 */
+	@Test
+	@SuppressWarnings("unused")
+	public void new_withNegativeTtl() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("Argument >portIndexTtl< is invalid!");
+
+		new SerialPortFinderImpl(os, -1);
+	}
+
+	/**
+	 * Verifies that a {@link RegistryChangeNotifier} for the subkey of the serial ports is
+	 * returned.
+	 */
+	@Test
+	public void newPortChangeNotifier() {
+		when(os.RegOpenKeyExA(eq(HKEY_LOCAL_MACHINE), eq(HARDWARE_DEVICEMAP_SERIALCOMM), eq(0), eq(KEY_READ), any(HKEY.class))).thenReturn(ERROR_SUCCESS);
+
+		PortChangeNotifier result = finder.newPortChangeNotifier();
+
+		assertThat(result, is(instanceOf(RegistryChangeNotifier.class)));
+		verify(os).RegNotifyChangeKeyValue(any(HKEY.class), eq(false), anyInt(), eq(EVENT_HANDLE), eq(true));
+	}
+
 	// Utilities for this Testclass ///////////////////////////////////////////////////////////
 
+	/** Mocks the Windows Registry, so that it contains the serial port COM1. */
+	private void withOneSerialPortInRegistry() {
+		//@formatter:off
+		when(os.RegOpenKeyExA(eq(HKEY_LOCAL_MACHINE), eq(HARDWARE_DEVICEMAP_SERIALCOMM), eq(0), eq(KEY_READ), any(HKEY.class)))
+			.thenReturn(ERROR_SUCCESS);
+		doAnswer(withValue("/Device/Serial1", "COM1 ", ERROR_SUCCESS))
+			.when(os).RegEnumValueA(any(HKEY.class), eq(0), any(byte[].class), argThat(isINT(255)), eq(0), any(INT.class), any(byte[].class), argThat(isINT(255)));
+		doAnswer(withValue("", "", ERROR_NO_MORE_ITEMS))
+			.when(os).RegEnumValueA(any(HKEY.class), eq(1), any(byte[].class), argThat(isINT(255)), eq(0), any(INT.class), any(byte[].class), argThat(isINT(255)));
+		//@formatter:on
+	}
+
 	/** Returns an answer that mocks the behaviour of the native method RegEnumValueA(). */
 	private Answer<Integer> withValue(final String lpValueName, final String lpData, final int status) {
 		return new Answer<Integer>() {
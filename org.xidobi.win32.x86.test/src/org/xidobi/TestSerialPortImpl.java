@@ -19,17 +19,16 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
-import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static org.xidobi.SerialPortImpl.COMM_EVENTS;
+import static org.xidobi.SerialPortImpl.LINE_MODE_COMM_EVENTS;
 import static org.xidobi.WinApi.ERROR_ACCESS_DENIED;
 import static org.xidobi.WinApi.ERROR_FILE_NOT_FOUND;
-import static org.xidobi.WinApi.EV_RXCHAR;
 import static org.xidobi.WinApi.FILE_FLAG_OVERLAPPED;
 import static org.xidobi.WinApi.GENERIC_READ;
 import static org.xidobi.WinApi.GENERIC_WRITE;
@@ -82,6 +81,9 @@ public class TestSerialPortImpl {
 	@Mock
 	private DCBConfigurator configurator;
 
+	/** the template of the settings */
+	private DCB template = new DCB();
+
 	/** expected exceptions */
 	@Rule
 	public ExpectedException exception = ExpectedException.none();
@@ -92,6 +94,7 @@ public class TestSerialPortImpl {
 		initMocks(this);
 
 		port = new SerialPortImpl(os, "COM1", "description", configurator);
+		when(configurator.getTemplate(settings)).thenReturn(template);
 
 		when(os.sizeOf_OVERLAPPED()).thenReturn(SIZE_OVERLAPPED);
 		when(os.malloc(SIZE_OVERLAPPED)).thenReturn(OVERALAPPED_PTR);
@@ -171,21 +174,20 @@ public class TestSerialPortImpl {
 
 	/**
 	 * Verifies that an {@link IOException} is thrown, when the call to
-	 * {@link WinApi#GetCommState(int, DCB)} is unsuccessful and returns <code>false</code>. In this
-	 * case the {@link IOException} must contain the error code that is returned by
+	 * {@link WinApi#ApplyCommState(int, DCB)} is unsuccessful and returns <code>false</code>. In
+	 * this case the {@link IOException} must contain the error code that is returned by
 	 * {@link WinApi#GetLastError()} .
 	 * 
 	 * @throws Exception
 	 */
 	@Test
-	public void open_fail_GetCommStateReturnsFalse() throws Exception {
-		when(os.CreateFileA(anyString(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt())).thenReturn(PORT_HANDLE);
-		when(os.GetCommState(eq(PORT_HANDLE), anyDCB())).thenReturn(false);
+	public void open_fail_ApplyCommStateReturnsFalse() throws Exception {
+		when(os.CreateFileA("\\\\.\\COM1", GENERIC_READ | GENERIC_WRITE, 0, 0, OPEN_EXISTING, FILE_FLAG_OVERLAPPED, 0)).thenReturn(PORT_HANDLE);
+		when(os.ApplyCommState(PORT_HANDLE, template)).thenReturn(false);
 		when(os.GetLastError()).thenReturn(DUMMY_ERROR_CODE);
-		when(os.PurgeComm(PORT_HANDLE, PURGE_RXCLEAR | PURGE_TXCLEAR)).thenReturn(true);
 
 		exception.expect(IOException.class);
-		exception.expectMessage("Unable to retrieve the current control settings for port (COM1)!\r\nError-Code " + DUMMY_ERROR_CODE);
+		exception.expectMessage("Unable to set the control settings (COM1)!\r\nError-Code " + DUMMY_ERROR_CODE);
 
 		try {
 			port.open(settings);
@@ -196,28 +198,21 @@ public class TestSerialPortImpl {
 	}
 
 	/**
-	 * Verifies that an {@link IOException} is thrown, when the call to
-	 * {@link WinApi#GetCommState(int, DCB)} is unsuccessful and returns <code>false</code>. In this
-	 * case the {@link IOException} must contain the error code that is returned by
-	 * {@link WinApi#GetLastError()} .
+	 * Verifies that the port is not opened, when the serial port settings are invalid.
 	 * 
 	 * @throws Exception
 	 */
 	@Test
-	public void open_fail_SetCommStateReturnsFalse() throws Exception {
-		when(os.CreateFileA("\\\\.\\COM1", GENERIC_READ | GENERIC_WRITE, 0, 0, OPEN_EXISTING, FILE_FLAG_OVERLAPPED, 0)).thenReturn(PORT_HANDLE);
-		when(os.GetCommState(eq(PORT_HANDLE), anyDCB())).thenReturn(true);
-		when(os.SetCommState(eq(PORT_HANDLE), anyDCB())).thenReturn(false);
-		when(os.GetLastError()).thenReturn(DUMMY_ERROR_CODE);
+	public void open_fail_invalidSettings() throws Exception {
+		when(configurator.getTemplate(settings)).thenThrow(new IllegalArgumentException("Invalid serial port settings!"));
 
-		exception.expect(IOException.class);
-		exception.expectMessage("Unable to set the control settings (COM1)!\r\nError-Code " + DUMMY_ERROR_CODE);
+		exception.expect(IllegalArgumentException.class);
 
 		try {
 			port.open(settings);
 		}
 		finally {
-			verify(os).CloseHandle(PORT_HANDLE);
+			verify(os, never()).CreateFileA(anyString(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt());
 		}
 	}
 
@@ -232,8 +227,7 @@ public class TestSerialPortImpl {
 	@Test
 	public void open_fail_PurgeCommReturnsFalse() throws Exception {
 		when(os.CreateFileA("\\\\.\\COM1", GENERIC_READ | GENERIC_WRITE, 0, 0, OPEN_EXISTING, FILE_FLAG_OVERLAPPED, 0)).thenReturn(PORT_HANDLE);
-		when(os.GetCommState(eq(PORT_HANDLE), anyDCB())).thenReturn(true);
-		when(os.SetCommState(eq(PORT_HANDLE), anyDCB())).thenReturn(true);
+		when(os.ApplyCommState(PORT_HANDLE, template)).thenReturn(true);
 		when(os.PurgeComm(PORT_HANDLE, PURGE_RXCLEAR | PURGE_TXCLEAR)).thenReturn(false);
 		when(os.GetLastError()).thenReturn(DUMMY_ERROR_CODE);
 
@@ -259,10 +253,9 @@ public class TestSerialPortImpl {
 	@Test
 	public void open_fail_SetCommMaskReturnsFalse() throws Exception {
 		when(os.CreateFileA("\\\\.\\COM1", GENERIC_READ | GENERIC_WRITE, 0, 0, OPEN_EXISTING, FILE_FLAG_OVERLAPPED, 0)).thenReturn(PORT_HANDLE);
-		when(os.GetCommState(eq(PORT_HANDLE), anyDCB())).thenReturn(true);
-		when(os.SetCommState(eq(PORT_HANDLE), anyDCB())).thenReturn(true);
+		when(os.ApplyCommState(PORT_HANDLE, template)).thenReturn(true);
 		when(os.PurgeComm(PORT_HANDLE, PURGE_RXCLEAR | PURGE_TXCLEAR)).thenReturn(true);
-		when(os.SetCommMask(PORT_HANDLE, EV_RXCHAR)).thenReturn(false);
+		when(os.SetCommMask(PORT_HANDLE, COMM_EVENTS)).thenReturn(false);
 
 		when(os.GetLastError()).thenReturn(DUMMY_ERROR_CODE);
 
@@ -286,24 +279,45 @@ public class TestSerialPortImpl {
 	@Test
 	public void open_succeed() throws Exception {
 		when(os.CreateFileA("\\\\.\\COM1", GENERIC_READ | GENERIC_WRITE, 0, 0, OPEN_EXISTING, FILE_FLAG_OVERLAPPED, 0)).thenReturn(PORT_HANDLE);
-		when(os.GetCommState(eq(PORT_HANDLE), anyDCB())).thenReturn(true);
-		when(os.SetCommState(eq(PORT_HANDLE), anyDCB())).thenReturn(true);
+		when(os.ApplyCommState(PORT_HANDLE, template)).thenReturn(true);
 		when(os.PurgeComm(PORT_HANDLE, PURGE_RXCLEAR | PURGE_TXCLEAR)).thenReturn(true);
-		when(os.SetCommMask(PORT_HANDLE, EV_RXCHAR)).thenReturn(true);
+		when(os.SetCommMask(PORT_HANDLE, COMM_EVENTS)).thenReturn(true);
 		when(os.CreateEventA(0, true, false, null)).thenReturn(1);
 
 		SerialConnection result = port.open(settings);
 
 		verify(os).CreateFileA("\\\\.\\COM1", GENERIC_READ | GENERIC_WRITE, 0, 0, OPEN_EXISTING, FILE_FLAG_OVERLAPPED, 0);
-		verify(os).GetCommState(eq(PORT_HANDLE), anyDCB());
-		verify(configurator).configureDCB(anyDCB(), eq(settings));
-		verify(os).SetCommState(eq(PORT_HANDLE), anyDCB());
+		verify(configurator).getTemplate(settings);
+		verify(os).ApplyCommState(PORT_HANDLE, template);
 		verify(os).PurgeComm(PORT_HANDLE, PURGE_RXCLEAR | PURGE_TXCLEAR);
 
 		verify(os, never()).CloseHandle(PORT_HANDLE);
 		assertThat(result, is(notNullValue()));
 	}
 
+	/**
+	 * Verifies that the port is registered for <code>EV_RXFLAG</code> instead of
+	 * <code>EV_RXCHAR</code>, when the line mode is enabled.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void open_lineMode() throws Exception {
+		when(settings.isLineMode()).thenReturn(true);
+		when(settings.getEventChar()).thenReturn('\n');
+		when(os.CreateFileA("\\\\.\\COM1", GENERIC_READ | GENERIC_WRITE, 0, 0, OPEN_EXISTING, FILE_FLAG_OVERLAPPED, 0)).thenReturn(PORT_HANDLE);
+		when(os.ApplyCommState(PORT_HANDLE, template)).thenReturn(true);
+		when(os.PurgeComm(PORT_HANDLE, PURGE_RXCLEAR | PURGE_TXCLEAR)).thenReturn(true);
+		when(os.SetCommMask(PORT_HANDLE, LINE_MODE_COMM_EVENTS)).thenReturn(true);
+		when(os.CreateEventA(0, true, false, null)).thenReturn(1);
+
+		port.open(settings);
+
+		verify(os).SetCommMask(PORT_HANDLE, LINE_MODE_COMM_EVENTS);
+		verify(os, never()).SetCommMask(PORT_HANDLE, COMM_EVENTS);
+		verify(os, never()).CloseHandle(PORT_HANDLE);
+	}
+
 	/**
 	 * Verifies that an {@link IOException} is thrown, when <code>CreateFile(...)</code> returns an
 	 * invalid handle and the last error code is <code>ERROR_ACCESS_DENIED</code>.
@@ -367,11 +381,4 @@ public class TestSerialPortImpl {
 		SerialPort port = new SerialPortImpl(os, "COM1", "/device/serial0");
 		assertThat(port.toString(), is("SerialPortImpl [portName=COM1, description=/device/serial0]"));
 	}
-
-	// Utilities for this Testclass ///////////////////////////////////////////////////////////
-
-	/** Matcher for {@link DCB} */
-	private DCB anyDCB() {
-		return any(DCB.class);
-	}
 }
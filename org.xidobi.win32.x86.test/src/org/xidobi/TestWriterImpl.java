@@ -18,6 +18,7 @@ package org.xidobi;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -36,6 +37,7 @@ import static org.xidobi.WinApi.WAIT_OBJECT_0;
 import static org.xidobi.WinApi.WAIT_TIMEOUT;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -45,6 +47,7 @@ import org.mockito.Mock;
 import org.xidobi.spi.NativeCodeException;
 import org.xidobi.structs.DWORD;
 import org.xidobi.structs.INT;
+import org.xidobi.structs.NativeByteArray;
 import org.xidobi.structs.OVERLAPPED;
 
 /**
@@ -76,6 +79,9 @@ public class TestWriterImpl {
 	/** some dummy data, that should be written */
 	private static final byte[] DATA = new byte[5];
 
+	/** Dummy pointer to the staging buffer of the gathering writes */
+	private static final int PTR_STAGING_BUFFER = 3;
+
 	/** check exceptions */
 	@Rule
 	public ExpectedException exception = ExpectedException.none();
@@ -648,6 +654,78 @@ public class TestWriterImpl {
 		writer.write(DATA);
 	}
 
+	/**
+	 * Verifies that the remaining bytes of heap and direct buffers are copied into the staging
+	 * buffer, which is written with a single <code>WriteFile</code>.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void write_buffers() throws IOException {
+		ByteBuffer header = ByteBuffer.wrap(new byte[] { 1, 2 });
+		ByteBuffer payload = ByteBuffer.wrap(new byte[] { 0, 3, 4, 5 }, 1, 3);
+		ByteBuffer crc = ByteBuffer.allocateDirect(2);
+		mockWriteStagingBufferSucceeds(7);
+
+		writer.write(new ByteBuffer[] { header, payload, crc }, 7);
+
+		verify(os).setByteArray(any(NativeByteArray.class), eq(0), eq(header.array()), eq(0), eq(2));
+		verify(os).setByteArray(any(NativeByteArray.class), eq(2), eq(payload.array()), eq(1), eq(3));
+		verify(os).setByteArray(any(NativeByteArray.class), eq(5), eq(crc), eq(0), eq(2));
+		verify(os, times(1)).WriteFile(eq(PORT_HANDLE), any(NativeByteArray.class), eq(7), anyDWORD(), anyOVERLAPPED());
+		verify(os, never()).WriteFile(anyInt(), any(byte[].class), anyInt(), anyDWORD(), anyOVERLAPPED());
+	}
+
+	/**
+	 * Verifies that the staging buffer is reused by the following gathering writes.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void write_buffersReusesStagingBuffer() throws IOException {
+		mockWriteStagingBufferSucceeds(DATA.length);
+
+		writer.write(new ByteBuffer[] { ByteBuffer.wrap(DATA) }, DATA.length);
+		writer.write(new ByteBuffer[] { ByteBuffer.wrap(DATA) }, DATA.length);
+
+		verify(os, times(1)).malloc(256);
+		verify(os, never()).free(PTR_STAGING_BUFFER);
+	}
+
+	/**
+	 * Verifies that the staging buffer is replaced by a buffer of at least the double size, when
+	 * the data doesn't fit.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void write_buffersGrowsStagingBuffer() throws IOException {
+		mockWriteStagingBufferSucceeds(DATA.length);
+		writer.write(new ByteBuffer[] { ByteBuffer.wrap(DATA) }, DATA.length);
+
+		when(os.malloc(512)).thenReturn(PTR_STAGING_BUFFER + 1);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(300);
+		writer.write(new ByteBuffer[] { ByteBuffer.wrap(new byte[300]) }, 300);
+
+		verify(os).free(PTR_STAGING_BUFFER);
+		verify(os).malloc(512);
+	}
+
+	/**
+	 * Verifies that a call to dispose() frees the staging buffer.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void dispose_freesStagingBuffer() throws IOException {
+		mockWriteStagingBufferSucceeds(DATA.length);
+		writer.write(new ByteBuffer[] { ByteBuffer.wrap(DATA) }, DATA.length);
+
+		writer.dispose();
+
+		verify(os).free(PTR_STAGING_BUFFER);
+	}
+
 	/**
 	 * Verifies that a call to close() frees all handles.
 	 * 
@@ -685,6 +763,13 @@ public class TestWriterImpl {
 		return any(DWORD.class);
 	}
 
+	/** Mocks <code>WriteFile</code> of the staging buffer to succeed immediatly. */
+	private void mockWriteStagingBufferSucceeds(int length) {
+		when(os.malloc(256)).thenReturn(PTR_STAGING_BUFFER);
+		when(os.WriteFile(eq(PORT_HANDLE), any(NativeByteArray.class), anyInt(), anyDWORD(), anyOVERLAPPED())).thenReturn(true);
+		when(os.getValue_DWORD(anyDWORD())).thenReturn(length);
+	}
+
 	/** Mocks <code>WriteFile</code> to fail with given error code. */
 	private void mockWriteFileFailsWith(int errorCode) {
 		when(os.WriteFile(eq(PORT_HANDLE), eq(DATA), eq(DATA.length), anyDWORD(), anyOVERLAPPED())).thenReturn(false);
@@ -21,6 +21,9 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.xidobi.WinApi.FORMAT_MESSAGE_FROM_SYSTEM;
@@ -211,6 +214,55 @@ public class TestThrowables {
 		assertThat(result, is("An error message!\r\nError-Code 1: This is a native error"));
 	}
 
+	/**
+	 * Verifies that the native error message is formatted only once per error code.
+	 */
+	@Test
+	public void getErrorMessage_cached() {
+		//@formatter:off
+		doAnswer(withNativeErrorMessage("This is a native error\n\n")).
+			when(os).FormatMessageA(eq(FORMAT), eq((Void) null), eq(ERROR_CODE), anyInt(), any(byte[].class), eq(255), eq((Void) null));
+		//@formatter:on
+
+		Throwables.getErrorMessage(os, MESSAGE, ERROR_CODE);
+		String result = Throwables.getErrorMessage(os, MESSAGE, ERROR_CODE);
+
+		assertThat(result, is("An error message!\r\nError-Code 1: This is a native error"));
+		verify(os, times(1)).FormatMessageA(eq(FORMAT), eq((Void) null), eq(ERROR_CODE), anyInt(), any(byte[].class), eq(255), eq((Void) null));
+	}
+
+	/**
+	 * Verifies that the cache is cleared, when more than {@link Throwables#MAX_CACHED_MESSAGES}
+	 * error codes are formatted.
+	 */
+	@Test
+	public void getErrorMessage_cacheIsBounded() {
+		for (int errorCode = 0; errorCode <= Throwables.MAX_CACHED_MESSAGES; errorCode++)
+			Throwables.getErrorMessage(os, errorCode);
+		Throwables.getErrorMessage(os, 0);
+
+		verify(os, times(2)).FormatMessageA(eq(FORMAT), eq((Void) null), eq(0), anyInt(), any(byte[].class), eq(255), eq((Void) null));
+	}
+
+	/**
+	 * Verifies that the message of the {@link IOException} and the {@link NativeCodeException} is
+	 * built, when it is requested.
+	 */
+	@Test
+	public void newException_messageIsBuiltLazily() {
+		//@formatter:off
+		doAnswer(withNativeErrorMessage("This is a native error\n\n")).
+			when(os).FormatMessageA(eq(FORMAT), eq((Void) null), eq(ERROR_CODE), anyInt(), any(byte[].class), eq(255), eq((Void) null));
+		//@formatter:on
+
+		IOException ioException = Throwables.newIOException(os, MESSAGE, ERROR_CODE);
+		NativeCodeException nativeCodeException = Throwables.newNativeCodeException(os, MESSAGE, ERROR_CODE);
+		verifyZeroInteractions(os);
+
+		assertThat(ioException, is(ioException("An error message!\r\nError-Code 1: This is a native error")));
+		assertThat(nativeCodeException, is(nativeCodeException("An error message!\r\nError-Code 1: This is a native error")));
+	}
+
 	// Utilities for this Testclass ///////////////////////////////////////////////////////////
 
 	/** Matcher for {@link NativeCodeException} starting with the message. */
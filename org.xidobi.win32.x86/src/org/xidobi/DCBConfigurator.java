@@ -15,6 +15,8 @@
  */
 package org.xidobi;
 
+import static org.xidobi.FlowControl.FLOWCONTROL_RTSCTS_IN;
+import static org.xidobi.FlowControl.FLOWCONTROL_RTSCTS_IN_OUT;
 import static org.xidobi.StopBits.STOPBITS_1_5;
 import static org.xidobi.StopBits.STOPBITS_2;
 import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
@@ -29,10 +31,15 @@ import static org.xidobi.structs.DCB.ONESTOPBIT;
 import static org.xidobi.structs.DCB.RTS_CONTROL_DISABLE;
 import static org.xidobi.structs.DCB.RTS_CONTROL_ENABLE;
 import static org.xidobi.structs.DCB.RTS_CONTROL_HANDSHAKE;
+import static org.xidobi.structs.DCB.RTS_CONTROL_TOGGLE;
 import static org.xidobi.structs.DCB.SPACEPARITY;
 import static org.xidobi.structs.DCB.TWOSTOPBITS;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.xidobi.structs.DCB;
 
@@ -52,6 +59,12 @@ public class DCBConfigurator {
 	/** <code>int</code> value for <code>false</code> */
 	private static final int FALSE = 0;
 
+	/** the maximum number of cached templates, the cache is cleared when it is full */
+	private static final int MAX_TEMPLATES = 32;
+
+	/** the cached {@link DCB} templates per serial port settings */
+	private final ConcurrentMap<SerialPortSettings, DCB> templates = new ConcurrentHashMap<SerialPortSettings, DCB>();
+
 	/**
 	 * Configures the native {@link DCB} with the values from the given serial port settings.
 	 * 
@@ -66,6 +79,8 @@ public class DCBConfigurator {
 	 *             <li>if the serial port settings contains illegal value combinations: <i>The use
 	 *             of 5 data bits with 2 stop bits is an invalid combination, as is 6, 7, or 8 data
 	 *             bits with 1.5 stop bits.</i></li>
+	 *             <li>if the RS-485 mode is combined with a RTS/CTS flow control on the input,
+	 *             because both control the RTS</li>
 	 *             </ul>
 	 */
 	public void configureDCB(@Nonnull DCB dcb, @Nonnull SerialPortSettings settings) throws IllegalArgumentException {
@@ -83,10 +98,106 @@ public class DCBConfigurator {
 		configureDTR(dcb, settings);
 
 		configureFlowControl(dcb, settings);
+		configureRS485(dcb, settings);
+		configureCharacters(dcb, settings);
 
 		configureFixValues(dcb);
 	}
 
+	/**
+	 * Returns a {@link DCB} template with the values of the given serial port settings, see
+	 * {@link #configureDCB(DCB, SerialPortSettings)}. The templates are cached per settings, so
+	 * equal settings are validated and converted only once. The template can be applied with
+	 * {@link WinApi#ApplyCommState(int, DCB)}.
+	 * <p>
+	 * <b>IMPORTANT:</b> The returned template is shared and must not be modified!
+	 * 
+	 * @param settings
+	 *            the serial port settings, must not be <code>null</code>
+	 * @return the template, never <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             if the serial port settings are invalid
+	 */
+	@Nonnull
+	DCB getTemplate(@Nonnull SerialPortSettings settings) throws IllegalArgumentException {
+		checkArgumentNotNull(settings, "settings");
+
+		DCB template = templates.get(settings);
+		if (template != null)
+			return template;
+
+		template = new DCB();
+		configureDCB(template, settings);
+
+		if (templates.size() >= MAX_TEMPLATES)
+			templates.clear();
+		templates.put(settings, template);
+		return template;
+	}
+
+	/**
+	 * Configures only the values of the native {@link DCB}, that differ between the current and the
+	 * new serial port settings. The values, that are not part of the settings, are left unchanged.
+	 * 
+	 * @param dcb
+	 *            the {@link DCB} with the current state of the port, must not be <code>null</code>
+	 * @param current
+	 *            the current serial port settings, <code>null</code> if they are unknown. In this
+	 *            case the {@link DCB} is configured completely.
+	 * @param settings
+	 *            the new serial port settings, must not be <code>null</code>
+	 * @return <code>true</code>, if the {@link DCB} was changed, <code>false</code> if the settings
+	 *         are equal
+	 * @throws IllegalArgumentException
+	 *             if the new serial port settings are invalid, see
+	 *             {@link #configureDCB(DCB, SerialPortSettings)}
+	 */
+	public boolean reconfigureDCB(@Nonnull DCB dcb, @Nullable SerialPortSettings current, @Nonnull SerialPortSettings settings) throws IllegalArgumentException {
+		checkArgumentNotNull(dcb, "dcb");
+		checkArgumentNotNull(settings, "settings");
+
+		if (current == null) {
+			configureDCB(dcb, settings);
+			return true;
+		}
+
+		checkPortSettings(settings);
+
+		boolean changed = false;
+		if (current.getBauds() != settings.getBauds()) {
+			configureBaudRate(dcb, settings);
+			changed = true;
+		}
+		if (current.getDataBits() != settings.getDataBits()) {
+			configureDataBits(dcb, settings);
+			changed = true;
+		}
+		if (current.getStopBits() != settings.getStopBits()) {
+			configureStopBits(dcb, settings);
+			changed = true;
+		}
+		if (current.getParity() != settings.getParity()) {
+			configureParity(dcb, settings);
+			changed = true;
+		}
+		if (current.isDTR() != settings.isDTR()) {
+			configureDTR(dcb, settings);
+			changed = true;
+		}
+		// the RTS, the flow control and the RS-485 mode are all configured by fRtsControl
+		if (current.isRTS() != settings.isRTS() || current.getFlowControl() != settings.getFlowControl() || current.isRS485() != settings.isRS485()) {
+			configureRTS(dcb, settings);
+			configureFlowControl(dcb, settings);
+			configureRS485(dcb, settings);
+			changed = true;
+		}
+		if (!haveEqualCharacters(current, settings)) {
+			configureCharacters(dcb, settings);
+			changed = true;
+		}
+		return changed;
+	}
+
 	/**
 	 * Checks the serial port settings for invalid combinations.
 	 * <p>
@@ -94,6 +205,13 @@ public class DCBConfigurator {
 	 * bits with 1.5 stop bits.</i>
 	 */
 	private void checkPortSettings(SerialPortSettings settings) throws IllegalArgumentException {
+		if (settings.getXonChar() == settings.getXoffChar())
+			throw new IllegalArgumentException("Invalid serial port settings! The XON and XOFF characters must be different.");
+
+		FlowControl flowControl = settings.getFlowControl();
+		if (settings.isRS485() && (flowControl == FLOWCONTROL_RTSCTS_IN || flowControl == FLOWCONTROL_RTSCTS_IN_OUT))
+			throw new IllegalArgumentException("Invalid serial port settings! The RS-485 mode can't be combined with a RTS/CTS flow control on the input.");
+
 		DataBits dataBits = settings.getDataBits();
 		StopBits stopBits = settings.getStopBits();
 		switch (dataBits) {
@@ -226,6 +344,16 @@ public class DCBConfigurator {
 		}
 	}
 
+	/**
+	 * Configures the RS-485 mode on the {@link DCB}: RTS is turned on by the driver, while data is
+	 * sent. The delays before and after sending are not supported by the Windows serial driver and
+	 * are rejected by {@link #checkPortSettings(SerialPortSettings)}.
+	 */
+	private void configureRS485(DCB dcb, SerialPortSettings settings) {
+		if (settings.isRS485())
+			dcb.fRtsControl = RTS_CONTROL_TOGGLE;
+	}
+
 	/** Resets the other values to default. */
 	private void configureFixValues(DCB dcb) {
 
@@ -235,12 +363,48 @@ public class DCBConfigurator {
 		dcb.fOutxDsrFlow = FALSE;
 		dcb.fDsrSensitivity = FALSE;
 		dcb.fTXContinueOnXoff = TRUE;
-		dcb.fErrorChar = FALSE;
 		dcb.fNull = FALSE;
 		dcb.fAbortOnError = FALSE;
-		dcb.XonLim = 2048;
-		dcb.XoffLim = 512;
-		dcb.XonChar = (char) 17; // DC1
-		dcb.XoffChar = (char) 19; // DC3
+	}
+
+	/**
+	 * Configures the XON/XOFF limits, the XON/XOFF characters and the error, EOF and event
+	 * characters on the {@link DCB}.
+	 */
+	private void configureCharacters(DCB dcb, SerialPortSettings settings) {
+		dcb.XonLim = (short) settings.getXonLimit();
+		dcb.XoffLim = (short) settings.getXoffLimit();
+		dcb.XonChar = settings.getXonChar();
+		dcb.XoffChar = settings.getXoffChar();
+
+		Character errorChar = settings.getErrorChar();
+		if (errorChar != null) {
+			dcb.fErrorChar = TRUE;
+			dcb.ErrorChar = errorChar.charValue();
+		}
+		else {
+			dcb.fErrorChar = FALSE;
+			dcb.ErrorChar = 0;
+		}
+
+		dcb.EofChar = settings.getEofChar();
+		dcb.EvtChar = settings.getEventChar();
+	}
+
+	/**
+	 * Returns <code>true</code>, if the XON/XOFF limits and the special characters of the given
+	 * settings are equal.
+	 */
+	private boolean haveEqualCharacters(SerialPortSettings current, SerialPortSettings settings) {
+		Character currentErrorChar = current.getErrorChar();
+		//@formatter:off
+		return current.getXonLimit() == settings.getXonLimit()
+				&& current.getXoffLimit() == settings.getXoffLimit()
+				&& current.getXonChar() == settings.getXonChar()
+				&& current.getXoffChar() == settings.getXoffChar()
+				&& (currentErrorChar == null ? settings.getErrorChar() == null : currentErrorChar.equals(settings.getErrorChar()))
+				&& current.getEofChar() == settings.getEofChar()
+				&& current.getEventChar() == settings.getEventChar();
+		//@formatter:on
 	}
 }
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.xidobi.WinApi.ERROR_OPERATION_ABORTED;
+import static org.xidobi.WinApi.INFINITE;
+import static org.xidobi.WinApi.MAXIMUM_WAIT_OBJECTS;
+import static org.xidobi.WinApi.WAIT_FAILED;
+import static org.xidobi.WinApi.WAIT_OBJECT_0;
+import static org.xidobi.WinApi.WAIT_TIMEOUT;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+import static org.xidobi.utils.Throwables.newNativeCodeException;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+
+import org.xidobi.structs.INT;
+
+/**
+ * Waits for the overlapped events of many serial ports with a few threads. A thread, that waits
+ * for an event with {@link #await(int, int, INT)}, doesn't block in native code, but is parked
+ * until a poller thread detects the signaled event with <code>WaitForMultipleObjects</code> and
+ * unparks it. A poller thread monitors up to {@value #EVENTS_PER_THREAD} events, additional poller
+ * threads are started on demand.
+ * <p>
+ * This allows to read and write many serial ports with lightweight threads, e.g. one thread per
+ * port, without a native thread for each pending wait. The poller is passed to the
+ * {@link SerialPortFinderImpl}, ports found by a finder without a poller wait with
+ * <code>WaitForSingleObject</code>.
+ * <p>
+ * <b>IMPORTANT:</b> The poller must be closed, when it is not used anymore!
+ * 
+ * <pre>
+ * EventPoller poller = new EventPoller(OS.OS);
+ * SerialPortFinder finder = new SerialPortFinderImpl(OS.OS, 1000, poller);
+ * ...
+ * poller.close();
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see IoOperationImpl
+ */
+public class EventPoller implements Closeable {
+
+	/** the maximum number of events, that are monitored by a single poller thread */
+	static final int EVENTS_PER_THREAD = MAXIMUM_WAIT_OBJECTS - 1;
+
+	/** marks a wait, that is not yet completed */
+	private static final int PENDING = -2;
+	/** marks a wait, that was given up by the waiting thread */
+	private static final int CANCELLED = -3;
+
+	/** the native Win32-API, never <code>null</code> */
+	private final WinApi os;
+
+	/** the started poller threads, guarded by <code>this</code> */
+	private final List<PollerThread> threads = new ArrayList<PollerThread>();
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this poller is closed
+	 * <li> <code>false</code> if this poller is not closed
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a new poller. The poller threads are started on demand.
+	 * 
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 */
+	public EventPoller(@Nonnull WinApi os) {
+		this.os = checkArgumentNotNull(os, "os");
+	}
+
+	/**
+	 * Parks the current thread, until the given event is signaled or the timeout elapses.
+	 * 
+	 * @param hEvent
+	 *            the handle of the event
+	 * @param milliseconds
+	 *            the timeout in milliseconds, must not be negative, {@link WinApi#INFINITE
+	 *            INFINITE} to wait until the event is signaled
+	 * @param lastError
+	 *            receives the error code, if {@link WinApi#WAIT_FAILED WAIT_FAILED} is returned,
+	 *            must not be <code>null</code>
+	 * @return <ul>
+	 *         <li>{@link WinApi#WAIT_OBJECT_0 WAIT_OBJECT_0}, if the event was signaled
+	 *         <li>{@link WinApi#WAIT_TIMEOUT WAIT_TIMEOUT}, if the timeout elapsed
+	 *         <li>{@link WinApi#WAIT_FAILED WAIT_FAILED}, if the event couldn't be monitored or
+	 *         this poller was closed
+	 *         </ul>
+	 * @throws InterruptedIOException
+	 *             if the current thread was interrupted
+	 */
+	public int await(int hEvent, int milliseconds, @Nonnull INT lastError) throws InterruptedIOException {
+		checkArgument(milliseconds >= 0 || milliseconds == INFINITE, "milliseconds", "Expected a value greater or equal to 0 or INFINITE!");
+		checkArgumentNotNull(lastError, "lastError");
+
+		Waiter waiter = new Waiter(hEvent);
+		PollerThread thread = register(waiter);
+		if (thread == null)
+			return aborted(lastError);
+
+		long deadline = nanoTime() + MILLISECONDS.toNanos(milliseconds);
+		while (true) {
+			if (Thread.interrupted()) {
+				if (waiter.cancel(thread))
+					throw new InterruptedIOException("The thread for the I/O operation is interrupted!");
+				currentThread().interrupt();
+			}
+			else if (waiter.isPending() && milliseconds == INFINITE) {
+				LockSupport.park(this);
+				continue;
+			}
+			else if (waiter.isPending()) {
+				long remaining = deadline - nanoTime();
+				if (remaining > 0) {
+					LockSupport.parkNanos(this, remaining);
+					continue;
+				}
+				if (waiter.cancel(thread))
+					return WAIT_TIMEOUT;
+			}
+
+			return waiter.getResult(lastError);
+		}
+	}
+
+	/**
+	 * Stops the poller threads. Threads, that are waiting for an event, return
+	 * {@link WinApi#WAIT_FAILED WAIT_FAILED} with the error code
+	 * {@link WinApi#ERROR_OPERATION_ABORTED ERROR_OPERATION_ABORTED}. Calling this method more than
+	 * once has no effect.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (isClosed)
+				return;
+			isClosed = true;
+		}
+		for (PollerThread thread : threads)
+			thread.wakeUp();
+	}
+
+	/**
+	 * Assigns the given waiter to a poller thread, that monitors less than
+	 * {@value #EVENTS_PER_THREAD} events. Returns <code>null</code>, if this poller is closed.
+	 */
+	private synchronized PollerThread register(Waiter waiter) {
+		if (isClosed)
+			return null;
+
+		PollerThread thread = null;
+		for (PollerThread candidate : threads) {
+			if (candidate.load.get() < EVENTS_PER_THREAD) {
+				thread = candidate;
+				break;
+			}
+		}
+		if (thread == null) {
+			thread = new PollerThread(threads.size() + 1);
+			threads.add(thread);
+			thread.start();
+		}
+
+		thread.load.incrementAndGet();
+		thread.added.add(waiter);
+		thread.wakeUp();
+		return thread;
+	}
+
+	/** Sets the error code for an aborted wait and returns {@link WinApi#WAIT_FAILED}. */
+	private static int aborted(INT lastError) {
+		lastError.value = ERROR_OPERATION_ABORTED;
+		return WAIT_FAILED;
+	}
+
+	/** A thread, that waits for an event. */
+	private static final class Waiter {
+
+		/** the handle of the event */
+		private final int hEvent;
+		/** the waiting thread */
+		private final Thread thread = currentThread();
+		/** the result of the wait, {@link EventPoller#PENDING} or {@link EventPoller#CANCELLED} */
+		private int state = PENDING;
+		/** the error code, if the wait failed */
+		private int error;
+
+		/** Creates a new waiter for the given event. */
+		private Waiter(int hEvent) {
+			this.hEvent = hEvent;
+		}
+
+		/** Returns <code>true</code>, if the wait isn't completed or cancelled yet. */
+		private synchronized boolean isPending() {
+			return state == PENDING;
+		}
+
+		/** Returns the result of the wait and sets the error code, if the wait failed. */
+		private synchronized int getResult(INT lastError) {
+			lastError.value = error;
+			return state;
+		}
+
+		/**
+		 * Completes the wait with the given result and unparks the waiting thread, if the wait
+		 * wasn't completed or cancelled before.
+		 */
+		private synchronized void complete(int result, int errorCode) {
+			if (state != PENDING)
+				return;
+			state = result;
+			error = errorCode;
+			LockSupport.unpark(thread);
+		}
+
+		/**
+		 * Cancels the wait and asks the given poller thread to stop monitoring the event. Returns
+		 * <code>false</code>, if the wait was already completed.
+		 */
+		private boolean cancel(PollerThread poller) {
+			synchronized (this) {
+				if (state != PENDING)
+					return false;
+				state = CANCELLED;
+			}
+			poller.wakeUp();
+			return true;
+		}
+	}
+
+	/** Monitors the events of up to {@value EventPoller#EVENTS_PER_THREAD} waiters. */
+	private final class PollerThread extends Thread {
+
+		/** signals new or cancelled waiters and the closing of the poller */
+		private final int wakeUpEvent;
+		/** the waiters, that were not yet monitored */
+		private final Queue<Waiter> added = new ConcurrentLinkedQueue<Waiter>();
+		/** the number of waiters, that are assigned to this thread */
+		private final AtomicInteger load = new AtomicInteger();
+
+		/** the monitored waiters, only accessed by this thread */
+		private final List<Waiter> waiters = new ArrayList<Waiter>();
+		/** the handles to wait for, the wake up event followed by the events of the waiters */
+		private final int[] handles = new int[MAXIMUM_WAIT_OBJECTS];
+
+		/** Creates a new poller thread with the given number. */
+		private PollerThread(int number) {
+			super("xidobi event poller " + number);
+			setDaemon(true);
+
+			wakeUpEvent = os.CreateEventA(0, false, false, null);
+			if (wakeUpEvent == 0)
+				throw newNativeCodeException(os, "Create wake up event failed!", os.GetLastError());
+			handles[0] = wakeUpEvent;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!isClosed) {
+					updateWaiters();
+
+					int result = os.WaitForMultipleObjects(waiters.size() + 1, handles, false, INFINITE);
+					int index = result - WAIT_OBJECT_0;
+					if (index == 0 || result == WAIT_TIMEOUT)
+						continue;
+					if (index > 0 && index <= waiters.size())
+						complete(index - 1, WAIT_OBJECT_0, 0);
+					else
+						checkEachWaiter();
+				}
+			}
+			finally {
+				abortWaiters();
+				os.CloseHandle(wakeUpEvent);
+			}
+		}
+
+		/** Signals the wake up event of this thread. */
+		private void wakeUp() {
+			if (!os.SetEvent(wakeUpEvent))
+				throw newNativeCodeException(os, "SetEvent failed!", os.GetLastError());
+		}
+
+		/** Removes the cancelled waiters and adds the new ones. */
+		private void updateWaiters() {
+			for (Iterator<Waiter> it = waiters.iterator(); it.hasNext();) {
+				if (!it.next().isPending()) {
+					it.remove();
+					load.decrementAndGet();
+				}
+			}
+			// remove first, the new waiters may wait for the events of the cancelled ones
+			Waiter waiter;
+			while ((waiter = added.poll()) != null)
+				waiters.add(waiter);
+
+			for (int i = 0; i < waiters.size(); i++)
+				handles[i + 1] = waiters.get(i).hEvent;
+		}
+
+		/** Completes the wait of the waiter at the given index. */
+		private void complete(int index, int result, int errorCode) {
+			waiters.get(index).complete(result, errorCode);
+		}
+
+		/**
+		 * Checks the events one by one, to find the waiters that caused
+		 * <code>WaitForMultipleObjects</code> to fail, e.g. because their event was closed.
+		 */
+		private void checkEachWaiter() {
+			for (int i = 0; i < waiters.size(); i++) {
+				int result = os.WaitForSingleObject(waiters.get(i).hEvent, 0);
+				if (result == WAIT_OBJECT_0)
+					complete(i, WAIT_OBJECT_0, 0);
+				else if (result != WAIT_TIMEOUT)
+					complete(i, WAIT_FAILED, os.GetLastError());
+			}
+		}
+
+		/** Aborts the waits of all waiters, when the poller is closed. */
+		private void abortWaiters() {
+			for (Waiter waiter : waiters)
+				waiter.complete(WAIT_FAILED, ERROR_OPERATION_ABORTED);
+			Waiter waiter;
+			while ((waiter = added.poll()) != null)
+				waiter.complete(WAIT_FAILED, ERROR_OPERATION_ABORTED);
+		}
+	}
+}
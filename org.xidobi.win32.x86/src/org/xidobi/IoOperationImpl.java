@@ -22,6 +22,7 @@ import static org.xidobi.WinApi.ERROR_INVALID_HANDLE;
 import static org.xidobi.WinApi.ERROR_NOT_READY;
 import static org.xidobi.WinApi.ERROR_OPERATION_ABORTED;
 import static org.xidobi.WinApi.INVALID_HANDLE_VALUE;
+import static org.xidobi.WinApi.WAIT_FAILED;
 import static org.xidobi.spi.Preconditions.checkArgument;
 import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
 import static org.xidobi.utils.Throwables.newNativeCodeException;
@@ -37,6 +38,7 @@ import javax.annotation.OverridingMethodsMustInvokeSuper;
 import org.xidobi.spi.IoOperation;
 import org.xidobi.spi.NativeCodeException;
 import org.xidobi.structs.DWORD;
+import org.xidobi.structs.INT;
 import org.xidobi.structs.OVERLAPPED;
 
 /**
@@ -66,6 +68,12 @@ public abstract class IoOperationImpl implements IoOperation {
 	protected final WinApi os;
 	/** the native handle of the serial port */
 	protected final int handle;
+	/**
+	 * waits for the overlapped event, <code>null</code> if <code>WaitForSingleObject</code> is
+	 * used
+	 */
+	@Nullable
+	private final EventPoller poller;
 
 	/** Receives the number of bytes that are read or written. */
 	protected final DWORD numberOfBytesTransferred;
@@ -107,10 +115,31 @@ public abstract class IoOperationImpl implements IoOperation {
 	public IoOperationImpl(	@Nonnull SerialPort port,
 							@Nonnull WinApi os,
 							int handle) {
+		this(port, os, handle, null);
+	}
+
+	/**
+	 * Creates a new I/O operation.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param handle
+	 *            the native handle of the serial port
+	 * @param poller
+	 *            waits for the overlapped event while the calling thread is parked,
+	 *            <code>null</code> to wait with <code>WaitForSingleObject</code>
+	 */
+	public IoOperationImpl(	@Nonnull SerialPort port,
+							@Nonnull WinApi os,
+							int handle,
+							@Nullable EventPoller poller) {
 		this.port = checkArgumentNotNull(port, "port");
 		this.os = checkArgumentNotNull(os, "os");
 		checkArgument(handle != INVALID_HANDLE_VALUE, "handle", "Invalid handle value (-1)!");
 		this.handle = handle;
+		this.poller = poller;
 
 		// initialize shared resources:
 		overlapped = newOverlapped(os);
@@ -138,6 +167,38 @@ public abstract class IoOperationImpl implements IoOperation {
 			handleNativeError("ResetEvent", os.GetLastError());
 	}
 
+	/**
+	 * Waits until the overlapped event is signaled or the timeout elapses. If this I/O operation
+	 * has an {@link EventPoller}, the calling thread is parked while the poller waits for the
+	 * event, otherwise <code>WaitForSingleObject</code> is called.
+	 * 
+	 * @param milliseconds
+	 *            the timeout in milliseconds
+	 * @return the result of the wait, see {@link WinApi#WaitForSingleObject(int, int)}
+	 * @throws IOException
+	 *             if the poller failed to wait for the event, see
+	 *             {@link #handleNativeError(String, int)}
+	 */
+	protected final int awaitOverlappedEvent(int milliseconds) throws IOException {
+		if (poller == null)
+			return os.WaitForSingleObject(overlapped.hEvent, milliseconds);
+
+		INT lastError = new INT(0);
+		int result = poller.await(overlapped.hEvent, milliseconds, lastError);
+		if (result == WAIT_FAILED)
+			handleNativeError("WaitForMultipleObjects", lastError.value);
+		return result;
+	}
+
+	/**
+	 * Returns <code>true</code>, if this I/O operation waits with an {@link EventPoller}. Only the
+	 * poller can wait {@link WinApi#INFINITE INFINITE}, because the parked thread is released,
+	 * when it is interrupted.
+	 */
+	protected final boolean isPolled() {
+		return poller != null;
+	}
+
 	/**
 	 * Handles the native error and throws an {@link IOException}, if the given error code is one of
 	 * the following:
@@ -18,6 +18,7 @@ package org.xidobi;
 import static java.lang.System.loadLibrary;
 import static java.lang.Thread.currentThread;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -125,6 +126,18 @@ public class OS implements WinApi {
 	/** Native reference to {@link #SetCommState(int, DCB)}. */
 	private native boolean SetCommState(int handle, DCB dcb, INT lastError);
 
+	/** {@inheritDoc} */
+	@CheckReturnValue
+	public boolean ApplyCommState(int handle, DCB template) {
+		INT lastError = new INT(0);
+		boolean result = ApplyCommState(handle, template, lastError);
+		preserveLastError(lastError);
+		return result;
+	}
+
+	/** Native reference to {@link #ApplyCommState(int, DCB)}. */
+	private native boolean ApplyCommState(int handle, DCB template, INT lastError);
+
 	/** {@inheritDoc} */
 	@CheckReturnValue
 	public int CreateEventA(int lpEventAttributes, boolean bManualReset, boolean bInitialState, @Nullable String lpName) {
@@ -149,6 +162,18 @@ public class OS implements WinApi {
 	/** Native reference to {@link #WriteFile(int, byte[], int, DWORD, OVERLAPPED)}. */
 	private native boolean WriteFile(int handle, @Nonnull byte[] lpBuffer, int nNumberOfBytesToWrite, @Nullable DWORD lpNumberOfBytesWritten, @Nullable OVERLAPPED lpOverlapped, INT lastError);
 
+	/** {@inheritDoc} */
+	@CheckReturnValue
+	public boolean WriteFile(int handle, @Nonnull NativeByteArray lpBuffer, int nNumberOfBytesToWrite, @Nullable DWORD lpNumberOfBytesWritten, @Nullable OVERLAPPED lpOverlapped) {
+		INT lastError = new INT(0);
+		boolean result = WriteFile_NativeByteArray(handle, lpBuffer, nNumberOfBytesToWrite, lpNumberOfBytesWritten, lpOverlapped, lastError);
+		preserveLastError(lastError);
+		return result;
+	}
+
+	/** Native reference to {@link #WriteFile(int, NativeByteArray, int, DWORD, OVERLAPPED)}. */
+	private native boolean WriteFile_NativeByteArray(int handle, @Nonnull NativeByteArray lpBuffer, int nNumberOfBytesToWrite, @Nullable DWORD lpNumberOfBytesWritten, @Nullable OVERLAPPED lpOverlapped, INT lastError);
+
 	/** {@inheritDoc} */
 	@CheckReturnValue
 	public boolean ReadFile(int handle, @Nonnull NativeByteArray lpBuffer, int nNumberOfBytesToRead, @Nullable DWORD lpNumberOfBytesRead, OVERLAPPED lpOverlapped) {
@@ -206,6 +231,17 @@ public class OS implements WinApi {
 	/** Native reference to {@link #WaitForSingleObject(int, int)}. */
 	private native int WaitForSingleObject(int hHandle, int dwMilliseconds, INT lastError);
 
+	/** {@inheritDoc} */
+	public int WaitForMultipleObjects(int nCount, @Nonnull int[] lpHandles, boolean bWaitAll, int dwMilliseconds) {
+		INT lastError = new INT(0);
+		int result = WaitForMultipleObjects(nCount, lpHandles, bWaitAll, dwMilliseconds, lastError);
+		preserveLastError(lastError);
+		return result;
+	}
+
+	/** Native reference to {@link #WaitForMultipleObjects(int, int[], boolean, int)}. */
+	private native int WaitForMultipleObjects(int nCount, @Nonnull int[] lpHandles, boolean bWaitAll, int dwMilliseconds, INT lastError);
+
 	/** {@inheritDoc} */
 	public native int RegOpenKeyExA(int hKey, String lpSubKey, int ulOptions, int samDesired, HKEY phkResult);
 
@@ -215,6 +251,9 @@ public class OS implements WinApi {
 	/** {@inheritDoc} */
 	public native int RegEnumValueA(HKEY hKey, int dwIndex, byte[] lpValueName, INT lpcchValueName, int lpReserved, INT lpType, byte[] lpData, INT lpcbData);
 
+	/** {@inheritDoc} */
+	public native int RegNotifyChangeKeyValue(HKEY hKey, boolean bWatchSubtree, int dwNotifyFilter, int hEvent, boolean fAsynchronous);
+
 	/** {@inheritDoc} */
 	public boolean SetCommMask(int hFile, int dwEvtMask) {
 		INT lastError = new INT(0);
@@ -292,6 +331,17 @@ public class OS implements WinApi {
 	/** Native reference to {@link #ClearCommBreak(int)}. */
 	private native boolean ClearCommBreak(int hFile, INT lastError);
 
+	/** {@inheritDoc} */
+	public boolean GetCommModemStatus(int hFile, INT lpModemStat) {
+		INT lastError = new INT(0);
+		boolean result = GetCommModemStatus(hFile, lpModemStat, lastError);
+		preserveLastError(lastError);
+		return result;
+	}
+
+	/** Native reference to {@link #GetCommModemStatus(int, INT)}. */
+	private native boolean GetCommModemStatus(int hFile, INT lpModemStat, INT lastError);
+
 	/** {@inheritDoc} */
 	public boolean CancelIo(int hFile) {
 		INT lastError = new INT(0);
@@ -335,6 +385,17 @@ public class OS implements WinApi {
 	/** {@inheritDoc} */
 	public native byte[] getByteArray(NativeByteArray nativeByteArray, int length);
 
+	/** {@inheritDoc} */
+	public native void setByteArray(NativeByteArray nativeByteArray, int offset, byte[] data, int dataOffset, int length);
+
+	/** {@inheritDoc} */
+	public void setByteArray(NativeByteArray nativeByteArray, int offset, ByteBuffer directBuffer, int position, int length) {
+		setByteArray_DirectBuffer(nativeByteArray, offset, directBuffer, position, length);
+	}
+
+	/** Native reference to {@link #setByteArray(NativeByteArray, int, ByteBuffer, int, int)}. */
+	private native void setByteArray_DirectBuffer(NativeByteArray nativeByteArray, int offset, ByteBuffer directBuffer, int position, int length);
+
 	/** {@inheritDoc} */
 	public native int getValue_DWORD(@Nonnull DWORD dword);
 
@@ -15,22 +15,52 @@
  */
 package org.xidobi;
 
+import static java.lang.System.nanoTime;
 import static java.lang.Thread.interrupted;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.xidobi.WinApi.CE_BREAK;
+import static org.xidobi.WinApi.CE_FRAME;
+import static org.xidobi.WinApi.CE_OVERRUN;
+import static org.xidobi.WinApi.CE_RXOVER;
+import static org.xidobi.WinApi.CE_RXPARITY;
 import static org.xidobi.WinApi.ERROR_IO_PENDING;
+import static org.xidobi.WinApi.EV_BREAK;
+import static org.xidobi.WinApi.EV_CTS;
+import static org.xidobi.WinApi.EV_DSR;
+import static org.xidobi.WinApi.EV_RING;
+import static org.xidobi.WinApi.EV_RLSD;
 import static org.xidobi.WinApi.EV_RXCHAR;
+import static org.xidobi.WinApi.EV_RXFLAG;
+import static org.xidobi.WinApi.EV_TXEMPTY;
+import static org.xidobi.WinApi.INFINITE;
+import static org.xidobi.WinApi.MS_CTS_ON;
+import static org.xidobi.WinApi.MS_DSR_ON;
+import static org.xidobi.WinApi.MS_RING_ON;
+import static org.xidobi.WinApi.MS_RLSD_ON;
 import static org.xidobi.WinApi.WAIT_ABANDONED;
 import static org.xidobi.WinApi.WAIT_FAILED;
 import static org.xidobi.WinApi.WAIT_OBJECT_0;
 import static org.xidobi.WinApi.WAIT_TIMEOUT;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
 import static org.xidobi.utils.Throwables.newNativeCodeException;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.xidobi.spi.InstrumentedIoOperation;
+import org.xidobi.spi.LineStatusReader;
 import org.xidobi.spi.NativeCodeException;
 import org.xidobi.spi.Reader;
+import org.xidobi.spi.TimestampingReader;
 import org.xidobi.structs.COMSTAT;
 import org.xidobi.structs.DWORD;
 import org.xidobi.structs.INT;
@@ -38,11 +68,23 @@ import org.xidobi.structs.NativeByteArray;
 
 /**
  * Implementation for read operations.
+ * <p>
+ * The reader waits for the communication events, that are registered by
+ * {@link SerialPortImpl#COMM_EVENTS}. Besides the arrival of data, these are changes of the modem
+ * control signals and line errors, which are reported to the {@link LineStatusListener} from the
+ * same wait. The returned data is stamped, when the wait for its communication event completed.
+ * <p>
+ * <code>EV_TXEMPTY</code> is only registered while a thread waits in {@link #drain()}, so the reads
+ * are not woken up by every completed write. While a thread reads, it receives the event and wakes
+ * up the waiting drains, otherwise a drain waits for the event itself.
  * 
  * @author Christian Schwarz
  * @author Tobias Breler
  */
-public class ReaderImpl extends IoOperationImpl implements Reader {
+public class ReaderImpl extends IoOperationImpl implements Reader, LineStatusReader, InstrumentedIoOperation, TimestampingReader {
+
+	/** Returned by {@link #awaitArrivalOfData(Deadline)}, when the deadline expired. */
+	private static final int DEADLINE_EXPIRED = -1;
 
 	/** Timeout for native <code>ReadFile</code> operation. */
 	private static final int READ_FILE_TIMEOUT = 100;
@@ -56,6 +98,75 @@ public class ReaderImpl extends IoOperationImpl implements Reader {
 	/** Receives the flags of a communication event */
 	private DWORD eventMask;
 
+	/**
+	 * <code>true</code>, if the <code>WaitCommEvent</code> of a previous read is still pending,
+	 * because its deadline expired
+	 */
+	private boolean isWaitPending;
+
+	/**
+	 * the value of {@link System#nanoTime()}, when the wait for the communication event of the
+	 * returned data completed
+	 */
+	private volatile long receiveTimestamp;
+
+	/** the line errors, that were reported by the last call of <code>ClearCommError</code> */
+	private int commErrors;
+	/**
+	 * the line errors, that were cleared by {@link #drain()} and are reported with the next
+	 * communication event
+	 */
+	private final AtomicInteger drainedCommErrors = new AtomicInteger();
+
+	/** serializes the checks of the output buffer and the signaling of <code>EV_TXEMPTY</code> */
+	private final Lock drainLock = new ReentrantLock();
+	/**
+	 * signaled, when <code>EV_TXEMPTY</code> was received, a read returned or this reader was
+	 * closed
+	 */
+	private final Condition transmitterEmpty = drainLock.newCondition();
+	/** the number of threads, that wait in {@link #drain()}, changed while the drainLock is held */
+	private volatile int waitingDrains;
+
+	/** the communication events, that are registered while no thread waits in {@link #drain()} */
+	private final int commEvents;
+	/**
+	 * the number of changes of the registered events by {@link #drain()}, a change completes a
+	 * pending <code>WaitCommEvent</code> without events
+	 */
+	private volatile int commMaskChanges;
+	/**
+	 * the value of {@link #commMaskChanges}, when the pending <code>WaitCommEvent</code> was
+	 * started, guarded by the disposeLock
+	 */
+	private int waitCommMaskChanges;
+
+	/**
+	 * the events, that were received by {@link #drain()} and are handled by the next read, guarded
+	 * by the disposeLock
+	 */
+	private int drainedEvents;
+	/** the value of {@link System#nanoTime()}, when the {@link #drainedEvents} were received */
+	private long drainedEventsTimestamp;
+
+	/** is notified about line status changes, maybe <code>null</code> */
+	@Nullable
+	private volatile LineStatusListener lineStatusListener;
+
+	/** records the time to wait for communication events, <code>null</code> if disabled */
+	@Nullable
+	private ConnectionMetrics metrics;
+
+	/**
+	 * the terminator of the lines, that are returned in line mode, <code>null</code> if all
+	 * available data is returned
+	 */
+	@Nullable
+	private final Character lineTerminator;
+
+	/** the bytes, that were received after the last returned line, only used in line mode */
+	private byte[] pendingBytes = new byte[0];
+
 	/**
 	 * Creates a new read operation.
 	 * 
@@ -69,19 +180,106 @@ public class ReaderImpl extends IoOperationImpl implements Reader {
 	public ReaderImpl(	SerialPort port,
 						WinApi os,
 						int handle) {
-		super(port, os, handle);
+		this(port, os, handle, null);
+	}
+
+	/**
+	 * Creates a new read operation.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param handle
+	 *            the native handle of the serial port
+	 * @param poller
+	 *            waits for the communication events while the reading thread is parked,
+	 *            <code>null</code> to wait with <code>WaitForSingleObject</code>
+	 */
+	public ReaderImpl(	SerialPort port,
+						WinApi os,
+						int handle,
+						@Nullable EventPoller poller) {
+		this(port, os, handle, poller, null);
+	}
+
+	/**
+	 * Creates a new read operation.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param handle
+	 *            the native handle of the serial port
+	 * @param poller
+	 *            waits for the communication events while the reading thread is parked,
+	 *            <code>null</code> to wait with <code>WaitForSingleObject</code>
+	 * @param lineTerminator
+	 *            enables the line mode with the given terminator, <code>null</code> to return all
+	 *            available data. In line mode the port must be registered for
+	 *            <code>EV_RXFLAG</code> and the terminator must be the <code>EvtChar</code> of the
+	 *            DCB.
+	 */
+	public ReaderImpl(	SerialPort port,
+						WinApi os,
+						int handle,
+						@Nullable EventPoller poller,
+						@Nullable Character lineTerminator) {
+		super(port, os, handle, poller);
 
 		eventMask = new DWORD(os);
+		this.lineTerminator = lineTerminator;
+		commEvents = lineTerminator == null ? SerialPortImpl.COMM_EVENTS : SerialPortImpl.LINE_MODE_COMM_EVENTS;
 	}
 
-	/** {@inheritDoc} */
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * In line mode only a complete line including the terminator is returned. The bytes after the
+	 * terminator are returned by the next reads.
+	 */
 	@Nonnull
 	public byte[] read() throws IOException {
+		return readUntil(null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The deadline is passed as timeout to the native wait for the communication event. If it
+	 * expires, the <code>WaitCommEvent</code> stays pending and is continued by the next read, so
+	 * no communication event is lost.
+	 */
+	@Nonnull
+	public byte[] read(@Nonnull Deadline deadline) throws IOException {
+		checkArgumentNotNull(deadline, "deadline");
+		return readUntil(deadline);
+	}
+
+	/**
+	 * Reads the available data, a line in line mode, as soon as it is received.
+	 * 
+	 * @param deadline
+	 *            the deadline for the read, <code>null</code> to block until data is received
+	 * @return the data, an empty array if the deadline expired
+	 */
+	@Nonnull
+	private byte[] readUntil(@Nullable Deadline deadline) throws IOException {
 		disposeLock.lock();
 		try {
 			checkIfClosedOrDisposed();
 
-			resetOverlappedEventHandle();
+			// a line, that was received with the previous line, is returned without waiting
+			if (lineTerminator != null) {
+				byte[] line = nextLine();
+				if (line != null)
+					return line;
+			}
+
+			// the event of a pending wait must not be reset, otherwise its completion gets lost
+			if (!isWaitPending)
+				resetOverlappedEventHandle();
 
 			// Repeat until data is available:
 			while (true) {
@@ -90,54 +288,141 @@ public class ReaderImpl extends IoOperationImpl implements Reader {
 				if (interrupted())
 					throw new InterruptedIOException("The thread for the read operation is interrupted!");
 
-				// wait for some data to arrive
-				awaitArrivalOfData();
+				// the events, that were received by a drain, are handled first
+				int events = drainedEvents;
+				long eventTimestamp = drainedEventsTimestamp;
+				drainedEvents = 0;
+				if (events == 0) {
+					// wait for some data to arrive
+					long waitStart = metrics != null ? nanoTime() : 0;
+					events = awaitArrivalOfData(deadline);
+					if (metrics != null)
+						metrics.waitCompleted(nanoTime() - waitStart);
+					if (events == DEADLINE_EXPIRED)
+						return new byte[0];
+					eventTimestamp = nanoTime();
+				}
+
+				// wake up the threads, that wait until the output buffer was sent
+				if ((events & EV_TXEMPTY) != 0)
+					signalTransmitterEmpty();
 
 				// how many bytes are available for read?
 				int availableBytes = getAvailableBytes();
+
+				// report changed signals and line errors, if there are any
+				notifyLineStatus(events);
 				if (availableBytes == 0)
 					// there is no data available for read
 					continue;
 
 				// now we can read the available data
-				return readAvailableBytes(availableBytes);
+				if (lineTerminator == null) {
+					receiveTimestamp = eventTimestamp;
+					return readAvailableBytes(availableBytes);
+				}
+
+				// in line mode the data is only read, when the terminator was received
+				if ((events & EV_RXFLAG) == 0)
+					continue;
+				receiveTimestamp = eventTimestamp;
+				appendPendingBytes(readAvailableBytes(availableBytes));
+				byte[] line = nextLine();
+				if (line != null)
+					return line;
 			}
 		}
 		finally {
 			disposeLock.unlock();
+
+			// a waiting drain has to wait for EV_TXEMPTY itself now
+			if (waitingDrains > 0)
+				signalTransmitterEmpty();
 		}
 	}
 
-	/** Blocks until data arrives or an {@link IOException} is thrown. */
-	private void awaitArrivalOfData() throws IOException {
+	/** {@inheritDoc} */
+	public void setLineStatusListener(@Nullable LineStatusListener listener) {
+		lineStatusListener = listener;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * In line mode a line, that was received together with a previous line, has the timestamp of
+	 * the previous line.
+	 */
+	public long getReceiveTimestamp() {
+		return receiveTimestamp;
+	}
 
-		// reset eventMask
-		eventMask.setValue(0);
+	/** {@inheritDoc} */
+	public void setMetrics(@Nullable ConnectionMetrics metrics) {
+		this.metrics = metrics;
+	}
 
-		boolean succeed = os.WaitCommEvent(handle, eventMask, overlapped);
-		if (succeed) {
-			// event was signaled immediatly, the input buffer contains data
-			checkEventMask(eventMask);
-			return;
+	/**
+	 * Blocks until a communication event occurs, the given deadline expires or an
+	 * {@link IOException} is thrown. Returns the flags of the event or {@link #DEADLINE_EXPIRED}.
+	 * 
+	 * @param deadline
+	 *            the deadline for the wait, <code>null</code> to wait until an event occurs
+	 */
+	private int awaitArrivalOfData(@Nullable Deadline deadline) throws IOException {
+		while (true) {
+			int mask = awaitCommEvent(deadline);
+
+			// the wait was completed without events, because a drain changed the registered events
+			if (mask == 0 && commMaskChanges != waitCommMaskChanges && !isClosed()) {
+				resetOverlappedEventHandle();
+				continue;
+			}
+
+			if (mask != DEADLINE_EXPIRED)
+				checkEventMask(mask);
+			return mask;
 		}
+	}
 
-		int lastError = os.GetLastError();
-		if (lastError != ERROR_IO_PENDING)
-			handleNativeError("WaitCommEvent", lastError);
+	/**
+	 * Starts or continues the <code>WaitCommEvent</code> and returns the flags of the event or
+	 * {@link #DEADLINE_EXPIRED}. The flags are not checked.
+	 */
+	private int awaitCommEvent(@Nullable Deadline deadline) throws IOException {
+
+		if (!isWaitPending) {
+			// reset eventMask
+			eventMask.setValue(0);
+
+			waitCommMaskChanges = commMaskChanges;
+			boolean succeed = os.WaitCommEvent(handle, eventMask, overlapped);
+			if (succeed)
+				// event was signaled immediatly, the input buffer contains data
+				return eventMask.getValue();
+
+			int lastError = os.GetLastError();
+			if (lastError != ERROR_IO_PENDING)
+				handleNativeError("WaitCommEvent", lastError);
+		}
+		isWaitPending = false;
 
 		// Repeat until some data arrived:
 		while (true) {
 
 			// wait for pending operation to complete
-			int waitResult = os.WaitForSingleObject(overlapped.hEvent, readTimeout);
+			int waitResult = awaitOverlappedEvent(waitTimeout(deadline));
 
 			switch (waitResult) {
 				case WAIT_OBJECT_0:
 					// wait finished successfull
-					checkEventMask(eventMask);
-					return;
+					return eventMask.getValue();
 				case WAIT_TIMEOUT:
 					// operation has timed out
+					if (deadline != null && deadline.isExpired()) {
+						// the next read continues the pending wait
+						isWaitPending = true;
+						return DEADLINE_EXPIRED;
+					}
 					continue;
 				case WAIT_ABANDONED:
 					throw new NativeCodeException("WaitForSingleObject returned an unexpected value: WAIT_ABANDONED!");
@@ -149,6 +434,17 @@ public class ReaderImpl extends IoOperationImpl implements Reader {
 		}
 	}
 
+	/**
+	 * Returns the timeout in milliseconds for the next native wait, which is the read timeout or
+	 * the remaining time of the deadline, if it is shorter. Without a deadline, a polled wait is
+	 * not bounded, so an idle reader stays registered at the {@link EventPoller}.
+	 */
+	private int waitTimeout(@Nullable Deadline deadline) {
+		if (deadline == null)
+			return isPolled() ? INFINITE : readTimeout;
+		return (int) Math.min(readTimeout, deadline.remaining(MILLISECONDS));
+	}
+
 	/** Returns the number of bytes that are available to read. */
 	private int getAvailableBytes() throws IOException {
 		COMSTAT lpStat = new COMSTAT();
@@ -156,9 +452,227 @@ public class ReaderImpl extends IoOperationImpl implements Reader {
 		boolean succeed = os.ClearCommError(handle, lpErrors, lpStat);
 		if (!succeed)
 			handleNativeError("ClearCommError", os.GetLastError());
+		commErrors = lpErrors.value | drainedCommErrors.getAndSet(0);
 		return lpStat.cbInQue;
 	}
 
+	/**
+	 * Blocks until the output buffer of the driver is empty, i.e. the last byte was handed to the
+	 * UART. Returns immediately, if the output buffer is already empty. An empty output buffer
+	 * (<code>cbOutQue</code> is 0) means that the data reached the transmit FIFO of the UART, not
+	 * that it left the wire: the UART may still send up to a FIFO of bytes.
+	 * <p>
+	 * <code>EV_TXEMPTY</code> is registered, while a thread waits. Only one
+	 * <code>WaitCommEvent</code> can be pending per port, so the waiting thread is woken up by the
+	 * thread, that reads. If no thread reads, the waiting thread waits for the communication events
+	 * itself, the other events are handled by the next read. The line errors, that are cleared by
+	 * <code>ClearCommError</code>, are reported with the next communication event.
+	 * 
+	 * @throws IOException
+	 *             if this reader was closed or the thread was interrupted
+	 */
+	public void drain() throws IOException {
+		drainLock.lock();
+		try {
+			if (isClosed())
+				throw portClosedException(null);
+			if (getOutputQueueSize() == 0)
+				return;
+
+			if (waitingDrains == 0)
+				setCommMask(commEvents | EV_TXEMPTY);
+			waitingDrains++;
+			try {
+				while (true) {
+					if (isClosed())
+						throw portClosedException(null);
+					// the output buffer is checked after the registration, so EV_TXEMPTY can't
+					// get lost; the reader can't signal it in the meantime, because the lock is held
+					if (getOutputQueueSize() == 0)
+						return;
+					awaitTransmitterEmpty();
+				}
+			}
+			finally {
+				waitingDrains--;
+				if (waitingDrains > 0)
+					// another drain may have to wait for EV_TXEMPTY itself now
+					transmitterEmpty.signalAll();
+				else if (!isClosed())
+					setCommMask(commEvents);
+			}
+		}
+		finally {
+			drainLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until <code>EV_TXEMPTY</code> was received, a read returned or this reader was closed.
+	 * If no thread reads, the calling thread waits for the communication events itself. The wait
+	 * is continued in steps of the read timeout, so a thread, that starts to read, can take it
+	 * over.
+	 */
+	private void awaitTransmitterEmpty() throws IOException {
+		while (!isClosed()) {
+			if (interrupted())
+				throw new InterruptedIOException("The thread for the drain operation is interrupted!");
+
+			if (!tryLockForDrain()) {
+				// the reading thread signals EV_TXEMPTY or its return
+				try {
+					transmitterEmpty.await();
+					return;
+				}
+				catch (InterruptedException e) {
+					throw new InterruptedIOException("The thread for the drain operation is interrupted!");
+				}
+			}
+
+			try {
+				checkIfClosedOrDisposed();
+				if (!isWaitPending)
+					resetOverlappedEventHandle();
+				int events = awaitArrivalOfData(Deadline.after(readTimeout, MILLISECONDS));
+				if (events == DEADLINE_EXPIRED)
+					continue;
+
+				// the other events are handled by the next read
+				if ((events & ~EV_TXEMPTY) != 0) {
+					drainedEvents |= events & ~EV_TXEMPTY;
+					drainedEventsTimestamp = nanoTime();
+				}
+				if ((events & EV_TXEMPTY) != 0) {
+					transmitterEmpty.signalAll();
+					return;
+				}
+			}
+			finally {
+				disposeLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Acquires the disposeLock, if no thread reads or waits to read. The fair ordering of the lock
+	 * is kept, so a waiting reader is preferred.
+	 */
+	private boolean tryLockForDrain() throws IOException {
+		try {
+			return disposeLock.tryLock(0, MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException("The thread for the drain operation is interrupted!");
+		}
+	}
+
+	/**
+	 * Registers the given communication events. A pending <code>WaitCommEvent</code> is completed
+	 * without events and started again by the reading thread.
+	 */
+	private void setCommMask(int events) throws IOException {
+		commMaskChanges++;
+		if (!os.SetCommMask(handle, events))
+			handleNativeError("SetCommMask", os.GetLastError());
+	}
+
+	/** Returns the number of bytes in the output buffer of the driver, that are not sent yet. */
+	private int getOutputQueueSize() throws IOException {
+		COMSTAT lpStat = new COMSTAT();
+		INT lpErrors = new INT(0);
+		boolean succeed = os.ClearCommError(handle, lpErrors, lpStat);
+		if (!succeed)
+			handleNativeError("ClearCommError", os.GetLastError());
+		if (lpErrors.value != 0)
+			addDrainedCommErrors(lpErrors.value);
+		return lpStat.cbOutQue;
+	}
+
+	/** Remembers the given line errors, until they are reported by the reading thread. */
+	private void addDrainedCommErrors(int errors) {
+		int current;
+		do {
+			current = drainedCommErrors.get();
+		}
+		while (!drainedCommErrors.compareAndSet(current, current | errors));
+	}
+
+	/** Wakes up the threads, that wait until the output buffer was sent. */
+	private void signalTransmitterEmpty() {
+		drainLock.lock();
+		try {
+			transmitterEmpty.signalAll();
+		}
+		finally {
+			drainLock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Releases the threads, that wait in {@link #drain()}.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		}
+		finally {
+			signalTransmitterEmpty();
+		}
+	}
+
+	/**
+	 * Notifies the line status listener, if the given event flags contain a changed modem control
+	 * signal or a break, or if <code>ClearCommError</code> reported line errors.
+	 */
+	private void notifyLineStatus(int events) throws IOException {
+		LineStatusListener listener = lineStatusListener;
+		if (listener == null)
+			return;
+
+		Set<LineSignal> changedSignals = EnumSet.noneOf(LineSignal.class);
+		addIfSet(changedSignals, events, EV_CTS, LineSignal.CTS);
+		addIfSet(changedSignals, events, EV_DSR, LineSignal.DSR);
+		addIfSet(changedSignals, events, EV_RING, LineSignal.RING);
+		addIfSet(changedSignals, events, EV_RLSD, LineSignal.RLSD);
+
+		Set<LineError> errors = EnumSet.noneOf(LineError.class);
+		addIfSet(errors, commErrors | ((events & EV_BREAK) != 0 ? CE_BREAK : 0), CE_BREAK, LineError.BREAK);
+		addIfSet(errors, commErrors, CE_FRAME, LineError.FRAMING);
+		addIfSet(errors, commErrors, CE_RXPARITY, LineError.PARITY);
+		addIfSet(errors, commErrors, CE_OVERRUN, LineError.OVERRUN);
+		addIfSet(errors, commErrors, CE_RXOVER, LineError.RX_OVERFLOW);
+
+		if (changedSignals.isEmpty() && errors.isEmpty())
+			return;
+
+		int modemStatus = getModemStatus();
+		Set<LineSignal> activeSignals = EnumSet.noneOf(LineSignal.class);
+		addIfSet(activeSignals, modemStatus, MS_CTS_ON, LineSignal.CTS);
+		addIfSet(activeSignals, modemStatus, MS_DSR_ON, LineSignal.DSR);
+		addIfSet(activeSignals, modemStatus, MS_RING_ON, LineSignal.RING);
+		addIfSet(activeSignals, modemStatus, MS_RLSD_ON, LineSignal.RLSD);
+
+		listener.lineStatusChanged(new LineStatusEvent(port, changedSignals, activeSignals, errors));
+	}
+
+	/** Returns the current state of the modem control signals. */
+	private int getModemStatus() throws IOException {
+		INT lpModemStat = new INT(0);
+		boolean succeed = os.GetCommModemStatus(handle, lpModemStat);
+		if (!succeed)
+			handleNativeError("GetCommModemStatus", os.GetLastError());
+		return lpModemStat.value;
+	}
+
+	/** Adds the given element to the set, if the given flag is set in the given mask. */
+	private static <E extends Enum<E>> void addIfSet(Set<E> set, int mask, int flag, E element) {
+		if ((mask & flag) != 0)
+			set.add(element);
+	}
+
 	/** Reads and returns the data that is available in the read buffer. */
 	private byte[] readAvailableBytes(int numberOfBytesToRead) throws IOException {
 
@@ -175,7 +689,7 @@ public class ReaderImpl extends IoOperationImpl implements Reader {
 			handleNativeError("ReadFile", lastError);
 
 		// wait for pending I/O operation to complete
-		int waitResult = os.WaitForSingleObject(overlapped.hEvent, READ_FILE_TIMEOUT);
+		int waitResult = awaitOverlappedEvent(READ_FILE_TIMEOUT);
 		switch (waitResult) {
 			case WAIT_OBJECT_0:
 				// I/O operation has finished
@@ -202,6 +716,36 @@ public class ReaderImpl extends IoOperationImpl implements Reader {
 		}
 	}
 
+	/** Appends the given data to the bytes, that were received after the last returned line. */
+	private void appendPendingBytes(byte[] data) {
+		byte[] bytes = new byte[pendingBytes.length + data.length];
+		System.arraycopy(pendingBytes, 0, bytes, 0, pendingBytes.length);
+		System.arraycopy(data, 0, bytes, pendingBytes.length, data.length);
+		pendingBytes = bytes;
+	}
+
+	/**
+	 * Removes the first line including the terminator from the pending bytes and returns it.
+	 * 
+	 * @return the line, <code>null</code> if the pending bytes don't contain a terminator
+	 */
+	@Nullable
+	private byte[] nextLine() {
+		byte terminator = (byte) lineTerminator.charValue();
+		for (int i = 0; i < pendingBytes.length; i++) {
+			if (pendingBytes[i] != terminator)
+				continue;
+
+			byte[] line = new byte[i + 1];
+			System.arraycopy(pendingBytes, 0, line, 0, line.length);
+			byte[] rest = new byte[pendingBytes.length - line.length];
+			System.arraycopy(pendingBytes, line.length, rest, 0, rest.length);
+			pendingBytes = rest;
+			return line;
+		}
+		return null;
+	}
+
 	/** Disposes the current buffer and creates a new one. */
 	private void newReadBuffer(int numberOfBytesToRead) {
 		if (readBuffer != null)
@@ -211,10 +755,9 @@ public class ReaderImpl extends IoOperationImpl implements Reader {
 
 	/**
 	 * Throws an {@link IOException}, when the <code>EV_RXCHAR</code> flag in the given
-	 * <code>eventMask</code> is 0.
+	 * <code>mask</code> is 0.
 	 */
-	private void checkEventMask(DWORD eventMask) throws IOException {
-		int mask = eventMask.getValue();
+	private void checkEventMask(int mask) throws IOException {
 		if (mask == 0)
 			throw portClosedException("Read operation failed, because a communication error event was signaled!");
 		// NOTICE: We have to ignore wrong event masks, because some serial port drivers are
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.Integer.MAX_VALUE;
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.xidobi.WinApi.ERROR_INVALID_PARAMETER;
+import static org.xidobi.WinApi.ERROR_SUCCESS;
+import static org.xidobi.WinApi.HKEY_LOCAL_MACHINE;
+import static org.xidobi.WinApi.KEY_READ;
+import static org.xidobi.WinApi.REG_NOTIFY_CHANGE_LAST_SET;
+import static org.xidobi.WinApi.REG_NOTIFY_CHANGE_NAME;
+import static org.xidobi.WinApi.REG_NOTIFY_THREAD_AGNOSTIC;
+import static org.xidobi.WinApi.WAIT_OBJECT_0;
+import static org.xidobi.WinApi.WAIT_TIMEOUT;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+import static org.xidobi.utils.Throwables.newNativeCodeException;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.xidobi.spi.NativeCodeException;
+import org.xidobi.spi.PortChangeNotifier;
+import org.xidobi.structs.HKEY;
+
+/**
+ * Detects changes of a subkey of {@link WinApi#HKEY_LOCAL_MACHINE} in the Windows Registry, using
+ * {@link WinApi#RegNotifyChangeKeyValue(HKEY, boolean, int, int, boolean)}.
+ * <p>
+ * The notification is registered when this instance is created and registered again after every
+ * detected change, so no change is lost between two calls of {@link #hasChanged()} or
+ * {@link #awaitChange(long, TimeUnit)}.
+ * <p>
+ * The notification is registered with {@link WinApi#REG_NOTIFY_THREAD_AGNOSTIC}, so it stays
+ * pending when the thread, that called {@link #hasChanged()} or {@link #awaitChange(long, TimeUnit)},
+ * terminates. Windows versions before Windows 8 don't support this flag, there the notification is
+ * registered without it and is cancelled, when the registering thread terminates. The cancellation
+ * signals the notification event and is therefore reported as a change, that means in the worst
+ * case a caller looks at an unchanged subkey once more.
+ * <p>
+ * <b>IMPORTANT:</b> Instances of this class must be closed, in order to release the native
+ * resources.
+ * 
+ * @author Tobias Breler
+ */
+public class RegistryChangeNotifier implements PortChangeNotifier {
+
+	/** the reported changes: values were added, deleted or modified, or subkeys were added or deleted */
+	private static final int NOTIFY_FILTER = REG_NOTIFY_CHANGE_NAME | REG_NOTIFY_CHANGE_LAST_SET;
+
+	/** the native Win32-API, never <code>null</code> */
+	private final WinApi os;
+	/** the watched subkey, never <code>null</code> */
+	private final String subKey;
+	/** the handle of the opened subkey */
+	private final HKEY keyHandle;
+	/** the handle of the event, that is signaled when the subkey was changed */
+	private final int eventHandle;
+
+	/**
+	 * the filter of the registered notification, without {@link WinApi#REG_NOTIFY_THREAD_AGNOSTIC}
+	 * if Windows doesn't support it, guarded by <code>this</code>
+	 */
+	private int notifyFilter = NOTIFY_FILTER | REG_NOTIFY_THREAD_AGNOSTIC;
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this notifier is closed
+	 * <li> <code>false</code> if this notifier is not closed
+	 * </ul>
+	 */
+	private boolean isClosed;
+
+	/**
+	 * Creates a new notifier, that detects changes of the given subkey of
+	 * {@link WinApi#HKEY_LOCAL_MACHINE}.
+	 * 
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param subKey
+	 *            the subkey to watch, must not be <code>null</code>
+	 * @exception NativeCodeException
+	 *                if the subkey can't be opened or the notification can't be registered
+	 */
+	public RegistryChangeNotifier(	@Nonnull WinApi os,
+									@Nonnull String subKey) {
+		this.os = checkArgumentNotNull(os, "os");
+		this.subKey = checkArgumentNotNull(subKey, "subKey");
+
+		keyHandle = new HKEY(os);
+		boolean isRegistered = false;
+		try {
+			openRegistry();
+			eventHandle = createEvent();
+			try {
+				registerNotification();
+				isRegistered = true;
+			}
+			finally {
+				if (!isRegistered)
+					releaseHandles();
+			}
+		}
+		finally {
+			if (!isRegistered)
+				keyHandle.dispose();
+		}
+	}
+
+	/**
+	 * Returns <code>true</code>, if the subkey was changed since this notifier was created or since
+	 * the last call of this method. This method doesn't block.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code> if the subkey was changed
+	 *         <li> <code>false</code> if the subkey was not changed
+	 *         </ul>
+	 * @exception IllegalStateException
+	 *                if this notifier was already closed
+	 * @exception NativeCodeException
+	 *                if the state of the notification couldn't be determined
+	 */
+	public boolean hasChanged() {
+		return waitForChange(0);
+	}
+
+	/**
+	 * Blocks until the subkey was changed or the timeout elapsed. Returns immediately, if the
+	 * subkey was changed since this notifier was created or since the last detected change.
+	 * <p>
+	 * <b>NOTE:</b> The native wait is not interruptible, the interrupted state of the thread is
+	 * only checked before the wait.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait, must not be negative
+	 * @param unit
+	 *            the unit of the timeout, must not be <code>null</code>
+	 * @return <ul>
+	 *         <li> <code>true</code> if the subkey was changed
+	 *         <li> <code>false</code> if the timeout elapsed
+	 *         </ul>
+	 * @throws InterruptedException
+	 *             if the thread was interrupted before the wait
+	 * @exception IllegalStateException
+	 *                if this notifier was already closed
+	 * @exception NativeCodeException
+	 *                if the state of the notification couldn't be determined
+	 */
+	public boolean awaitChange(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+		checkArgument(timeout >= 0, "timeout", "Expected a value greater or equal to 0!");
+		checkArgumentNotNull(unit, "unit");
+		if (Thread.interrupted())
+			throw new InterruptedException();
+
+		return waitForChange((int) min(unit.toMillis(timeout), MAX_VALUE));
+	}
+
+	/**
+	 * Waits the given time in milliseconds for the notification event and registers the
+	 * notification again, if the event was signaled.
+	 */
+	private synchronized boolean waitForChange(int timeout) {
+		checkIfClosed();
+
+		int waitResult = os.WaitForSingleObject(eventHandle, timeout);
+		switch (waitResult) {
+			case WAIT_OBJECT_0:
+				registerNotification();
+				return true;
+			case WAIT_TIMEOUT:
+				return false;
+			default:
+				throw newNativeCodeException(os, "WaitForSingleObject failed unexpected!", os.GetLastError());
+		}
+	}
+
+	/**
+	 * Closes the subkey and releases the native resources of this notifier. Calling this method
+	 * more than once has no effect.
+	 */
+	public synchronized void close() {
+		if (isClosed)
+			return;
+		isClosed = true;
+
+		try {
+			releaseHandles();
+		}
+		finally {
+			keyHandle.dispose();
+		}
+	}
+
+	/**
+	 * Closes the subkey and the handle of the notification event. Closing the subkey cancels a
+	 * pending notification.
+	 */
+	private void releaseHandles() {
+		try {
+			os.RegCloseKey(keyHandle);
+		}
+		finally {
+			os.CloseHandle(eventHandle);
+		}
+	}
+
+	/**
+	 * Opens the watched subkey of {@link WinApi#HKEY_LOCAL_MACHINE}.
+	 */
+	private void openRegistry() {
+		int status = os.RegOpenKeyExA(HKEY_LOCAL_MACHINE, subKey, 0, KEY_READ, keyHandle);
+		if (status != ERROR_SUCCESS)
+			throw newNativeCodeException(os, "Couldn't open Windows Registry for subkey >" + subKey + "<!", status);
+	}
+
+	/**
+	 * Creates the manual reset event, that is signaled by the registry notification. The opened
+	 * subkey is closed, if the event couldn't be created.
+	 */
+	private int createEvent() {
+		int hEvent = os.CreateEventA(0, true, false, null);
+		if (hEvent != 0)
+			return hEvent;
+
+		int errorCode = os.GetLastError();
+		os.RegCloseKey(keyHandle);
+		throw newNativeCodeException(os, "Create registry notification event failed!", errorCode);
+	}
+
+	/**
+	 * Resets the event and registers the asynchronous notification for the next change of the
+	 * subkey. If Windows doesn't support {@link WinApi#REG_NOTIFY_THREAD_AGNOSTIC}, the
+	 * notification is registered without it.
+	 */
+	private void registerNotification() {
+		if (!os.ResetEvent(eventHandle))
+			throw newNativeCodeException(os, "ResetEvent failed unexpected!", os.GetLastError());
+
+		int status = os.RegNotifyChangeKeyValue(keyHandle, false, notifyFilter, eventHandle, true);
+		if (status == ERROR_INVALID_PARAMETER && notifyFilter != NOTIFY_FILTER) {
+			notifyFilter = NOTIFY_FILTER;
+			status = os.RegNotifyChangeKeyValue(keyHandle, false, notifyFilter, eventHandle, true);
+		}
+		if (status != ERROR_SUCCESS)
+			throw newNativeCodeException(os, "RegNotifyChangeKeyValue failed unexpected!", status);
+	}
+
+	/**
+	 * Throws an {@link IllegalStateException} if this notifier was already closed.
+	 */
+	private void checkIfClosed() {
+		if (isClosed)
+			throw new IllegalStateException("The registry notifier for subkey >" + subKey + "< was already closed!");
+	}
+}
@@ -33,15 +33,18 @@ import static org.xidobi.WinApi.PURGE_RXCLEAR;
 import static org.xidobi.WinApi.PURGE_TXABORT;
 import static org.xidobi.WinApi.PURGE_TXCLEAR;
 import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+import static org.xidobi.utils.Throwables.newIOException;
 import static org.xidobi.utils.Throwables.newNativeCodeException;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.xidobi.spi.BasicSerialConnection;
 import org.xidobi.spi.NativeCodeException;
+import org.xidobi.structs.DCB;
 
 /**
  * Implementation of the interface {@link SerialConnection} for Windows (32-bit) on x86 platforms.
@@ -51,7 +54,7 @@ import org.xidobi.spi.NativeCodeException;
  * @see SerialConnection
  * @see BasicSerialConnection
  */
-public class SerialConnectionImpl extends BasicSerialConnection {
+public class SerialConnectionImpl extends BasicSerialConnection implements ReconfigurableConnection, DrainableConnection, PurgeableConnection {
 
 	/**
 	 * Specifies how often the port should be re-open in order to determine if the port is actualy
@@ -63,6 +66,13 @@ public class SerialConnectionImpl extends BasicSerialConnection {
 	private WinApi os;
 	/** the native handle of the serial port */
 	private int handle;
+	/** receives the communication events, that {@link #drain()} waits for */
+	private final ReaderImpl reader;
+	/** configures the native DCB "struct" with the changed settings, never <code>null</code> */
+	private final DCBConfigurator configurator;
+	/** the settings, that are applied to the port, <code>null</code> if they are unknown */
+	@Nullable
+	private SerialPortSettings settings;
 
 	/**
 	 * @param port
@@ -75,10 +85,175 @@ public class SerialConnectionImpl extends BasicSerialConnection {
 	public SerialConnectionImpl(@Nonnull SerialPort port,
 								@Nonnull WinApi os,
 								int handle) {
-		super(port, new ReaderImpl(port, os, handle), new WriterImpl(port, os, handle));
+		this(port, os, handle, null);
+	}
+
+	/**
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param handle
+	 *            the native handle of the serial port
+	 * @param poller
+	 *            waits for the I/O operations while the calling threads are parked,
+	 *            <code>null</code> to wait with <code>WaitForSingleObject</code>
+	 */
+	public SerialConnectionImpl(@Nonnull SerialPort port,
+								@Nonnull WinApi os,
+								int handle,
+								@Nullable EventPoller poller) {
+		this(port, os, handle, poller, new DCBConfigurator(), null);
+	}
+
+	/**
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param handle
+	 *            the native handle of the serial port
+	 * @param poller
+	 *            waits for the I/O operations while the calling threads are parked,
+	 *            <code>null</code> to wait with <code>WaitForSingleObject</code>
+	 * @param configurator
+	 *            configures the native DCB "struct" on reconfiguration, must not be
+	 *            <code>null</code>
+	 * @param settings
+	 *            the settings, that were applied to the port, <code>null</code> if they are
+	 *            unknown
+	 */
+	public SerialConnectionImpl(@Nonnull SerialPort port,
+								@Nonnull WinApi os,
+								int handle,
+								@Nullable EventPoller poller,
+								@Nonnull DCBConfigurator configurator,
+								@Nullable SerialPortSettings settings) {
+		this(port, os, handle, new ReaderImpl(port, os, handle, poller, lineTerminator(settings)), new WriterImpl(port, os, handle, poller), configurator, settings);
+	}
+
+	/** Creates a connection, that reads and writes with the given operations. */
+	private SerialConnectionImpl(	SerialPort port,
+									WinApi os,
+									int handle,
+									ReaderImpl reader,
+									WriterImpl writer,
+									DCBConfigurator configurator,
+									SerialPortSettings settings) {
+		super(port, reader, writer);
 
 		this.os = os;
 		this.handle = handle;
+		this.reader = reader;
+		this.configurator = checkArgumentNotNull(configurator, "configurator");
+		this.settings = settings;
+		setEchoSuppression(settings != null && settings.isEchoSuppression());
+	}
+
+	/**
+	 * Returns the terminator of the lines, if the line mode is enabled in the given settings.
+	 * 
+	 * @return the event character in line mode, otherwise <code>null</code>
+	 */
+	@Nullable
+	private static Character lineTerminator(@Nullable SerialPortSettings settings) {
+		if (settings == null || !settings.isLineMode())
+			return null;
+		return settings.getEventChar();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Applies the settings, that differ from the current settings, to the live handle with
+	 * <code>GetCommState</code> and <code>SetCommState</code>. Nothing is set, if the settings are
+	 * equal.
+	 * <p>
+	 * The line mode and the line terminator can't be changed, because the reader would have to
+	 * re-register the communication events, which aborts a pending <code>WaitCommEvent</code>.
+	 * The echo suppression is not a setting of the driver, it is changed without a native call.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the line mode or the line terminator would be changed
+	 */
+	public void reconfigure(@Nonnull SerialPortSettings settings) throws IOException {
+		checkArgumentNotNull(settings, "settings");
+		lockOpenPort();
+		try {
+			String portName = getPort().getPortName();
+
+			if (!equal(lineTerminator(this.settings), lineTerminator(settings)))
+				throw new UnsupportedOperationException("The line mode of port (" + portName + ") can't be changed while it is open!");
+
+			DCB dcb = new DCB();
+			if (!os.GetCommState(handle, dcb))
+				throw newIOException(os, "Unable to retrieve the current control settings for port (" + portName + ")!", os.GetLastError());
+
+			if (configurator.reconfigureDCB(dcb, this.settings, settings) && !os.SetCommState(handle, dcb))
+				throw newIOException(os, "Unable to set the control settings (" + portName + ")!", os.GetLastError());
+
+			this.settings = settings;
+			setEchoSuppression(settings.isEchoSuppression());
+		}
+		finally {
+			unlockOpenPort();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Waits until the {@link ReaderImpl} receives <code>EV_TXEMPTY</code> and the output buffer of
+	 * the driver is empty, i.e. <code>cbOutQue</code> of <code>ClearCommError</code> is 0.
+	 */
+	public void drain() throws IOException {
+		ensurePortIsOpen();
+		reader.drain();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Discards the buffer with <code>PurgeComm</code>. The pending read is not aborted, because an
+	 * aborted operation would close the connection. The data, that was received but not returned
+	 * yet, is discarded as well.
+	 */
+	public void purgeInput() throws IOException {
+		lockOpenPort();
+		try {
+			purge(PURGE_RXCLEAR);
+			discardReceivedData();
+		}
+		finally {
+			unlockOpenPort();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Discards the buffer with <code>PurgeComm</code>. The pending write is not aborted, because an
+	 * aborted operation would close the connection.
+	 */
+	public void purgeOutput() throws IOException {
+		lockOpenPort();
+		try {
+			purge(PURGE_TXCLEAR);
+		}
+		finally {
+			unlockOpenPort();
+		}
+	}
+
+	/** Discards the buffers with <code>PurgeComm</code>, must be called while the port is locked. */
+	private void purge(int flags) throws IOException {
+		if (!os.PurgeComm(handle, flags))
+			throw newIOException(os, "Unable to purge the buffers of port (" + getPort().getPortName() + ")!", os.GetLastError());
+	}
+
+	/** Returns <code>true</code>, if both characters are <code>null</code> or equal. */
+	private static boolean equal(@Nullable Character a, @Nullable Character b) {
+		return a == null ? b == null : a.equals(b);
 	}
 
 	@Override
@@ -16,37 +16,86 @@
 package org.xidobi;
 
 import static java.lang.Integer.MAX_VALUE;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.xidobi.WinApi.ERROR_SUCCESS;
 import static org.xidobi.WinApi.HKEY_LOCAL_MACHINE;
 import static org.xidobi.WinApi.KEY_READ;
+import static org.xidobi.spi.Preconditions.checkArgument;
 import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
 import static org.xidobi.utils.Throwables.newNativeCodeException;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.xidobi.spi.PortChangeNotifier;
+import org.xidobi.spi.PortChangeNotifierProvider;
 import org.xidobi.structs.HKEY;
 import org.xidobi.structs.INT;
 
 /**
  * Implementation of the interface {@link SerialPortFinder}, that finds all serial ports that are
  * available in the Windows Registry.
+ * <p>
+ * {@link #getAll()} always enumerates the Windows Registry. {@link #get(String)} looks up the port
+ * in a cached index, that is only rebuilt when the Windows Registry reports a change of the serial
+ * ports. Within the time to live of the index, a lookup doesn't invoke any native method.
+ * <p>
+ * <b>IMPORTANT:</b> The finder must be closed, when it is not used anymore, in order to release
+ * the native resources of the change notification.
  * 
  * @author Tobias Breler
  * 
  * @see SerialPortFinder
+ * @see PortChangeNotifierProvider
  */
-public class SerialPortFinderImpl implements SerialPortFinder {
+public class SerialPortFinderImpl implements SerialPortFinder, PortChangeNotifierProvider {
 
 	/** Subkey to the serial ports in the Windows Registry */
 	private static final String HARDWARE_DEVICEMAP_SERIALCOMM = "HARDWARE\\DEVICEMAP\\SERIALCOMM\\";
 
+	/** default time to live of the port index in milliseconds */
+	private static final int DEFAULT_PORT_INDEX_TTL = 1000;
+
 	/** the native Win32-API, never <code>null</code> */
 	private WinApi os;
 
+	/**
+	 * time in nanoseconds, the port index is used without asking the Windows Registry for changes
+	 */
+	private final long portIndexTtl;
+	/** the serial ports mapped by their port names, <code>null</code> until the first lookup */
+	private Map<String, SerialPort> portIndex;
+	/** the point in time (see {@link System#nanoTime()}), the port index was validated last */
+	private long portIndexValidated;
+	/** detects changes of the serial ports, <code>null</code> until the first lookup */
+	private RegistryChangeNotifier changeNotifier;
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if the change notification was released by {@link #close()}
+	 * <li> <code>false</code> if this finder is not closed
+	 * </ul>
+	 */
+	private boolean isClosed;
+	/**
+	 * waits for the I/O operations of the found ports, <code>null</code> if
+	 * <code>WaitForSingleObject</code> is used
+	 */
+	@Nullable
+	private final EventPoller poller;
+	/**
+	 * configures the DCB of the found ports, shared by all ports, so the cached DCB templates are
+	 * reused across the ports
+	 */
+	private final DCBConfigurator configurator = new DCBConfigurator();
+
 	/**
 	 * Creates a new instance, that finds all serial ports that are available in the Windows
 	 * Registry.
@@ -66,7 +115,44 @@ public class SerialPortFinderImpl implements SerialPortFinder {
 	 *            the native Win32-API, must not be <code>null</code>
 	 */
 	public SerialPortFinderImpl(@Nonnull WinApi os) {
+		this(os, DEFAULT_PORT_INDEX_TTL);
+	}
+
+	/**
+	 * Creates a new instance, that finds all serial ports that are available in the Windows
+	 * Registry.
+	 * 
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param portIndexTtl
+	 *            time in milliseconds, the port index is used by {@link #get(String)} without
+	 *            asking the Windows Registry for changes, must not be negative
+	 */
+	public SerialPortFinderImpl(@Nonnull WinApi os,
+								@Nonnegative int portIndexTtl) {
+		this(os, portIndexTtl, null);
+	}
+
+	/**
+	 * Creates a new instance, that finds all serial ports that are available in the Windows
+	 * Registry.
+	 * 
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param portIndexTtl
+	 *            time in milliseconds, the port index is used by {@link #get(String)} without
+	 *            asking the Windows Registry for changes, must not be negative
+	 * @param poller
+	 *            waits for the I/O operations of the found ports while the calling threads are
+	 *            parked, <code>null</code> to wait with <code>WaitForSingleObject</code>
+	 */
+	public SerialPortFinderImpl(@Nonnull WinApi os,
+								@Nonnegative int portIndexTtl,
+								@Nullable EventPoller poller) {
 		this.os = checkArgumentNotNull(os, "os");
+		checkArgument(portIndexTtl >= 0, "portIndexTtl", "Expected a value greater or equal to 0!");
+		this.portIndexTtl = MILLISECONDS.toNanos(portIndexTtl);
+		this.poller = poller;
 	}
 
 	/** {@inheritDoc} */
@@ -91,10 +177,75 @@ public class SerialPortFinderImpl implements SerialPortFinder {
 	@CheckForNull
 	public SerialPort get(@Nonnull String portName) {
 		checkArgumentNotNull(portName, "portName");
-		for (SerialPort port : getAll())
-			if (port.getPortName().equals(portName))
-				return port;
-		return null;
+		return getPortIndex().get(portName);
+	}
+
+	/**
+	 * Returns a new notifier, that watches the subkey of the serial ports in the Windows Registry.
+	 * 
+	 * @return a new {@link RegistryChangeNotifier}, never <code>null</code>
+	 */
+	@Nonnull
+	public PortChangeNotifier newPortChangeNotifier() {
+		return new RegistryChangeNotifier(os, HARDWARE_DEVICEMAP_SERIALCOMM);
+	}
+
+	/**
+	 * Releases the native resources of the change notification. Calling this method more than once
+	 * has no effect.
+	 * <p>
+	 * The finder can still be used afterwards, but {@link #get(String)} enumerates the Windows
+	 * Registry again, whenever the time to live of the port index is expired.
+	 */
+	public synchronized void close() {
+		if (isClosed)
+			return;
+		isClosed = true;
+
+		if (changeNotifier != null) {
+			changeNotifier.close();
+			changeNotifier = null;
+		}
+	}
+
+	/**
+	 * Returns the index of the serial ports. The index is rebuilt, when it's time to live is
+	 * expired and the Windows Registry reports a change of the serial ports.
+	 */
+	private synchronized Map<String, SerialPort> getPortIndex() {
+		long now = nanoTime();
+		if (portIndex != null && now - portIndexValidated < portIndexTtl)
+			return portIndex;
+
+		if (hasRegistryChanged() || portIndex == null)
+			portIndex = createPortIndex(getAll());
+		portIndexValidated = now;
+		return portIndex;
+	}
+
+	/**
+	 * Returns <code>true</code>, if the serial ports in the Windows Registry were changed since the
+	 * last call. The change notification is registered on the first call, before the serial ports
+	 * are enumerated, so a change during the enumeration is not lost. Returns always
+	 * <code>true</code>, if this finder is closed.
+	 */
+	private boolean hasRegistryChanged() {
+		if (isClosed)
+			// the changes are not detected anymore
+			return true;
+		if (changeNotifier == null) {
+			changeNotifier = new RegistryChangeNotifier(os, HARDWARE_DEVICEMAP_SERIALCOMM);
+			return true;
+		}
+		return changeNotifier.hasChanged();
+	}
+
+	/** Returns a new index of the given serial ports, mapped by their port names. */
+	private Map<String, SerialPort> createPortIndex(Set<SerialPort> ports) {
+		Map<String, SerialPort> index = new HashMap<String, SerialPort>();
+		for (SerialPort port : ports)
+			index.put(port.getPortName(), port);
+		return index;
 	}
 
 	/**
@@ -132,7 +283,7 @@ public class SerialPortFinderImpl implements SerialPortFinder {
 			// add serial port values to set:
 			String portName = new String(registryValue, 0, sizeOfValue.value - 1);
 			String description = new String(registryKey, 0, sizeOfKey.value);
-			SerialPort serialPort = new SerialPortImpl(os, portName, description);
+			SerialPort serialPort = new SerialPortImpl(os, portName, description, configurator, poller);
 			ports.add(serialPort);
 		}
 
@@ -17,7 +17,14 @@ package org.xidobi;
 
 import static org.xidobi.WinApi.ERROR_ACCESS_DENIED;
 import static org.xidobi.WinApi.ERROR_FILE_NOT_FOUND;
+import static org.xidobi.WinApi.EV_BREAK;
+import static org.xidobi.WinApi.EV_CTS;
+import static org.xidobi.WinApi.EV_DSR;
+import static org.xidobi.WinApi.EV_ERR;
+import static org.xidobi.WinApi.EV_RING;
+import static org.xidobi.WinApi.EV_RLSD;
 import static org.xidobi.WinApi.EV_RXCHAR;
+import static org.xidobi.WinApi.EV_RXFLAG;
 import static org.xidobi.WinApi.FILE_FLAG_OVERLAPPED;
 import static org.xidobi.WinApi.GENERIC_READ;
 import static org.xidobi.WinApi.GENERIC_WRITE;
@@ -48,6 +55,20 @@ import org.xidobi.utils.Throwables;
  */
 public class SerialPortImpl implements SerialPort {
 
+	/**
+	 * the communication events, that are monitored by the {@link ReaderImpl}: received data,
+	 * changes of the modem control signals and line errors. <code>EV_TXEMPTY</code> is only
+	 * registered by the reader, while a thread waits until the output buffer was sent.
+	 */
+	static final int COMM_EVENTS = EV_RXCHAR | EV_CTS | EV_DSR | EV_RING | EV_RLSD | EV_BREAK | EV_ERR;
+
+	/**
+	 * the communication events, that are monitored in line mode: the reception of the event
+	 * character replaces the reception of any character, so the reader is not woken up for every
+	 * byte
+	 */
+	static final int LINE_MODE_COMM_EVENTS = (COMM_EVENTS & ~EV_RXCHAR) | EV_RXFLAG;
+
 	/** the native Win32-API, never <code>null</code> */
 	@Nonnull
 	private final WinApi os;
@@ -63,6 +84,13 @@ public class SerialPortImpl implements SerialPort {
 	@Nonnull
 	private final DCBConfigurator configurator;
 
+	/**
+	 * waits for the I/O operations of the opened connections, <code>null</code> if
+	 * <code>WaitForSingleObject</code> is used
+	 */
+	@Nullable
+	private final EventPoller poller;
+
 	/** The additional description for the serial port, maybe <code>null</code> */
 	@Nullable
 	private String description;
@@ -100,22 +128,48 @@ public class SerialPortImpl implements SerialPort {
 							@Nonnull String portName,
 							@Nullable String description,
 							@Nonnull DCBConfigurator configurator) {
+		this(os, portName, description, configurator, null);
+	}
+
+	/**
+	 * Creates a new handle using the native Win32-API provided by the {@link WinApi}.
+	 * 
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param portName
+	 *            the name of this port, must not be <code>null</code>
+	 * @param description
+	 *            the additional description for the serial port, maybe <code>null</code>
+	 * @param configurator
+	 *            configures the native DCB "struct" with the values from the serial port settings,
+	 *            must not be <code>null</code>
+	 * @param poller
+	 *            waits for the I/O operations of the opened connections while the calling threads
+	 *            are parked, <code>null</code> to wait with <code>WaitForSingleObject</code>
+	 */
+	public SerialPortImpl(	@Nonnull WinApi os,
+							@Nonnull String portName,
+							@Nullable String description,
+							@Nonnull DCBConfigurator configurator,
+							@Nullable EventPoller poller) {
 		this.portName = checkArgumentNotNull(portName, "portName");
 		this.os = checkArgumentNotNull(os, "os");
 		this.configurator = checkArgumentNotNull(configurator, "configurator");
 		this.description = description;
+		this.poller = poller;
 	}
 
 	/** {@inheritDoc} */
 	@Nonnull
 	public SerialConnection open(@Nonnull SerialPortSettings settings) throws IOException {
 		checkArgumentNotNull(settings, "settings");
+		final DCB template = configurator.getTemplate(settings);
 
 		final int handle = tryOpen(portName);
 		try {
-			applySettings(handle, settings);
+			applySettings(handle, template);
 			clearIOBuffers(handle);
-			registerRxEvent(handle);
+			registerCommEvents(handle, settings.isLineMode());
 		}
 		catch (IOException e) {
 			os.CloseHandle(handle);
@@ -126,7 +180,7 @@ public class SerialPortImpl implements SerialPort {
 			throw e;
 		}
 
-		return new SerialConnectionImpl(this, os, handle);
+		return new SerialConnectionImpl(this, os, handle, poller, configurator, settings);
 	}
 
 	/**
@@ -154,20 +208,14 @@ public class SerialPortImpl implements SerialPort {
 	}
 
 	/**
-	 * Tries to apply the {@link SerialPortSettings} to the port.
+	 * Tries to apply the {@link DCB} template of the {@link SerialPortSettings} to the port with a
+	 * single native call.
 	 * 
 	 * @throws IOException
-	 *             if it was not possible to apply the settings e.g. if they are invalid
+	 *             if it was not possible to apply the settings
 	 */
-	private void applySettings(final int handle, final SerialPortSettings settings) throws IOException {
-		final DCB dcb = new DCB();
-
-		if (!os.GetCommState(handle, dcb))
-			throw lastError("Unable to retrieve the current control settings for port (" + portName + ")!");
-
-		configurator.configureDCB(dcb, settings);
-
-		if (!os.SetCommState(handle, dcb))
+	private void applySettings(final int handle, final DCB template) throws IOException {
+		if (!os.ApplyCommState(handle, template))
 			throw lastError("Unable to set the control settings (" + portName + ")!");
 	}
 
@@ -185,12 +233,16 @@ public class SerialPortImpl implements SerialPort {
 	}
 
 	/**
-	 * Set the event mask to the given handle in order to be notified about received bytes.
+	 * Set the event mask to the given handle in order to be notified about received bytes, changes
+	 * of the modem control signals and line errors.
 	 * 
 	 * @param portHandle
+	 * @param lineMode
+	 *            <code>true</code> to be notified only about received event characters instead of
+	 *            every received byte
 	 */
-	private void registerRxEvent(int portHandle) {
-		if (os.SetCommMask(portHandle, EV_RXCHAR))
+	private void registerCommEvents(int portHandle, boolean lineMode) {
+		if (os.SetCommMask(portHandle, lineMode ? LINE_MODE_COMM_EVENTS : COMM_EVENTS))
 			return;
 
 		throw newNativeCodeException(os, "SetCommMask failed!", os.GetLastError());
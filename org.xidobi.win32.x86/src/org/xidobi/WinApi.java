@@ -15,6 +15,8 @@
  */
 package org.xidobi;
 
+import java.nio.ByteBuffer;
+
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -92,6 +94,8 @@ public interface WinApi {
 	int ERROR_BAD_COMMAND = 22;
 	/** A device attached to the system is not functioning. */
 	int ERROR_GEN_FAILURE = 31;
+	/** The parameter is incorrect. */
+	int ERROR_INVALID_PARAMETER = 87;
 	/** More data is available. */
 	int ERROR_MORE_DATA = 234;
 	/** No more data is available. Indicates in an enumeration that no more elements are available. */
@@ -116,6 +120,8 @@ public interface WinApi {
 	int WAIT_TIMEOUT = 0x00000102;
 	/** The function has failed. To get extended error information, call GetLastError. */
 	int WAIT_FAILED = 0xFFFFFFFF;
+	/** The maximum number of handles, that can be passed to WaitForMultipleObjects. */
+	int MAXIMUM_WAIT_OBJECTS = 64;
 
 	/** Combines the STANDARD_RIGHTS_WRITE, KEY_SET_VALUE, and KEY_CREATE_SUB_KEY access rights. */
 	int KEY_WRITE = 0x20006;
@@ -137,6 +143,24 @@ public interface WinApi {
 	 */
 	int HKEY_LOCAL_MACHINE = 0x80000002;
 
+	/** Notify the caller if a subkey is added or deleted. */
+	int REG_NOTIFY_CHANGE_NAME = 0x00000001;
+	/** Notify the caller of changes to the attributes of the key, such as the security descriptor. */
+	int REG_NOTIFY_CHANGE_ATTRIBUTES = 0x00000002;
+	/**
+	 * Notify the caller of changes to a value of the key. This can include adding or deleting a
+	 * value, or changing an existing value.
+	 */
+	int REG_NOTIFY_CHANGE_LAST_SET = 0x00000004;
+	/** Notify the caller of changes to the security descriptor of the key. */
+	int REG_NOTIFY_CHANGE_SECURITY = 0x00000008;
+	/**
+	 * The lifetime of the registration is not tied to the lifetime of the thread issuing the
+	 * RegNotifyChangeKeyValue call. Supported since Windows 8, older versions fail with
+	 * {@link #ERROR_INVALID_PARAMETER}.
+	 */
+	int REG_NOTIFY_THREAD_AGNOSTIC = 0x10000000;
+
 	/**
 	 * The function allocates a buffer large enough to hold the formatted message, and places a
 	 * pointer to the allocated buffer at the address specified by lpBuffer. The lpBuffer parameter
@@ -254,6 +278,15 @@ public interface WinApi {
 	/** The hardware detected a parity error. */
 	int CE_RXPARITY = 0x0004;
 
+	/** The CTS (clear-to-send) signal is on. */
+	int MS_CTS_ON = 0x0010;
+	/** The DSR (data-set-ready) signal is on. */
+	int MS_DSR_ON = 0x0020;
+	/** The ring indicator signal is on. */
+	int MS_RING_ON = 0x0040;
+	/** The RLSD (receive-line-signal-detect) signal is on. */
+	int MS_RLSD_ON = 0x0080;
+
 	/**
 	 * The CreateFile function can create a handle to a communications resource, such as the serial
 	 * port COM1. For communications resources, the dwCreationDisposition parameter must be
@@ -361,6 +394,25 @@ public interface WinApi {
 	@CheckReturnValue
 	boolean SetCommState(int handle, DCB dcb);
 
+	/**
+	 * Applies the values of a template {@link DCB} to a communications device with a single native
+	 * call. The current control settings are retrieved with {@link #GetCommState(int, DCB)}, the
+	 * values that are configured by the {@link DCBConfigurator} are replaced by the values of the
+	 * template and the result is set with {@link #SetCommState(int, DCB)}. All other values of the
+	 * device, e.g. <code>EofChar</code> or <code>fBinary</code>, are left unchanged.
+	 * 
+	 * @param handle
+	 *            {@code _In_ HANDLE} - A handle to the communications device. The CreateFile
+	 *            function returns this handle.
+	 * @param template
+	 *            the {@link DCB} structure with the values to apply, it is not modified
+	 * @return {@code BOOL} - If the function succeeds, the return value is nonzero. If
+	 *         <code>GetCommState</code> or <code>SetCommState</code> fails, the return value is
+	 *         zero. To get extended error information, call {@link #GetLastError()}.
+	 */
+	@CheckReturnValue
+	boolean ApplyCommState(int handle, DCB template);
+
 	/**
 	 * Creates or opens a named or unnamed event object.
 	 * <p>
@@ -441,6 +493,41 @@ public interface WinApi {
 	@CheckReturnValue
 	boolean WriteFile(int handle, @Nonnull byte[] lpBuffer, int nNumberOfBytesToWrite, @Nullable DWORD lpNumberOfBytesWritten, @Nullable OVERLAPPED lpOverlapped);
 
+	/**
+	 * Writes the data of a native byte array to the specified file or input/output (I/O) device.
+	 * Unlike {@link #WriteFile(int, byte[], int, DWORD, OVERLAPPED)} the data is not copied, the
+	 * native byte array is passed as buffer.
+	 * <p>
+	 * <i> Please see <a
+	 * href="http://msdn.microsoft.com/en-us/library/windows/desktop/aa365747(v=vs.85).aspx">
+	 * WriteFile (MSDN)</a> for more details.</i>
+	 * 
+	 * @param handle
+	 *            {@code _In_ HANDLE} - A handle to the file or I/O device. The hFile parameter must
+	 *            have been created with the write access.
+	 * @param lpBuffer
+	 *            {@code _In_ LPCVOID} - The native byte array containing the data to be written to
+	 *            the file or device. This buffer must remain valid for the duration of the write
+	 *            operation. The caller must not use this buffer until the write operation is
+	 *            completed.
+	 * @param nNumberOfBytesToWrite
+	 *            {@code _In_ DWORD} - The number of bytes to be written from the beginning of the
+	 *            native byte array.
+	 * @param lpNumberOfBytesWritten
+	 *            {@code _Out_opt_ LPDWORD} - A pointer to the variable that receives the number of
+	 *            bytes written when using a synchronous hFile parameter.
+	 * @param lpOverlapped
+	 *            {@code _Inout_opt_ LPOVERLAPPED} - A pointer to an {@link OVERLAPPED} structure is
+	 *            required if the hFile parameter was opened with FILE_FLAG_OVERLAPPED, otherwise
+	 *            this parameter can be NULL.
+	 * @return {@code BOOL} - If the function succeeds, the return value is nonzero (
+	 *         <code>true</code>). If the function fails, or is completing asynchronously, the
+	 *         return value is zero (<code>false</code>). To get extended error information, call
+	 *         the {@link #GetLastError()} function.
+	 */
+	@CheckReturnValue
+	boolean WriteFile(int handle, @Nonnull NativeByteArray lpBuffer, int nNumberOfBytesToWrite, @Nullable DWORD lpNumberOfBytesWritten, @Nullable OVERLAPPED lpOverlapped);
+
 	/**
 	 * Reads data from the specified file or input/output (I/O) device. Reads occur at the position
 	 * specified by the file pointer if supported by the device.
@@ -506,6 +593,7 @@ public interface WinApi {
 	 * <li> {@link #SetCommState(int, DCB)}
 	 * <li> {@link #WaitForSingleObject(int, int)}
 	 * <li> {@link #WriteFile(int, byte[], int, DWORD, OVERLAPPED)}
+	 * <li> {@link #WriteFile(int, NativeByteArray, int, DWORD, OVERLAPPED)}
 	 * </ul>
 	 * 
 	 * @see #GetLastError()
@@ -597,6 +685,48 @@ public interface WinApi {
 	@CheckReturnValue
 	int WaitForSingleObject(int hHandle, int dwMilliseconds);
 
+	/**
+	 * Waits until one or all of the specified objects are in the signaled state or the time-out
+	 * interval elapses.
+	 * <p>
+	 * <b>Remarks:</b> When <code>bWaitAll</code> is <code>false</code>, the function checks the
+	 * handles in the array in order starting with index 0, until one of the objects is signaled. If
+	 * multiple objects become signaled, the function returns the index of the first handle in the
+	 * array whose object was signaled. The array may not contain multiple copies of the same
+	 * handle.
+	 * <p>
+	 * <i>Please see <a
+	 * href="http://msdn.microsoft.com/en-us/library/windows/desktop/ms687025(v=vs.85).aspx">
+	 * WaitForMultipleObjects (MSDN)</a> for more details.</i>
+	 * 
+	 * @param nCount
+	 *            {@code _In_ DWORD} - The number of object handles in the array pointed to by
+	 *            lpHandles. The maximum number of object handles is {@link #MAXIMUM_WAIT_OBJECTS}.
+	 *            This parameter cannot be zero.
+	 * @param lpHandles
+	 *            {@code _In_ const HANDLE *} - An array of object handles. The array can contain
+	 *            handles to objects of different types. It may not contain multiple copies of the
+	 *            same handle. If one of these handles is closed while the wait is still pending,
+	 *            the function's behavior is undefined.
+	 * @param bWaitAll
+	 *            {@code _In_ BOOL} - If this parameter is <code>true</code>, the function returns
+	 *            when the state of all objects in the lpHandles array is signaled. If
+	 *            <code>false</code>, the function returns when the state of any one of the objects
+	 *            is set to signaled.
+	 * @param dwMilliseconds
+	 *            {@code _In_ DWORD} - The time-out interval, in milliseconds. If dwMilliseconds is
+	 *            INFINITE, the function will return only when the specified objects are signaled.
+	 * @return {@code DWORD} - If the function succeeds, the return value indicates the event that
+	 *         caused the function to return. It can be one of the following values:
+	 *         <ul>
+	 *         <li>{@link #WAIT_OBJECT_0} to (WAIT_OBJECT_0 + nCount - 1) <li>
+	 *         {@link #WAIT_ABANDONED} to (WAIT_ABANDONED + nCount - 1) <li>{@link #WAIT_TIMEOUT}
+	 *         <li>{@link #WAIT_FAILED}
+	 *         </ul>
+	 */
+	@CheckReturnValue
+	int WaitForMultipleObjects(int nCount, @Nonnull int[] lpHandles, boolean bWaitAll, int dwMilliseconds);
+
 	/**
 	 * Opens the specified registry key. Note that key names are not case sensitive.
 	 * <p>
@@ -712,6 +842,47 @@ public interface WinApi {
 	@CheckReturnValue
 	int RegEnumValueA(HKEY hKey, int dwIndex, byte[] lpValueName, INT lpcchValueName, int lpReserved, INT lpType, byte[] lpData, INT lpcbData);
 
+	/**
+	 * Notifies the caller about changes to the attributes or contents of a specified registry key.
+	 * <p>
+	 * This function detects a single change. After the caller receives a notification event, it
+	 * should call the function again to receive the next notification.
+	 * <p>
+	 * <i>Please see <a
+	 * href="http://msdn.microsoft.com/en-us/library/windows/desktop/ms724892(v=vs.85).aspx">
+	 * RegNotifyChangeKeyValue (MSDN)</a> for more details.</i>
+	 * 
+	 * @param hKey
+	 *            {@code _In_ HKEY} - A handle to an open registry key. The key must have been
+	 *            opened with the KEY_NOTIFY access right, e.g. with {@link #KEY_READ}.
+	 * @param bWatchSubtree
+	 *            {@code _In_ BOOL} - If this parameter is <code>true</code>, the function reports
+	 *            changes in the specified key and its subkeys. If the parameter is
+	 *            <code>false</code>, the function reports changes only in the specified key.
+	 * @param dwNotifyFilter
+	 *            {@code _In_ DWORD} - A value that indicates the changes that should be reported.
+	 *            This parameter can be one or more of the following values:
+	 *            <ul>
+	 *            <li> {@link #REG_NOTIFY_CHANGE_NAME} <li> {@link #REG_NOTIFY_CHANGE_ATTRIBUTES}
+	 *            <li> {@link #REG_NOTIFY_CHANGE_LAST_SET} <li> {@link #REG_NOTIFY_CHANGE_SECURITY}
+	 *            </ul>
+	 *            optionally combined with {@link #REG_NOTIFY_THREAD_AGNOSTIC}.
+	 * @param hEvent
+	 *            {@code _In_opt_ HANDLE} - A handle to an event. If the fAsynchronous parameter is
+	 *            <code>true</code>, the function returns immediately and changes are reported by
+	 *            signaling this event. If fAsynchronous is <code>false</code>, hEvent is ignored.
+	 * @param fAsynchronous
+	 *            {@code _In_ BOOL} - If this parameter is <code>true</code>, the function returns
+	 *            immediately and reports changes by signaling the specified event. If this
+	 *            parameter is <code>false</code>, the function does not return until a change has
+	 *            occurred.
+	 * @return {@code LONG} - If the function succeeds, the return value is {@link #ERROR_SUCCESS}.
+	 *         If the function fails, the return value is a nonzero error code defined in
+	 *         Winerror.h.
+	 */
+	@CheckReturnValue
+	int RegNotifyChangeKeyValue(HKEY hKey, boolean bWatchSubtree, int dwNotifyFilter, int hEvent, boolean fAsynchronous);
+
 	/**
 	 * Creates a <a
 	 * href="http://msdn.microsoft.com/en-us/library/windows/desktop/dd318691(v=vs.85).aspx"
@@ -964,6 +1135,31 @@ public interface WinApi {
 	@CheckReturnValue
 	boolean ClearCommBreak(int hFile);
 
+	/**
+	 * Retrieves the modem control-register values.
+	 * <p>
+	 * <i>Please see <a
+	 * href="http://msdn.microsoft.com/en-us/library/windows/desktop/aa363258(v=vs.85).aspx">
+	 * GetCommModemStatus (MSDN)</a> for more details.</i>
+	 * 
+	 * @param hFile
+	 *            {@code _In_ HANDLE} - A handle to the communications device. The CreateFile
+	 *            function returns this handle.
+	 * @param lpModemStat
+	 *            {@code _Out_ LPDWORD} - A pointer to a variable that receives the current state
+	 *            of the modem control-register values. This parameter can be one or more of the
+	 *            following values:
+	 *            <ul>
+	 *            <li>{@link #MS_CTS_ON} <li>{@link #MS_DSR_ON} <li>{@link #MS_RING_ON} <li>
+	 *            {@link #MS_RLSD_ON}
+	 *            </ul>
+	 * @return {@code BOOL} - If the function succeeds, the return value is nonzero. If the function
+	 *         fails, the return value is zero. To get extended error information, call
+	 *         {@link #GetLastError()}.
+	 */
+	@CheckReturnValue
+	boolean GetCommModemStatus(int hFile, INT lpModemStat);
+
 	/**
 	 * Marks any outstanding I/O operations for the specified file handle. The function only cancels
 	 * I/O operations in the current process, regardless of which thread created the I/O operation.
@@ -1080,6 +1276,39 @@ public interface WinApi {
 	 */
 	byte[] getByteArray(@Nonnull NativeByteArray nativeByteArray, @Nonnegative int length);
 
+	/**
+	 * Copies bytes of the given array into the native byte array.
+	 * 
+	 * @param nativeByteArray
+	 *            the native byte array pointer
+	 * @param offset
+	 *            the index in the native byte array, where the first byte is stored
+	 * @param data
+	 *            the bytes to copy
+	 * @param dataOffset
+	 *            the index of the first byte to copy
+	 * @param length
+	 *            the number of bytes to copy, the bytes must fit into the native byte array
+	 */
+	void setByteArray(@Nonnull NativeByteArray nativeByteArray, @Nonnegative int offset, @Nonnull byte[] data, @Nonnegative int dataOffset, @Nonnegative int length);
+
+	/**
+	 * Copies bytes of the given direct {@link ByteBuffer} into the native byte array. The position
+	 * of the buffer is not changed.
+	 * 
+	 * @param nativeByteArray
+	 *            the native byte array pointer
+	 * @param offset
+	 *            the index in the native byte array, where the first byte is stored
+	 * @param directBuffer
+	 *            the direct buffer containing the bytes to copy
+	 * @param position
+	 *            the index of the first byte to copy in the buffer
+	 * @param length
+	 *            the number of bytes to copy, the bytes must fit into the native byte array
+	 */
+	void setByteArray(@Nonnull NativeByteArray nativeByteArray, @Nonnegative int offset, @Nonnull ByteBuffer directBuffer, @Nonnegative int position, @Nonnegative int length);
+
 	/**
 	 * Returns the value of the DWORD pointer.
 	 * 
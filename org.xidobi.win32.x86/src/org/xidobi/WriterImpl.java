@@ -23,23 +23,40 @@ import static org.xidobi.WinApi.WAIT_TIMEOUT;
 import static org.xidobi.utils.Throwables.newNativeCodeException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.xidobi.spi.GatheringWriter;
 import org.xidobi.spi.NativeCodeException;
 import org.xidobi.spi.Writer;
+import org.xidobi.structs.NativeByteArray;
 
 /**
  * Implementation for write operations.
+ * <p>
+ * Gathering writes copy the buffers into a native staging buffer, that is reused by the following
+ * gathering writes, and write it with a single <code>WriteFile</code>.
  * 
  * @author Christian Schwarz
  * @author Tobias Breler
  */
-public class WriterImpl extends IoOperationImpl implements Writer {
+public class WriterImpl extends IoOperationImpl implements Writer, GatheringWriter {
+
+	/** the initial size of the staging buffer in bytes */
+	private static final int MIN_STAGING_BUFFER_SIZE = 256;
 
 	/** Write timeout in milliseconds */
 	private int writeTimeout = 2000;
 
+	/**
+	 * the native buffer, that the gathering writes copy their buffers into, <code>null</code> if
+	 * no gathering write was executed yet
+	 */
+	@Nullable
+	private NativeByteArray stagingBuffer;
+
 	/**
 	 * Creates a new write operation.
 	 * 
@@ -53,7 +70,27 @@ public class WriterImpl extends IoOperationImpl implements Writer {
 	public WriterImpl(	@Nonnull SerialPort port,
 						@Nonnull WinApi os,
 						int handle) {
-		super(port, os, handle);
+		this(port, os, handle, null);
+	}
+
+	/**
+	 * Creates a new write operation.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param os
+	 *            the native Win32-API, must not be <code>null</code>
+	 * @param handle
+	 *            the native handle of the serial port
+	 * @param poller
+	 *            waits for the completion of the writes while the writing thread is parked,
+	 *            <code>null</code> to wait with <code>WaitForSingleObject</code>
+	 */
+	public WriterImpl(	@Nonnull SerialPort port,
+						@Nonnull WinApi os,
+						int handle,
+						@Nullable EventPoller poller) {
+		super(port, os, handle, poller);
 	}
 
 	/** {@inheritDoc} */
@@ -66,44 +103,108 @@ public class WriterImpl extends IoOperationImpl implements Writer {
 
 			// write data to serial port
 			boolean succeed = os.WriteFile(handle, data, data.length, numberOfBytesTransferred, overlapped);
+			awaitWriteCompletion(succeed, data.length);
+		}
+		finally {
+			disposeLock.unlock();
+		}
+	}
 
-			if (succeed) {
-				// the write operation succeeded immediatly
-				if (numberOfBytesTransferred.getValue() != data.length)
-					throw new NativeCodeException("WriteFile returned an unexpected number of transferred bytes! Transferred: " + numberOfBytesTransferred.getValue() + ", expected: " + data.length);
-				return;
-			}
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The buffers are copied into the native staging buffer, which grows if the data doesn't fit.
+	 */
+	public void write(@Nonnull ByteBuffer[] data, int length) throws IOException {
+		disposeLock.lock();
+		try {
+			checkIfClosedOrDisposed();
 
-			int lastError = os.GetLastError();
-			if (lastError != ERROR_IO_PENDING)
-				handleNativeError("WriteFile", lastError);
-
-			// wait for pending I/O operation to complete
-			int waitResult = os.WaitForSingleObject(overlapped.hEvent, writeTimeout);
-			switch (waitResult) {
-				case WAIT_OBJECT_0: // IO operation has finished
-					if (!os.GetOverlappedResult(handle, overlapped, numberOfBytesTransferred, true))
-						handleNativeError("GetOverlappedResult", os.GetLastError());
-
-					// verify that the number of transferred bytes is equal to the data length that
-					// was written:
-					if (numberOfBytesTransferred.getValue() != data.length)
-						throw new NativeCodeException("GetOverlappedResult returned an unexpected number of transferred bytes! Transferred: " + numberOfBytesTransferred.getValue() + ", expected: " + data.length);
-					return;
-				case WAIT_TIMEOUT:
-					// I/O operation has timed out
-					throw new IOException("Write operation timed out after " + writeTimeout + " milliseconds!");
-				case WAIT_ABANDONED:
-					throw new NativeCodeException("WaitForSingleObject returned an unexpected value: WAIT_ABANDONED!");
-				case WAIT_FAILED:
-					handleNativeError("WaitForSingleObject", os.GetLastError());
-				default:
-					throw newNativeCodeException(os, "WaitForSingleObject returned unexpected value! Got: " + waitResult, os.GetLastError());
+			NativeByteArray buffer = stagingBuffer(length);
+			int offset = 0;
+			for (ByteBuffer segment : data) {
+				buffer.setByteBuffer(offset, segment);
+				offset += segment.remaining();
 			}
+
+			resetOverlappedEventHandle();
+
+			// write the staging buffer to serial port
+			boolean succeed = os.WriteFile(handle, buffer, length, numberOfBytesTransferred, overlapped);
+			awaitWriteCompletion(succeed, length);
 		}
 		finally {
 			disposeLock.unlock();
 		}
 	}
 
+	/**
+	 * Returns the staging buffer with at least the given size. A new buffer is allocated, if the
+	 * current buffer is too small.
+	 */
+	private NativeByteArray stagingBuffer(int length) {
+		if (stagingBuffer != null && stagingBuffer.size() >= length)
+			return stagingBuffer;
+
+		int size = Math.max(length, MIN_STAGING_BUFFER_SIZE);
+		if (stagingBuffer != null) {
+			size = Math.max(size, 2 * stagingBuffer.size());
+			stagingBuffer.dispose();
+			stagingBuffer = null;
+		}
+		stagingBuffer = new NativeByteArray(os, size);
+		return stagingBuffer;
+	}
+
+	/**
+	 * Waits for the completion of the started <code>WriteFile</code> and verifies that all bytes
+	 * were transferred.
+	 * 
+	 * @param succeed
+	 *            the result of <code>WriteFile</code>
+	 * @param length
+	 *            the number of bytes, that must be transferred
+	 */
+	private void awaitWriteCompletion(boolean succeed, int length) throws IOException {
+		if (succeed) {
+			// the write operation succeeded immediatly
+			if (numberOfBytesTransferred.getValue() != length)
+				throw new NativeCodeException("WriteFile returned an unexpected number of transferred bytes! Transferred: " + numberOfBytesTransferred.getValue() + ", expected: " + length);
+			return;
+		}
+
+		int lastError = os.GetLastError();
+		if (lastError != ERROR_IO_PENDING)
+			handleNativeError("WriteFile", lastError);
+
+		// wait for pending I/O operation to complete
+		int waitResult = awaitOverlappedEvent(writeTimeout);
+		switch (waitResult) {
+			case WAIT_OBJECT_0: // IO operation has finished
+				if (!os.GetOverlappedResult(handle, overlapped, numberOfBytesTransferred, true))
+					handleNativeError("GetOverlappedResult", os.GetLastError());
+
+				// verify that the number of transferred bytes is equal to the data length that
+				// was written:
+				if (numberOfBytesTransferred.getValue() != length)
+					throw new NativeCodeException("GetOverlappedResult returned an unexpected number of transferred bytes! Transferred: " + numberOfBytesTransferred.getValue() + ", expected: " + length);
+				return;
+			case WAIT_TIMEOUT:
+				// I/O operation has timed out
+				throw new IOException("Write operation timed out after " + writeTimeout + " milliseconds!");
+			case WAIT_ABANDONED:
+				throw new NativeCodeException("WaitForSingleObject returned an unexpected value: WAIT_ABANDONED!");
+			case WAIT_FAILED:
+				handleNativeError("WaitForSingleObject", os.GetLastError());
+			default:
+				throw newNativeCodeException(os, "WaitForSingleObject returned unexpected value! Got: " + waitResult, os.GetLastError());
+		}
+	}
+
+	@Override
+	protected void disposeInternal() {
+		if (stagingBuffer != null)
+			stagingBuffer.dispose();
+	}
+
 }
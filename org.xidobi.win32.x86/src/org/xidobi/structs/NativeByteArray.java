@@ -16,6 +16,9 @@
 package org.xidobi.structs;
 
 import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.nio.ByteBuffer;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -73,6 +76,58 @@ public class NativeByteArray extends Pointer {
 		return getWinApi().getByteArray(this, length);
 	}
 
+	/**
+	 * Copies the given bytes into this native byte array.
+	 * 
+	 * @param offset
+	 *            the index in this array, where the first byte is stored, must not be negative
+	 * @param data
+	 *            the bytes to copy, must not be <code>null</code>
+	 * @param dataOffset
+	 *            the index of the first byte to copy, must not be negative
+	 * @param length
+	 *            the number of bytes to copy, the bytes must fit into this array and must be
+	 *            available in the data
+	 */
+	public void setByteArray(@Nonnegative int offset, @Nonnull byte[] data, @Nonnegative int dataOffset, @Nonnegative int length) {
+		checkArgumentNotNull(data, "data");
+		checkArgument(offset >= 0 && length >= 0 && offset + length <= size(), "length", "Expected a value that fits into the size of the byte array");
+		checkArgument(dataOffset >= 0 && dataOffset + length <= data.length, "dataOffset", "Expected a value that fits into the length of the data");
+		checkIfDisposed();
+		getWinApi().setByteArray(this, offset, data, dataOffset, length);
+	}
+
+	/**
+	 * Copies the remaining bytes of the given buffer into this native byte array. The position of
+	 * the buffer is not changed. The bytes of direct and heap buffers are copied without an
+	 * intermediate array.
+	 * 
+	 * @param offset
+	 *            the index in this array, where the first byte is stored, must not be negative
+	 * @param data
+	 *            the buffer, whose remaining bytes are copied, must not be <code>null</code>. The
+	 *            remaining bytes must fit into this array.
+	 */
+	public void setByteBuffer(@Nonnegative int offset, @Nonnull ByteBuffer data) {
+		checkArgumentNotNull(data, "data");
+		int length = data.remaining();
+		if (data.hasArray()) {
+			setByteArray(offset, data.array(), data.arrayOffset() + data.position(), length);
+			return;
+		}
+		checkArgument(offset >= 0 && offset + length <= size(), "data", "Expected remaining bytes that fit into the size of the byte array");
+		checkIfDisposed();
+		if (data.isDirect()) {
+			getWinApi().setByteArray(this, offset, data, data.position(), length);
+			return;
+		}
+
+		// a read-only heap buffer doesn't expose its array
+		byte[] bytes = new byte[length];
+		data.duplicate().get(bytes);
+		getWinApi().setByteArray(this, offset, bytes, 0, length);
+	}
+
 	// -- FOR DEBUGGING ONLY: -----------------
 	@Override
 	public void dispose() {
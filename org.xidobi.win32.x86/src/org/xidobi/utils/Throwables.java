@@ -22,19 +22,33 @@ import static org.xidobi.WinApi.SUBLANG_NEUTRAL;
 import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
 
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.xidobi.WinApi;
 import org.xidobi.spi.NativeCodeException;
 
 /**
  * Some utilities which helps to create exceptions.
+ * <p>
+ * The native error messages are cached per error code, because failures like
+ * <code>ERROR_ACCESS_DENIED</code> often occur in bursts, e.g. when an USB hub is reset. The
+ * messages of the created exceptions are built lazily, when they are requested.
  * 
  * @author Tobias Breler
  */
 public final class Throwables {
 
+	/** the maximum number of cached native error messages, the cache is cleared when it is full */
+	static final int MAX_CACHED_MESSAGES = 64;
+
+	/** the cached native error messages of the last used Win32-API, never <code>null</code> */
+	private static volatile MessageCache messageCache = new MessageCache(null);
+
 	/** This class can not be instantiated */
 	private Throwables() {}
 
@@ -52,7 +66,9 @@ public final class Throwables {
 	 */
 	@Nonnull
 	public static final NativeCodeException newNativeCodeException(@Nonnull WinApi os, @Nonnull String message, int errorCode) {
-		return new NativeCodeException(getErrorMessage(os, message, errorCode));
+		checkArgumentNotNull(os, "win");
+		checkArgumentNotNull(message, "message");
+		return new NativeErrorCodeException(os, message, errorCode);
 	}
 
 	/**
@@ -69,7 +85,9 @@ public final class Throwables {
 	 */
 	@Nonnull
 	public static final IOException newIOException(@Nonnull WinApi os, @Nonnull String message, int errorCode) {
-		return new IOException(getErrorMessage(os, message, errorCode));
+		checkArgumentNotNull(os, "win");
+		checkArgumentNotNull(message, "message");
+		return new NativeErrorIOException(os, message, errorCode);
 	}
 
 	/**
@@ -107,12 +125,42 @@ public final class Throwables {
 	}
 
 	/**
-	 * Returns an error message for the given error code. If no message can be found, then
-	 * "No error message available" is returned.
+	 * Returns an error message for the given error code from the cache. If no message can be found,
+	 * then "No error message available" is returned.
 	 */
 	private static String getNativeErrorMessage(WinApi os, int errorCode) {
 		checkArgumentNotNull(os, "win");
 
+		ConcurrentMap<Integer, String> messages = getMessageCache(os).messages;
+		String message = messages.get(errorCode);
+		if (message != null)
+			return message;
+
+		message = formatNativeErrorMessage(os, errorCode);
+		if (messages.size() >= MAX_CACHED_MESSAGES)
+			messages.clear();
+		messages.put(errorCode, message);
+		return message;
+	}
+
+	/**
+	 * Returns the cache of the given Win32-API. The cache is replaced, when another Win32-API is
+	 * used.
+	 */
+	private static MessageCache getMessageCache(WinApi os) {
+		MessageCache cache = messageCache;
+		if (cache.os == os)
+			return cache;
+		cache = new MessageCache(os);
+		messageCache = cache;
+		return cache;
+	}
+
+	/**
+	 * Formats the error message for the given error code. If no message can be found, then
+	 * "No error message available" is returned.
+	 */
+	private static String formatNativeErrorMessage(WinApi os, int errorCode) {
 		byte[] lpMsgBuf = new byte[255];
 		//@formatter:off
 		int result = os.FormatMessageA(FORMAT_MESSAGE_FROM_SYSTEM | FORMAT_MESSAGE_IGNORE_INSERTS, 
@@ -125,4 +173,91 @@ public final class Throwables {
 		// and convert to a String:
 		return new String(lpMsgBuf, 0, result - 2);
 	}
+
+	/** The native error messages of a Win32-API, keyed by the error code. */
+	private static final class MessageCache {
+
+		/** the Win32-API, that formatted the messages, maybe <code>null</code> */
+		@Nullable
+		private final WinApi os;
+		/** the native error messages */
+		private final ConcurrentMap<Integer, String> messages = new ConcurrentHashMap<Integer, String>();
+
+		/** Creates a new empty cache for the given Win32-API. */
+		private MessageCache(@Nullable WinApi os) {
+			this.os = os;
+		}
+	}
+
+	/** A {@link NativeCodeException}, whose description is built when it is requested. */
+	private static final class NativeErrorCodeException extends NativeCodeException {
+
+		/** Serial-Version-UID */
+		private static final long serialVersionUID = -6036932488614301847L;
+
+		/** the native Win32-API, <code>null</code> after deserialization */
+		private final transient WinApi os;
+		/** the native error code */
+		private final int errorCode;
+		/** the description, <code>null</code> if it was not built yet */
+		private volatile String description;
+
+		/** Creates a new exception. */
+		private NativeErrorCodeException(	WinApi os,
+											String message,
+											int errorCode) {
+			super(message);
+			this.os = os;
+			this.errorCode = errorCode;
+		}
+
+		@Override
+		protected String getDescription() {
+			if (description == null)
+				description = getErrorMessage(os, super.getDescription(), errorCode);
+			return description;
+		}
+
+		/** Builds the description before the exception is serialized without the Win32-API. */
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			getDescription();
+			out.defaultWriteObject();
+		}
+	}
+
+	/** An {@link IOException}, whose message is built when it is requested. */
+	private static final class NativeErrorIOException extends IOException {
+
+		/** Serial-Version-UID */
+		private static final long serialVersionUID = 2770925036361658230L;
+
+		/** the native Win32-API, <code>null</code> after deserialization */
+		private final transient WinApi os;
+		/** the native error code */
+		private final int errorCode;
+		/** the message, <code>null</code> if it was not built yet */
+		private volatile String builtMessage;
+
+		/** Creates a new exception. */
+		private NativeErrorIOException(	WinApi os,
+										String message,
+										int errorCode) {
+			super(message);
+			this.os = os;
+			this.errorCode = errorCode;
+		}
+
+		@Override
+		public String getMessage() {
+			if (builtMessage == null)
+				builtMessage = getErrorMessage(os, super.getMessage(), errorCode);
+			return builtMessage;
+		}
+
+		/** Builds the message before the exception is serialized without the Win32-API. */
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			getMessage();
+			out.defaultWriteObject();
+		}
+	}
 }
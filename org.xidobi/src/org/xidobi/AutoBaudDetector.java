@@ -0,0 +1,313 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Detects the baud rate of a device by cycling candidate settings on a live connection. The port
+ * is not re-opened for each candidate, the settings are applied with
+ * {@link ReconfigurableConnection#reconfigure(SerialPortSettings)}.
+ * <p>
+ * Each candidate gets an equal share of the time budget. During this time the received bytes are
+ * scored: Bytes, that are valid for the expected protocol, increase the score, framing errors,
+ * parity errors and breaks decrease it, if the connection is a {@link LineStatusConnection}. A
+ * candidate, that received a full sample with a score of at least {@value #SETTLE_SCORE}, is
+ * accepted immediately, otherwise the candidate with the best score is applied when the time
+ * budget is used up.
+ * <p>
+ * The data of a candidate is read with {@link TimedReadConnection#read(Deadline)} by the thread, that
+ * calls {@link #detect(ReconfigurableConnection)}, so no data is read after the detection returned.
+ * <p>
+ * By default printable ASCII characters are valid, subclasses can overwrite
+ * {@link #countValid(byte[])} to rate the data with the heuristics of a protocol. If the device
+ * only sends data on request, a probe can be passed, that is written after each candidate was
+ * applied.
+ * 
+ * <pre>
+ * AutoBaudDetector detector = new AutoBaudDetector(AutoBaudDetector.candidates(settings, 9600, 19200, 38400, 115200), 4, SECONDS);
+ * AutoBaudResult result = detector.detect(connection);
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see AutoBaudResult
+ */
+public class AutoBaudDetector {
+
+	/** the score of a full sample, that is accepted without trying the other candidates */
+	public static final double SETTLE_SCORE = 0.95;
+	/** default number of bytes, that are scored per candidate */
+	private static final int DEFAULT_SAMPLE_SIZE = 64;
+	/** a line error decreases the score like this number of invalid bytes */
+	private static final int ERROR_WEIGHT = 8;
+
+	/** the candidate settings in the order they are tried, never <code>null</code> */
+	private final List<SerialPortSettings> candidates;
+	/** is written after each candidate was applied, <code>null</code> if nothing is written */
+	@Nullable
+	private final byte[] probe;
+	/** the number of bytes, that are scored per candidate */
+	private final int sampleSize;
+	/** the time budget for the detection in nanoseconds */
+	private final long budgetNanos;
+
+	/**
+	 * Creates a new detector, that scores up to {@value #DEFAULT_SAMPLE_SIZE} bytes per candidate
+	 * and writes no probe.
+	 * 
+	 * @param candidates
+	 *            the candidate settings in the order they are tried, must not be <code>null</code>
+	 *            or empty
+	 * @param timeBudget
+	 *            the time budget for the detection, must be greater than 0
+	 * @param unit
+	 *            the unit of the time budget, must not be <code>null</code>
+	 */
+	public AutoBaudDetector(@Nonnull List<SerialPortSettings> candidates,
+							@Nonnegative long timeBudget,
+							@Nonnull TimeUnit unit) {
+		this(candidates, null, DEFAULT_SAMPLE_SIZE, timeBudget, unit);
+	}
+
+	/**
+	 * Creates a new detector.
+	 * 
+	 * @param candidates
+	 *            the candidate settings in the order they are tried, must not be <code>null</code>
+	 *            or empty
+	 * @param probe
+	 *            is written after each candidate was applied, <code>null</code> if the device
+	 *            sends data without request
+	 * @param sampleSize
+	 *            the number of bytes, that are scored per candidate, must be greater than 0
+	 * @param timeBudget
+	 *            the time budget for the detection, must be greater than 0
+	 * @param unit
+	 *            the unit of the time budget, must not be <code>null</code>
+	 */
+	public AutoBaudDetector(@Nonnull List<SerialPortSettings> candidates,
+							@Nullable byte[] probe,
+							@Nonnegative int sampleSize,
+							@Nonnegative long timeBudget,
+							@Nonnull TimeUnit unit) {
+		checkArgumentNotNull(candidates, "candidates");
+		checkArgument(!candidates.isEmpty(), "candidates", "Expected at least one candidate!");
+		checkArgument(!candidates.contains(null), "candidates", "Expected no null elements!");
+		checkArgument(sampleSize > 0, "sampleSize", "Expected a value greater than 0!");
+		checkArgument(timeBudget > 0, "timeBudget", "Expected a value greater than 0!");
+		checkArgumentNotNull(unit, "unit");
+
+		this.candidates = new ArrayList<SerialPortSettings>(candidates);
+		this.probe = probe != null ? probe.clone() : null;
+		this.sampleSize = sampleSize;
+		this.budgetNanos = unit.toNanos(timeBudget);
+	}
+
+	/**
+	 * Returns candidate settings with the given baud rates, all other values are taken from the
+	 * given template.
+	 * 
+	 * @param template
+	 *            the other values of the candidates, must not be <code>null</code>
+	 * @param bauds
+	 *            the baud rates of the candidates in the order they should be tried
+	 * @return the candidate settings, never <code>null</code>
+	 */
+	@Nonnull
+	public static List<SerialPortSettings> candidates(@Nonnull SerialPortSettings template, int... bauds) {
+		checkArgumentNotNull(template, "template");
+		checkArgumentNotNull(bauds, "bauds");
+
+		List<SerialPortSettings> candidates = new ArrayList<SerialPortSettings>(bauds.length);
+		for (int baud : bauds)
+			candidates.add(SerialPortSettings.from(template).bauds(baud).create());
+		return Collections.unmodifiableList(candidates);
+	}
+
+	/**
+	 * Detects the baud rate on the given connection. The detected settings remain applied to the
+	 * connection.
+	 * <p>
+	 * <b>IMPORTANT:</b> The connection is closed, if the detection fails.
+	 * 
+	 * @param connection
+	 *            the open connection, must not be <code>null</code> and must be a
+	 *            {@link TimedReadConnection}, so each candidate is read on the calling thread
+	 * @return the result of the detection, never <code>null</code>
+	 * @throws IOException
+	 *             if the settings couldn't be applied, the probe couldn't be written or the data
+	 *             couldn't be read
+	 */
+	@Nonnull
+	public AutoBaudResult detect(@Nonnull ReconfigurableConnection connection) throws IOException {
+		checkArgumentNotNull(connection, "connection");
+		checkArgument(connection instanceof TimedReadConnection, "connection", "Expected a TimedReadConnection!");
+
+		ErrorCounter errors = new ErrorCounter();
+		LineStatusConnection lineStatus = connection instanceof LineStatusConnection ? (LineStatusConnection) connection : null;
+		if (lineStatus != null)
+			lineStatus.addLineStatusListener(errors);
+
+		boolean isDetected = false;
+		try {
+			long windowNanos = budgetNanos / candidates.size();
+
+			SerialPortSettings best = candidates.get(0);
+			SerialPortSettings applied = null;
+			double bestScore = 0;
+			for (SerialPortSettings candidate : candidates) {
+				connection.reconfigure(candidate);
+				applied = candidate;
+				// the errors until now belong to the previous candidate
+				errors.reset();
+				if (probe != null)
+					connection.write(probe);
+
+				Window window = sample((TimedReadConnection) connection, errors, Deadline.after(windowNanos, NANOSECONDS));
+				double score = window.getScore();
+				if (score > bestScore) {
+					best = candidate;
+					bestScore = score;
+				}
+				if (window.received >= sampleSize && score >= SETTLE_SCORE)
+					break;
+			}
+
+			if (applied != best)
+				connection.reconfigure(best);
+			isDetected = true;
+			return new AutoBaudResult(best, bestScore, connection);
+		}
+		finally {
+			if (lineStatus != null)
+				lineStatus.removeLineStatusListener(errors);
+			if (!isDetected)
+				closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * Returns the number of valid bytes in the given received data. The default implementation
+	 * counts printable ASCII characters, carriage returns, line feeds and tabs.
+	 * <p>
+	 * Subclasses can overwrite this method in order to rate the data with the heuristics of the
+	 * expected protocol.
+	 * 
+	 * @param data
+	 *            the received data, never <code>null</code>
+	 * @return the number of valid bytes, between 0 and <code>data.length</code>
+	 */
+	protected int countValid(@Nonnull byte[] data) {
+		int valid = 0;
+		for (byte b : data) {
+			if ((b >= 0x20 && b < 0x7f) || b == '\r' || b == '\n' || b == '\t')
+				valid++;
+		}
+		return valid;
+	}
+
+	/**
+	 * Reads and scores the received data until the sample is full or the deadline expires.
+	 * 
+	 * @param deadline
+	 *            the end of the window
+	 */
+	private Window sample(TimedReadConnection connection, ErrorCounter errors, Deadline deadline) throws IOException {
+		Window window = new Window();
+		while (window.received < sampleSize) {
+			byte[] data = connection.read(deadline);
+			if (data.length == 0)
+				break;
+			window.received += data.length;
+			window.valid += countValid(data);
+		}
+		window.errors = errors.get();
+		return window;
+	}
+
+	/** Closes the given connection and ignores all exceptions. */
+	private static void closeQuietly(SerialConnection connection) {
+		try {
+			connection.close();
+		}
+		catch (IOException ignored) {}
+		catch (RuntimeException ignored) {}
+	}
+
+	/** The received data and the line errors while a candidate was applied. */
+	private static final class Window {
+
+		/** the number of received bytes */
+		private int received;
+		/** the number of valid bytes */
+		private int valid;
+		/** the number of line errors */
+		private int errors;
+
+		/** Returns the score between 0 and 1. */
+		private double getScore() {
+			if (received == 0)
+				return 0;
+			return (double) valid / (received + ERROR_WEIGHT * errors);
+		}
+	}
+
+	/** Counts the framing errors, parity errors and breaks of a connection. */
+	private static final class ErrorCounter implements LineStatusListener {
+
+		/** the number of line errors since the last reset */
+		private final AtomicInteger errors = new AtomicInteger();
+
+		/** {@inheritDoc} */
+		public void lineStatusChanged(@Nonnull LineStatusEvent event) {
+			Set<LineError> lineErrors = event.getErrors();
+			int count = 0;
+			if (lineErrors.contains(LineError.FRAMING))
+				count++;
+			if (lineErrors.contains(LineError.PARITY))
+				count++;
+			if (lineErrors.contains(LineError.BREAK))
+				count++;
+			if (count > 0)
+				errors.addAndGet(count);
+		}
+
+		/** Returns the number of line errors since the last reset. */
+		private int get() {
+			return errors.get();
+		}
+
+		/** Resets the number of line errors. */
+		private void reset() {
+			errors.set(0);
+		}
+	}
+}
\ No newline at end of file
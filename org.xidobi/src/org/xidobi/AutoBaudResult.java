@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The result of an {@link AutoBaudDetector}.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see AutoBaudDetector
+ */
+@Immutable
+public class AutoBaudResult {
+
+	/** the settings, that are applied to the connection, never <code>null</code> */
+	private final SerialPortSettings settings;
+	/** the score of the settings between 0 and 1 */
+	private final double score;
+	/** the connection, whose baud rate was detected, never <code>null</code> */
+	private final SerialConnection connection;
+
+	/**
+	 * Creates a new result.
+	 * 
+	 * @param settings
+	 *            the settings, that are applied to the connection, must not be <code>null</code>
+	 * @param score
+	 *            the score of the settings between 0 and 1, 0 if no candidate received valid data
+	 * @param connection
+	 *            the connection, whose baud rate was detected, must not be <code>null</code>
+	 */
+	public AutoBaudResult(	@Nonnull SerialPortSettings settings,
+							double score,
+							@Nonnull SerialConnection connection) {
+		this.settings = checkArgumentNotNull(settings, "settings");
+		this.score = score;
+		this.connection = checkArgumentNotNull(connection, "connection");
+	}
+
+	/**
+	 * Returns the settings, that are applied to the connection. If no rate was detected, these are
+	 * the first candidate settings.
+	 * 
+	 * @return the applied settings, never <code>null</code>
+	 */
+	@Nonnull
+	public SerialPortSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Returns the score of the applied settings.
+	 * 
+	 * @return a value between 0 (no valid data) and 1 (only valid data)
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns the connection, whose baud rate was detected. The settings of the result are applied
+	 * to it.
+	 * 
+	 * @return the connection, never <code>null</code>
+	 */
+	@Nonnull
+	public SerialConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Returns <code>true</code>, if a candidate received valid data.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code>, if the rate was detected
+	 *         <li> <code>false</code>, if no candidate received valid data
+	 *         </ul>
+	 */
+	public boolean isDetected() {
+		return score > 0;
+	}
+
+	@Override
+	public String toString() {
+		return "AutoBaudResult [bauds=" + settings.getBauds() + ", score=" + score + "]";
+	}
+}
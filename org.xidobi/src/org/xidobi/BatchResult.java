@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The result of opening or closing a single serial port with a {@link SerialPortBatch}.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see SerialPortBatch
+ */
+@Immutable
+public class BatchResult {
+
+	/** the serial port, never <code>null</code> */
+	private final SerialPort port;
+	/** the opened or closed connection, <code>null</code> if the port couldn't be opened */
+	private final SerialConnection connection;
+	/** the reason, why the operation failed, <code>null</code> if it succeeded */
+	private final Exception failure;
+
+	/**
+	 * Creates a new result.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param connection
+	 *            the opened or closed connection, <code>null</code> if the port couldn't be opened
+	 * @param failure
+	 *            the reason, why the operation failed, <code>null</code> if it succeeded
+	 */
+	public BatchResult(	@Nonnull SerialPort port,
+						@Nullable SerialConnection connection,
+						@Nullable Exception failure) {
+		this.port = checkArgumentNotNull(port, "port");
+		this.connection = connection;
+		this.failure = failure;
+	}
+
+	/**
+	 * Returns the serial port.
+	 * 
+	 * @return the serial port, never <code>null</code>
+	 */
+	@Nonnull
+	public SerialPort getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the opened or closed connection.
+	 * 
+	 * @return the connection, <code>null</code> if the port couldn't be opened
+	 */
+	@CheckForNull
+	public SerialConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Returns the reason, why the port couldn't be opened or closed, e.g. an
+	 * {@link java.io.IOException} or a {@link org.xidobi.spi.NativeCodeException}.
+	 * 
+	 * @return the failure, <code>null</code> if the operation succeeded
+	 */
+	@CheckForNull
+	public Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Returns <code>true</code>, if the port was opened or closed successfully.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code> if the operation succeeded
+	 *         <li> <code>false</code> if the operation failed
+	 *         </ul>
+	 */
+	public boolean isSuccess() {
+		return failure == null;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchResult [port=" + port.getPortName() + ", failure=" + failure + "]";
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static org.xidobi.CaptureWriter.END_OF_SEGMENT;
+import static org.xidobi.CaptureWriter.MAGIC;
+import static org.xidobi.CaptureWriter.READ;
+import static org.xidobi.CaptureWriter.RECORD_HEADER_SIZE;
+import static org.xidobi.CaptureWriter.SEGMENT_HEADER_SIZE;
+import static org.xidobi.CaptureWriter.VERSION;
+import static org.xidobi.CaptureWriter.WRITE;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.xidobi.CaptureRecord.Direction;
+
+/**
+ * Reads the records of a capture, that was written by a {@link CaptureWriter}. The segments are
+ * memory-mapped while they are read.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see CaptureWriter
+ * @see ReplaySerialPort
+ */
+public class CaptureReader implements Closeable {
+
+	/** the file name extension of a segment */
+	private static final String SEGMENT_EXTENSION = ".xcap";
+
+	/** the segments of the capture, ordered by their number */
+	private final File[] segments;
+	/** the index of the next segment */
+	private int nextSegment;
+	/** the current segment, <code>null</code> if no segment is mapped */
+	private MappedByteBuffer segment;
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this reader is closed
+	 * <li> <code>false</code> if this reader is open
+	 * </ul>
+	 */
+	private boolean isClosed;
+
+	/**
+	 * Creates a new reader for the capture in the given directory.
+	 * 
+	 * @param directory
+	 *            the directory of the capture, must not be <code>null</code>
+	 * @throws IOException
+	 *             if the directory doesn't contain a capture
+	 */
+	public CaptureReader(@Nonnull File directory) throws IOException {
+		checkArgumentNotNull(directory, "directory");
+
+		segments = listSegments(directory);
+		if (segments.length == 0)
+			throw new IOException("The directory >" + directory + "< doesn't contain a capture!");
+	}
+
+	/**
+	 * Returns the next record of the capture.
+	 * 
+	 * @return the next record, <code>null</code> if the end of the capture was reached
+	 * @throws IOException
+	 *             if this reader was closed or the capture is corrupt
+	 */
+	@CheckForNull
+	public synchronized CaptureRecord read() throws IOException {
+		if (isClosed)
+			throw new IOException("The capture reader was already closed!");
+
+		while (true) {
+			if (segment == null && !mapNextSegment())
+				return null;
+
+			byte tag = segment.remaining() > 0 ? segment.get() : END_OF_SEGMENT;
+			if (tag == END_OF_SEGMENT) {
+				segment = null;
+				continue;
+			}
+
+			Direction direction = toDirection(tag);
+			if (segment.remaining() < RECORD_HEADER_SIZE - 1)
+				throw corruptSegment("Truncated record header!");
+			long timestamp = segment.getLong();
+			int length = segment.getInt();
+			if (length < 0 || length > segment.remaining())
+				throw corruptSegment("Invalid record length: " + length);
+
+			byte[] data = new byte[length];
+			segment.get(data);
+			return new CaptureRecord(timestamp, direction, data);
+		}
+	}
+
+	/**
+	 * Closes this reader. Calling this method more than once has no effect.
+	 */
+	public synchronized void close() {
+		isClosed = true;
+		segment = null;
+	}
+
+	/**
+	 * Maps the next segment and checks its header.
+	 * 
+	 * @return <code>false</code>, if there are no more segments
+	 */
+	private boolean mapNextSegment() throws IOException {
+		if (nextSegment >= segments.length)
+			return false;
+
+		RandomAccessFile file = new RandomAccessFile(segments[nextSegment++], "r");
+		try {
+			// the mapping stays valid after the file was closed
+			segment = file.getChannel().map(READ_ONLY, 0, file.length());
+		}
+		finally {
+			file.close();
+		}
+
+		if (segment.remaining() < SEGMENT_HEADER_SIZE || segment.getInt() != MAGIC)
+			throw corruptSegment("Not a capture segment!");
+		int version = segment.getInt();
+		if (version != VERSION)
+			throw corruptSegment("Unsupported version: " + version);
+		// skip the start time of the capture
+		segment.getLong();
+		return true;
+	}
+
+	/** Returns the direction for the given record tag. */
+	private Direction toDirection(byte tag) throws IOException {
+		switch (tag) {
+			case READ:
+				return Direction.READ;
+			case WRITE:
+				return Direction.WRITE;
+			default:
+				throw corruptSegment("Unexpected record tag: " + tag);
+		}
+	}
+
+	/** Returns a new {@link IOException} for the current segment. */
+	private IOException corruptSegment(String message) {
+		return new IOException("Corrupt capture segment >" + segments[nextSegment - 1] + "<! " + message);
+	}
+
+	/**
+	 * Returns the segments in the given directory, ordered by their number.
+	 */
+	@Nonnull
+	static File[] listSegments(@Nonnull File directory) {
+		File[] segments = directory.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(SEGMENT_EXTENSION);
+			}
+		});
+		if (segments == null)
+			return new File[0];
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	/** Returns the file name of the segment with the given number. */
+	@Nonnull
+	static String segmentName(int segmentNumber) {
+		return String.format("segment-%06d%s", segmentNumber, SEGMENT_EXTENSION);
+	}
+}
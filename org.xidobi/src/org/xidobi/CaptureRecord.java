@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A record of a capture: the data, that was read from or written to a serial connection.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see CaptureWriter
+ * @see CaptureReader
+ */
+@Immutable
+public class CaptureRecord {
+
+	/**
+	 * The direction of the captured data.
+	 */
+	public static enum Direction {
+		/** the data was read from the serial port */
+		READ,
+		/** the data was written to the serial port */
+		WRITE
+	}
+
+	/** time since the start of the capture in nanoseconds */
+	private final long timestamp;
+	/** the direction of the data, never <code>null</code> */
+	private final Direction direction;
+	/** the captured data, never <code>null</code> */
+	private final byte[] data;
+
+	/**
+	 * Creates a new capture record.
+	 * 
+	 * @param timestamp
+	 *            the time since the start of the capture in nanoseconds
+	 * @param direction
+	 *            the direction of the data, must not be <code>null</code>
+	 * @param data
+	 *            the captured data, must not be <code>null</code>. The array is not copied!
+	 */
+	public CaptureRecord(	@Nonnegative long timestamp,
+							@Nonnull Direction direction,
+							@Nonnull byte[] data) {
+		this.timestamp = timestamp;
+		this.direction = checkArgumentNotNull(direction, "direction");
+		this.data = checkArgumentNotNull(data, "data");
+	}
+
+	/**
+	 * Returns the time since the start of the capture.
+	 * 
+	 * @return the timestamp in nanoseconds
+	 */
+	@Nonnegative
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the direction of the captured data.
+	 * 
+	 * @return the direction, never <code>null</code>
+	 */
+	@Nonnull
+	public Direction getDirection() {
+		return direction;
+	}
+
+	/**
+	 * Returns the captured data. The array must not be modified!
+	 * 
+	 * @return the data, never <code>null</code>
+	 */
+	@Nonnull
+	public byte[] getData() {
+		return data;
+	}
+
+	@Override
+	public String toString() {
+		return "CaptureRecord [timestamp=" + timestamp + ", direction=" + direction + ", length=" + data.length + "]";
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.Math.max;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.Nonnull;
+
+import org.xidobi.CaptureRecord.Direction;
+
+/**
+ * Writes a capture of the data, that was read from and written to a serial connection, into a
+ * directory. The capture is written by a background thread, so the I/O thread only copies the data
+ * into a queue.
+ * <p>
+ * The capture consists of append-only segment files, that are memory-mapped while they are
+ * written. Each segment starts with a header (magic number, version, start time of the capture in
+ * milliseconds). Each record consists of a direction tag (1 = read, 2 = write), the time since the
+ * start of the capture in nanoseconds, the length of the data and the data itself. A tag of 0 marks
+ * the end of a segment.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see CapturingSerialConnection
+ * @see CaptureReader
+ */
+public class CaptureWriter implements Closeable {
+
+	/** default size of a segment in bytes */
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	/** the magic number at the start of each segment: "XCAP" */
+	static final int MAGIC = 0x58434150;
+	/** the version of the capture format */
+	static final int VERSION = 1;
+	/** size of the segment header: magic, version, start time */
+	static final int SEGMENT_HEADER_SIZE = 4 + 4 + 8;
+	/** size of the record header: tag, timestamp, length */
+	static final int RECORD_HEADER_SIZE = 1 + 8 + 4;
+	/** the tag, that marks the end of a segment */
+	static final byte END_OF_SEGMENT = 0;
+	/** the tag of a record with read data */
+	static final byte READ = 1;
+	/** the tag of a record with written data */
+	static final byte WRITE = 2;
+
+	/** maximum number of records, that are waiting to be written */
+	private static final int QUEUE_CAPACITY = 4096;
+	/** interval in milliseconds, in which the writer thread checks if the capture was closed */
+	private static final int POLL_INTERVAL = 100;
+
+	/** the directory of the capture, never <code>null</code> */
+	private final File directory;
+	/** the minimum size of a segment in bytes */
+	private final int segmentSize;
+	/** the time, when the capture was started, in nanoseconds */
+	private final long startNanos = nanoTime();
+	/** the time, when the capture was started, in milliseconds since the epoch */
+	private final long startMillis = currentTimeMillis();
+
+	/** the records, that are waiting to be written */
+	private final BlockingQueue<CaptureRecord> queue = new ArrayBlockingQueue<CaptureRecord>(QUEUE_CAPACITY);
+	/** the thread, that writes the records */
+	private final Thread thread;
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this capture is closed
+	 * <li> <code>false</code> if this capture is open
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+	/** the exception, that stopped the writer thread, <code>null</code> if there is none */
+	private volatile IOException failure;
+
+	/** the file of the current segment; used by the writer thread only */
+	private RandomAccessFile segmentFile;
+	/** the mapped current segment; used by the writer thread only */
+	private MappedByteBuffer segment;
+	/** the number of the next segment; used by the writer thread only */
+	private int nextSegmentNumber;
+
+	/**
+	 * Creates a new capture in the given directory with segments of
+	 * {@value #DEFAULT_SEGMENT_SIZE} bytes.
+	 * 
+	 * @param directory
+	 *            the directory of the capture, must not be <code>null</code>. It is created if it
+	 *            doesn't exist.
+	 * @throws IOException
+	 *             if the directory couldn't be created or already contains a capture
+	 */
+	public CaptureWriter(@Nonnull File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Creates a new capture in the given directory.
+	 * 
+	 * @param directory
+	 *            the directory of the capture, must not be <code>null</code>. It is created if it
+	 *            doesn't exist.
+	 * @param segmentSize
+	 *            the size of a segment in bytes, must be greater than 0. A segment is enlarged, if
+	 *            a single record doesn't fit into it.
+	 * @throws IOException
+	 *             if the directory couldn't be created or already contains a capture
+	 */
+	public CaptureWriter(	@Nonnull File directory,
+							int segmentSize) throws IOException {
+		this.directory = checkArgumentNotNull(directory, "directory");
+		checkArgument(segmentSize > 0, "segmentSize", "Expected a value greater than 0!");
+		this.segmentSize = segmentSize;
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Couldn't create the capture directory >" + directory + "<!");
+		if (CaptureReader.listSegments(directory).length > 0)
+			throw new IOException("The directory >" + directory + "< already contains a capture!");
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				writeRecords();
+			}
+		}, "xidobi capture writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Appends the given data to the capture. The data is copied and the timestamp is taken, before
+	 * this method returns. Blocks only, if the writer thread falls behind.
+	 * 
+	 * @param direction
+	 *            the direction of the data, must not be <code>null</code>
+	 * @param data
+	 *            the data, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this capture was closed or couldn't be written
+	 */
+	public void append(@Nonnull Direction direction, @Nonnull byte[] data) throws IOException {
+		checkArgumentNotNull(direction, "direction");
+		checkArgumentNotNull(data, "data");
+		long timestamp = nanoTime() - startNanos;
+
+		byte[] copy = new byte[data.length];
+		System.arraycopy(data, 0, copy, 0, data.length);
+		CaptureRecord record = new CaptureRecord(timestamp, direction, copy);
+
+		try {
+			do {
+				ensureOpen();
+			}
+			while (!queue.offer(record, POLL_INTERVAL, MILLISECONDS));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while appending to the capture!");
+		}
+	}
+
+	/**
+	 * Writes the remaining records and closes this capture. Data, that is appended concurrently,
+	 * may be lost. Calling this method more than once has no effect.
+	 * 
+	 * @throws IOException
+	 *             if the capture couldn't be written
+	 */
+	public void close() throws IOException {
+		if (isClosed)
+			return;
+		isClosed = true;
+
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while closing the capture!");
+		}
+
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Returns the directory of this capture.
+	 * 
+	 * @return the directory, never <code>null</code>
+	 */
+	@Nonnull
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Throws an {@link IOException}, if this capture was closed or couldn't be written.
+	 */
+	private void ensureOpen() throws IOException {
+		if (failure != null)
+			throw failure;
+		if (isClosed)
+			throw new IOException("The capture >" + directory + "< was already closed!");
+	}
+
+	/** Writes the queued records, until this capture is closed. Runs on the writer thread. */
+	private void writeRecords() {
+		//@formatter:off
+		try {
+			while (true) {
+				CaptureRecord record = queue.poll(POLL_INTERVAL, MILLISECONDS);
+				if (record != null)
+					writeRecord(record);
+				else if (isClosed)
+					return;
+			}
+		} catch (InterruptedException e) {
+			// the daemon thread is terminated
+		} catch (IOException e) {
+			failure = e;
+		} finally { try {
+			closeSegment();
+		} catch (IOException e) {
+			if (failure == null)
+				failure = e;
+		}}
+		//@formatter:on
+	}
+
+	/** Writes the given record into the current segment. */
+	private void writeRecord(CaptureRecord record) throws IOException {
+		byte[] data = record.getData();
+		// the record and the end of segment tag must fit into the segment
+		int size = RECORD_HEADER_SIZE + data.length + 1;
+		if (segment == null || segment.remaining() < size)
+			nextSegment(size);
+
+		segment.put(record.getDirection() == Direction.READ ? READ : WRITE);
+		segment.putLong(record.getTimestamp());
+		segment.putInt(data.length);
+		segment.put(data);
+	}
+
+	/** Closes the current segment and maps a new one, that has at least the given free space. */
+	private void nextSegment(int minFreeSpace) throws IOException {
+		closeSegment();
+
+		File file = new File(directory, CaptureReader.segmentName(nextSegmentNumber++));
+		segmentFile = new RandomAccessFile(file, "rw");
+		segment = segmentFile.getChannel().map(READ_WRITE, 0, max(segmentSize, SEGMENT_HEADER_SIZE + minFreeSpace));
+		segment.putInt(MAGIC);
+		segment.putInt(VERSION);
+		segment.putLong(startMillis);
+	}
+
+	/** Marks the end of the current segment and closes it. */
+	private void closeSegment() throws IOException {
+		if (segment == null)
+			return;
+		try {
+			segment.put(END_OF_SEGMENT);
+			segment.force();
+		}
+		finally {
+			segment = null;
+			segmentFile.close();
+		}
+	}
+}
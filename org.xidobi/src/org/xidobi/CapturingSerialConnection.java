@@ -0,0 +1,317 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.xidobi.CaptureRecord.Direction;
+import org.xidobi.spi.ByteBuffers;
+
+/**
+ * Decorates a {@link SerialConnection} and captures all data, that is read from and written to
+ * the connection, with a {@link CaptureWriter}. The capture can be replayed with a
+ * {@link ReplaySerialPort}.
+ * 
+ * <pre>
+ * SerialConnection connection = new CapturingSerialConnection(port.open(settings), new CaptureWriter(directory));
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see CaptureWriter
+ * @see ReplaySerialPort
+ */
+public class CapturingSerialConnection implements LineStatusConnection, InstrumentedConnection, ReconfigurableConnection, DrainableConnection, PurgeableConnection, TimedReadConnection, TimestampingConnection, GatheringConnection {
+
+	/** the decorated connection, never <code>null</code> */
+	private final SerialConnection connection;
+	/** writes the capture, never <code>null</code> */
+	private final CaptureWriter capture;
+
+	/**
+	 * Creates a new capturing connection. The capture is closed together with the connection.
+	 * 
+	 * @param connection
+	 *            the decorated connection, must not be <code>null</code>
+	 * @param capture
+	 *            writes the capture, must not be <code>null</code>
+	 */
+	public CapturingSerialConnection(	@Nonnull SerialConnection connection,
+										@Nonnull CaptureWriter capture) {
+		this.connection = checkArgumentNotNull(connection, "connection");
+		this.capture = checkArgumentNotNull(capture, "capture");
+	}
+
+	/**
+	 * Captures the given data and writes it to the decorated connection.
+	 * 
+	 * @param data
+	 *            the data to write, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed, an unexpected I/O error occurs or the capture couldn't
+	 *             be written
+	 */
+	public void write(@Nonnull byte[] data) throws IOException {
+		checkArgumentNotNull(data, "data");
+		capture.append(Direction.WRITE, data);
+		connection.write(data);
+	}
+
+	/**
+	 * Captures the remaining bytes of the given buffers and writes them to the decorated
+	 * connection. The buffers are concatenated, if the decorated connection is not a
+	 * {@link GatheringConnection}.
+	 * 
+	 * @param data
+	 *            the buffers to write, must not be <code>null</code> and must not contain
+	 *            <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed, an unexpected I/O error occurs or the capture couldn't
+	 *             be written
+	 */
+	public void write(@Nonnull ByteBuffer[] data) throws IOException {
+		capture.append(Direction.WRITE, ByteBuffers.toByteArray(data));
+		ByteBuffers.write(connection, data);
+	}
+
+	/**
+	 * Reads from the decorated connection and captures the read data.
+	 * 
+	 * @return the received <code>byte[]</code>, never <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed, an unexpected I/O error occurs or the capture couldn't
+	 *             be written
+	 */
+	@Nonnull
+	public byte[] read() throws IOException {
+		byte[] data = connection.read();
+		capture.append(Direction.READ, data);
+		return data;
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws IOException {
+		return read(Deadline.after(timeout, unit));
+	}
+
+	/**
+	 * Reads from the decorated connection and captures the read data, if data was received before
+	 * the deadline expired.
+	 * 
+	 * @param deadline
+	 *            the deadline for the read, must not be <code>null</code>
+	 * @return the received <code>byte[]</code>, an empty array if no data was received before the
+	 *         deadline expired, never <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed, an unexpected I/O error occurs or the capture couldn't
+	 *             be written
+	 */
+	@Nonnull
+	public byte[] read(@Nonnull Deadline deadline) throws IOException {
+		byte[] data = timedReadConnection().read(deadline);
+		if (data.length > 0)
+			capture.append(Direction.READ, data);
+		return data;
+	}
+
+	/**
+	 * Reads exactly the given number of bytes from the decorated connection and captures them. If
+	 * the deadline expires, the received bytes are captured by the next read.
+	 * 
+	 * @param length
+	 *            the number of bytes to read, must not be negative
+	 * @param deadline
+	 *            the deadline for the read, must not be <code>null</code>
+	 * @return the received <code>byte[]</code> of the given length, never <code>null</code>
+	 * @throws IOException
+	 *             if the deadline expired, this port was closed, an unexpected I/O error occurs or
+	 *             the capture couldn't be written
+	 */
+	@Nonnull
+	public byte[] readFully(@Nonnegative int length, @Nonnull Deadline deadline) throws IOException {
+		byte[] data = timedReadConnection().readFully(length, deadline);
+		capture.append(Direction.READ, data);
+		return data;
+	}
+
+	/**
+	 * Reads from the decorated connection into the given holder and captures the read data. If the
+	 * decorated connection is not a {@link TimestampingConnection}, the data is stamped, when its
+	 * read returns.
+	 * 
+	 * @param result
+	 *            receives the data and its timestamp, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed, an unexpected I/O error occurs or the capture couldn't
+	 *             be written
+	 */
+	public void read(@Nonnull ReceivedData result) throws IOException {
+		checkArgumentNotNull(result, "result");
+		result.readFrom(connection);
+		capture.append(Direction.READ, result.toByteArray());
+	}
+
+	/**
+	 * Closes the decorated connection and the capture.
+	 * 
+	 * @throws IOException
+	 *             if the connection or the capture couldn't be closed
+	 */
+	public void close() throws IOException {
+		try {
+			connection.close();
+		}
+		finally {
+			capture.close();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link DrainableConnection}
+	 */
+	public void drain() throws IOException {
+		drainableConnection().drain();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	public void purgeInput() throws IOException {
+		purgeableConnection().purgeInput();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	public void purgeOutput() throws IOException {
+		purgeableConnection().purgeOutput();
+	}
+
+	/** {@inheritDoc} */
+	public boolean isClosed() {
+		return connection.isClosed();
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public SerialPort getPort() {
+		return connection.getPort();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The change of the settings is not captured.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link ReconfigurableConnection}
+	 */
+	public void reconfigure(@Nonnull SerialPortSettings settings) throws IOException {
+		checkArgumentNotNull(settings, "settings");
+		if (!(connection instanceof ReconfigurableConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't be reconfigured!");
+		((ReconfigurableConnection) connection).reconfigure(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return the metrics of the decorated connection, <code>null</code> if the metrics are
+	 *         disabled or the decorated connection is not an {@link InstrumentedConnection}
+	 */
+	@CheckForNull
+	public ConnectionMetrics getMetrics() {
+		if (connection instanceof InstrumentedConnection)
+			return ((InstrumentedConnection) connection).getMetrics();
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The listener is added to the decorated connection and is never notified, if the decorated
+	 * connection is not a {@link LineStatusConnection}.
+	 */
+	public void addLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		if (connection instanceof LineStatusConnection)
+			((LineStatusConnection) connection).addLineStatusListener(listener);
+	}
+
+	/** {@inheritDoc} */
+	public void removeLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		if (connection instanceof LineStatusConnection)
+			((LineStatusConnection) connection).removeLineStatusListener(listener);
+	}
+
+	/**
+	 * Returns the decorated connection, if it can read with a deadline.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection doesn't support timed reads
+	 */
+	@Nonnull
+	private TimedReadConnection timedReadConnection() {
+		if (!(connection instanceof TimedReadConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't read with a timeout!");
+		return (TimedReadConnection) connection;
+	}
+
+	/**
+	 * Returns the decorated connection, if it can be drained.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link DrainableConnection}
+	 */
+	@Nonnull
+	private DrainableConnection drainableConnection() {
+		if (!(connection instanceof DrainableConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't be drained!");
+		return (DrainableConnection) connection;
+	}
+
+	/**
+	 * Returns the decorated connection, if its buffers can be purged.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	@Nonnull
+	private PurgeableConnection purgeableConnection() {
+		if (!(connection instanceof PurgeableConnection))
+			throw new UnsupportedOperationException("The buffers of port " + getPort().getPortName() + " can't be purged!");
+		return (PurgeableConnection) connection;
+	}
+}
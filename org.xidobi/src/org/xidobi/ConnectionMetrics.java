@@ -0,0 +1,388 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.management.ManagementFactory.getPlatformMBeanServer;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the I/O metrics of a serial connection: the number of transferred bytes and operations,
+ * errors, read sizes and the latencies of the I/O operations.
+ * <p>
+ * The metrics are disabled by default. They are enabled with the system property
+ * <code>-D{@value #ENABLED_PROPERTY}=true</code>. If they are disabled, no metrics are created
+ * and the I/O operations don't even read the clock.
+ * 
+ * <pre>
+ * ConnectionMetrics metrics = null;
+ * if (connection instanceof InstrumentedConnection)
+ * 	metrics = ((InstrumentedConnection) connection).getMetrics();
+ * if (metrics != null)
+ * 	System.out.println(metrics.getBytesRead());
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see InstrumentedConnection#getMetrics()
+ * @see ConnectionMetricsMBean
+ */
+@ThreadSafe
+public class ConnectionMetrics implements ConnectionMetricsMBean {
+
+	/** the name of the system property, that enables the metrics */
+	public static final String ENABLED_PROPERTY = "org.xidobi.metrics";
+
+	/** <code>true</code>, if the metrics are enabled, is read only once */
+	private static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+	/**
+	 * the metrics, that were registered by {@link #register()}, by their object name; guarded by
+	 * itself
+	 */
+	private static final Map<ObjectName, ConnectionMetrics> REGISTERED = new HashMap<ObjectName, ConnectionMetrics>();
+
+	/** the name of the serial port, never <code>null</code> */
+	private final String portName;
+
+	/** number of received bytes */
+	private final AtomicLong bytesRead = new AtomicLong();
+	/** number of sent bytes */
+	private final AtomicLong bytesWritten = new AtomicLong();
+	/** number of successful read operations */
+	private final AtomicLong reads = new AtomicLong();
+	/** number of successful write operations */
+	private final AtomicLong writes = new AtomicLong();
+	/** number of failed read operations */
+	private final AtomicLong readErrors = new AtomicLong();
+	/** number of failed write operations */
+	private final AtomicLong writeErrors = new AtomicLong();
+	/** number of line errors, indexed by the ordinal of the {@link LineError} */
+	private final AtomicLongArray lineErrors = new AtomicLongArray(LineError.values().length);
+	/** time to close the connection in nanoseconds */
+	private final AtomicLong closeTime = new AtomicLong();
+
+	/** number of bytes per read operation */
+	private final Histogram readSize = new Histogram();
+	/** time to wait for a communication event in nanoseconds */
+	private final Histogram waitTime = new Histogram();
+	/** time until a write operation completed in nanoseconds */
+	private final Histogram writeTime = new Histogram();
+
+	/**
+	 * Creates new metrics for the given serial port.
+	 * 
+	 * @param portName
+	 *            the name of the serial port, must not be <code>null</code>
+	 */
+	public ConnectionMetrics(@Nonnull String portName) {
+		this.portName = checkArgumentNotNull(portName, "portName");
+	}
+
+	/**
+	 * Returns <code>true</code>, if the metrics are enabled by the system property
+	 * {@value #ENABLED_PROPERTY}.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code> if the metrics are enabled
+	 *         <li> <code>false</code> if the metrics are disabled
+	 *         </ul>
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Records a successful read operation.
+	 * 
+	 * @param bytes
+	 *            the number of read bytes
+	 */
+	public void readCompleted(@Nonnegative int bytes) {
+		reads.incrementAndGet();
+		bytesRead.addAndGet(bytes);
+		readSize.record(bytes);
+	}
+
+	/** Records a failed read operation. */
+	public void readFailed() {
+		readErrors.incrementAndGet();
+	}
+
+	/**
+	 * Records a successful write operation.
+	 * 
+	 * @param bytes
+	 *            the number of written bytes
+	 * @param nanos
+	 *            the time until the operation completed in nanoseconds
+	 */
+	public void writeCompleted(@Nonnegative int bytes, @Nonnegative long nanos) {
+		writes.incrementAndGet();
+		bytesWritten.addAndGet(bytes);
+		writeTime.record(nanos);
+	}
+
+	/** Records a failed write operation. */
+	public void writeFailed() {
+		writeErrors.incrementAndGet();
+	}
+
+	/**
+	 * Records the time, that was waited for a communication event.
+	 * 
+	 * @param nanos
+	 *            the time in nanoseconds
+	 */
+	public void waitCompleted(@Nonnegative long nanos) {
+		waitTime.record(nanos);
+	}
+
+	/**
+	 * Records the given line errors.
+	 * 
+	 * @param errors
+	 *            the line errors, must not be <code>null</code>
+	 */
+	public void lineErrorsDetected(@Nonnull Set<LineError> errors) {
+		for (LineError error : errors)
+			lineErrors.incrementAndGet(error.ordinal());
+	}
+
+	/**
+	 * Records the time to close the connection.
+	 * 
+	 * @param nanos
+	 *            the time in nanoseconds
+	 */
+	public void closeCompleted(@Nonnegative long nanos) {
+		closeTime.set(nanos);
+	}
+
+	/**
+	 * Registers these metrics at the platform MBean server. If metrics for the same port are
+	 * already registered, they are replaced.
+	 */
+	public void register() {
+		synchronized (REGISTERED) {
+			try {
+				MBeanServer server = getPlatformMBeanServer();
+				ObjectName name = getObjectName();
+				if (server.isRegistered(name))
+					server.unregisterMBean(name);
+				server.registerMBean(this, name);
+				REGISTERED.put(name, this);
+			}
+			catch (JMException e) {
+				// the metrics are only not visible via JMX, the connection works anyway
+			}
+		}
+	}
+
+	/**
+	 * Unregisters these metrics from the platform MBean server, if they are registered. Has no
+	 * effect, if they were replaced by the metrics of a connection, that was opened later on the
+	 * same port.
+	 */
+	public void unregister() {
+		synchronized (REGISTERED) {
+			try {
+				ObjectName name = getObjectName();
+				if (REGISTERED.get(name) != this)
+					return;
+				REGISTERED.remove(name);
+				MBeanServer server = getPlatformMBeanServer();
+				if (server.isRegistered(name))
+					server.unregisterMBean(name);
+			}
+			catch (JMException e) {
+				// the metrics were already unregistered
+			}
+		}
+	}
+
+	/**
+	 * Returns the name, that is used to register these metrics at the MBean server.
+	 * 
+	 * @return the object name, never <code>null</code>
+	 * @throws JMException
+	 *             if the port name is not allowed in an object name
+	 */
+	@Nonnull
+	public ObjectName getObjectName() throws JMException {
+		return new ObjectName("org.xidobi:type=SerialConnection,port=" + ObjectName.quote(portName));
+	}
+
+	/** {@inheritDoc} */
+	public String getPortName() {
+		return portName;
+	}
+
+	/** {@inheritDoc} */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/** {@inheritDoc} */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/** {@inheritDoc} */
+	public long getReads() {
+		return reads.get();
+	}
+
+	/** {@inheritDoc} */
+	public long getWrites() {
+		return writes.get();
+	}
+
+	/** {@inheritDoc} */
+	public long getReadErrors() {
+		return readErrors.get();
+	}
+
+	/** {@inheritDoc} */
+	public long getWriteErrors() {
+		return writeErrors.get();
+	}
+
+	/**
+	 * Returns the number of the given line errors.
+	 * 
+	 * @param error
+	 *            the line error, must not be <code>null</code>
+	 * @return the number of detected errors
+	 */
+	public long getLineErrors(@Nonnull LineError error) {
+		checkArgumentNotNull(error, "error");
+		return lineErrors.get(error.ordinal());
+	}
+
+	/** {@inheritDoc} */
+	public long getBreaks() {
+		return getLineErrors(LineError.BREAK);
+	}
+
+	/** {@inheritDoc} */
+	public long getFramingErrors() {
+		return getLineErrors(LineError.FRAMING);
+	}
+
+	/** {@inheritDoc} */
+	public long getParityErrors() {
+		return getLineErrors(LineError.PARITY);
+	}
+
+	/** {@inheritDoc} */
+	public long getOverrunErrors() {
+		return getLineErrors(LineError.OVERRUN);
+	}
+
+	/** {@inheritDoc} */
+	public long getRxOverflowErrors() {
+		return getLineErrors(LineError.RX_OVERFLOW);
+	}
+
+	/**
+	 * Returns the distribution of the number of bytes per read operation.
+	 * 
+	 * @return the histogram, never <code>null</code>
+	 */
+	@Nonnull
+	public Histogram getReadSize() {
+		return readSize;
+	}
+
+	/** {@inheritDoc} */
+	public double getReadSizeMean() {
+		return readSize.getMean();
+	}
+
+	/** {@inheritDoc} */
+	public long getReadSizeMax() {
+		return readSize.getMax();
+	}
+
+	/**
+	 * Returns the distribution of the time to wait for a communication event in nanoseconds. Only
+	 * recorded, if the service provider supports it.
+	 * 
+	 * @return the histogram, never <code>null</code>
+	 */
+	@Nonnull
+	public Histogram getWaitTime() {
+		return waitTime;
+	}
+
+	/** {@inheritDoc} */
+	public double getWaitTimeMean() {
+		return waitTime.getMean();
+	}
+
+	/** {@inheritDoc} */
+	public long getWaitTime99thPercentile() {
+		return waitTime.getValueAtPercentile(99);
+	}
+
+	/**
+	 * Returns the distribution of the time until a write operation completed in nanoseconds.
+	 * 
+	 * @return the histogram, never <code>null</code>
+	 */
+	@Nonnull
+	public Histogram getWriteTime() {
+		return writeTime;
+	}
+
+	/** {@inheritDoc} */
+	public double getWriteTimeMean() {
+		return writeTime.getMean();
+	}
+
+	/** {@inheritDoc} */
+	public long getWriteTime99thPercentile() {
+		return writeTime.getValueAtPercentile(99);
+	}
+
+	/** {@inheritDoc} */
+	public long getWriteTimeMax() {
+		return writeTime.getMax();
+	}
+
+	/** {@inheritDoc} */
+	public long getCloseTime() {
+		return closeTime.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionMetrics [portName=" + portName + ", bytesRead=" + getBytesRead() + ", bytesWritten=" + getBytesWritten() + ", readErrors=" + getReadErrors() + ", writeErrors=" + getWriteErrors() + "]";
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+/**
+ * The management interface of the {@link ConnectionMetrics} of a serial connection, that is
+ * registered at the platform MBean server with the name
+ * <code>org.xidobi:type=SerialConnection,port=&lt;port name&gt;</code>. All times are in
+ * nanoseconds.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see ConnectionMetrics
+ */
+public interface ConnectionMetricsMBean {
+
+	/** @return the name of the serial port */
+	String getPortName();
+
+	/** @return the number of received bytes */
+	long getBytesRead();
+
+	/** @return the number of sent bytes */
+	long getBytesWritten();
+
+	/** @return the number of successful read operations */
+	long getReads();
+
+	/** @return the number of successful write operations */
+	long getWrites();
+
+	/** @return the number of failed read operations */
+	long getReadErrors();
+
+	/** @return the number of failed write operations */
+	long getWriteErrors();
+
+	/** @return the number of detected break conditions */
+	long getBreaks();
+
+	/** @return the number of detected framing errors */
+	long getFramingErrors();
+
+	/** @return the number of detected parity errors */
+	long getParityErrors();
+
+	/** @return the number of detected character-buffer overruns */
+	long getOverrunErrors();
+
+	/** @return the number of detected input buffer overflows */
+	long getRxOverflowErrors();
+
+	/** @return the mean number of bytes per read operation */
+	double getReadSizeMean();
+
+	/** @return the maximum number of bytes per read operation */
+	long getReadSizeMax();
+
+	/** @return the mean time to wait for a communication event */
+	double getWaitTimeMean();
+
+	/** @return the 99th percentile of the time to wait for a communication event */
+	long getWaitTime99thPercentile();
+
+	/** @return the mean time until a write operation completed */
+	double getWriteTimeMean();
+
+	/** @return the 99th percentile of the time until a write operation completed */
+	long getWriteTime99thPercentile();
+
+	/** @return the maximum time until a write operation completed */
+	long getWriteTimeMax();
+
+	/** @return the time to close the connection, 0 if the connection is not closed */
+	long getCloseTime();
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A point in time, until a read must be completed. Unlike a timeout, a deadline can be passed to
+ * several reads, that must be completed together, e.g. the reads of a response:
+ * 
+ * <pre>
+ * connection.write(request);
+ * Deadline deadline = Deadline.after(500, MILLISECONDS);
+ * byte[] header = connection.readFully(4, deadline);
+ * byte[] payload = connection.readFully(header[3], deadline);
+ * </pre>
+ * 
+ * The deadline is measured with {@link System#nanoTime()}, so it is not affected by changes of
+ * the system clock.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see TimedReadConnection#read(Deadline)
+ * @see TimedReadConnection#readFully(int, Deadline)
+ */
+@Immutable
+public final class Deadline {
+
+	/**
+	 * the maximum timeout in nanoseconds, larger timeouts are truncated, so that the difference to
+	 * {@link System#nanoTime()} can't overflow (about 146 years)
+	 */
+	private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE / 2;
+
+	/** the value of {@link System#nanoTime()}, when the deadline expires */
+	private final long expiresAtNanos;
+
+	/** Creates a new deadline, that expires at the given value of {@link System#nanoTime()}. */
+	private Deadline(long expiresAtNanos) {
+		this.expiresAtNanos = expiresAtNanos;
+	}
+
+	/**
+	 * Returns a deadline, that expires after the given timeout.
+	 * 
+	 * @param timeout
+	 *            the timeout, must not be negative. A timeout of 0 returns an expired deadline.
+	 * @param unit
+	 *            the unit of the timeout, must not be <code>null</code>
+	 * @return the deadline, never <code>null</code>
+	 */
+	@Nonnull
+	public static Deadline after(@Nonnegative long timeout, @Nonnull TimeUnit unit) {
+		checkArgument(timeout >= 0, "timeout", "Expected a value greater or equal to 0!");
+		checkArgumentNotNull(unit, "unit");
+		return new Deadline(nanoTime() + Math.min(unit.toNanos(timeout), MAX_TIMEOUT_NANOS));
+	}
+
+	/**
+	 * Returns the time until this deadline expires.
+	 * 
+	 * @param unit
+	 *            the unit of the returned time, must not be <code>null</code>
+	 * @return the remaining time, 0 if this deadline is expired
+	 */
+	@Nonnegative
+	public long remaining(@Nonnull TimeUnit unit) {
+		checkArgumentNotNull(unit, "unit");
+		long remainingNanos = expiresAtNanos - nanoTime();
+		if (remainingNanos <= 0)
+			return 0;
+		return unit.convert(remainingNanos, NANOSECONDS);
+	}
+
+	/**
+	 * Returns <code>true</code>, if this deadline is expired.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code> if this deadline is expired
+	 *         <li> <code>false</code> if there is time left
+	 *         </ul>
+	 */
+	public boolean isExpired() {
+		return expiresAtNanos - nanoTime() <= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline [remaining=" + remaining(TimeUnit.MILLISECONDS) + "ms]";
+	}
+}
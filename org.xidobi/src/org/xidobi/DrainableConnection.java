@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import java.io.IOException;
+
+/**
+ * A {@link SerialConnection}, that can wait until the written data was sent. The connections of a
+ * {@link SerialPort} implement this interface, if the driver reports, when its output buffer is
+ * empty.
+ * 
+ * @author Christian Schwarz
+ */
+public interface DrainableConnection extends SerialConnection {
+
+	/**
+	 * Blocks until the written data was handed to the UART, i.e. the output buffer of the driver is
+	 * empty. Returns immediately, if the output buffer is empty.
+	 * <p>
+	 * The data is not on the wire yet, when this method returns: the UART may still send the bytes
+	 * in its transmit FIFO. E.g. on RS-485 the direction of the line must not be switched before
+	 * their transmission time elapsed.
+	 * 
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs or the thread was
+	 *             interrupted
+	 */
+	void drain() throws IOException;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+import org.xidobi.spi.ByteBuffers;
+
+/**
+ * A {@link SerialConnection}, that writes several {@link ByteBuffer}'s at once. The connections
+ * of a {@link SerialPort} implement this interface, if the buffers can be written without
+ * concatenating them first. {@link ByteBuffers#write(SerialConnection, ByteBuffer[])} writes the
+ * buffers to any connection.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see org.xidobi.spi.GatheringWriter
+ */
+public interface GatheringConnection extends SerialConnection {
+
+	/**
+	 * Writes the remaining bytes of the given buffers in their order, e.g. the header, payload and
+	 * checksum of a frame, without concatenating them first. All remaining bytes were written and
+	 * the positions of the buffers are set to their limits.
+	 * 
+	 * @param data
+	 *            the buffers to write, must not be <code>null</code> and must not contain
+	 *            <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs.
+	 */
+	void write(@Nonnull ByteBuffer[] data) throws IOException;
+}
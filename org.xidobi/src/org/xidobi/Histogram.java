@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Math.min;
+import static org.xidobi.spi.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Records the distribution of non-negative values, e.g. latencies in nanoseconds or sizes in bytes.
+ * <p>
+ * The values are counted in buckets with exponentially growing size: bucket 0 counts the value 0,
+ * bucket <i>n</i> counts the values from 2<sup>n-1</sup> to 2<sup>n</sup>-1. So recording a value
+ * takes constant time and memory, and percentiles are accurate within a factor of 2. The exact
+ * count, mean and maximum are recorded as well.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see ConnectionMetrics
+ */
+@ThreadSafe
+public class Histogram {
+
+	/** number of buckets, one for 0 and one for each bit of a positive <code>long</code> */
+	private static final int BUCKETS = 64;
+
+	/** the number of recorded values per bucket */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	/** the number of recorded values */
+	private final AtomicLong count = new AtomicLong();
+	/** the sum of the recorded values */
+	private final AtomicLong sum = new AtomicLong();
+	/** the greatest recorded value */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records the given value. Negative values are recorded as 0.
+	 * 
+	 * @param value
+	 *            the value to record
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+
+		buckets.incrementAndGet(bucketOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long currentMax;
+		do {
+			currentMax = max.get();
+			if (value <= currentMax)
+				break;
+		}
+		while (!max.compareAndSet(currentMax, value));
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 * 
+	 * @return the number of recorded values
+	 */
+	@Nonnegative
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the arithmetic mean of the recorded values.
+	 * 
+	 * @return the mean, 0 if no value was recorded
+	 */
+	public double getMean() {
+		long count = this.count.get();
+		if (count == 0)
+			return 0;
+		return (double) sum.get() / count;
+	}
+
+	/**
+	 * Returns the greatest recorded value.
+	 * 
+	 * @return the maximum, 0 if no value was recorded
+	 */
+	@Nonnegative
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns an upper bound of the value, that is greater or equal to the given percentage of the
+	 * recorded values. The returned value is at most twice the exact value.
+	 * 
+	 * @param percentile
+	 *            the percentile, must be between 0 and 100
+	 * @return the value at the given percentile, 0 if no value was recorded
+	 */
+	@Nonnegative
+	public long getValueAtPercentile(double percentile) {
+		checkArgument(percentile >= 0 && percentile <= 100, "percentile", "Expected a value between 0 and 100!");
+
+		long count = this.count.get();
+		if (count == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += buckets.get(bucket);
+			if (seen >= rank && seen > 0)
+				return min(upperBoundOf(bucket), max.get());
+		}
+		return max.get();
+	}
+
+	/** Returns the bucket of the given non-negative value. */
+	private static int bucketOf(long value) {
+		return 64 - numberOfLeadingZeros(value);
+	}
+
+	/** Returns the greatest value, that is counted by the given bucket. */
+	private static long upperBoundOf(int bucket) {
+		if (bucket == BUCKETS - 1)
+			return Long.MAX_VALUE;
+		return (1L << bucket) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "Histogram [count=" + getCount() + ", mean=" + getMean() + ", p99=" + getValueAtPercentile(99) + ", max=" + getMax() + "]";
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * A {@link SerialConnection}, that records its I/O operations in {@link ConnectionMetrics}. The
+ * connections of a {@link SerialPort} implement this interface, if the port supports the metrics.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see ConnectionMetrics
+ */
+public interface InstrumentedConnection extends SerialConnection {
+
+	/**
+	 * Returns the I/O metrics of this connection, if the metrics are enabled by the system property
+	 * {@value ConnectionMetrics#ENABLED_PROPERTY}.
+	 * 
+	 * @return the metrics, <code>null</code> if the metrics are disabled
+	 */
+	@CheckForNull
+	ConnectionMetrics getMetrics();
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+/**
+ * The line errors of a serial port, that can be monitored by a {@link LineStatusListener}.
+ * 
+ * @author Tobias Breler
+ * 
+ * @see LineStatusEvent
+ */
+public enum LineError {
+
+	/** A break condition was detected on input. */
+	BREAK,
+	/** A framing error was detected, e.g. the stop bit was missing. */
+	FRAMING,
+	/** The parity of a received character was wrong. */
+	PARITY,
+	/** A character-buffer overrun has occurred, the next character is lost. */
+	OVERRUN,
+	/** The input buffer overflowed, received characters are lost. */
+	RX_OVERFLOW
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+/**
+ * The modem control signals of a serial port, that can be monitored by a
+ * {@link LineStatusListener}.
+ * 
+ * @author Tobias Breler
+ * 
+ * @see LineStatusEvent
+ */
+public enum LineSignal {
+
+	/** CTS (clear-to-send) */
+	CTS,
+	/** DSR (data-set-ready) */
+	DSR,
+	/** RI (ring indicator) */
+	RING,
+	/** RLSD (receive-line-signal-detect), also known as DCD (data-carrier-detect) */
+	RLSD
+}
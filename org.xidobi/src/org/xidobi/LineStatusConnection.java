@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link SerialConnection}, that reports changes of the modem control signals and line errors to
+ * listeners. The connections of a {@link SerialPort} implement this interface, if the port can
+ * detect the line status.
+ * 
+ * @author Tobias Breler
+ * 
+ * @see LineStatusListener
+ */
+public interface LineStatusConnection extends SerialConnection {
+
+	/**
+	 * Adds a listener, that is notified about changes of the modem control signals and about line
+	 * errors. The listener is notified by the thread, that reads from this connection, while it
+	 * waits for data.
+	 * 
+	 * @param listener
+	 *            the listener to add, must not be <code>null</code>
+	 */
+	void addLineStatusListener(@Nonnull LineStatusListener listener);
+
+	/**
+	 * Removes the given listener. Has no effect, if the listener was not added.
+	 * 
+	 * @param listener
+	 *            the listener to remove, must not be <code>null</code>
+	 */
+	void removeLineStatusListener(@Nonnull LineStatusListener listener);
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.Collections.unmodifiableSet;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Describes a change of the modem control signals or a line error of a serial connection.
+ * 
+ * @author Tobias Breler
+ * 
+ * @see LineStatusListener
+ */
+@Immutable
+public class LineStatusEvent {
+
+	/** the serial port, never <code>null</code> */
+	private final SerialPort port;
+	/** the signals, that changed their state, never <code>null</code> */
+	private final Set<LineSignal> changedSignals;
+	/** the signals, that are currently on, never <code>null</code> */
+	private final Set<LineSignal> activeSignals;
+	/** the line errors, that occurred, never <code>null</code> */
+	private final Set<LineError> errors;
+
+	/**
+	 * Creates a new line status event.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param changedSignals
+	 *            the signals, that changed their state, must not be <code>null</code>
+	 * @param activeSignals
+	 *            the signals, that are currently on, must not be <code>null</code>
+	 * @param errors
+	 *            the line errors, that occurred, must not be <code>null</code>
+	 */
+	public LineStatusEvent(	@Nonnull SerialPort port,
+							@Nonnull Set<LineSignal> changedSignals,
+							@Nonnull Set<LineSignal> activeSignals,
+							@Nonnull Set<LineError> errors) {
+		this.port = checkArgumentNotNull(port, "port");
+		this.changedSignals = copyOf(checkArgumentNotNull(changedSignals, "changedSignals"), LineSignal.class);
+		this.activeSignals = copyOf(checkArgumentNotNull(activeSignals, "activeSignals"), LineSignal.class);
+		this.errors = copyOf(checkArgumentNotNull(errors, "errors"), LineError.class);
+	}
+
+	/**
+	 * Returns the serial port, whose line status changed.
+	 * 
+	 * @return the serial port, never <code>null</code>
+	 */
+	@Nonnull
+	public SerialPort getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the modem control signals, that changed their state. A ring indicator is reported as
+	 * changed, when the ring signal ended.
+	 * 
+	 * @return an unmodifiable set of the changed signals, never <code>null</code>
+	 */
+	@Nonnull
+	public Set<LineSignal> getChangedSignals() {
+		return changedSignals;
+	}
+
+	/**
+	 * Returns the modem control signals, that were on, when the event occurred.
+	 * 
+	 * @return an unmodifiable set of the active signals, never <code>null</code>
+	 */
+	@Nonnull
+	public Set<LineSignal> getActiveSignals() {
+		return activeSignals;
+	}
+
+	/**
+	 * Returns <code>true</code>, if the given signal was on, when the event occurred.
+	 * 
+	 * @param signal
+	 *            the modem control signal, must not be <code>null</code>
+	 * @return <ul>
+	 *         <li> <code>true</code> if the signal was on
+	 *         <li> <code>false</code> if the signal was off
+	 *         </ul>
+	 */
+	public boolean isActive(@Nonnull LineSignal signal) {
+		checkArgumentNotNull(signal, "signal");
+		return activeSignals.contains(signal);
+	}
+
+	/**
+	 * Returns the line errors, that occurred since the last event.
+	 * 
+	 * @return an unmodifiable set of the line errors, never <code>null</code>
+	 */
+	@Nonnull
+	public Set<LineError> getErrors() {
+		return errors;
+	}
+
+	/** Returns an unmodifiable copy of the given set. */
+	private static <E extends Enum<E>> Set<E> copyOf(Set<E> set, Class<E> type) {
+		Set<E> copy = EnumSet.noneOf(type);
+		copy.addAll(set);
+		return unmodifiableSet(copy);
+	}
+
+	@Override
+	public String toString() {
+		return "LineStatusEvent [port=" + port.getPortName() + ", changedSignals=" + changedSignals + ", activeSignals=" + activeSignals + ", errors=" + errors + "]";
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Listener interface to receive notifications about changes of the modem control signals and
+ * about line errors of a serial connection.
+ * <p>
+ * The listeners are notified by the thread, that reads from the connection, while it waits for
+ * data. Therefore no events are delivered, while no thread reads from the connection. A listener
+ * should return quickly, otherwise the read operation is delayed. Exceptions thrown by a listener
+ * are passed to the {@link Thread.UncaughtExceptionHandler} of the reading thread.
+ * 
+ * @author Tobias Breler
+ * 
+ * @see LineStatusConnection#addLineStatusListener(LineStatusListener)
+ */
+public interface LineStatusListener {
+
+	/**
+	 * Is called, when a modem control signal changed or a line error occurred.
+	 * 
+	 * @param event
+	 *            the line status event, never <code>null</code>
+	 */
+	void lineStatusChanged(@Nonnull LineStatusEvent event);
+}
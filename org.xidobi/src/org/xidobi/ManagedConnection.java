@@ -0,0 +1,868 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.xidobi.spi.ByteBuffers;
+import org.xidobi.spi.NativeCodeException;
+
+/**
+ * A stable handle for a serial port, that is kept open by a {@link SerialConnectionManager}. The
+ * handle survives the loss of the underlying {@link SerialConnection}:
+ * <ul>
+ * <li>{@link #read()} blocks until the port is connected again and continues reading</li>
+ * <li>{@link #write(byte[])} buffers the data while the port is not connected. The buffered data
+ * is written in the original order, before the re-opened port is available to other writers. If
+ * the buffer is full, an {@link IOException} is thrown.</li>
+ * </ul>
+ * Only {@link #close()} closes the handle permanently. Added {@link LineStatusListener}s are
+ * notified about the line status of the current underlying connection, if it is a
+ * {@link LineStatusConnection}.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see SerialConnectionManager
+ */
+public class ManagedConnection implements LineStatusConnection, InstrumentedConnection, ReconfigurableConnection, DrainableConnection, PurgeableConnection, TimedReadConnection, TimestampingConnection, GatheringConnection {
+
+	/** the manager, that re-opens the port, never <code>null</code> */
+	private final SerialConnectionManager manager;
+	/** the serial port, never <code>null</code> */
+	private final SerialPort port;
+	/** the control settings of the port, never <code>null</code>; guarded by stateLock */
+	private SerialPortSettings settings;
+	/** the maximum number of buffered bytes */
+	private final int writeBufferSize;
+
+	/** guards the state of this connection */
+	private final Lock stateLock = new ReentrantLock();
+	/** signaled, when the port was connected or this connection was closed */
+	private final Condition stateChanged = stateLock.newCondition();
+	/**
+	 * Ensures that only one thread at a time writes, so the buffered data is written before new
+	 * data.
+	 */
+	private final Lock writeLock = new ReentrantLock();
+
+	/** the underlying connection, <code>null</code> if the port is not connected */
+	private SerialConnection connection;
+	/**
+	 * the failed underlying connection, that is closed by the manager, <code>null</code> if there
+	 * is none; guarded by stateLock
+	 */
+	private SerialConnection lostConnection;
+	/** the data, that was written while the port was not connected; guarded by writeLock */
+	private final Queue<byte[]> writeBuffer = new LinkedList<byte[]>();
+	/** number of bytes in the write buffer; guarded by writeLock */
+	private int bufferedBytes;
+	/** the listeners, that are notified about line status changes */
+	private final List<LineStatusListener> lineStatusListeners = new CopyOnWriteArrayList<LineStatusListener>();
+	/** forwards the line status events of the underlying connections to the listeners */
+	private final LineStatusListener lineStatusForwarder = new LineStatusListener() {
+		public void lineStatusChanged(LineStatusEvent event) {
+			for (LineStatusListener listener : lineStatusListeners)
+				listener.lineStatusChanged(event);
+		}
+	};
+	/** number of failed attempts to open the port, since the connection was lost */
+	private int failedAttempts;
+	/** <code>true</code>, if an attempt to open the port is scheduled */
+	private boolean isReconnectScheduled;
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this handle is closed
+	 * <li> <code>false</code> if this handle is open
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a new handle, that is not connected.
+	 */
+	ManagedConnection(	@Nonnull SerialConnectionManager manager,
+						@Nonnull SerialPort port,
+						@Nonnull SerialPortSettings settings,
+						int writeBufferSize) {
+		this.manager = checkArgumentNotNull(manager, "manager");
+		this.port = checkArgumentNotNull(port, "port");
+		this.settings = checkArgumentNotNull(settings, "settings");
+		this.writeBufferSize = writeBufferSize;
+	}
+
+	/**
+	 * Writes the given data to the serial port. If the port is not connected, the data is buffered
+	 * and written after the port was re-opened.
+	 * 
+	 * @param data
+	 *            the data to write, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this handle was closed or the write buffer is full
+	 */
+	public void write(@Nonnull byte[] data) throws IOException {
+		checkArgumentNotNull(data, "data");
+
+		writeLock.lock();
+		try {
+			SerialConnection current = getConnection();
+			if (current != null) {
+				try {
+					current.write(data);
+					return;
+				}
+				catch (IOException e) {
+					connectionLost(current);
+				}
+				catch (NativeCodeException e) {
+					connectionLost(current);
+				}
+			}
+			bufferData(data);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffers to the serial port. If the port is not
+	 * connected, the bytes are buffered and written after the port was re-opened. The buffers are
+	 * concatenated, if the underlying connection is not a {@link GatheringConnection}.
+	 * 
+	 * @param data
+	 *            the buffers to write, must not be <code>null</code> and must not contain
+	 *            <code>null</code>
+	 * @throws IOException
+	 *             if this handle was closed or the write buffer is full
+	 */
+	public void write(@Nonnull ByteBuffer[] data) throws IOException {
+		ByteBuffers.remaining(data);
+
+		writeLock.lock();
+		try {
+			SerialConnection current = getConnection();
+			if (current != null) {
+				try {
+					ByteBuffers.write(current, data);
+					return;
+				}
+				catch (IOException e) {
+					connectionLost(current);
+				}
+				catch (NativeCodeException e) {
+					connectionLost(current);
+				}
+			}
+			// the failed write didn't consume the buffers
+			bufferData(ByteBuffers.toByteArray(data));
+			ByteBuffers.consume(data);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Reads from the serial port. Blocks while the port is not connected.
+	 * 
+	 * @return the received <code>byte[]</code>, never <code>null</code>
+	 * @throws IOException
+	 *             if this handle was closed or the thread was interrupted
+	 */
+	@Nonnull
+	public byte[] read() throws IOException {
+		while (true) {
+			SerialConnection current = awaitConnection(null);
+			try {
+				return current.read();
+			}
+			catch (IOException e) {
+				if (isClosed)
+					throw e;
+				connectionLost(current);
+			}
+			catch (NativeCodeException e) {
+				if (isClosed)
+					throw e;
+				connectionLost(current);
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws IOException {
+		return read(Deadline.after(timeout, unit));
+	}
+
+	/**
+	 * Reads from the serial port. Blocks while the port is not connected, but at most until the
+	 * deadline expires.
+	 * 
+	 * @param deadline
+	 *            the deadline for the read, must not be <code>null</code>
+	 * @return the received <code>byte[]</code>, an empty array if no data was received before the
+	 *         deadline expired, never <code>null</code>
+	 * @throws IOException
+	 *             if this handle was closed or the thread was interrupted
+	 * @exception UnsupportedOperationException
+	 *                if the underlying connection is not a {@link TimedReadConnection}
+	 */
+	@Nonnull
+	public byte[] read(@Nonnull Deadline deadline) throws IOException {
+		checkArgumentNotNull(deadline, "deadline");
+		while (true) {
+			SerialConnection current = awaitConnection(deadline);
+			if (current == null)
+				return new byte[0];
+			try {
+				return timedRead(current).read(deadline);
+			}
+			catch (IOException e) {
+				if (isClosed)
+					throw e;
+				connectionLost(current);
+			}
+			catch (NativeCodeException e) {
+				if (isClosed)
+					throw e;
+				connectionLost(current);
+			}
+		}
+	}
+
+	/**
+	 * Reads from the serial port into the given holder. Blocks while the port is not connected. If
+	 * the underlying connection is not a {@link TimestampingConnection}, the data is stamped, when
+	 * its read returns.
+	 * 
+	 * @param result
+	 *            receives the data and its timestamp, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this handle was closed or the thread was interrupted
+	 */
+	public void read(@Nonnull ReceivedData result) throws IOException {
+		checkArgumentNotNull(result, "result");
+		while (true) {
+			SerialConnection current = awaitConnection(null);
+			try {
+				result.readFrom(current);
+				return;
+			}
+			catch (IOException e) {
+				if (isClosed)
+					throw e;
+				connectionLost(current);
+			}
+			catch (NativeCodeException e) {
+				if (isClosed)
+					throw e;
+				connectionLost(current);
+			}
+		}
+	}
+
+	/**
+	 * Reads exactly the given number of bytes from the serial port. Blocks while the port is not
+	 * connected, but at most until the deadline expires. Bytes, that were received from a lost
+	 * connection, are discarded.
+	 * 
+	 * @param length
+	 *            the number of bytes to read, must not be negative
+	 * @param deadline
+	 *            the deadline for the read, must not be <code>null</code>
+	 * @return the received <code>byte[]</code> of the given length, never <code>null</code>
+	 * @throws InterruptedIOException
+	 *             if the deadline expired before all bytes were received or the thread was
+	 *             interrupted
+	 * @throws IOException
+	 *             if this handle was closed
+	 * @exception UnsupportedOperationException
+	 *                if the underlying connection is not a {@link TimedReadConnection}
+	 */
+	@Nonnull
+	public byte[] readFully(@Nonnegative int length, @Nonnull Deadline deadline) throws IOException {
+		checkArgumentNotNull(deadline, "deadline");
+		while (true) {
+			SerialConnection current = awaitConnection(deadline);
+			if (current == null)
+				throw new InterruptedIOException("Read timed out on port " + port.getPortName() + "! The port is not connected.");
+			try {
+				return timedRead(current).readFully(length, deadline);
+			}
+			catch (IOException e) {
+				// the underlying connection stays open, if the deadline expired
+				if (isClosed || !current.isClosed())
+					throw e;
+				connectionLost(current);
+			}
+			catch (NativeCodeException e) {
+				if (isClosed)
+					throw e;
+				connectionLost(current);
+			}
+		}
+	}
+
+	/**
+	 * Returns the given underlying connection, if its reads can be bounded by a deadline.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the connection is not a {@link TimedReadConnection}
+	 */
+	@Nonnull
+	private TimedReadConnection timedRead(SerialConnection current) {
+		if (!(current instanceof TimedReadConnection))
+			throw new UnsupportedOperationException("The connection to port " + port.getPortName() + " can't read with a timeout!");
+		return (TimedReadConnection) current;
+	}
+
+	/**
+	 * Returns the given underlying connection, if its buffers can be purged.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the connection is not a {@link PurgeableConnection}
+	 */
+	@Nonnull
+	private PurgeableConnection purgeable(SerialConnection current) {
+		if (!(current instanceof PurgeableConnection))
+			throw new UnsupportedOperationException("The buffers of port " + port.getPortName() + " can't be purged!");
+		return (PurgeableConnection) current;
+	}
+
+	/**
+	 * Closes this handle and the underlying connection. Buffered data, that was not written yet, is
+	 * discarded.
+	 * 
+	 * @throws IOException
+	 *             if the underlying connection couldn't be closed
+	 */
+	public void close() throws IOException {
+		SerialConnection current;
+		SerialConnection lost;
+		stateLock.lock();
+		try {
+			if (isClosed)
+				return;
+			isClosed = true;
+			current = connection;
+			connection = null;
+			lost = lostConnection;
+			lostConnection = null;
+			stateChanged.signalAll();
+		}
+		finally {
+			stateLock.unlock();
+		}
+
+		manager.closed(this);
+		if (lost != null)
+			// the manager may not close it anymore
+			closeQuietly(lost);
+		if (current != null)
+			current.close();
+	}
+
+	/**
+	 * Returns <code>true</code>, if this handle was closed. A handle, whose port is currently not
+	 * connected, is not closed.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code> if this handle is closed
+	 *         <li> <code>false</code> if this handle is open
+	 *         </ul>
+	 */
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	/**
+	 * Returns <code>true</code>, if the serial port is currently connected.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code> if the port is connected
+	 *         <li> <code>false</code> if the port is not connected or this handle is closed
+	 *         </ul>
+	 */
+	public boolean isConnected() {
+		stateLock.lock();
+		try {
+			return connection != null;
+		}
+		finally {
+			stateLock.unlock();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public SerialPort getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the I/O metrics of the current underlying connection. The metrics start from 0, when
+	 * the port is re-opened.
+	 * 
+	 * @return the metrics, <code>null</code> if the metrics are disabled, the port is not
+	 *         connected or the underlying connection is not an {@link InstrumentedConnection}
+	 */
+	@CheckForNull
+	public ConnectionMetrics getMetrics() {
+		SerialConnection current;
+		stateLock.lock();
+		try {
+			current = connection;
+		}
+		finally {
+			stateLock.unlock();
+		}
+		if (current instanceof InstrumentedConnection)
+			return ((InstrumentedConnection) current).getMetrics();
+		return null;
+	}
+
+	/**
+	 * Changes the control settings of the serial port. The settings are applied to the current
+	 * underlying connection and are used, when the port is re-opened. If the current underlying
+	 * connection is not a {@link ReconfigurableConnection}, it is handled as lost, so the port is
+	 * re-opened with the new settings.
+	 * 
+	 * @param settings
+	 *            the new control settings, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this handle was closed or the settings couldn't be applied to the current
+	 *             underlying connection
+	 */
+	public void reconfigure(@Nonnull SerialPortSettings settings) throws IOException {
+		checkArgumentNotNull(settings, "settings");
+
+		SerialConnection current;
+		stateLock.lock();
+		try {
+			ensureOpen();
+			this.settings = settings;
+			current = connection;
+		}
+		finally {
+			stateLock.unlock();
+		}
+
+		if (current instanceof ReconfigurableConnection)
+			((ReconfigurableConnection) current).reconfigure(settings);
+		else if (current != null)
+			connectionLost(current);
+	}
+
+	/**
+	 * Blocks until the written data was sent. While the port is not connected, it blocks until the
+	 * port is re-opened and the buffered data was written.
+	 * 
+	 * @throws IOException
+	 *             if this handle was closed or the thread was interrupted
+	 * @exception UnsupportedOperationException
+	 *                if the underlying connection is not a {@link DrainableConnection}
+	 */
+	public void drain() throws IOException {
+		while (true) {
+			SerialConnection current = awaitConnection(null);
+			if (!(current instanceof DrainableConnection))
+				throw new UnsupportedOperationException("The connection to port " + port.getPortName() + " can't be drained!");
+			try {
+				((DrainableConnection) current).drain();
+				return;
+			}
+			catch (IOException e) {
+				if (isClosed)
+					throw e;
+				connectionLost(current);
+			}
+			catch (NativeCodeException e) {
+				if (isClosed)
+					throw e;
+				connectionLost(current);
+			}
+		}
+	}
+
+	/**
+	 * Discards the received data, that was not read yet, from the current underlying connection.
+	 * Has no effect, while the port is not connected.
+	 * 
+	 * @throws IOException
+	 *             if this handle was closed or the input buffer of the current underlying
+	 *             connection couldn't be purged
+	 * @exception UnsupportedOperationException
+	 *                if the current underlying connection is not a {@link PurgeableConnection}
+	 */
+	public void purgeInput() throws IOException {
+		SerialConnection current = getConnection();
+		if (current != null)
+			purgeable(current).purgeInput();
+	}
+
+	/**
+	 * Discards the written data, that was not sent yet, including the data, that was buffered while
+	 * the port was not connected.
+	 * 
+	 * @throws IOException
+	 *             if this handle was closed or the output buffer of the current underlying
+	 *             connection couldn't be purged
+	 * @exception UnsupportedOperationException
+	 *                if the current underlying connection is not a {@link PurgeableConnection},
+	 *                the buffered data is discarded anyway
+	 */
+	public void purgeOutput() throws IOException {
+		writeLock.lock();
+		try {
+			writeBuffer.clear();
+			bufferedBytes = 0;
+
+			SerialConnection current = getConnection();
+			if (current != null)
+				purgeable(current).purgeOutput();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/** {@inheritDoc} */
+	public void addLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		lineStatusListeners.add(listener);
+	}
+
+	/** {@inheritDoc} */
+	public void removeLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		lineStatusListeners.remove(listener);
+	}
+
+	/**
+	 * Schedules an attempt to open the serial port after the given delay in milliseconds, if no
+	 * attempt is scheduled.
+	 */
+	void scheduleReconnect(long delay) {
+		stateLock.lock();
+		try {
+			if (isClosed || isReconnectScheduled)
+				return;
+			isReconnectScheduled = manager.schedule(new Runnable() {
+				public void run() {
+					reconnect();
+				}
+			}, delay);
+		}
+		finally {
+			stateLock.unlock();
+		}
+	}
+
+	/**
+	 * Opens the serial port and writes the buffered data. Schedules the next attempt, if the port
+	 * couldn't be opened.
+	 */
+	private void reconnect() {
+		stateLock.lock();
+		try {
+			isReconnectScheduled = false;
+			if (isClosed)
+				return;
+		}
+		finally {
+			stateLock.unlock();
+		}
+
+		SerialPortSettings openSettings;
+		stateLock.lock();
+		try {
+			openSettings = settings;
+		}
+		finally {
+			stateLock.unlock();
+		}
+
+		SerialConnection opened;
+		try {
+			opened = port.open(openSettings);
+		}
+		catch (IOException e) {
+			reconnectFailed();
+			return;
+		}
+		catch (NativeCodeException e) {
+			reconnectFailed();
+			return;
+		}
+
+		if (opened instanceof LineStatusConnection)
+			((LineStatusConnection) opened).addLineStatusListener(lineStatusForwarder);
+
+		writeLock.lock();
+		try {
+			if (!flushWriteBuffer(opened)) {
+				closeQuietly(opened);
+				reconnectFailed();
+				return;
+			}
+
+			boolean connected = false;
+			SerialPortSettings changedSettings = null;
+			stateLock.lock();
+			try {
+				if (!isClosed) {
+					connection = opened;
+					connected = true;
+					failedAttempts = 0;
+					stateChanged.signalAll();
+					if (settings != openSettings)
+						// the settings were changed while the port was opened
+						changedSettings = settings;
+				}
+			}
+			finally {
+				stateLock.unlock();
+			}
+			if (connected) {
+				if (changedSettings != null)
+					reconfigure(opened, changedSettings);
+				return;
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+		// this handle was closed while the port was opened
+		closeQuietly(opened);
+	}
+
+	/**
+	 * Applies the given settings to the given underlying connection. Handles the connection as
+	 * lost, if the settings couldn't be applied or the connection can't be reconfigured.
+	 */
+	private void reconfigure(SerialConnection current, SerialPortSettings settings) {
+		if (!(current instanceof ReconfigurableConnection)) {
+			connectionLost(current);
+			return;
+		}
+		try {
+			((ReconfigurableConnection) current).reconfigure(settings);
+		}
+		catch (IOException e) {
+			connectionLost(current);
+		}
+		catch (NativeCodeException e) {
+			connectionLost(current);
+		}
+	}
+
+	/** Schedules the next attempt to open the port with the delay of the reconnect policy. */
+	private void reconnectFailed() {
+		long delay;
+		stateLock.lock();
+		try {
+			delay = manager.nextDelay(failedAttempts);
+			failedAttempts++;
+		}
+		finally {
+			stateLock.unlock();
+		}
+		scheduleReconnect(delay);
+	}
+
+	/**
+	 * Is called, when the given underlying connection failed. The connection is closed by the
+	 * manager, so the calling reader or writer is not blocked by a slow close, afterwards an
+	 * attempt to re-open the port is scheduled.
+	 */
+	private void connectionLost(SerialConnection lost) {
+		final long delay;
+		stateLock.lock();
+		try {
+			if (connection != lost)
+				// already handled by an other thread
+				return;
+			connection = null;
+			lostConnection = lost;
+			delay = manager.nextDelay(failedAttempts);
+			failedAttempts++;
+		}
+		finally {
+			stateLock.unlock();
+		}
+
+		boolean isScheduled = manager.schedule(new Runnable() {
+			public void run() {
+				closeLostConnection();
+				scheduleReconnect(delay);
+			}
+		}, 0);
+		if (!isScheduled)
+			// the manager was closed
+			closeLostConnection();
+	}
+
+	/** Closes the failed underlying connection, if it was not closed yet. */
+	private void closeLostConnection() {
+		SerialConnection lost;
+		stateLock.lock();
+		try {
+			lost = lostConnection;
+			lostConnection = null;
+		}
+		finally {
+			stateLock.unlock();
+		}
+		if (lost != null)
+			closeQuietly(lost);
+	}
+
+	/**
+	 * Returns the underlying connection or <code>null</code>, if the port is not connected.
+	 * 
+	 * @throws IOException
+	 *             if this handle is closed
+	 */
+	@CheckForNull
+	private SerialConnection getConnection() throws IOException {
+		stateLock.lock();
+		try {
+			ensureOpen();
+			return connection;
+		}
+		finally {
+			stateLock.unlock();
+		}
+	}
+
+	/**
+	 * Blocks until the port is connected and returns the underlying connection.
+	 * 
+	 * @param deadline
+	 *            the deadline for the wait, <code>null</code> to wait until the port is connected
+	 * @return the underlying connection, <code>null</code> if the deadline expired
+	 * @throws IOException
+	 *             if this handle is closed or the thread was interrupted
+	 */
+	@CheckForNull
+	private SerialConnection awaitConnection(@Nullable Deadline deadline) throws IOException {
+		stateLock.lock();
+		try {
+			while (true) {
+				ensureOpen();
+				if (connection != null)
+					return connection;
+				try {
+					if (deadline == null)
+						stateChanged.await();
+					else if (deadline.isExpired())
+						return null;
+					else
+						stateChanged.awaitNanos(deadline.remaining(NANOSECONDS));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the connection to " + port.getPortName() + "!");
+				}
+			}
+		}
+		finally {
+			stateLock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the given data to the write buffer.
+	 * 
+	 * @throws IOException
+	 *             if the write buffer is full
+	 */
+	private void bufferData(byte[] data) throws IOException {
+		if (bufferedBytes + data.length > writeBufferSize)
+			throw new IOException("Port " + port.getPortName() + " is not connected and the write buffer is full!");
+
+		// copy the data, the caller may reuse the array
+		byte[] copy = new byte[data.length];
+		System.arraycopy(data, 0, copy, 0, data.length);
+		writeBuffer.add(copy);
+		bufferedBytes += data.length;
+	}
+
+	/**
+	 * Writes the buffered data to the given connection.
+	 * 
+	 * @return <code>true</code>, if all buffered data was written
+	 */
+	private boolean flushWriteBuffer(SerialConnection opened) {
+		while (!writeBuffer.isEmpty()) {
+			byte[] data = writeBuffer.peek();
+			try {
+				opened.write(data);
+			}
+			catch (IOException e) {
+				return false;
+			}
+			catch (NativeCodeException e) {
+				return false;
+			}
+			writeBuffer.remove();
+			bufferedBytes -= data.length;
+		}
+		return true;
+	}
+
+	/**
+	 * Throws an {@link IOException}, if this handle is closed.
+	 */
+	private void ensureOpen() throws IOException {
+		if (isClosed)
+			throw new IOException("Port " + port.getPortName() + " was closed!");
+	}
+
+	/** Closes the given connection and ignores all exceptions. */
+	private static void closeQuietly(SerialConnection connection) {
+		try {
+			connection.close();
+		}
+		catch (IOException e) {
+			// ignore, the connection is not used anymore
+		}
+		catch (NativeCodeException e) {
+			// ignore, the connection is not used anymore
+		}
+	}
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.xidobi.spi.ByteBuffers;
+
+/**
+ * Decorates a {@link SerialConnection} with write pacing. The writes are delayed, so that the
+ * decorated connection doesn't transmit faster than specified by the {@link Pacing}: At most
+ * {@link Pacing#getBytesPerSecond() bytesPerSecond} bytes are written per second, after the
+ * {@link Pacing#getBurst() burst} is used up, and there is at least the
+ * {@link Pacing#getFrameGap(TimeUnit) frame gap} between the end of a write and the start of the
+ * next write. Each write is a frame, that is written at once, so a frame is never split.
+ * <p>
+ * The waiting writers are released by the shared {@link WritePacer}. Concurrent writes are paced
+ * in the order of their arrival. The reads are not affected.
+ * 
+ * <pre>
+ * SerialConnection connection = new PacedSerialConnection(port.open(settings), Pacing.from(settings).create(), pacer);
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see Pacing
+ * @see WritePacer
+ */
+public final class PacedSerialConnection implements LineStatusConnection, InstrumentedConnection, ReconfigurableConnection, DrainableConnection, PurgeableConnection, TimedReadConnection, TimestampingConnection, GatheringConnection {
+
+	/** the decorated connection, never <code>null</code> */
+	private final SerialConnection connection;
+	/** releases the waiting writers, never <code>null</code> */
+	private final WritePacer pacer;
+
+	/**
+	 * the rate and the frame gap of the writes, never <code>null</code>; changed while the
+	 * {@link #writeLock} is held
+	 */
+	private volatile Pacing pacing;
+	/** the frame gap in nanoseconds, guarded by {@link #writeLock} */
+	private long frameGap;
+	/** the time in nanoseconds, that the burst is ahead of the rate, guarded by {@link #writeLock} */
+	private long burstNanos;
+
+	/** serializes the writes in the order of their arrival */
+	private final ReentrantLock writeLock = new ReentrantLock(true);
+	/**
+	 * the time ({@link System#nanoTime()}), when all bytes written so far would be transmitted at
+	 * the rate of the pacing, guarded by {@link #writeLock}
+	 */
+	private long theoreticalEnd;
+	/** the time ({@link System#nanoTime()}), when the last frame ends, guarded by {@link #writeLock} */
+	private long frameEnd;
+	/** the latch, that the current writer waits for, <code>null</code> if no writer waits */
+	@Nullable
+	private volatile CountDownLatch slot;
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this connection is closed
+	 * <li> <code>false</code> if this connection is not closed
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a new paced connection.
+	 * 
+	 * @param connection
+	 *            the decorated connection, must not be <code>null</code>
+	 * @param pacing
+	 *            the rate and the frame gap of the writes, must not be <code>null</code>
+	 * @param pacer
+	 *            releases the waiting writers, must not be <code>null</code>
+	 */
+	public PacedSerialConnection(	@Nonnull SerialConnection connection,
+									@Nonnull Pacing pacing,
+									@Nonnull WritePacer pacer) {
+		this.connection = checkArgumentNotNull(connection, "connection");
+		this.pacer = checkArgumentNotNull(pacer, "pacer");
+
+		setPacing(checkArgumentNotNull(pacing, "pacing"));
+		theoreticalEnd = System.nanoTime();
+		frameEnd = theoreticalEnd - frameGap;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Blocks until the write is allowed by the pacing.
+	 */
+	public void write(@Nonnull byte[] data) throws IOException {
+		checkArgumentNotNull(data, "data");
+		writeLock.lock();
+		try {
+			awaitSlot(data.length);
+			connection.write(data);
+			frameWritten();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Blocks until the write is allowed by the pacing. The buffers are concatenated, if the
+	 * decorated connection can't write them at once.
+	 */
+	public void write(@Nonnull ByteBuffer[] data) throws IOException {
+		int length = ByteBuffers.remaining(checkArgumentNotNull(data, "data"));
+		writeLock.lock();
+		try {
+			awaitSlot(length);
+			ByteBuffers.write(connection, data);
+			frameWritten();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Blocks until a frame of the given length may be written and reserves the transmit time of the
+	 * frame. Must be called while the {@link #writeLock} is held.
+	 * 
+	 * @throws IOException
+	 *             if this connection was closed or the thread was interrupted
+	 */
+	private void awaitSlot(int length) throws IOException {
+		long transmitTime = pacing.transmitNanos(length);
+		long now = System.nanoTime();
+		// the frame must fit into the burst, a frame larger than the burst waits for an idle line
+		long start = latest(now, theoreticalEnd - Math.max(burstNanos - transmitTime, 0));
+		// with a frame gap the frames must not overlap on the line, even if the burst would allow it
+		if (frameGap > 0)
+			start = latest(start, frameEnd + frameGap);
+		long delay = start - now;
+		if (delay > 0) {
+			CountDownLatch latch = new CountDownLatch(1);
+			slot = latch;
+			try {
+				if (isClosed)
+					throw new IOException("Port " + getPort().getPortName() + " was closed!");
+				pacer.release(latch, delay);
+				latch.await();
+			}
+			catch (InterruptedException e) {
+				throw new InterruptedIOException("The thread for the write operation is interrupted!");
+			}
+			finally {
+				slot = null;
+			}
+		}
+		if (isClosed)
+			throw new IOException("Port " + getPort().getPortName() + " was closed!");
+
+		theoreticalEnd = latest(theoreticalEnd, start) + transmitTime;
+		frameEnd = start + transmitTime;
+	}
+
+	/**
+	 * Is called after a frame was written. The write may return after the calculated end of the
+	 * frame, then the frame gap starts at the return of the write. Must be called while the
+	 * {@link #writeLock} is held.
+	 */
+	private void frameWritten() {
+		frameEnd = latest(frameEnd, System.nanoTime());
+	}
+
+	/**
+	 * Sets the given pacing for the next writes. Must be called while the {@link #writeLock} is
+	 * held.
+	 */
+	private void setPacing(Pacing pacing) {
+		this.pacing = pacing;
+		frameGap = pacing.getFrameGap(NANOSECONDS);
+		burstNanos = pacing.transmitNanos(pacing.getBurst());
+	}
+
+	/** Returns the later of the given {@link System#nanoTime()} values. */
+	private static long latest(long time1, long time2) {
+		return time1 - time2 >= 0 ? time1 : time2;
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read() throws IOException {
+		return connection.read();
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws IOException {
+		return timedReadConnection().read(timeout, unit);
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read(@Nonnull Deadline deadline) throws IOException {
+		return timedReadConnection().read(deadline);
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] readFully(@Nonnegative int length, @Nonnull Deadline deadline) throws IOException {
+		return timedReadConnection().readFully(length, deadline);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the decorated connection is not a {@link TimestampingConnection}, the data is stamped,
+	 * when its read returns.
+	 */
+	public void read(@Nonnull ReceivedData result) throws IOException {
+		checkArgumentNotNull(result, "result");
+		result.readFrom(connection);
+	}
+
+	/**
+	 * Closes the decorated connection. A writer, that waits for the pacing, is released and throws
+	 * an {@link IOException}. Calling this method more than once has no effect.
+	 */
+	public void close() throws IOException {
+		if (isClosed)
+			return;
+		isClosed = true;
+		CountDownLatch latch = slot;
+		if (latch != null)
+			latch.countDown();
+		connection.close();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link DrainableConnection}
+	 */
+	public void drain() throws IOException {
+		drainableConnection().drain();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	public void purgeInput() throws IOException {
+		purgeableConnection().purgeInput();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The discarded bytes are still counted by the pacing, because it is unknown how many of them
+	 * were sent.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	public void purgeOutput() throws IOException {
+		purgeableConnection().purgeOutput();
+	}
+
+	/** {@inheritDoc} */
+	public boolean isClosed() {
+		return isClosed || connection.isClosed();
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public SerialPort getPort() {
+		return connection.getPort();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Waits for the pending writes. If the rate of the pacing was calculated from the settings (see
+	 * {@link Pacing#from(SerialPortSettings)}), the next writes are paced with the rate of the new
+	 * settings. An explicitly specified rate is kept.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link ReconfigurableConnection}
+	 */
+	public void reconfigure(@Nonnull SerialPortSettings settings) throws IOException {
+		checkArgumentNotNull(settings, "settings");
+		if (!(connection instanceof ReconfigurableConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't be reconfigured!");
+		writeLock.lock();
+		try {
+			((ReconfigurableConnection) connection).reconfigure(settings);
+			setPacing(pacing.withRateOf(settings));
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return the metrics of the decorated connection, <code>null</code> if the metrics are
+	 *         disabled or the decorated connection is not an {@link InstrumentedConnection}
+	 */
+	@CheckForNull
+	public ConnectionMetrics getMetrics() {
+		if (connection instanceof InstrumentedConnection)
+			return ((InstrumentedConnection) connection).getMetrics();
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The listener is added to the decorated connection and is never notified, if the decorated
+	 * connection is not a {@link LineStatusConnection}.
+	 */
+	public void addLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		if (connection instanceof LineStatusConnection)
+			((LineStatusConnection) connection).addLineStatusListener(listener);
+	}
+
+	/** {@inheritDoc} */
+	public void removeLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		if (connection instanceof LineStatusConnection)
+			((LineStatusConnection) connection).removeLineStatusListener(listener);
+	}
+
+	/**
+	 * Returns the current pacing of the writes.
+	 * 
+	 * @return the pacing, never <code>null</code>
+	 */
+	@Nonnull
+	public Pacing getPacing() {
+		return pacing;
+	}
+
+	/**
+	 * Returns the decorated connection, if its reads can be bounded by a deadline. The reads are
+	 * not paced, so they are passed through.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link TimedReadConnection}
+	 */
+	@Nonnull
+	private TimedReadConnection timedReadConnection() {
+		if (!(connection instanceof TimedReadConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't read with a timeout!");
+		return (TimedReadConnection) connection;
+	}
+
+	/**
+	 * Returns the decorated connection, if it can be drained.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link DrainableConnection}
+	 */
+	@Nonnull
+	private DrainableConnection drainableConnection() {
+		if (!(connection instanceof DrainableConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't be drained!");
+		return (DrainableConnection) connection;
+	}
+
+	/**
+	 * Returns the decorated connection, if its buffers can be purged.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	@Nonnull
+	private PurgeableConnection purgeableConnection() {
+		if (!(connection instanceof PurgeableConnection))
+			throw new UnsupportedOperationException("The buffers of port " + getPort().getPortName() + " can't be purged!");
+		return (PurgeableConnection) connection;
+	}
+}
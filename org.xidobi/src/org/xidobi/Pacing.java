@@ -0,0 +1,293 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Specifies how the writes of a {@link PacedSerialConnection} are paced. The writes are limited to
+ * the configured number of bytes per second (token bucket), so devices with small receive buffers
+ * and without flow control are not overrun. The burst allows to write some bytes ahead of the
+ * rate, e.g. up to the size of the receive buffer of the device. The frame gap is the minimum
+ * pause between the end of a frame, that is passed to a single write, and the start of the next.
+ * <p>
+ * <b>Usage:</b>
+ * <p>
+ * <code>
+ * Pacing pacing;</br>
+ * pacing = Pacing.from(settings).frameGap(5, MILLISECONDS).create();
+ * </code>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see PacedSerialConnection
+ */
+@Immutable
+public final class Pacing {
+
+	/**
+	 * A builder for pacings.
+	 * 
+	 * @author Christian Schwarz
+	 */
+	public static final class PacingBuilder {
+
+		/** the maximum number of bytes, that are written per second */
+		private int bytesPerSecond;
+		/** the number of bytes, that may be written ahead of the rate */
+		private int burst;
+		/** the minimum pause between two frames in nanoseconds */
+		private long frameGap;
+		/** <code>true</code>, if the rate was calculated from the settings of the serial port */
+		private boolean isRateOfSettings;
+
+		/** Creates a builder for pacings with the given rate. */
+		private PacingBuilder(int bytesPerSecond) {
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		/**
+		 * Sets the maximum number of bytes, that are written per second.
+		 * 
+		 * @param bytesPerSecond
+		 *            the rate, must be greater than 0
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public PacingBuilder bytesPerSecond(@Nonnegative int bytesPerSecond) {
+			checkArgument(bytesPerSecond > 0, "bytesPerSecond", "Expected a value greater than 0!");
+			this.bytesPerSecond = bytesPerSecond;
+			isRateOfSettings = false;
+			return this;
+		}
+
+		/**
+		 * Sets the number of bytes, that may be written ahead of the rate after the line was idle.
+		 * 
+		 * @param burst
+		 *            the number of bytes, must not be negative
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public PacingBuilder burst(@Nonnegative int burst) {
+			checkArgument(burst >= 0, "burst", "Expected a value greater or equal to 0!");
+			this.burst = burst;
+			return this;
+		}
+
+		/**
+		 * Sets the minimum pause between the end of a frame and the start of the next frame.
+		 * 
+		 * @param gap
+		 *            the pause, must not be negative
+		 * @param unit
+		 *            the unit of the pause, must not be <code>null</code>
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public PacingBuilder frameGap(@Nonnegative long gap, @Nonnull TimeUnit unit) {
+			checkArgument(gap >= 0, "gap", "Expected a value greater or equal to 0!");
+			checkArgumentNotNull(unit, "unit");
+			frameGap = unit.toNanos(gap);
+			return this;
+		}
+
+		/**
+		 * Creates and returns the pacing, specified by the current builder.
+		 * 
+		 * @return the pacing, never <code>null</code>
+		 */
+		@Nonnull
+		public Pacing create() {
+			return new Pacing(bytesPerSecond, burst, frameGap, isRateOfSettings);
+		}
+	}
+
+	/** the maximum number of bytes, that are written per second */
+	private final int bytesPerSecond;
+	/** the number of bytes, that may be written ahead of the rate */
+	private final int burst;
+	/** the minimum pause between two frames in nanoseconds */
+	private final long frameGap;
+	/** <code>true</code>, if the rate was calculated from the settings of the serial port */
+	private final boolean isRateOfSettings;
+
+	/** Creates a pacing with the given values. */
+	private Pacing(	@Nonnegative int bytesPerSecond,
+					@Nonnegative int burst,
+					@Nonnegative long frameGap,
+					boolean isRateOfSettings) {
+		this.bytesPerSecond = bytesPerSecond;
+		this.burst = burst;
+		this.frameGap = frameGap;
+		this.isRateOfSettings = isRateOfSettings;
+	}
+
+	/**
+	 * Creates a builder for pacings with the given rate. The initial values are:
+	 * <ul>
+	 * <li>burst = 0 bytes</li>
+	 * <li>frame gap = 0 ms</li>
+	 * </ul>
+	 * 
+	 * @param bytesPerSecond
+	 *            the maximum number of bytes, that are written per second, must be greater than 0
+	 * @return a new builder for pacings, never <code>null</code>
+	 */
+	@Nonnull
+	public static PacingBuilder fromBytesPerSecond(@Nonnegative int bytesPerSecond) {
+		return new PacingBuilder(1).bytesPerSecond(bytesPerSecond);
+	}
+
+	/**
+	 * Creates a builder for pacings, whose rate is the number of characters, that are transmitted
+	 * per second with the given settings. Each character consists of a start bit, the data bits,
+	 * the parity bit and the stop bits. A {@link PacedSerialConnection} calculates the rate again,
+	 * when it is reconfigured, unless the rate is changed with
+	 * {@link PacingBuilder#bytesPerSecond(int)}. The initial values are:
+	 * <ul>
+	 * <li>burst = 0 bytes</li>
+	 * <li>frame gap = 0 ms</li>
+	 * </ul>
+	 * 
+	 * @param settings
+	 *            the settings of the serial port, must not be <code>null</code>
+	 * @return a new builder for pacings, never <code>null</code>
+	 */
+	@Nonnull
+	public static PacingBuilder from(@Nonnull SerialPortSettings settings) {
+		checkArgumentNotNull(settings, "settings");
+		PacingBuilder builder = fromBytesPerSecond(rateOf(settings));
+		builder.isRateOfSettings = true;
+		return builder;
+	}
+
+	/** Returns the number of characters, that are transmitted per second with the given settings. */
+	private static int rateOf(SerialPortSettings settings) {
+		long bitsPerCharacter = 2 + dataBits(settings.getDataBits()) * 2 + (settings.getParity() == Parity.PARITY_NONE ? 0 : 2) + halfStopBits(settings.getStopBits());
+		long bytesPerSecond = settings.getBauds() * 2L / bitsPerCharacter;
+		return (int) Math.max(bytesPerSecond, 1);
+	}
+
+	/** Returns the number of the given data bits. */
+	private static int dataBits(DataBits dataBits) {
+		switch (dataBits) {
+			case DATABITS_5:
+				return 5;
+			case DATABITS_6:
+				return 6;
+			case DATABITS_7:
+				return 7;
+			case DATABITS_9:
+				return 9;
+			case DATABITS_8:
+			default:
+				return 8;
+		}
+	}
+
+	/** Returns the double number of the given stop bits. */
+	private static int halfStopBits(StopBits stopBits) {
+		switch (stopBits) {
+			case STOPBITS_1_5:
+				return 3;
+			case STOPBITS_2:
+				return 4;
+			case STOPBITS_1:
+			default:
+				return 2;
+		}
+	}
+
+	/**
+	 * Returns the maximum number of bytes, that are written per second.
+	 * 
+	 * @return the rate, greater than 0
+	 */
+	@Nonnegative
+	public int getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Returns the number of bytes, that may be written ahead of the rate.
+	 * 
+	 * @return the burst in bytes
+	 */
+	@Nonnegative
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Returns the minimum pause between the end of a frame and the start of the next frame.
+	 * 
+	 * @param unit
+	 *            the unit of the returned pause, must not be <code>null</code>
+	 * @return the frame gap
+	 */
+	@Nonnegative
+	public long getFrameGap(@Nonnull TimeUnit unit) {
+		checkArgumentNotNull(unit, "unit");
+		return unit.convert(frameGap, NANOSECONDS);
+	}
+
+	/**
+	 * Returns <code>true</code>, if the rate was calculated from the settings of the serial port
+	 * with {@link #from(SerialPortSettings)}.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code> if the rate follows the settings of the serial port
+	 *         <li> <code>false</code> if the rate was specified explicitly
+	 *         </ul>
+	 */
+	public boolean isRateOfSettings() {
+		return isRateOfSettings;
+	}
+
+	/**
+	 * Returns a pacing with the burst and the frame gap of this pacing and the rate of the given
+	 * settings. Returns this pacing, if its rate was specified explicitly.
+	 */
+	Pacing withRateOf(SerialPortSettings settings) {
+		if (!isRateOfSettings)
+			return this;
+		return new Pacing(rateOf(settings), burst, frameGap, true);
+	}
+
+	/**
+	 * Returns the time in nanoseconds, that is needed to write the given number of bytes with the
+	 * rate of this pacing.
+	 */
+	long transmitNanos(int bytes) {
+		return bytes * SECONDS.toNanos(1) / bytesPerSecond;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "Pacing [bytesPerSecond=" + bytesPerSecond + ", burst=" + burst + ", frameGap=" + NANOSECONDS.toMillis(frameGap) + "ms]";
+	}
+}
@@ -0,0 +1,489 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.xidobi.spi.ByteBuffers;
+
+/**
+ * Decorates a {@link SerialConnection} with priority lanes for the writes. Only one write at a time
+ * is passed to the decorated connection. The concurrent writes wait in the lane of their
+ * {@link Priority}, and when the running write is finished, the longest waiting write of the
+ * highest non-empty lane is next. So an urgent control frame waits at most for the frame, that is
+ * currently written, but not for the frames of a bulk transfer, that were queued before.
+ * <p>
+ * A write is never split, the preemption happens between the frames. Bulk transfers, e.g. firmware
+ * uploads, should therefore be written in frames of moderate size. The lanes are served strictly by
+ * priority, so a lower lane waits as long as a higher lane isn't empty.
+ * <p>
+ * The number of queued writes and the distribution of the wait times are recorded per lane.
+ * 
+ * <pre>
+ * PrioritizedSerialConnection connection = new PrioritizedSerialConnection(port.open(settings));
+ * connection.write(stopCommand, Priority.HIGH);
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see Priority
+ */
+public final class PrioritizedSerialConnection implements LineStatusConnection, InstrumentedConnection, ReconfigurableConnection, DrainableConnection, PurgeableConnection, TimedReadConnection, TimestampingConnection, GatheringConnection {
+
+	/**
+	 * The priority of a write.
+	 */
+	public static enum Priority {
+		/** for latency-critical control frames, e.g. stop commands */
+		HIGH,
+		/** for the regular traffic, used by the writes without a priority */
+		NORMAL,
+		/** for bulk transfers, e.g. firmware uploads */
+		LOW
+	}
+
+	/** the decorated connection, never <code>null</code> */
+	private final SerialConnection connection;
+
+	/** guards the lanes and the turn of the writes */
+	private final ReentrantLock lock = new ReentrantLock();
+	/** the waiting writes per priority in the order of their arrival, guarded by {@link #lock} */
+	private final Map<Priority, LinkedList<Waiter>> lanes = new EnumMap<Priority, LinkedList<Waiter>>(Priority.class);
+	/** the wait times of the writes per priority in nanoseconds */
+	private final Map<Priority, Histogram> waitTimes = new EnumMap<Priority, Histogram>(Priority.class);
+	/** <code>true</code>, while a write is passed to the decorated connection, guarded by {@link #lock} */
+	private boolean isWriting;
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this connection is closed
+	 * <li> <code>false</code> if this connection is not closed
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a new prioritized connection.
+	 * 
+	 * @param connection
+	 *            the decorated connection, must not be <code>null</code>
+	 */
+	public PrioritizedSerialConnection(@Nonnull SerialConnection connection) {
+		this.connection = checkArgumentNotNull(connection, "connection");
+
+		for (Priority priority : Priority.values()) {
+			lanes.put(priority, new LinkedList<Waiter>());
+			waitTimes.put(priority, new Histogram());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The data is written with {@link Priority#NORMAL}.
+	 */
+	public void write(@Nonnull byte[] data) throws IOException {
+		write(data, Priority.NORMAL);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The data is written with {@link Priority#NORMAL}.
+	 */
+	public void write(@Nonnull ByteBuffer[] data) throws IOException {
+		write(data, Priority.NORMAL);
+	}
+
+	/**
+	 * Writes the given <code>byte[]</code> like {@link #write(byte[])}, after the running write and
+	 * the waiting writes of the same or a higher priority are finished.
+	 * 
+	 * @param data
+	 *            the data to write, must not be <code>null</code>
+	 * @param priority
+	 *            the priority of the write, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs or the thread was
+	 *             interrupted while it waits
+	 */
+	public void write(@Nonnull byte[] data, @Nonnull Priority priority) throws IOException {
+		checkArgumentNotNull(data, "data");
+		checkArgumentNotNull(priority, "priority");
+
+		awaitTurn(priority);
+		try {
+			connection.write(data);
+		}
+		finally {
+			passTurn();
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffers like {@link #write(ByteBuffer[])}, after the
+	 * running write and the waiting writes of the same or a higher priority are finished. The
+	 * buffers are concatenated, if the decorated connection is not a {@link GatheringConnection}.
+	 * 
+	 * @param data
+	 *            the buffers to write, must not be <code>null</code> and must not contain
+	 *            <code>null</code>
+	 * @param priority
+	 *            the priority of the write, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs or the thread was
+	 *             interrupted while it waits
+	 */
+	public void write(@Nonnull ByteBuffer[] data, @Nonnull Priority priority) throws IOException {
+		checkArgumentNotNull(data, "data");
+		checkArgumentNotNull(priority, "priority");
+
+		awaitTurn(priority);
+		try {
+			ByteBuffers.write(connection, data);
+		}
+		finally {
+			passTurn();
+		}
+	}
+
+	/**
+	 * Blocks until it is the turn of the current thread to write.
+	 * 
+	 * @throws IOException
+	 *             if this connection was closed or the thread was interrupted
+	 */
+	private void awaitTurn(Priority priority) throws IOException {
+		lock.lock();
+		try {
+			if (isClosed)
+				throw new IOException("Port " + getPort().getPortName() + " was closed!");
+			if (!isWriting) {
+				isWriting = true;
+				waitTimes.get(priority).record(0);
+				return;
+			}
+
+			Waiter waiter = new Waiter(priority, lock.newCondition());
+			lanes.get(priority).add(waiter);
+			try {
+				while (!waiter.hasTurn) {
+					if (isClosed) {
+						lanes.get(priority).remove(waiter);
+						throw new IOException("Port " + getPort().getPortName() + " was closed!");
+					}
+					waiter.turn.await();
+				}
+			}
+			catch (InterruptedException e) {
+				if (waiter.hasTurn)
+					passTurn();
+				else
+					lanes.get(priority).remove(waiter);
+				throw new InterruptedIOException("The thread for the write operation is interrupted!");
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Passes the turn to the longest waiting write of the highest non-empty lane, after the current
+	 * thread has written.
+	 */
+	private void passTurn() {
+		lock.lock();
+		try {
+			Waiter next = nextWaiter();
+			if (next == null) {
+				isWriting = false;
+				return;
+			}
+			next.hasTurn = true;
+			waitTimes.get(next.priority).record(System.nanoTime() - next.enqueued);
+			next.turn.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes and returns the longest waiting write of the highest non-empty lane. Must be called
+	 * while the {@link #lock} is held.
+	 * 
+	 * @return the next write, <code>null</code> if no write is waiting
+	 */
+	@Nullable
+	private Waiter nextWaiter() {
+		for (LinkedList<Waiter> lane : lanes.values()) {
+			if (!lane.isEmpty())
+				return lane.removeFirst();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of writes, that wait in the lane of the given priority.
+	 * 
+	 * @param priority
+	 *            the priority of the lane, must not be <code>null</code>
+	 * @return the number of waiting writes
+	 */
+	@Nonnegative
+	public int getQueuedWrites(@Nonnull Priority priority) {
+		checkArgumentNotNull(priority, "priority");
+		lock.lock();
+		try {
+			return lanes.get(priority).size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the distribution of the times in nanoseconds, that the writes of the given priority
+	 * waited for their turn.
+	 * 
+	 * @param priority
+	 *            the priority of the writes, must not be <code>null</code>
+	 * @return the histogram, never <code>null</code>
+	 */
+	@Nonnull
+	public Histogram getWaitTime(@Nonnull Priority priority) {
+		checkArgumentNotNull(priority, "priority");
+		return waitTimes.get(priority);
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read() throws IOException {
+		return connection.read();
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws IOException {
+		return timedReadConnection().read(timeout, unit);
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read(@Nonnull Deadline deadline) throws IOException {
+		return timedReadConnection().read(deadline);
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] readFully(@Nonnegative int length, @Nonnull Deadline deadline) throws IOException {
+		return timedReadConnection().readFully(length, deadline);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the decorated connection is not a {@link TimestampingConnection}, the data is stamped,
+	 * when its read returns.
+	 */
+	public void read(@Nonnull ReceivedData result) throws IOException {
+		checkArgumentNotNull(result, "result");
+		result.readFrom(connection);
+	}
+
+	/**
+	 * Closes the decorated connection. The waiting writes are released and throw an
+	 * {@link IOException}. Calling this method more than once has no effect.
+	 */
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (isClosed)
+				return;
+			isClosed = true;
+			for (LinkedList<Waiter> lane : lanes.values()) {
+				for (Waiter waiter : lane)
+					waiter.turn.signal();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		connection.close();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link DrainableConnection}
+	 */
+	public void drain() throws IOException {
+		drainableConnection().drain();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	public void purgeInput() throws IOException {
+		purgeableConnection().purgeInput();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	public void purgeOutput() throws IOException {
+		purgeableConnection().purgeOutput();
+	}
+
+	/** {@inheritDoc} */
+	public boolean isClosed() {
+		return isClosed || connection.isClosed();
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public SerialPort getPort() {
+		return connection.getPort();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection can't be reconfigured
+	 */
+	public void reconfigure(@Nonnull SerialPortSettings settings) throws IOException {
+		checkArgumentNotNull(settings, "settings");
+		if (!(connection instanceof ReconfigurableConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't be reconfigured!");
+		((ReconfigurableConnection) connection).reconfigure(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return the metrics of the decorated connection, <code>null</code> if the metrics are
+	 *         disabled or the decorated connection is not an {@link InstrumentedConnection}
+	 */
+	@CheckForNull
+	public ConnectionMetrics getMetrics() {
+		if (connection instanceof InstrumentedConnection)
+			return ((InstrumentedConnection) connection).getMetrics();
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The listener is added to the decorated connection and is never notified, if the decorated
+	 * connection is not a {@link LineStatusConnection}.
+	 */
+	public void addLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		if (connection instanceof LineStatusConnection)
+			((LineStatusConnection) connection).addLineStatusListener(listener);
+	}
+
+	/** {@inheritDoc} */
+	public void removeLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		if (connection instanceof LineStatusConnection)
+			((LineStatusConnection) connection).removeLineStatusListener(listener);
+	}
+
+	/**
+	 * Returns the decorated connection, if it supports timed reads.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link TimedReadConnection}
+	 */
+	@Nonnull
+	private TimedReadConnection timedReadConnection() {
+		if (!(connection instanceof TimedReadConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't read with a timeout!");
+		return (TimedReadConnection) connection;
+	}
+
+	/**
+	 * Returns the decorated connection, if it can be drained.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link DrainableConnection}
+	 */
+	@Nonnull
+	private DrainableConnection drainableConnection() {
+		if (!(connection instanceof DrainableConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't be drained!");
+		return (DrainableConnection) connection;
+	}
+
+	/**
+	 * Returns the decorated connection, if its buffers can be purged.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	@Nonnull
+	private PurgeableConnection purgeableConnection() {
+		if (!(connection instanceof PurgeableConnection))
+			throw new UnsupportedOperationException("The buffers of port " + getPort().getPortName() + " can't be purged!");
+		return (PurgeableConnection) connection;
+	}
+
+	/**
+	 * A write, that waits for its turn.
+	 */
+	private static final class Waiter {
+
+		/** the priority of the write */
+		private final Priority priority;
+		/** is signaled, when the write has its turn or the connection was closed */
+		private final Condition turn;
+		/** the time ({@link System#nanoTime()}), when the write was queued */
+		private final long enqueued = System.nanoTime();
+		/** <code>true</code>, if the write has its turn, guarded by the lock of the connection */
+		private boolean hasTurn;
+
+		/** Creates a waiting write with the given priority. */
+		private Waiter(Priority priority, Condition turn) {
+			this.priority = priority;
+			this.turn = turn;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import java.io.IOException;
+
+/**
+ * A {@link SerialConnection}, whose buffers can be discarded, e.g. to resynchronize with a device
+ * after a protocol error. The connections of a {@link SerialPort} implement this interface, if the
+ * driver or the terminal server of the port can purge its buffers.
+ * 
+ * @author Christian Schwarz
+ */
+public interface PurgeableConnection extends SerialConnection {
+
+	/**
+	 * Discards the received data, that was not read yet, from the input buffer of the driver. A
+	 * pending read is not aborted.
+	 * 
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs
+	 */
+	void purgeInput() throws IOException;
+
+	/**
+	 * Discards the written data, that was not sent yet, from the output buffer of the driver. A
+	 * pending write is not aborted.
+	 * 
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs
+	 */
+	void purgeOutput() throws IOException;
+}
@@ -0,0 +1,682 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.xidobi.spi.ByteBuffers;
+import org.xidobi.spi.NativeCodeException;
+
+/**
+ * Decorates a {@link SerialConnection} with a read-ahead buffer. A daemon thread (the pump)
+ * continuously reads from the decorated connection into a preallocated ring buffer outside of the
+ * Java heap, so the input buffer of the driver is drained even while the application doesn't read,
+ * e.g. during a garbage collection or while a slow consumer processes the previous data.
+ * <p>
+ * The reads of this connection take the data from the ring buffer without locks. The ring buffer
+ * has a single producer (the pump) and a single consumer, so <b>only one thread at a time must
+ * read</b> from this connection. The {@link OverflowPolicy} decides what happens, when the ring
+ * buffer is full.
+ * <p>
+ * Errors of the decorated connection are thrown by the reads of this connection, after the data,
+ * that was read before the error, was returned.
+ * 
+ * <pre>
+ * SerialConnection connection = new ReadAheadSerialConnection(port.open(settings), 1024 * 1024, OverflowPolicy.BLOCK);
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see OverflowPolicy
+ */
+public final class ReadAheadSerialConnection implements LineStatusConnection, InstrumentedConnection, ReconfigurableConnection, DrainableConnection, PurgeableConnection, TimedReadConnection, TimestampingConnection, GatheringConnection {
+
+	/**
+	 * Decides what happens, when the ring buffer is full.
+	 */
+	public static enum OverflowPolicy {
+		/**
+		 * the pump stops reading until there is space in the ring buffer. The input buffer of the
+		 * driver fills up and the device is throttled by the configured flow control. Without flow
+		 * control the driver will overrun and the data is lost there.
+		 */
+		BLOCK,
+		/** the oldest data in the ring buffer is discarded in favor of the received data */
+		DROP_OLDEST,
+		/**
+		 * the pump stops and the decorated connection is closed. The reads return the buffered data
+		 * and throw an {@link IOException} afterwards.
+		 */
+		FAIL
+	}
+
+	/** the maximum number of chunks, whose timestamps are queued, a power of 2 */
+	private static final int MAX_CHUNKS = 1024;
+
+	/** the decorated connection, never <code>null</code> */
+	private final SerialConnection connection;
+	/** decides what happens, when the ring buffer is full, never <code>null</code> */
+	private final OverflowPolicy policy;
+	/** the capacity of the ring buffer in bytes, a power of 2 */
+	private final int capacity;
+	/** the view of the ring buffer, that is only used by the pump */
+	private final ByteBuffer pumpView;
+	/** the view of the ring buffer, that is only used by the reading thread */
+	private final ByteBuffer readView;
+	/** reads from the decorated connection */
+	private final Thread pump;
+
+	/** the number of bytes, that were written to the ring buffer by the pump */
+	private volatile long writeIndex;
+	/**
+	 * the number of bytes, that were taken from the ring buffer by the reading thread or dropped by
+	 * the pump
+	 */
+	private final AtomicLong readIndex = new AtomicLong();
+	/** the number of bytes, that were discarded by {@link OverflowPolicy#DROP_OLDEST} */
+	private final AtomicLong droppedBytes = new AtomicLong();
+
+	/**
+	 * the index in the ring buffer of the first byte of each queued chunk, a ring with a power of 2
+	 * entries
+	 */
+	private final long[] chunkStarts;
+	/**
+	 * the value of {@link System#nanoTime()}, when each queued chunk was received by the decorated
+	 * connection
+	 */
+	private final long[] chunkTimestamps;
+	/** the number of chunks, that were queued by the pump */
+	private volatile long chunkWriteIndex;
+	/** the number of chunks, that were removed from the queue by the reading thread */
+	private volatile long chunkReadIndex;
+	/** the timestamp of the oldest bytes, that were taken last, only used by the reading thread */
+	private long takenTimestamp;
+
+	/** the thread, that waits for data, <code>null</code> if no thread waits */
+	@Nullable
+	private volatile Thread waitingReader;
+	/** <code>true</code>, if the pump waits for space in the ring buffer */
+	private volatile boolean isPumpWaiting;
+	/** the failure of the pump, <code>null</code> if the pump is running */
+	@Nullable
+	private volatile Exception failure;
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this connection was closed
+	 * <li> <code>false</code> if this connection is open
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a new read-ahead connection and starts the pump.
+	 * 
+	 * @param connection
+	 *            the decorated connection, must not be <code>null</code>. It must not be read by
+	 *            other threads.
+	 * @param capacity
+	 *            the capacity of the ring buffer in bytes, must be a power of 2
+	 * @param policy
+	 *            decides what happens, when the ring buffer is full, must not be <code>null</code>
+	 */
+	public ReadAheadSerialConnection(	@Nonnull SerialConnection connection,
+										@Nonnegative int capacity,
+										@Nonnull OverflowPolicy policy) {
+		this.connection = checkArgumentNotNull(connection, "connection");
+		checkArgument(capacity > 0 && (capacity & (capacity - 1)) == 0, "capacity", "Expected a power of 2!");
+		this.capacity = capacity;
+		this.policy = checkArgumentNotNull(policy, "policy");
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+		pumpView = buffer.duplicate();
+		readView = buffer.duplicate();
+
+		int chunks = Math.min(capacity, MAX_CHUNKS);
+		chunkStarts = new long[chunks];
+		chunkTimestamps = new long[chunks];
+
+		pump = new Thread(new Pump(), "xidobi read ahead " + connection.getPort().getPortName());
+		pump.setDaemon(true);
+		pump.start();
+	}
+
+	/** {@inheritDoc} */
+	public void write(@Nonnull byte[] data) throws IOException {
+		connection.write(data);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The buffers are concatenated, if the decorated connection is not a
+	 * {@link GatheringConnection}.
+	 */
+	public void write(@Nonnull ByteBuffer[] data) throws IOException {
+		ByteBuffers.write(connection, data);
+	}
+
+	/**
+	 * Returns the buffered data. Blocks until data is available.
+	 * 
+	 * @return the received <code>byte[]</code>, never <code>null</code>
+	 * @throws IOException
+	 *             if this connection was closed, the decorated connection failed or the thread was
+	 *             interrupted
+	 */
+	@Nonnull
+	public byte[] read() throws IOException {
+		while (true) {
+			awaitData(1, null);
+			byte[] data = take(1, Integer.MAX_VALUE);
+			if (data != null)
+				return data;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws IOException {
+		return read(Deadline.after(timeout, unit));
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public byte[] read(@Nonnull Deadline deadline) throws IOException {
+		checkArgumentNotNull(deadline, "deadline");
+		while (true) {
+			if (!awaitData(1, deadline))
+				return new byte[0];
+			byte[] data = take(1, Integer.MAX_VALUE);
+			if (data != null)
+				return data;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The data is taken from the ring buffer only, when all bytes are available. If the deadline
+	 * expires, the buffered bytes stay in the ring buffer.
+	 */
+	@Nonnull
+	public byte[] readFully(@Nonnegative int length, @Nonnull Deadline deadline) throws IOException {
+		checkArgument(length >= 0, "length", "Expected a value greater or equal to 0!");
+		checkArgumentNotNull(deadline, "deadline");
+		checkArgument(length <= capacity, "length", "Expected a value less or equal to the capacity of the ring buffer!");
+
+		while (true) {
+			if (!awaitData(length, deadline)) {
+				int available = (int) available();
+				InterruptedIOException e = new InterruptedIOException("Read timed out on port " + getPort().getPortName() + "! Received " + available + " of " + length + " bytes.");
+				e.bytesTransferred = available;
+				throw e;
+			}
+			byte[] data = take(length, length);
+			if (data != null)
+				return data;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The timestamp is the time, when the oldest of the taken bytes were received by the decorated
+	 * connection. The timestamps of at most 1024 unread chunks are kept, the bytes of further
+	 * chunks get the timestamp of the last kept chunk, until the reading thread catches up.
+	 */
+	public void read(@Nonnull ReceivedData result) throws IOException {
+		checkArgumentNotNull(result, "result");
+		while (true) {
+			awaitData(1, null);
+			byte[] data = take(1, Integer.MAX_VALUE);
+			if (data != null) {
+				result.set(data, data.length, takenTimestamp);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Closes the decorated connection and stops the pump. The buffered data is discarded.
+	 * 
+	 * @throws IOException
+	 *             if the decorated connection couldn't be closed
+	 */
+	public void close() throws IOException {
+		isClosed = true;
+		LockSupport.unpark(pump);
+		Thread reader = waitingReader;
+		if (reader != null)
+			LockSupport.unpark(reader);
+		connection.close();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link DrainableConnection}
+	 */
+	public void drain() throws IOException {
+		drainableConnection().drain();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The data in the ring buffer is discarded as well. Must only be called by the thread, that
+	 * reads.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	public void purgeInput() throws IOException {
+		purgeableConnection().purgeInput();
+
+		// the pump may drop data concurrently, so the read index is moved by compare and set
+		while (true) {
+			long read = readIndex.get();
+			if (readIndex.compareAndSet(read, writeIndex))
+				break;
+		}
+		if (isPumpWaiting)
+			LockSupport.unpark(pump);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	public void purgeOutput() throws IOException {
+		purgeableConnection().purgeOutput();
+	}
+
+	/** {@inheritDoc} */
+	public boolean isClosed() {
+		return isClosed || connection.isClosed();
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public SerialPort getPort() {
+		return connection.getPort();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The settings are applied to the decorated connection, the data, that was read ahead, is
+	 * kept.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link ReconfigurableConnection}
+	 */
+	public void reconfigure(@Nonnull SerialPortSettings settings) throws IOException {
+		checkArgumentNotNull(settings, "settings");
+		if (!(connection instanceof ReconfigurableConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't be reconfigured!");
+		((ReconfigurableConnection) connection).reconfigure(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return the metrics of the decorated connection, <code>null</code> if the metrics are
+	 *         disabled or the decorated connection is not an {@link InstrumentedConnection}
+	 */
+	@CheckForNull
+	public ConnectionMetrics getMetrics() {
+		if (connection instanceof InstrumentedConnection)
+			return ((InstrumentedConnection) connection).getMetrics();
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The listener is added to the decorated connection and is never notified, if the decorated
+	 * connection is not a {@link LineStatusConnection}.
+	 */
+	public void addLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		if (connection instanceof LineStatusConnection)
+			((LineStatusConnection) connection).addLineStatusListener(listener);
+	}
+
+	/** {@inheritDoc} */
+	public void removeLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		if (connection instanceof LineStatusConnection)
+			((LineStatusConnection) connection).removeLineStatusListener(listener);
+	}
+
+	/**
+	 * Returns the number of bytes, that are buffered and not read yet.
+	 * 
+	 * @return the number of buffered bytes
+	 */
+	@Nonnegative
+	public int getBufferedBytes() {
+		return (int) available();
+	}
+
+	/**
+	 * Returns the number of bytes, that were discarded by {@link OverflowPolicy#DROP_OLDEST},
+	 * because the ring buffer was full.
+	 * 
+	 * @return the number of discarded bytes
+	 */
+	@Nonnegative
+	public long getDroppedBytes() {
+		return droppedBytes.get();
+	}
+
+	/** Returns the number of bytes in the ring buffer. */
+	private long available() {
+		long read = readIndex.get();
+		return writeIndex - read;
+	}
+
+	/**
+	 * Blocks until the given number of bytes is available or the deadline expires.
+	 * 
+	 * @param length
+	 *            the number of bytes to wait for
+	 * @param deadline
+	 *            the deadline, <code>null</code> to wait until the bytes are available
+	 * @return <code>true</code>, if the bytes are available, <code>false</code> if the deadline
+	 *         expired
+	 * @throws IOException
+	 *             if this connection was closed, the pump failed before the bytes were available or
+	 *             the thread was interrupted
+	 */
+	private boolean awaitData(int length, @Nullable Deadline deadline) throws IOException {
+		while (true) {
+			if (isClosed)
+				throw new IOException("Port " + getPort().getPortName() + " was closed!");
+			if (available() >= length)
+				return true;
+			if (failure != null)
+				throwFailure();
+			if (Thread.interrupted())
+				throw new InterruptedIOException("The thread for the read operation is interrupted!");
+			if (deadline != null && deadline.isExpired())
+				return false;
+
+			// the pump unparks the waiting reader after it has written data
+			waitingReader = Thread.currentThread();
+			if (available() < length && failure == null && !isClosed) {
+				if (deadline == null)
+					LockSupport.park();
+				else
+					LockSupport.parkNanos(deadline.remaining(NANOSECONDS));
+			}
+			waitingReader = null;
+		}
+	}
+
+	/** Throws the failure of the pump. */
+	private void throwFailure() throws IOException {
+		Exception e = failure;
+		if (e instanceof IOException)
+			throw (IOException) e;
+		throw (RuntimeException) e;
+	}
+
+	/**
+	 * Takes at least the given minimum and at most the given maximum number of bytes from the ring
+	 * buffer. Must only be called by the reading thread.
+	 * 
+	 * @return the data, <code>null</code> if less than the minimum number of bytes is available,
+	 *         because the pump dropped data
+	 */
+	@CheckForNull
+	private byte[] take(int minLength, int maxLength) {
+		while (true) {
+			long read = readIndex.get();
+			long available = writeIndex - read;
+			if (available < minLength)
+				return null;
+
+			// the pump may have dropped and overwritten data, so there may be more than the capacity
+			int length = (int) Math.min(Math.min(available, maxLength), capacity);
+			byte[] data = new byte[length];
+			copy(readView, read, data, 0, length, true);
+
+			// the pump may have dropped the copied data in the meantime, then the data is invalid
+			if (readIndex.compareAndSet(read, read + length)) {
+				if (isPumpWaiting)
+					LockSupport.unpark(pump);
+				takenTimestamp = timestampOf(read);
+				return data;
+			}
+		}
+	}
+
+	/**
+	 * Returns the timestamp of the chunk, that contains the byte at the given index, and removes
+	 * the older chunks from the queue. Must only be called by the reading thread.
+	 */
+	private long timestampOf(long index) {
+		int mask = chunkStarts.length - 1;
+		long first = chunkReadIndex;
+		long end = chunkWriteIndex;
+		// the first chunk is kept, until a following chunk starts at or before the index
+		while (first + 1 < end && chunkStarts[(int) ((first + 1) & mask)] <= index)
+			first++;
+		chunkReadIndex = first;
+		return chunkTimestamps[(int) (first & mask)];
+	}
+
+	/**
+	 * Copies the given range of the array from or to the ring buffer at the given index. The range
+	 * may wrap around the end of the ring buffer.
+	 * 
+	 * @param view
+	 *            the view of the ring buffer of the current thread
+	 * @param index
+	 *            the index in the ring buffer
+	 * @param data
+	 *            the array
+	 * @param offset
+	 *            the offset of the range in the array
+	 * @param length
+	 *            the length of the range
+	 * @param toArray
+	 *            <code>true</code> to copy from the ring buffer to the array, <code>false</code>
+	 *            to copy from the array to the ring buffer
+	 */
+	private void copy(ByteBuffer view, long index, byte[] data, int offset, int length, boolean toArray) {
+		int position = (int) (index & (capacity - 1));
+		int first = Math.min(length, capacity - position);
+
+		view.clear().position(position);
+		if (toArray)
+			view.get(data, offset, first);
+		else
+			view.put(data, offset, first);
+		if (first == length)
+			return;
+
+		view.clear();
+		if (toArray)
+			view.get(data, offset + first, length - first);
+		else
+			view.put(data, offset + first, length - first);
+	}
+
+	/**
+	 * Returns the decorated connection, if it can be drained.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link DrainableConnection}
+	 */
+	@Nonnull
+	private DrainableConnection drainableConnection() {
+		if (!(connection instanceof DrainableConnection))
+			throw new UnsupportedOperationException("The connection to port " + getPort().getPortName() + " can't be drained!");
+		return (DrainableConnection) connection;
+	}
+
+	/**
+	 * Returns the decorated connection, if its buffers can be purged.
+	 * 
+	 * @exception UnsupportedOperationException
+	 *                if the decorated connection is not a {@link PurgeableConnection}
+	 */
+	@Nonnull
+	private PurgeableConnection purgeableConnection() {
+		if (!(connection instanceof PurgeableConnection))
+			throw new UnsupportedOperationException("The buffers of port " + getPort().getPortName() + " can't be purged!");
+		return (PurgeableConnection) connection;
+	}
+
+	/** Reads from the decorated connection into the ring buffer. */
+	private final class Pump implements Runnable {
+
+		/** {@inheritDoc} */
+		public void run() {
+			// the holder is reused, so the pump doesn't produce garbage for the results
+			ReceivedData received = new ReceivedData();
+			try {
+				while (!isClosed) {
+					received.readFrom(connection);
+					queueChunk(received.getTimestamp());
+					put(received.getData(), received.getLength());
+				}
+			}
+			catch (IOException e) {
+				stop(e);
+			}
+			catch (RuntimeException e) {
+				stop(e);
+			}
+		}
+
+		/** Stores the failure and releases the waiting reader. */
+		private void stop(Exception e) {
+			failure = e;
+			Thread reader = waitingReader;
+			if (reader != null)
+				LockSupport.unpark(reader);
+		}
+
+		/**
+		 * Queues the timestamp of the chunk, that is written next to the ring buffer. The chunk is
+		 * queued before its bytes are written, so the reading thread finds the timestamp of every
+		 * byte it takes. If the queue is full, the chunk is not queued and its bytes belong to the
+		 * previous chunk.
+		 */
+		private void queueChunk(long timestamp) {
+			long write = chunkWriteIndex;
+			if (write - chunkReadIndex == chunkStarts.length)
+				return;
+			int slot = (int) (write & (chunkStarts.length - 1));
+			chunkStarts[slot] = writeIndex;
+			chunkTimestamps[slot] = timestamp;
+			chunkWriteIndex = write + 1;
+		}
+
+		/** Writes the first bytes of the given data to the ring buffer. */
+		private void put(byte[] data, int dataLength) throws IOException {
+			int offset = 0;
+			while (offset < dataLength && !isClosed) {
+				long write = writeIndex;
+				long free = capacity - (write - readIndex.get());
+				if (free == 0) {
+					handleOverflow(dataLength - offset);
+					continue;
+				}
+
+				int length = (int) Math.min(free, dataLength - offset);
+				copy(pumpView, write, data, offset, length, false);
+				writeIndex = write + length;
+				offset += length;
+
+				Thread reader = waitingReader;
+				if (reader != null)
+					LockSupport.unpark(reader);
+			}
+		}
+
+		/** Makes space in the full ring buffer according to the policy. */
+		private void handleOverflow(int needed) throws IOException {
+			switch (policy) {
+				case BLOCK:
+					awaitSpace();
+					return;
+				case DROP_OLDEST:
+					dropOldest(Math.min(needed, capacity));
+					return;
+				case FAIL:
+				default:
+					closeQuietly();
+					throw new IOException("The read-ahead buffer of port " + getPort().getPortName() + " overflowed!");
+			}
+		}
+
+		/** Parks the pump, until the reading thread has taken data. */
+		private void awaitSpace() {
+			isPumpWaiting = true;
+			if (writeIndex - readIndex.get() == capacity && !isClosed)
+				LockSupport.park();
+			isPumpWaiting = false;
+		}
+
+		/** Discards at most the given number of the oldest bytes. */
+		private void dropOldest(int count) {
+			while (true) {
+				long read = readIndex.get();
+				long length = Math.min(count, writeIndex - read);
+				if (readIndex.compareAndSet(read, read + length)) {
+					droppedBytes.addAndGet(length);
+					return;
+				}
+			}
+		}
+
+		/** Closes the decorated connection and ignores all exceptions. */
+		private void closeQuietly() {
+			try {
+				connection.close();
+			}
+			catch (IOException e) {
+				// ignore, the overflow is reported
+			}
+			catch (NativeCodeException e) {
+				// ignore, the overflow is reported
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.System.nanoTime;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A reusable holder for received data and the time, when it was received. The holder is passed to
+ * {@link TimestampingConnection#read(ReceivedData)}, which stores the data in the buffer of the holder.
+ * The buffer is only replaced, when it is too small, so reading into the same holder again and
+ * again doesn't produce garbage:
+ * 
+ * <pre>
+ * ReceivedData received = new ReceivedData(4096);
+ * while (true) {
+ * 	connection.read(received);
+ * 	long latency = System.nanoTime() - received.getTimestamp();
+ * 	process(received.getData(), received.getLength());
+ * }
+ * </pre>
+ * 
+ * The timestamp is a value of {@link System#nanoTime()}, so it can only be compared with other
+ * values of {@link System#nanoTime()} of the same JVM.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see TimestampingConnection#read(ReceivedData)
+ */
+@NotThreadSafe
+public final class ReceivedData {
+
+	/** the buffer, only the first {@link #length} bytes are valid, never <code>null</code> */
+	@Nonnull
+	private byte[] data;
+	/** the number of valid bytes in the buffer */
+	private int length;
+	/** the value of {@link System#nanoTime()}, when the data was received */
+	private long timestamp;
+
+	/** Creates a new empty holder, whose buffer grows with the received data. */
+	public ReceivedData() {
+		this(0);
+	}
+
+	/**
+	 * Creates a new empty holder with a buffer of the given capacity.
+	 * 
+	 * @param capacity
+	 *            the initial size of the buffer in bytes, must not be negative. The buffer grows,
+	 *            if more data is received at once.
+	 */
+	public ReceivedData(@Nonnegative int capacity) {
+		checkArgument(capacity >= 0, "capacity", "Expected a value greater or equal to 0!");
+		data = new byte[capacity];
+	}
+
+	/**
+	 * Returns the buffer of this holder. Only the first {@link #getLength()} bytes of the buffer
+	 * are valid. The buffer is reused by the next read!
+	 * 
+	 * @return the buffer, never <code>null</code>
+	 */
+	@Nonnull
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * Returns the number of received bytes.
+	 * 
+	 * @return the number of valid bytes in the buffer
+	 */
+	@Nonnegative
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the time, when the data was received, as value of {@link System#nanoTime()}.
+	 * 
+	 * @return the timestamp of the data
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns a copy of the received bytes.
+	 * 
+	 * @return the received bytes, never <code>null</code>
+	 */
+	@Nonnull
+	public byte[] toByteArray() {
+		byte[] copy = new byte[length];
+		System.arraycopy(data, 0, copy, 0, length);
+		return copy;
+	}
+
+	/**
+	 * Stores a copy of the given data and its timestamp in this holder. The buffer is only
+	 * replaced, if it is smaller than the data.
+	 * <p>
+	 * This method is called by the implementations of {@link TimestampingConnection}.
+	 * 
+	 * @param data
+	 *            the received data, must not be <code>null</code>
+	 * @param length
+	 *            the number of bytes to copy from the beginning of the data, must not be negative
+	 *            and not greater than the length of the data
+	 * @param timestamp
+	 *            the value of {@link System#nanoTime()}, when the data was received
+	 */
+	public void set(@Nonnull byte[] data, @Nonnegative int length, long timestamp) {
+		checkArgumentNotNull(data, "data");
+		checkArgument(length >= 0 && length <= data.length, "length", "Expected a value between 0 and the length of the data!");
+
+		if (this.data.length < length)
+			this.data = new byte[length];
+		System.arraycopy(data, 0, this.data, 0, length);
+		this.length = length;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Reads from the given connection into this holder. If the connection is not a
+	 * {@link TimestampingConnection}, the data is stamped, when the read returns. This method is
+	 * called by the decorators, whose decorated connection may not provide a timestamp.
+	 * 
+	 * @param connection
+	 *            the connection to read from, must not be <code>null</code>
+	 * @throws IOException
+	 *             if the connection was closed or an unexpected I/O error occurs or the thread was
+	 *             interrupted
+	 */
+	void readFrom(@Nonnull SerialConnection connection) throws IOException {
+		if (connection instanceof TimestampingConnection) {
+			((TimestampingConnection) connection).read(this);
+			return;
+		}
+		byte[] received = connection.read();
+		set(received, received.length, nanoTime());
+	}
+
+	@Override
+	public String toString() {
+		return "ReceivedData [length=" + length + ", timestamp=" + timestamp + "]";
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link SerialConnection}, whose control settings can be changed while the port is open. The
+ * connections of a {@link SerialPort} implement this interface, if the driver or the terminal
+ * server of the port accepts changed settings.
+ * 
+ * @author Christian Schwarz
+ */
+public interface ReconfigurableConnection extends SerialConnection {
+
+	/**
+	 * Changes the control settings of this connection, without closing and re-opening the serial
+	 * port. Only the settings, that differ from the current settings, are applied. Data, that is
+	 * received or transmitted while the settings are changed, may be corrupted.
+	 * 
+	 * @param settings
+	 *            the new control settings, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed or the settings couldn't be applied, e.g. because the
+	 *             driver doesn't support them
+	 */
+	void reconfigure(@Nonnull SerialPortSettings settings) throws IOException;
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Specifies the delays between the attempts of a {@link SerialConnectionManager} to re-open a
+ * lost connection. The delay starts with the initial delay and is doubled after each failed
+ * attempt, until the maximum delay is reached (exponential backoff). A random part of the delay
+ * (jitter) prevents, that many connections, which were lost at the same time, are re-opened at the
+ * same time.
+ * <p>
+ * <b>Usage:</b>
+ * <p>
+ * <code>
+ * ReconnectPolicy policy;</br>
+ * policy = ReconnectPolicy.from1sTo60s().maxDelay(10, SECONDS).create();
+ * </code>
+ * 
+ * @author Tobias Breler
+ * 
+ * @see SerialConnectionManager
+ */
+@Immutable
+public class ReconnectPolicy {
+
+	/**
+	 * A builder for reconnect policies.
+	 * 
+	 * @author Tobias Breler
+	 */
+	public static final class ReconnectPolicyBuilder {
+
+		/** the delay before the first attempt in milliseconds */
+		private long initialDelay = 1000;
+		/** the maximum delay between two attempts in milliseconds */
+		private long maxDelay = 60000;
+		/** the random part of the delay, between 0 and 1 */
+		private double jitter = 0.5;
+
+		/** Creates a builder for reconnect policies. */
+		private ReconnectPolicyBuilder() {}
+
+		/**
+		 * Sets the delay before the first attempt to re-open a lost connection.
+		 * 
+		 * @param delay
+		 *            the delay, must not be negative
+		 * @param unit
+		 *            the unit of the delay, must not be <code>null</code>
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public ReconnectPolicyBuilder initialDelay(@Nonnegative long delay, @Nonnull TimeUnit unit) {
+			checkArgument(delay >= 0, "delay", "Expected a value greater or equal to 0!");
+			checkArgumentNotNull(unit, "unit");
+			initialDelay = unit.toMillis(delay);
+			return this;
+		}
+
+		/**
+		 * Sets the maximum delay between two attempts to re-open a lost connection.
+		 * 
+		 * @param delay
+		 *            the delay, must not be negative
+		 * @param unit
+		 *            the unit of the delay, must not be <code>null</code>
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public ReconnectPolicyBuilder maxDelay(@Nonnegative long delay, @Nonnull TimeUnit unit) {
+			checkArgument(delay >= 0, "delay", "Expected a value greater or equal to 0!");
+			checkArgumentNotNull(unit, "unit");
+			maxDelay = unit.toMillis(delay);
+			return this;
+		}
+
+		/**
+		 * Sets the random part of the delay. A jitter of 0 disables the randomization, a jitter of
+		 * 0.5 randomizes the delay between 50% and 100% of the calculated delay.
+		 * 
+		 * @param jitter
+		 *            the random part of the delay, must be between 0 and 1
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public ReconnectPolicyBuilder jitter(double jitter) {
+			checkArgument(jitter >= 0 && jitter <= 1, "jitter", "Expected a value between 0 and 1!");
+			this.jitter = jitter;
+			return this;
+		}
+
+		/**
+		 * Creates and returns the reconnect policy, specified by the current builder.
+		 * 
+		 * @return the reconnect policy, never <code>null</code>
+		 * @exception IllegalStateException
+		 *                if the initial delay is greater than the maximum delay
+		 */
+		@Nonnull
+		public ReconnectPolicy create() {
+			if (initialDelay > maxDelay)
+				throw new IllegalStateException("The initial delay must not be greater than the maximum delay!");
+			return new ReconnectPolicy(initialDelay, maxDelay, jitter);
+		}
+	}
+
+	/** the delay before the first attempt in milliseconds */
+	private final long initialDelay;
+	/** the maximum delay between two attempts in milliseconds */
+	private final long maxDelay;
+	/** the random part of the delay, between 0 and 1 */
+	private final double jitter;
+
+	/**
+	 * Creates a reconnect policy with the given values.
+	 */
+	private ReconnectPolicy(@Nonnegative long initialDelay,
+							@Nonnegative long maxDelay,
+							double jitter) {
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Creates a builder for reconnect policies. The initial values are:
+	 * <ul>
+	 * <li>initial delay = 1 s</li>
+	 * <li>maximum delay = 60 s</li>
+	 * <li>jitter = 0.5</li>
+	 * </ul>
+	 * 
+	 * @return a new builder for reconnect policies, never <code>null</code>
+	 */
+	@Nonnull
+	public static ReconnectPolicyBuilder from1sTo60s() {
+		return new ReconnectPolicyBuilder();
+	}
+
+	/**
+	 * Returns the delay before the first attempt to re-open a lost connection.
+	 * 
+	 * @param unit
+	 *            the unit of the returned delay, must not be <code>null</code>
+	 * @return the initial delay
+	 */
+	@Nonnegative
+	public long getInitialDelay(@Nonnull TimeUnit unit) {
+		checkArgumentNotNull(unit, "unit");
+		return unit.convert(initialDelay, MILLISECONDS);
+	}
+
+	/**
+	 * Returns the maximum delay between two attempts to re-open a lost connection.
+	 * 
+	 * @param unit
+	 *            the unit of the returned delay, must not be <code>null</code>
+	 * @return the maximum delay
+	 */
+	@Nonnegative
+	public long getMaxDelay(@Nonnull TimeUnit unit) {
+		checkArgumentNotNull(unit, "unit");
+		return unit.convert(maxDelay, MILLISECONDS);
+	}
+
+	/**
+	 * Returns the random part of the delay.
+	 * 
+	 * @return the jitter, between 0 and 1
+	 */
+	public double getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * Returns the delay in milliseconds before the next attempt to re-open a lost connection.
+	 * 
+	 * @param failedAttempts
+	 *            the number of failed attempts since the connection was lost, must not be
+	 *            negative
+	 * @param random
+	 *            a random value between 0 (inclusive) and 1 (exclusive)
+	 * @return the delay in milliseconds
+	 */
+	@Nonnegative
+	public long getDelay(@Nonnegative int failedAttempts, double random) {
+		checkArgument(failedAttempts >= 0, "failedAttempts", "Expected a value greater or equal to 0!");
+
+		long delay = initialDelay;
+		for (int i = 0; i < failedAttempts && delay < maxDelay; i++)
+			delay = delay * 2;
+		delay = min(delay, maxDelay);
+
+		return delay - (long) (delay * jitter * random);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "ReconnectPolicy [initialDelay=" + initialDelay + "ms, maxDelay=" + maxDelay + "ms, jitter=" + jitter + "]";
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.xidobi.CaptureRecord.Direction;
+import org.xidobi.spi.BasicSerialConnection;
+import org.xidobi.spi.Reader;
+import org.xidobi.spi.Writer;
+
+/**
+ * A {@link SerialPort}, that replays a capture written by a {@link CaptureWriter}. Each opened
+ * connection reads the captured data in the captured chunks, with the captured timing divided by
+ * the given speed. With {@link #MAX_SPEED} the data is returned as fast as possible, e.g. to
+ * benchmark a protocol parser. Written data is discarded.
+ * <p>
+ * When the end of the capture is reached, the connection is closed and <code>read()</code> throws
+ * an {@link IOException}.
+ * 
+ * <pre>
+ * SerialPort port = new ReplaySerialPort(&quot;COM1&quot;, directory, 10); // 10 times faster
+ * SerialConnection connection = port.open(settings);
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see CaptureWriter
+ * @see CapturingSerialConnection
+ */
+public class ReplaySerialPort implements SerialPort {
+
+	/** the speed to replay a capture as fast as possible */
+	public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+	/** the name of this port, never <code>null</code> */
+	private final String portName;
+	/** the directory of the capture, never <code>null</code> */
+	private final File directory;
+	/** the factor, by which the replay is faster than the capture */
+	private final double speed;
+
+	/**
+	 * Creates a new port, that replays the given capture.
+	 * 
+	 * @param portName
+	 *            the name of this port, must not be <code>null</code>
+	 * @param directory
+	 *            the directory of the capture, must not be <code>null</code>
+	 * @param speed
+	 *            the factor, by which the replay is faster than the capture, must be greater than
+	 *            0. <code>1</code> replays in real time, {@link #MAX_SPEED} as fast as possible.
+	 */
+	public ReplaySerialPort(@Nonnull String portName,
+							@Nonnull File directory,
+							double speed) {
+		this.portName = checkArgumentNotNull(portName, "portName");
+		this.directory = checkArgumentNotNull(directory, "directory");
+		checkArgument(speed > 0, "speed", "Expected a value greater than 0!");
+		this.speed = speed;
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public SerialConnection open(@Nonnull SerialPortSettings settings) throws IOException {
+		checkArgumentNotNull(settings, "settings");
+		return new ReplayConnection(this, new ReplayReader(new CaptureReader(directory), speed), new ReplayWriter());
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public String getPortName() {
+		return portName;
+	}
+
+	/** {@inheritDoc} */
+	@Nullable
+	public String getDescription() {
+		return "Replay of " + directory;
+	}
+
+	@Override
+	public String toString() {
+		return "ReplaySerialPort [portName=" + portName + ", directory=" + directory + ", speed=" + speed + "]";
+	}
+
+	/** A connection to a replayed port. */
+	private static final class ReplayConnection extends BasicSerialConnection implements ReconfigurableConnection, DrainableConnection {
+
+		/** Creates a new connection to a replayed port. */
+		private ReplayConnection(	SerialPort port,
+									Reader reader,
+									Writer writer) {
+			super(port, reader, writer);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * The settings are ignored, because the captured data doesn't depend on them.
+		 */
+		public void reconfigure(@Nonnull SerialPortSettings settings) throws IOException {
+			checkArgumentNotNull(settings, "settings");
+			ensurePortIsOpen();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * Returns immediately, because the written data is not part of the replay.
+		 */
+		public void drain() throws IOException {
+			ensurePortIsOpen();
+		}
+	}
+
+	/** Reads the captured data with the captured timing. */
+	private static final class ReplayReader implements Reader {
+
+		/** reads the capture, never <code>null</code> */
+		private final CaptureReader capture;
+		/** the factor, by which the replay is faster than the capture */
+		private final double speed;
+		/** the time, when the replay was started, in nanoseconds */
+		private final long startNanos = nanoTime();
+		/** is released, when the connection is closed */
+		private final CountDownLatch closed = new CountDownLatch(1);
+		/** the record, whose timestamp was not reached by the last read, maybe <code>null</code> */
+		@Nullable
+		private CaptureRecord pendingRecord;
+
+		/** Creates a new reader for the given capture. */
+		private ReplayReader(	CaptureReader capture,
+								double speed) {
+			this.capture = capture;
+			this.speed = speed;
+		}
+
+		/** {@inheritDoc} */
+		@Nonnull
+		public byte[] read() throws IOException {
+			return readUntil(null);
+		}
+
+		/** {@inheritDoc} */
+		@Nonnull
+		public byte[] read(@Nonnull Deadline deadline) throws IOException {
+			return readUntil(deadline);
+		}
+
+		/**
+		 * Returns the data of the next read record, when its timestamp is reached.
+		 * 
+		 * @param deadline
+		 *            the deadline for the read, <code>null</code> to wait until the timestamp is
+		 *            reached
+		 * @return the data, an empty array if the deadline expired before the timestamp was reached
+		 */
+		private byte[] readUntil(@Nullable Deadline deadline) throws IOException {
+			if (pendingRecord == null)
+				pendingRecord = nextReadRecord();
+
+			if (!awaitTimestamp(pendingRecord.getTimestamp(), deadline))
+				return new byte[0];
+
+			byte[] data = pendingRecord.getData();
+			pendingRecord = null;
+			return data;
+		}
+
+		/** Returns the next record of read data. */
+		private CaptureRecord nextReadRecord() throws IOException {
+			while (true) {
+				CaptureRecord record = capture.read();
+				if (record == null)
+					throw new IOException("The end of the capture was reached!");
+				if (record.getDirection() == Direction.READ)
+					return record;
+			}
+		}
+
+		/**
+		 * Blocks until the given timestamp of the capture is reached in the replay or the deadline
+		 * expires.
+		 * 
+		 * @return <code>true</code>, if the timestamp was reached
+		 */
+		private boolean awaitTimestamp(long timestamp, @Nullable Deadline deadline) throws IOException {
+			if (speed == MAX_SPEED)
+				return true;
+
+			long remaining = startNanos + (long) (timestamp / speed) - nanoTime();
+			if (remaining <= 0)
+				return true;
+			boolean isDeadlineFirst = deadline != null && deadline.remaining(NANOSECONDS) < remaining;
+			if (isDeadlineFirst)
+				remaining = deadline.remaining(NANOSECONDS);
+			try {
+				if (closed.await(remaining, NANOSECONDS))
+					throw new IOException("The replay was closed!");
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("The thread for the read operation is interrupted!");
+			}
+			return !isDeadlineFirst;
+		}
+
+		/** {@inheritDoc} */
+		public void close() {
+			closed.countDown();
+		}
+
+		/** {@inheritDoc} */
+		public void dispose() {
+			capture.close();
+		}
+	}
+
+	/** Discards the written data. */
+	private static final class ReplayWriter implements Writer {
+
+		/** {@inheritDoc} */
+		public void write(@Nonnull byte[] data) {
+			// the written data is not part of the replay
+		}
+
+		/** {@inheritDoc} */
+		public void close() {}
+
+		/** {@inheritDoc} */
+		public void dispose() {}
+	}
+}
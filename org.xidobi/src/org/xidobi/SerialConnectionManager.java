@@ -0,0 +1,237 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Keeps serial connections open. A {@link ManagedConnection} returned by
+ * {@link #open(SerialPort, SerialPortSettings)} is a stable handle for a serial port, that
+ * survives the loss of the underlying connection: A lost connection is re-opened in the background
+ * according to the {@link ReconnectPolicy}, in the meantime reads block and writes are buffered.
+ * <p>
+ * Opening and closing a serial port can take a while, so the number of ports that are opened at
+ * the same time is limited. All managed connections share the threads of this manager.
+ * <p>
+ * <b>IMPORTANT:</b> The manager must be closed, when it is not used anymore! Closing the manager
+ * closes all managed connections.
+ * 
+ * <pre>
+ * SerialConnectionManager manager = new SerialConnectionManager();
+ * SerialConnection connection = manager.open(port, settings);
+ * connection.write(data); // buffered, while the port is not connected
+ * ...
+ * manager.close();
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see ManagedConnection
+ * @see ReconnectPolicy
+ */
+public class SerialConnectionManager implements Closeable {
+
+	/** default number of serial ports, that can be opened or closed at the same time */
+	private static final int DEFAULT_MAX_CONCURRENT_OPENS = 2;
+	/** default size of the buffer for outbound data in bytes, while a port is not connected */
+	private static final int DEFAULT_WRITE_BUFFER_SIZE = 64 * 1024;
+
+	/** the delays between the attempts to re-open a lost connection, never <code>null</code> */
+	private final ReconnectPolicy policy;
+	/** maximum number of bytes, that are buffered per connection while it is not connected */
+	private final int writeBufferSize;
+	/** opens and closes the serial ports, never <code>null</code> */
+	private final ScheduledExecutorService executor;
+	/** randomizes the reconnect delays */
+	private final Random random = new Random();
+
+	/** the open managed connections */
+	private final Set<ManagedConnection> connections = new CopyOnWriteArraySet<ManagedConnection>();
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this manager is closed
+	 * <li> <code>false</code> if this manager is not closed
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a new manager with the default reconnect policy (see
+	 * {@link ReconnectPolicy#from1sTo60s()}), that opens at most
+	 * {@value #DEFAULT_MAX_CONCURRENT_OPENS} ports at the same time and buffers at most
+	 * {@value #DEFAULT_WRITE_BUFFER_SIZE} bytes per connection.
+	 */
+	public SerialConnectionManager() {
+		this(ReconnectPolicy.from1sTo60s().create(), DEFAULT_MAX_CONCURRENT_OPENS, DEFAULT_WRITE_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new manager.
+	 * 
+	 * @param policy
+	 *            the delays between the attempts to re-open a lost connection, must not be
+	 *            <code>null</code>
+	 * @param maxConcurrentOpens
+	 *            the maximum number of serial ports, that are opened or closed at the same time,
+	 *            must be greater than 0
+	 * @param writeBufferSize
+	 *            the maximum number of bytes, that are buffered per connection while it is not
+	 *            connected, must not be negative
+	 */
+	public SerialConnectionManager(	@Nonnull ReconnectPolicy policy,
+									@Nonnegative int maxConcurrentOpens,
+									@Nonnegative int writeBufferSize) {
+		this.policy = checkArgumentNotNull(policy, "policy");
+		checkArgument(maxConcurrentOpens > 0, "maxConcurrentOpens", "Expected a value greater than 0!");
+		checkArgument(writeBufferSize >= 0, "writeBufferSize", "Expected a value greater or equal to 0!");
+		this.writeBufferSize = writeBufferSize;
+
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(maxConcurrentOpens, new ManagerThreadFactory());
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns a managed connection for the given serial port. The port is opened in the background,
+	 * so this method doesn't block. Until the port is opened, reads block and writes are buffered.
+	 * <p>
+	 * <b>IMPORTANT:</b> The returned {@link ManagedConnection} must be closed, when it is not used
+	 * anymore! Otherwise the manager keeps the port open!
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param settings
+	 *            the control settings for the port, must not be <code>null</code>
+	 * @return a managed connection, never <code>null</code>
+	 * @exception IllegalStateException
+	 *                if this manager was already closed
+	 */
+	@Nonnull
+	public ManagedConnection open(@Nonnull SerialPort port, @Nonnull SerialPortSettings settings) {
+		checkArgumentNotNull(port, "port");
+		checkArgumentNotNull(settings, "settings");
+		if (isClosed)
+			throw new IllegalStateException("The connection manager was already closed!");
+
+		ManagedConnection connection = new ManagedConnection(this, port, settings, writeBufferSize);
+		connections.add(connection);
+		connection.scheduleReconnect(0);
+		return connection;
+	}
+
+	/**
+	 * Returns the reconnect policy of this manager.
+	 * 
+	 * @return the reconnect policy, never <code>null</code>
+	 */
+	@Nonnull
+	public ReconnectPolicy getReconnectPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Closes all managed connections and stops the threads of this manager. Calling this method
+	 * more than once has no effect.
+	 * 
+	 * @throws IOException
+	 *             if a connection couldn't be closed, after all connections were closed
+	 */
+	public void close() throws IOException {
+		if (isClosed)
+			return;
+		isClosed = true;
+
+		List<IOException> exceptions = new ArrayList<IOException>();
+		for (ManagedConnection connection : connections) {
+			try {
+				connection.close();
+			}
+			catch (IOException e) {
+				exceptions.add(e);
+			}
+		}
+		executor.shutdown();
+
+		if (!exceptions.isEmpty())
+			throw exceptions.get(0);
+	}
+
+	/**
+	 * Returns the delay in milliseconds before the next attempt to open a serial port.
+	 * 
+	 * @param failedAttempts
+	 *            the number of failed attempts since the connection was lost
+	 */
+	long nextDelay(int failedAttempts) {
+		return policy.getDelay(failedAttempts, random.nextDouble());
+	}
+
+	/**
+	 * Schedules the given task, if this manager is not closed.
+	 * 
+	 * @return <code>true</code>, if the task was scheduled
+	 */
+	boolean schedule(Runnable task, long delay) {
+		if (isClosed)
+			return false;
+		try {
+			executor.schedule(task, delay, MILLISECONDS);
+			return true;
+		}
+		catch (RejectedExecutionException e) {
+			// the manager was closed concurrently
+			return false;
+		}
+	}
+
+	/** Is called by the given connection, when it was closed. */
+	void closed(ManagedConnection connection) {
+		connections.remove(connection);
+	}
+
+	/** Creates the daemon threads of this manager. */
+	private static final class ManagerThreadFactory implements ThreadFactory {
+
+		/** counts the created threads */
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		/** {@inheritDoc} */
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "xidobi connection manager " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Opens and closes many serial ports in parallel. Opening and closing a serial port can take a
+ * while, so doing it one port after another is slow for a large number of ports. On the other
+ * hand some drivers misbehave, if too many ports are opened at the same time. So the number of
+ * ports, that are opened or closed at the same time, is limited for all operations of a batch.
+ * <p>
+ * A failure to open or close a port doesn't affect the other ports, the result of every port is
+ * returned as a {@link BatchResult}.
+ * <p>
+ * <b>IMPORTANT:</b> The batch must be closed, when it is not used anymore! Closing the batch
+ * doesn't close the opened connections.
+ * 
+ * <pre>
+ * SerialPortBatch batch = new SerialPortBatch(8);
+ * Map&lt;SerialPort, BatchResult&gt; results = batch.openAll(settingsByPort);
+ * ...
+ * batch.closeAll(connections);
+ * batch.close();
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see BatchResult
+ */
+public class SerialPortBatch implements Closeable {
+
+	/** opens and closes the serial ports, never <code>null</code> */
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a new batch.
+	 * 
+	 * @param maxConcurrency
+	 *            the maximum number of serial ports, that are opened or closed at the same time,
+	 *            must be greater than 0
+	 */
+	public SerialPortBatch(@Nonnegative int maxConcurrency) {
+		checkArgument(maxConcurrency > 0, "maxConcurrency", "Expected a value greater than 0!");
+		executor = Executors.newFixedThreadPool(maxConcurrency, new BatchThreadFactory());
+	}
+
+	/**
+	 * Opens the given serial ports in parallel and blocks until all ports are opened or failed to
+	 * open.
+	 * <p>
+	 * If the current thread is interrupted, this method returns immediately. The ports, that are
+	 * opened afterwards, are closed again.
+	 * 
+	 * @param settings
+	 *            the serial ports mapped to their control settings, must not be <code>null</code>
+	 * @return the results mapped by the serial ports in the order of the given map, never
+	 *         <code>null</code>
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted
+	 * @exception IllegalStateException
+	 *                if this batch was already closed
+	 */
+	@Nonnull
+	public Map<SerialPort, BatchResult> openAll(@Nonnull Map<SerialPort, SerialPortSettings> settings) throws InterruptedException {
+		checkArgumentNotNull(settings, "settings");
+		for (Entry<SerialPort, SerialPortSettings> entry : settings.entrySet()) {
+			checkArgumentNotNull(entry.getKey(), "port");
+			checkArgumentNotNull(entry.getValue(), "settings");
+		}
+
+		final Results results = new Results(settings.size());
+		for (Entry<SerialPort, SerialPortSettings> entry : settings.entrySet()) {
+			final SerialPort port = entry.getKey();
+			final SerialPortSettings portSettings = entry.getValue();
+			results.put(port, null);
+			submit(results, new Runnable() {
+				public void run() {
+					SerialConnection connection;
+					try {
+						connection = port.open(portSettings);
+					}
+					catch (Exception e) {
+						results.add(new BatchResult(port, null, e));
+						return;
+					}
+					if (!results.add(new BatchResult(port, connection, null)))
+						closeQuietly(connection);
+				}
+			});
+		}
+		return results.await();
+	}
+
+	/**
+	 * Closes the given connections in parallel and blocks until all connections are closed or
+	 * failed to close. If the current thread is interrupted, this method returns immediately,
+	 * while the remaining connections are closed in the background.
+	 * 
+	 * @param connections
+	 *            the connections to close, must not be <code>null</code>
+	 * @return the results mapped by the serial ports of the connections in the order of the given
+	 *         collection, never <code>null</code>
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted
+	 * @exception IllegalStateException
+	 *                if this batch was already closed
+	 */
+	@Nonnull
+	public Map<SerialPort, BatchResult> closeAll(@Nonnull Collection<? extends SerialConnection> connections) throws InterruptedException {
+		checkArgumentNotNull(connections, "connections");
+		for (SerialConnection connection : connections)
+			checkArgumentNotNull(connection, "connection");
+
+		final Results results = new Results(connections.size());
+		for (final SerialConnection connection : connections) {
+			final SerialPort port = connection.getPort();
+			results.put(port, null);
+			submit(results, new Runnable() {
+				public void run() {
+					try {
+						connection.close();
+					}
+					catch (Exception e) {
+						results.add(new BatchResult(port, connection, e));
+						return;
+					}
+					results.add(new BatchResult(port, connection, null));
+				}
+			});
+		}
+		return results.await();
+	}
+
+	/**
+	 * Stops the threads of this batch. Operations, that are in progress, are completed. Calling
+	 * this method more than once has no effect.
+	 */
+	public void close() {
+		executor.shutdown();
+	}
+
+	/** Submits the given task, throws an {@link IllegalStateException} if the batch is closed. */
+	private void submit(Results results, Runnable task) {
+		try {
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			results.abandon();
+			throw new IllegalStateException("The batch was already closed!");
+		}
+	}
+
+	/** Closes the given connection and ignores any failure. */
+	private static void closeQuietly(SerialConnection connection) {
+		try {
+			connection.close();
+		}
+		catch (Exception ignore) {
+			// the result of the connection was abandoned, so there is nobody to report to
+		}
+	}
+
+	/** Collects the results of an operation. */
+	private static final class Results {
+
+		/** the results mapped by the serial ports, guarded by <code>this</code> */
+		private final Map<SerialPort, BatchResult> results = new LinkedHashMap<SerialPort, BatchResult>();
+		/** is released, when all results were added */
+		private final CountDownLatch remaining;
+		/** <code>true</code>, if nobody waits for the results, guarded by <code>this</code> */
+		private boolean isAbandoned;
+
+		/** Creates a new collector for the given number of results. */
+		private Results(int count) {
+			remaining = new CountDownLatch(count);
+		}
+
+		/** Reserves the position of the given port in the results. */
+		private synchronized void put(SerialPort port, BatchResult result) {
+			results.put(port, result);
+		}
+
+		/**
+		 * Adds the given result. Returns <code>false</code>, if nobody waits for the results
+		 * anymore.
+		 */
+		private synchronized boolean add(BatchResult result) {
+			if (isAbandoned)
+				return false;
+			results.put(result.getPort(), result);
+			remaining.countDown();
+			return true;
+		}
+
+		/** Marks the results as abandoned, the results that are added afterwards are rejected. */
+		private synchronized void abandon() {
+			isAbandoned = true;
+		}
+
+		/** Blocks until all results were added and returns them. */
+		private Map<SerialPort, BatchResult> await() throws InterruptedException {
+			try {
+				remaining.await();
+			}
+			catch (InterruptedException e) {
+				abandon();
+				throw e;
+			}
+			synchronized (this) {
+				return results;
+			}
+		}
+	}
+
+	/** Creates the daemon threads of a batch. */
+	private static final class BatchThreadFactory implements ThreadFactory {
+
+		/** counts the created threads */
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		/** {@inheritDoc} */
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "xidobi batch " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Listener interface to receive notifications, when serial ports are added to or removed from the
+ * system.
+ * 
+ * @author Tobias Breler
+ * 
+ * @see SerialPortWatcher
+ */
+public interface SerialPortListener {
+
+	/**
+	 * Is called, when a serial port was added to the system, e.g. an USB-serial adapter was
+	 * plugged in.
+	 * 
+	 * @param port
+	 *            the added serial port, never <code>null</code>
+	 */
+	void portAdded(@Nonnull SerialPort port);
+
+	/**
+	 * Is called, when a serial port was removed from the system, e.g. an USB-serial adapter was
+	 * unplugged.
+	 * 
+	 * @param port
+	 *            the removed serial port, never <code>null</code>
+	 */
+	void portRemoved(@Nonnull SerialPort port);
+}
@@ -22,6 +22,7 @@ import static org.xidobi.StopBits.STOPBITS_1;
 import static org.xidobi.spi.Preconditions.checkArgument;
 import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
@@ -45,6 +46,12 @@ import javax.annotation.concurrent.Immutable;
  * <li>flow control = none (default)</li>
  * <li>RTS = true (default)</li>
  * <li>DTR = true (default)</li>
+ * <li>XON limit = 2048, XOFF limit = 512 (default)</li>
+ * <li>XON character = DC1, XOFF character = DC3 (default)</li>
+ * <li>error character = none, EOF character = SUB, event character = NUL (default)</li>
+ * <li>line mode = false (default)</li>
+ * <li>RS-485 mode = false (default)</li>
+ * <li>echo suppression = false (default)</li>
  * </ul>
  * 
  * @author Tobias Breler
@@ -57,6 +64,23 @@ import javax.annotation.concurrent.Immutable;
 @Immutable
 public class SerialPortSettings {
 
+	/** default XON limit in bytes */
+	public static final int DEFAULT_XON_LIMIT = 2048;
+	/** default XOFF limit in bytes */
+	public static final int DEFAULT_XOFF_LIMIT = 512;
+	/** default XON character: DC1 */
+	private static final char DEFAULT_XON_CHAR = 0x11;
+	/** default XOFF character: DC3 */
+	private static final char DEFAULT_XOFF_CHAR = 0x13;
+	/** default EOF character: SUB */
+	private static final char DEFAULT_EOF_CHAR = 0x1A;
+	/** default event character: NUL */
+	private static final char DEFAULT_EVENT_CHAR = 0x00;
+	/** the maximum value of a XON or XOFF limit (WORD) */
+	private static final int MAX_LIMIT = 0xFFFF;
+	/** the maximum value of a character (8 bit) */
+	private static final char MAX_CHAR = 0xFF;
+
 	/**
 	 * A builder for serial port settings.
 	 * 
@@ -78,12 +102,54 @@ public class SerialPortSettings {
 		private boolean rts = true;
 		/** the DRT (Data Terminal Ready) */
 		private boolean dtr = true;
+		/** the number of bytes in the input buffer, before the XON character is sent */
+		private int xonLimit = DEFAULT_XON_LIMIT;
+		/** the number of free bytes in the input buffer, before the XOFF character is sent */
+		private int xoffLimit = DEFAULT_XOFF_LIMIT;
+		/** the XON character, default is DC1 */
+		private char xonChar = DEFAULT_XON_CHAR;
+		/** the XOFF character, default is DC3 */
+		private char xoffChar = DEFAULT_XOFF_CHAR;
+		/** replaces bytes with parity errors, <code>null</code> if no bytes are replaced */
+		private Character errorChar;
+		/** the character to signal the end of data */
+		private char eofChar = DEFAULT_EOF_CHAR;
+		/** the character to signal an event, when it is received */
+		private char eventChar = DEFAULT_EVENT_CHAR;
+		/** <code>true</code>, if only complete lines are read */
+		private boolean lineMode;
+		/** <code>true</code>, if RTS enables the driver of a RS-485 transceiver while sending */
+		private boolean rs485;
+		/** <code>true</code>, if the local echo of the sent bytes is removed from the received data */
+		private boolean echoSuppression;
 
 		/** Creates a builder for serial port settings. */
 		private SerialPortSettingsBuilder() {}
 
+		/** Creates a builder with the values of the given serial port settings. */
+		private SerialPortSettingsBuilder(SerialPortSettings settings) {
+			bauds = settings.bauds;
+			dataBits = settings.dataBits;
+			stopBits = settings.stopBits;
+			parity = settings.parity;
+			flowControl = settings.flowControl;
+			rts = settings.rts;
+			dtr = settings.dtr;
+			xonLimit = settings.xonLimit;
+			xoffLimit = settings.xoffLimit;
+			xonChar = settings.xonChar;
+			xoffChar = settings.xoffChar;
+			errorChar = settings.errorChar;
+			eofChar = settings.eofChar;
+			eventChar = settings.eventChar;
+			lineMode = settings.lineMode;
+			rs485 = settings.rs485;
+			echoSuppression = settings.echoSuppression;
+		}
+
 		/**
-		 * Sets the baud rate.
+		 * Sets the baud rate. Non-standard baud rates are passed to the driver unchanged, whether
+		 * they are supported depends on the device.
 		 * 
 		 * @param bauds
 		 *            the baud rate, must be greater than 0
@@ -188,6 +254,195 @@ public class SerialPortSettings {
 			return this;
 		}
 
+		/**
+		 * Sets the minimum number of bytes in use in the input buffer, before the flow control is
+		 * activated to allow transmission by the sender. The default is
+		 * {@value SerialPortSettings#DEFAULT_XON_LIMIT}.
+		 * 
+		 * @param xonLimit
+		 *            the number of bytes, must be between 0 and 65535
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder xonLimit(@Nonnegative int xonLimit) {
+			checkArgument(xonLimit >= 0 && xonLimit <= MAX_LIMIT, "xonLimit", "Expected a value between 0 and " + MAX_LIMIT + "!");
+			this.xonLimit = xonLimit;
+			return this;
+		}
+
+		/**
+		 * Sets the minimum number of free bytes allowed in the input buffer, before the flow control
+		 * is activated to inhibit the sender. The default is
+		 * {@value SerialPortSettings#DEFAULT_XOFF_LIMIT}.
+		 * 
+		 * @param xoffLimit
+		 *            the number of bytes, must be between 0 and 65535
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder xoffLimit(@Nonnegative int xoffLimit) {
+			checkArgument(xoffLimit >= 0 && xoffLimit <= MAX_LIMIT, "xoffLimit", "Expected a value between 0 and " + MAX_LIMIT + "!");
+			this.xoffLimit = xoffLimit;
+			return this;
+		}
+
+		/**
+		 * Sets the XON character, that is sent and received for the XON/XOFF flow control. The
+		 * default is DC1 (0x11).
+		 * 
+		 * @param xonChar
+		 *            the character, must be between 0 and 255
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder xonChar(char xonChar) {
+			this.xonChar = checkChar(xonChar, "xonChar");
+			return this;
+		}
+
+		/**
+		 * Sets the XOFF character, that is sent and received for the XON/XOFF flow control. The
+		 * default is DC3 (0x13).
+		 * 
+		 * @param xoffChar
+		 *            the character, must be between 0 and 255
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder xoffChar(char xoffChar) {
+			this.xoffChar = checkChar(xoffChar, "xoffChar");
+			return this;
+		}
+
+		/**
+		 * Sets the character, that replaces received bytes with a parity error. By default no
+		 * bytes are replaced.
+		 * 
+		 * @param errorChar
+		 *            the character, must be between 0 and 255
+		 * @return {@code this}
+		 * @see #noErrorChar()
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder errorChar(char errorChar) {
+			this.errorChar = checkChar(errorChar, "errorChar");
+			return this;
+		}
+
+		/**
+		 * Disables the replacement of received bytes with a parity error, e.g. in a builder created
+		 * from settings with an error character. This is the default.
+		 * 
+		 * @return {@code this}
+		 * @see #errorChar(char)
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder noErrorChar() {
+			this.errorChar = null;
+			return this;
+		}
+
+		/**
+		 * Sets the character to signal the end of data. The default is SUB (0x1A).
+		 * 
+		 * @param eofChar
+		 *            the character, must be between 0 and 255
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder eofChar(char eofChar) {
+			this.eofChar = checkChar(eofChar, "eofChar");
+			return this;
+		}
+
+		/**
+		 * Sets the character, that signals an event when it is received, e.g. the terminator of a
+		 * frame. The default is NUL (0x00).
+		 * 
+		 * @param eventChar
+		 *            the character, must be between 0 and 255
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder eventChar(char eventChar) {
+			this.eventChar = checkChar(eventChar, "eventChar");
+			return this;
+		}
+
+		/**
+		 * Enables or disables the line mode. In line mode a read returns only complete lines, that
+		 * are terminated by the event character (see {@link #eventChar(char)}). The reading thread
+		 * is only woken up, when the event character was received, which reduces the wakeups for
+		 * line based protocols like NMEA or AT commands. By default the line mode is disabled and
+		 * a read returns all available data.
+		 * <p>
+		 * <i><b>Hint:</b> Platforms that don't support the line mode ignore it.</i>
+		 * 
+		 * @param lineMode
+		 *            the line mode:
+		 *            <ul>
+		 *            <li> <code>true</code> reads complete lines
+		 *            <li> <code>false</code> reads all available data
+		 *            </ul>
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder lineMode(boolean lineMode) {
+			this.lineMode = lineMode;
+			return this;
+		}
+
+		/**
+		 * Enables or disables the RS-485 half-duplex mode. In RS-485 mode the driver of the
+		 * transceiver is enabled by RTS: RTS is turned on by the serial driver, when data is sent,
+		 * and turned off, when the output buffer is empty. So the bus is released without a delay
+		 * caused by the Java threads. The RS-485 mode can't be combined with a RTS/CTS flow control
+		 * on the input. By default the RS-485 mode is disabled.
+		 * 
+		 * @param rs485
+		 *            the RS-485 mode:
+		 *            <ul>
+		 *            <li> <code>true</code> toggles RTS while sending
+		 *            <li> <code>false</code> sets RTS as configured by {@link #rts(boolean)}
+		 *            </ul>
+		 * @return {@code this}
+		 * @see #echoSuppression(boolean)
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder rs485(boolean rs485) {
+			this.rs485 = rs485;
+			return this;
+		}
+
+		/**
+		 * Enables or disables the echo suppression. On a 2-wire RS-485 bus the receiver of the
+		 * transceiver receives the own transmission, if it is not disabled while sending. If the
+		 * echo suppression is enabled, the sent bytes are removed from the received data, when
+		 * they are received again. By default the echo suppression is disabled.
+		 * <p>
+		 * <i><b>Hint:</b> Don't enable the echo suppression, if the transceiver doesn't echo the
+		 * sent bytes! Otherwise received data, that starts like the sent data, is removed.</i>
+		 * 
+		 * @param echoSuppression
+		 *            the echo suppression:
+		 *            <ul>
+		 *            <li> <code>true</code> removes the echo of the sent bytes
+		 *            <li> <code>false</code> returns all received data
+		 *            </ul>
+		 * @return {@code this}
+		 */
+		@Nonnull
+		public SerialPortSettingsBuilder echoSuppression(boolean echoSuppression) {
+			this.echoSuppression = echoSuppression;
+			return this;
+		}
+
+		/** Checks that the given character fits into a byte. */
+		private char checkChar(char c, String argumentName) {
+			checkArgument(c <= MAX_CHAR, argumentName, "Expected a character between 0 and " + (int) MAX_CHAR + "!");
+			return c;
+		}
+
 		/**
 		 * Creates and returns the serial port settings, specified by the current builder.
 		 * 
@@ -195,7 +450,7 @@ public class SerialPortSettings {
 		 */
 		@Nonnull
 		public SerialPortSettings create() {
-			return new SerialPortSettings(bauds, dataBits, stopBits, parity, flowControl, rts, dtr);
+			return new SerialPortSettings(this);
 		}
 
 	}
@@ -214,24 +469,48 @@ public class SerialPortSettings {
 	private final boolean rts;
 	/** the DRT (Data Terminal Ready) */
 	private final boolean dtr;
+	/** the number of bytes in the input buffer, before the XON character is sent */
+	private final int xonLimit;
+	/** the number of free bytes in the input buffer, before the XOFF character is sent */
+	private final int xoffLimit;
+	/** the XON character */
+	private final char xonChar;
+	/** the XOFF character */
+	private final char xoffChar;
+	/** replaces bytes with parity errors, <code>null</code> if no bytes are replaced */
+	private final Character errorChar;
+	/** the character to signal the end of data */
+	private final char eofChar;
+	/** the character to signal an event, when it is received */
+	private final char eventChar;
+	/** <code>true</code>, if only complete lines are read */
+	private final boolean lineMode;
+	/** <code>true</code>, if RTS enables the driver of a RS-485 transceiver while sending */
+	private final boolean rs485;
+	/** <code>true</code>, if the local echo of the sent bytes is removed from the received data */
+	private final boolean echoSuppression;
 
 	/**
-	 * Creates a serial port setting with the given values.
+	 * Creates a serial port setting with the values of the given builder.
 	 */
-	private SerialPortSettings(	@Nonnegative int bauds,
-								@Nonnull DataBits dataBits,
-								@Nonnull StopBits stopBits,
-								@Nonnull Parity parity,
-								@Nonnull FlowControl flowControl,
-								boolean rts,
-								boolean dtr) {
-		this.bauds = bauds;
-		this.dataBits = dataBits;
-		this.stopBits = stopBits;
-		this.parity = parity;
-		this.flowControl = flowControl;
-		this.rts = rts;
-		this.dtr = dtr;
+	private SerialPortSettings(@Nonnull SerialPortSettingsBuilder builder) {
+		bauds = builder.bauds;
+		dataBits = builder.dataBits;
+		stopBits = builder.stopBits;
+		parity = builder.parity;
+		flowControl = builder.flowControl;
+		rts = builder.rts;
+		dtr = builder.dtr;
+		xonLimit = builder.xonLimit;
+		xoffLimit = builder.xoffLimit;
+		xonChar = builder.xonChar;
+		xoffChar = builder.xoffChar;
+		errorChar = builder.errorChar;
+		eofChar = builder.eofChar;
+		eventChar = builder.eventChar;
+		lineMode = builder.lineMode;
+		rs485 = builder.rs485;
+		echoSuppression = builder.echoSuppression;
 	}
 
 	/**
@@ -254,6 +533,19 @@ public class SerialPortSettings {
 		return new SerialPortSettingsBuilder();
 	}
 
+	/**
+	 * Creates a builder for serial port settings, that has the values of the given settings.
+	 * 
+	 * @param settings
+	 *            the initial values of the builder, must not be <code>null</code>
+	 * @return a new builder for the serial port settings, never <code>null</code>
+	 */
+	@Nonnull
+	public static SerialPortSettingsBuilder from(@Nonnull SerialPortSettings settings) {
+		checkArgumentNotNull(settings, "settings");
+		return new SerialPortSettingsBuilder(settings);
+	}
+
 	/**
 	 * Returns the bauds.
 	 * 
@@ -321,4 +613,164 @@ public class SerialPortSettings {
 	public boolean isDTR() {
 		return dtr;
 	}
+
+	/**
+	 * Returns the minimum number of bytes in use in the input buffer, before the flow control is
+	 * activated to allow transmission by the sender.
+	 * 
+	 * @return the XON limit in bytes
+	 */
+	@Nonnegative
+	public int getXonLimit() {
+		return xonLimit;
+	}
+
+	/**
+	 * Returns the minimum number of free bytes allowed in the input buffer, before the flow control
+	 * is activated to inhibit the sender.
+	 * 
+	 * @return the XOFF limit in bytes
+	 */
+	@Nonnegative
+	public int getXoffLimit() {
+		return xoffLimit;
+	}
+
+	/**
+	 * Returns the XON character.
+	 * 
+	 * @return the XON character
+	 */
+	public char getXonChar() {
+		return xonChar;
+	}
+
+	/**
+	 * Returns the XOFF character.
+	 * 
+	 * @return the XOFF character
+	 */
+	public char getXoffChar() {
+		return xoffChar;
+	}
+
+	/**
+	 * Returns the character, that replaces received bytes with a parity error.
+	 * 
+	 * @return the error character, <code>null</code> if no bytes are replaced
+	 */
+	@CheckForNull
+	public Character getErrorChar() {
+		return errorChar;
+	}
+
+	/**
+	 * Returns the character to signal the end of data.
+	 * 
+	 * @return the EOF character
+	 */
+	public char getEofChar() {
+		return eofChar;
+	}
+
+	/**
+	 * Returns the character, that signals an event when it is received.
+	 * 
+	 * @return the event character
+	 */
+	public char getEventChar() {
+		return eventChar;
+	}
+
+	/**
+	 * Returns <code>true</code>, if only complete lines are read, that are terminated by the event
+	 * character.
+	 * 
+	 * @return the line mode
+	 */
+	public boolean isLineMode() {
+		return lineMode;
+	}
+
+	/**
+	 * Returns <code>true</code>, if the RS-485 mode is enabled, where RTS is turned on while data
+	 * is sent.
+	 * 
+	 * @return the RS-485 mode
+	 */
+	public boolean isRS485() {
+		return rs485;
+	}
+
+	/**
+	 * Returns <code>true</code>, if the local echo of the sent bytes is removed from the received
+	 * data.
+	 * 
+	 * @return the echo suppression
+	 */
+	public boolean isEchoSuppression() {
+		return echoSuppression;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = bauds;
+		result = 31 * result + dataBits.hashCode();
+		result = 31 * result + stopBits.hashCode();
+		result = 31 * result + parity.hashCode();
+		result = 31 * result + flowControl.hashCode();
+		result = 31 * result + (rts ? 1 : 0);
+		result = 31 * result + (dtr ? 1 : 0);
+		result = 31 * result + xonLimit;
+		result = 31 * result + xoffLimit;
+		result = 31 * result + xonChar;
+		result = 31 * result + xoffChar;
+		result = 31 * result + (errorChar != null ? errorChar.hashCode() : 0);
+		result = 31 * result + eofChar;
+		result = 31 * result + eventChar;
+		result = 31 * result + (lineMode ? 1 : 0);
+		result = 31 * result + (rs485 ? 1 : 0);
+		result = 31 * result + (echoSuppression ? 1 : 0);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SerialPortSettings other = (SerialPortSettings) obj;
+		//@formatter:off
+		return bauds == other.bauds
+				&& dataBits == other.dataBits
+				&& stopBits == other.stopBits
+				&& parity == other.parity
+				&& flowControl == other.flowControl
+				&& rts == other.rts
+				&& dtr == other.dtr
+				&& xonLimit == other.xonLimit
+				&& xoffLimit == other.xoffLimit
+				&& xonChar == other.xonChar
+				&& xoffChar == other.xoffChar
+				&& (errorChar == null ? other.errorChar == null : errorChar.equals(other.errorChar))
+				&& eofChar == other.eofChar
+				&& eventChar == other.eventChar
+				&& lineMode == other.lineMode
+				&& rs485 == other.rs485
+				&& echoSuppression == other.echoSuppression;
+		//@formatter:on
+	}
+
+	@Override
+	public String toString() {
+		return "SerialPortSettings [bauds=" + bauds + ", dataBits=" + dataBits + ", stopBits=" + stopBits + ", parity=" + parity + ", flowControl=" + flowControl + ", rts=" + rts + ", dtr=" + dtr + ", xonLimit=" + xonLimit + ", xoffLimit=" + xoffLimit + ", xonChar=" + toHex(xonChar) + ", xoffChar=" + toHex(xoffChar) + ", errorChar=" + (errorChar == null ? "none" : toHex(errorChar)) + ", eofChar=" + toHex(eofChar) + ", eventChar=" + toHex(eventChar) + ", lineMode=" + lineMode + ", rs485=" + rs485 + ", echoSuppression=" + echoSuppression + "]";
+	}
+
+	/** Returns the hexadecimal code of the given character, e.g. <code>0x0A</code>. */
+	private static String toHex(char c) {
+		return String.format("0x%02X", (int) c);
+	}
 }
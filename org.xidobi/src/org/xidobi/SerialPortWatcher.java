@@ -0,0 +1,305 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.Nonnull;
+
+import org.xidobi.spi.PollingPortChangeNotifier;
+import org.xidobi.spi.PortChangeNotifier;
+import org.xidobi.spi.PortChangeNotifierProvider;
+
+/**
+ * Watches the serial ports that are installed on the system and notifies the registered
+ * {@link SerialPortListener}s, when a serial port was added or removed.
+ * <p>
+ * The watcher waits for changes using the {@link PortChangeNotifier} of the platform integration,
+ * e.g. on Windows the registry key of the serial ports is watched. If the {@link SerialPortFinder}
+ * doesn't provide a notifier, the serial ports are polled every {@value #DEFAULT_POLL_INTERVAL}
+ * ms.
+ * <p>
+ * The listeners are notified by the thread of the watcher, that is started by {@link #start()}. A
+ * listener should return quickly, otherwise subsequent changes are delayed. Exceptions thrown by a
+ * listener are passed to the {@link Thread.UncaughtExceptionHandler} of the watcher thread.
+ * 
+ * <pre>
+ * SerialPortWatcher watcher = new SerialPortWatcher(SerialPortProvider.getSerialPortFinder());
+ * watcher.addListener(listener);
+ * watcher.start();
+ * ...
+ * watcher.close();
+ * </pre>
+ * 
+ * @author Tobias Breler
+ * 
+ * @see SerialPortListener
+ */
+public class SerialPortWatcher implements Closeable {
+
+	/** the poll interval in milliseconds, if the finder doesn't provide a notifier */
+	private static final int DEFAULT_POLL_INTERVAL = 1000;
+	/** time in milliseconds, the watcher waits for a change before it checks if it was closed */
+	private static final int WAIT_FOR_CHANGE_TIMEOUT = 200;
+
+	/** finds the serial ports, never <code>null</code> */
+	private final SerialPortFinder finder;
+	/** notifies about possible changes of the serial ports, never <code>null</code> */
+	private final PortChangeNotifier notifier;
+
+	/** the registered listeners */
+	private final List<SerialPortListener> listeners = new CopyOnWriteArrayList<SerialPortListener>();
+
+	/** the last known serial ports mapped by their port names, never <code>null</code> */
+	private Map<String, SerialPort> knownPorts = Collections.emptyMap();
+	/** the thread that waits for changes, <code>null</code> if not started */
+	private Thread watcherThread;
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this watcher is closed
+	 * <li> <code>false</code> if this watcher is not closed
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a new watcher for the serial ports found by the given finder. The notifier of the
+	 * finder is used, if it implements {@link PortChangeNotifierProvider}, otherwise the serial
+	 * ports are polled.
+	 * 
+	 * @param finder
+	 *            finds the serial ports, must not be <code>null</code>
+	 */
+	public SerialPortWatcher(@Nonnull SerialPortFinder finder) {
+		this(finder, newPortChangeNotifier(finder));
+	}
+
+	/**
+	 * Creates a new watcher for the serial ports found by the given finder, that waits for changes
+	 * using the given notifier. The notifier is closed, when this watcher is closed.
+	 * 
+	 * @param finder
+	 *            finds the serial ports, must not be <code>null</code>
+	 * @param notifier
+	 *            notifies about possible changes of the serial ports, must not be
+	 *            <code>null</code>
+	 */
+	public SerialPortWatcher(	@Nonnull SerialPortFinder finder,
+								@Nonnull PortChangeNotifier notifier) {
+		this.finder = checkArgumentNotNull(finder, "finder");
+		this.notifier = checkArgumentNotNull(notifier, "notifier");
+	}
+
+	/** Returns the notifier of the finder or a polling notifier. */
+	private static PortChangeNotifier newPortChangeNotifier(SerialPortFinder finder) {
+		checkArgumentNotNull(finder, "finder");
+		if (finder instanceof PortChangeNotifierProvider)
+			return ((PortChangeNotifierProvider) finder).newPortChangeNotifier();
+		return new PollingPortChangeNotifier(DEFAULT_POLL_INTERVAL, MILLISECONDS);
+	}
+
+	/**
+	 * Registers the given listener. The listener is notified about all changes that are detected
+	 * after the registration.
+	 * 
+	 * @param listener
+	 *            the listener, must not be <code>null</code>
+	 */
+	public void addListener(@Nonnull SerialPortListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes the given listener. Has no effect, if the listener is not registered.
+	 * 
+	 * @param listener
+	 *            the listener, must not be <code>null</code>
+	 */
+	public void removeListener(@Nonnull SerialPortListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Determines the currently installed serial ports and starts the thread, that waits for
+	 * changes. The serial ports, that are installed when this method is called, are not reported
+	 * to the listeners. They can be retrieved with {@link #getPorts()}.
+	 * 
+	 * @exception IllegalStateException
+	 *                if this watcher was already started or closed
+	 */
+	public synchronized void start() {
+		if (isClosed)
+			throw new IllegalStateException("The watcher was already closed!");
+		if (watcherThread != null)
+			throw new IllegalStateException("The watcher was already started!");
+
+		knownPorts = indexByPortName(finder.getAll());
+
+		watcherThread = new Thread(new Runnable() {
+			public void run() {
+				watch();
+			}
+		}, "xidobi serial port watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+
+	/**
+	 * Returns the serial ports, that were installed when the last change was detected.
+	 * 
+	 * @return the last known serial ports, never <code>null</code>
+	 */
+	@Nonnull
+	public synchronized Set<SerialPort> getPorts() {
+		return new HashSet<SerialPort>(knownPorts.values());
+	}
+
+	/**
+	 * Stops the thread of this watcher and closes the notifier. Blocks until the thread is
+	 * terminated. Calling this method more than once has no effect.
+	 */
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			if (isClosed)
+				return;
+			isClosed = true;
+			thread = watcherThread;
+		}
+
+		if (thread == null) {
+			notifier.close();
+			return;
+		}
+
+		thread.interrupt();
+		if (thread == currentThread())
+			return;
+
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			currentThread().interrupt();
+	}
+
+	/**
+	 * Waits for changes until this watcher is closed and closes the notifier at the end.
+	 */
+	private void watch() {
+		try {
+			while (!isClosed) {
+				try {
+					if (notifier.awaitChange(WAIT_FOR_CHANGE_TIMEOUT, MILLISECONDS))
+						checkForChanges();
+				}
+				catch (InterruptedException e) {
+					// the watcher was closed
+					return;
+				}
+				catch (RuntimeException e) {
+					reportException(e);
+				}
+			}
+		}
+		finally {
+			notifier.close();
+		}
+	}
+
+	/**
+	 * Compares the installed serial ports with the last known serial ports and notifies the
+	 * listeners about removed and added serial ports.
+	 */
+	private void checkForChanges() {
+		Map<String, SerialPort> currentPorts = indexByPortName(finder.getAll());
+
+		Map<String, SerialPort> previousPorts;
+		synchronized (this) {
+			previousPorts = knownPorts;
+			knownPorts = currentPorts;
+		}
+
+		for (SerialPort port : previousPorts.values())
+			if (!currentPorts.containsKey(port.getPortName()))
+				firePortRemoved(port);
+
+		for (SerialPort port : currentPorts.values())
+			if (!previousPorts.containsKey(port.getPortName()))
+				firePortAdded(port);
+	}
+
+	/** Notifies all listeners that the given serial port was added. */
+	private void firePortAdded(SerialPort port) {
+		for (SerialPortListener listener : listeners) {
+			try {
+				listener.portAdded(port);
+			}
+			catch (RuntimeException e) {
+				reportException(e);
+			}
+		}
+	}
+
+	/** Notifies all listeners that the given serial port was removed. */
+	private void firePortRemoved(SerialPort port) {
+		for (SerialPortListener listener : listeners) {
+			try {
+				listener.portRemoved(port);
+			}
+			catch (RuntimeException e) {
+				reportException(e);
+			}
+		}
+	}
+
+	/**
+	 * Passes the given exception to the {@link Thread.UncaughtExceptionHandler} of the current
+	 * thread, without terminating the thread.
+	 */
+	private void reportException(RuntimeException e) {
+		Thread thread = currentThread();
+		thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+	}
+
+	/** Returns the given serial ports mapped by their port names. */
+	private Map<String, SerialPort> indexByPortName(Set<SerialPort> ports) {
+		Map<String, SerialPort> index = new HashMap<String, SerialPort>();
+		for (SerialPort port : ports)
+			index.put(port.getPortName(), port);
+		return index;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link SerialConnection}, whose reads can be bounded by a timeout or a {@link Deadline}. The
+ * connections of a {@link SerialPort} implement this interface, if a pending read can wait with a
+ * timeout, without closing the connection.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see Deadline
+ */
+public interface TimedReadConnection extends SerialConnection {
+
+	/**
+	 * Reads from this serial port like {@link SerialConnection#read() read()}, but blocks at most until the given timeout
+	 * elapses. The connection stays open, if the timeout elapses.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait for data, must not be negative. A timeout of 0 returns
+	 *            only the data, that is already available.
+	 * @param unit
+	 *            the unit of the timeout, must not be <code>null</code>
+	 * @return the received <code>byte[]</code>, an empty array if no data was received within the
+	 *         timeout, never <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs or the thread was
+	 *             interrupted
+	 */
+	@Nonnull
+	byte[] read(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws IOException;
+
+	/**
+	 * Reads from this serial port like {@link SerialConnection#read() read()}, but blocks at most until the given deadline
+	 * expires. The connection stays open, if the deadline expires.
+	 * 
+	 * @param deadline
+	 *            the deadline for the read, must not be <code>null</code>
+	 * @return the received <code>byte[]</code>, an empty array if no data was received before the
+	 *         deadline expired, never <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs or the thread was
+	 *             interrupted
+	 */
+	@Nonnull
+	byte[] read(@Nonnull Deadline deadline) throws IOException;
+
+	/**
+	 * Reads exactly the given number of bytes from this serial port. Blocks until all bytes are
+	 * received or the deadline expires. Bytes, that are received beyond the given length, are
+	 * returned by the next read.
+	 * <p>
+	 * If the deadline expires, an {@link InterruptedIOException} is thrown, whose
+	 * {@link InterruptedIOException#bytesTransferred bytesTransferred} contains the number of
+	 * received bytes. The received bytes are not lost, they are returned by the next read. The
+	 * connection stays open.
+	 * 
+	 * @param length
+	 *            the number of bytes to read, must not be negative
+	 * @param deadline
+	 *            the deadline for the read, must not be <code>null</code>
+	 * @return the received <code>byte[]</code> of the given length, never <code>null</code>
+	 * @throws InterruptedIOException
+	 *             if the deadline expired before all bytes were received or the thread was
+	 *             interrupted
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs
+	 */
+	@Nonnull
+	byte[] readFully(@Nonnegative int length, @Nonnull Deadline deadline) throws IOException;
+}
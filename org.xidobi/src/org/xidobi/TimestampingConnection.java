@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link SerialConnection}, that provides the time, when the read data was received. The
+ * connections of a {@link SerialPort} implement this interface, if the time of the reception is
+ * known more precisely than the time, when the read returns.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see ReceivedData
+ */
+public interface TimestampingConnection extends SerialConnection {
+
+	/**
+	 * Reads from this serial port like {@link SerialConnection#read() read()}, but stores the
+	 * received bytes together with the time, when they were received, in the given holder. The
+	 * holder can be reused for the next reads, so no garbage is produced for the result.
+	 * 
+	 * @param result
+	 *            receives the data and its timestamp, must not be <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs or the thread was
+	 *             interrupted
+	 */
+	void read(@Nonnull ReceivedData result) throws IOException;
+}
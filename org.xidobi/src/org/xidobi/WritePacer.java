@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * The timer of {@link PacedSerialConnection}s. A single daemon thread releases the writers of all
+ * paced connections, when their next write is due. The writers don't sleep on their own, so many
+ * paced ports share one thread and the timing doesn't depend on the number of ports.
+ * <p>
+ * <b>IMPORTANT:</b> The pacer must be closed, when it is not used anymore! Writers, that wait for
+ * the pacer at this time, are released immediately.
+ * 
+ * <pre>
+ * WritePacer pacer = new WritePacer();
+ * SerialConnection connection = new PacedSerialConnection(port.open(settings), Pacing.from(settings).create(), pacer);
+ * ...
+ * pacer.close();
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see PacedSerialConnection
+ */
+public class WritePacer implements Closeable {
+
+	/** releases the waiting writers, never <code>null</code> */
+	private final ScheduledThreadPoolExecutor executor;
+
+	/**
+	 * <ul>
+	 * <li> <code>true</code> if this pacer is closed
+	 * <li> <code>false</code> if this pacer is not closed
+	 * </ul>
+	 */
+	private volatile boolean isClosed;
+
+	/** Creates a new pacer, that starts its thread with the first delayed write. */
+	public WritePacer() {
+		executor = new ScheduledThreadPoolExecutor(1, new PacerThreadFactory());
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Stops the thread of this pacer and releases all waiting writers. Calling this method more
+	 * than once has no effect.
+	 */
+	public void close() {
+		if (isClosed)
+			return;
+		isClosed = true;
+
+		for (Runnable task : executor.shutdownNow())
+			task.run();
+	}
+
+	/**
+	 * Returns <code>true</code>, if this pacer is closed.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code> if this pacer is closed
+	 *         <li> <code>false</code> if this pacer is not closed
+	 *         </ul>
+	 */
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	/**
+	 * Releases the given latch after the given delay.
+	 * 
+	 * @param latch
+	 *            the latch, that a writer waits for
+	 * @param delay
+	 *            the delay in nanoseconds
+	 * @exception IllegalStateException
+	 *                if this pacer was closed
+	 */
+	void release(@Nonnull final CountDownLatch latch, @Nonnegative long delay) {
+		if (isClosed)
+			throw new IllegalStateException("The write pacer was closed!");
+		try {
+			executor.schedule(new Runnable() {
+				public void run() {
+					latch.countDown();
+				}
+			}, delay, NANOSECONDS);
+		}
+		catch (RejectedExecutionException e) {
+			// the pacer was closed concurrently
+			throw new IllegalStateException("The write pacer was closed!");
+		}
+	}
+
+	/** Creates the daemon thread of this pacer. */
+	private static final class PacerThreadFactory implements ThreadFactory {
+
+		/** {@inheritDoc} */
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "xidobi write pacer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
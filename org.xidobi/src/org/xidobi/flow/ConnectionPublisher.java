@@ -0,0 +1,233 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.flow;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import org.xidobi.FlowControl;
+import org.xidobi.SerialConnection;
+
+/**
+ * Publishes the data, that is received by a {@link SerialConnection}, to a single
+ * {@link Subscriber}. Every chunk returned by {@link SerialConnection#read()} is published as a
+ * {@link ByteBuffer}.
+ * <p>
+ * The connection is only read, while the subscriber has requested more items. While there is no
+ * demand, the received data stays in the input buffer of the driver. With an inbound flow control
+ * like {@link FlowControl#FLOWCONTROL_RTSCTS_IN}, the driver throttles the device, when the input
+ * buffer is full. So a slow subscriber doesn't cause the received data to be buffered without
+ * bound.
+ * <p>
+ * The connection is read by a daemon thread, that is started on subscription. All methods of the
+ * subscriber, except {@link Subscriber#onSubscribe(Subscription)}, are called by this thread. When
+ * the subscription is cancelled, the connection is closed. When the connection is closed by
+ * someone else, the subscriber is notified with {@link Subscriber#onComplete()}, when it fails,
+ * with {@link Subscriber#onError(Throwable)}.
+ * 
+ * <pre>
+ * new ConnectionPublisher(port.open(settings)).subscribe(subscriber);
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see ConnectionSubscriber
+ */
+public class ConnectionPublisher implements Publisher<ByteBuffer> {
+
+	/** the published connection, never <code>null</code> */
+	private final SerialConnection connection;
+
+	/** <code>true</code>, if the publisher has a subscriber */
+	private final AtomicBoolean isSubscribed = new AtomicBoolean();
+
+	/**
+	 * Creates a new publisher for the given connection.
+	 * 
+	 * @param connection
+	 *            the published connection, must not be <code>null</code>
+	 */
+	public ConnectionPublisher(@Nonnull SerialConnection connection) {
+		this.connection = checkArgumentNotNull(connection, "connection");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This publisher supports only a single subscriber, additional subscribers are notified with
+	 * an {@link IllegalStateException}.
+	 */
+	public void subscribe(@Nonnull Subscriber<? super ByteBuffer> subscriber) {
+		checkArgumentNotNull(subscriber, "subscriber");
+
+		if (!isSubscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new RejectedSubscription());
+			subscriber.onError(new IllegalStateException("The connection to port " + connection.getPort().getPortName() + " has already a subscriber!"));
+			return;
+		}
+
+		ReadSubscription subscription = new ReadSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		subscription.start();
+	}
+
+	/** The subscription of a rejected subscriber. */
+	private static final class RejectedSubscription implements Subscription {
+
+		/** {@inheritDoc} */
+		public void request(long n) {}
+
+		/** {@inheritDoc} */
+		public void cancel() {}
+	}
+
+	/** Reads the connection according to the demand of the subscriber. */
+	private final class ReadSubscription implements Subscription, Runnable {
+
+		/** the subscriber, never <code>null</code> */
+		private final Subscriber<? super ByteBuffer> subscriber;
+
+		/** the number of requested items, guarded by <code>this</code> */
+		private long demand;
+		/** <code>true</code>, if the subscription was cancelled, guarded by <code>this</code> */
+		private boolean isCancelled;
+		/** the reason, why the subscription failed, guarded by <code>this</code> */
+		private Throwable failure;
+
+		/** Creates a new subscription for the given subscriber. */
+		private ReadSubscription(Subscriber<? super ByteBuffer> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		/** Starts the thread, that reads the connection. */
+		private void start() {
+			Thread thread = new Thread(this, "xidobi publisher " + connection.getPort().getPortName());
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/** {@inheritDoc} */
+		public void request(long n) {
+			synchronized (this) {
+				if (isCancelled)
+					return;
+				if (n > 0) {
+					demand += n;
+					if (demand < 0)
+						demand = Long.MAX_VALUE;
+					notifyAll();
+					return;
+				}
+				failure = new IllegalArgumentException("Argument >n< is invalid! Expected a value greater than 0!");
+			}
+			cancel();
+		}
+
+		/** {@inheritDoc} */
+		public void cancel() {
+			synchronized (this) {
+				if (isCancelled)
+					return;
+				isCancelled = true;
+				notifyAll();
+			}
+			try {
+				connection.close();
+			}
+			catch (IOException e) {
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+
+		/** Reads the connection and publishes the data until it is closed. */
+		public void run() {
+			try {
+				while (awaitDemand()) {
+					byte[] data = connection.read();
+					publish(data);
+				}
+			}
+			catch (IOException e) {
+				terminate(e);
+				return;
+			}
+			catch (InterruptedException e) {
+				terminate(e);
+				return;
+			}
+			terminate(null);
+		}
+
+		/**
+		 * Blocks until the subscriber requested an item. Returns <code>false</code>, if the
+		 * subscription was cancelled.
+		 */
+		private synchronized boolean awaitDemand() throws InterruptedException {
+			while (demand == 0 && !isCancelled)
+				wait();
+			return !isCancelled;
+		}
+
+		/**
+		 * Publishes the given data. If the subscriber throws an exception, the subscription is
+		 * cancelled and the exception is rethrown.
+		 */
+		private void publish(byte[] data) {
+			synchronized (this) {
+				if (demand != Long.MAX_VALUE)
+					demand--;
+			}
+			try {
+				subscriber.onNext(ByteBuffer.wrap(data));
+			}
+			catch (RuntimeException e) {
+				cancel();
+				throw e;
+			}
+		}
+
+		/**
+		 * Notifies the subscriber about the end of the subscription, unless it was cancelled by
+		 * the subscriber itself.
+		 * 
+		 * @param cause
+		 *            the exception, that stopped the reading, <code>null</code> if the subscription
+		 *            was cancelled
+		 */
+		private void terminate(Throwable cause) {
+			Throwable error;
+			synchronized (this) {
+				if (isCancelled && failure == null)
+					return;
+				error = failure;
+				isCancelled = true;
+			}
+
+			if (error != null)
+				subscriber.onError(error);
+			else if (connection.isClosed())
+				subscriber.onComplete();
+			else
+				subscriber.onError(cause);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.flow;
+
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.xidobi.SerialConnection;
+
+/**
+ * Writes the {@link ByteBuffer}s of a {@link Publisher} to a {@link SerialConnection}. The
+ * subscriber requests one item at a time and requests the next one, after the previous one was
+ * written. So the publisher can't produce data faster than the serial port can transmit it.
+ * <p>
+ * If a write fails, the subscription is cancelled. The connection is not closed by this
+ * subscriber.
+ * 
+ * <pre>
+ * ConnectionSubscriber subscriber = new ConnectionSubscriber(connection);
+ * publisher.subscribe(subscriber);
+ * subscriber.awaitTermination(10, SECONDS);
+ * </pre>
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see ConnectionPublisher
+ */
+public class ConnectionSubscriber implements Subscriber<ByteBuffer> {
+
+	/** the connection, the data is written to, never <code>null</code> */
+	private final SerialConnection connection;
+
+	/** is released, when the publisher completed or failed or a write failed */
+	private final CountDownLatch terminated = new CountDownLatch(1);
+
+	/** the subscription, <code>null</code> until the subscriber was subscribed */
+	private volatile Subscription subscription;
+
+	/** the failure of the publisher or the write, <code>null</code> if there is none */
+	private volatile Throwable failure;
+
+	/**
+	 * Creates a new subscriber, that writes to the given connection.
+	 * 
+	 * @param connection
+	 *            the connection, the data is written to, must not be <code>null</code>
+	 */
+	public ConnectionSubscriber(@Nonnull SerialConnection connection) {
+		this.connection = checkArgumentNotNull(connection, "connection");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This subscriber can only be subscribed once, additional subscriptions are cancelled.
+	 */
+	public void onSubscribe(@Nonnull Subscription subscription) {
+		checkArgumentNotNull(subscription, "subscription");
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		subscription.request(1);
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffer to the connection and requests the next
+	 * buffer.
+	 * 
+	 * @param buffer
+	 *            the data to write, must not be <code>null</code>
+	 */
+	public void onNext(@Nonnull ByteBuffer buffer) {
+		checkArgumentNotNull(buffer, "buffer");
+		if (terminated.getCount() == 0)
+			return;
+
+		byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		try {
+			connection.write(data);
+		}
+		catch (IOException e) {
+			failure = e;
+			terminated.countDown();
+			subscription.cancel();
+			return;
+		}
+		subscription.request(1);
+	}
+
+	/** {@inheritDoc} */
+	public void onError(@Nonnull Throwable throwable) {
+		checkArgumentNotNull(throwable, "throwable");
+		failure = throwable;
+		terminated.countDown();
+	}
+
+	/** {@inheritDoc} */
+	public void onComplete() {
+		terminated.countDown();
+	}
+
+	/**
+	 * Returns <code>true</code>, if the publisher completed or failed or a write failed.
+	 * 
+	 * @return <ul>
+	 *         <li> <code>true</code> if this subscriber is terminated
+	 *         <li> <code>false</code> if this subscriber is not terminated
+	 *         </ul>
+	 */
+	public boolean isTerminated() {
+		return terminated.getCount() == 0;
+	}
+
+	/**
+	 * Blocks until the publisher completed or failed or a write failed, or the timeout elapses.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of the timeout, must not be <code>null</code>
+	 * @return <code>true</code>, if this subscriber is terminated, <code>false</code> if the
+	 *         timeout elapsed
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted
+	 */
+	public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+		checkArgumentNotNull(unit, "unit");
+		return terminated.await(timeout, unit);
+	}
+
+	/**
+	 * Returns the failure of the publisher or the {@link IOException} of a failed write.
+	 * 
+	 * @return the failure, <code>null</code> if there is none
+	 */
+	@CheckForNull
+	public Throwable getFailure() {
+		return failure;
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.flow;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A provider of a potentially unbounded number of items, that publishes them according to the
+ * demand received from its {@link Subscriber}s. This interface follows the <a
+ * href="http://www.reactive-streams.org">Reactive Streams</a> specification.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @param <T>
+ *            the type of the published items
+ * 
+ * @see Subscriber
+ * @see Subscription
+ */
+public interface Publisher<T> {
+
+	/**
+	 * Adds the given subscriber. The publisher calls {@link Subscriber#onSubscribe(Subscription)}
+	 * and no items are published, before the subscriber signals demand with
+	 * {@link Subscription#request(long)}. If the subscriber can't be added, it is notified with
+	 * {@link Subscriber#onError(Throwable)}.
+	 * 
+	 * @param subscriber
+	 *            the subscriber, must not be <code>null</code>
+	 */
+	void subscribe(@Nonnull Subscriber<? super T> subscriber);
+}
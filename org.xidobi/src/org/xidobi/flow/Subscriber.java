@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.flow;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A receiver of items from a {@link Publisher}. The methods of a subscriber are called one after
+ * another, never concurrently. This interface follows the <a
+ * href="http://www.reactive-streams.org">Reactive Streams</a> specification.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @param <T>
+ *            the type of the received items
+ * 
+ * @see Publisher
+ * @see Subscription
+ */
+public interface Subscriber<T> {
+
+	/**
+	 * Is called once, before any other method of this subscriber. No items are received, before
+	 * demand is signaled with {@link Subscription#request(long)}.
+	 * 
+	 * @param subscription
+	 *            the subscription, never <code>null</code>
+	 */
+	void onSubscribe(@Nonnull Subscription subscription);
+
+	/**
+	 * Is called for every published item, but never more often than requested.
+	 * 
+	 * @param item
+	 *            the item, never <code>null</code>
+	 */
+	void onNext(@Nonnull T item);
+
+	/**
+	 * Is called, if the publisher failed. No other method is called afterwards.
+	 * 
+	 * @param throwable
+	 *            the cause of the failure, never <code>null</code>
+	 */
+	void onError(@Nonnull Throwable throwable);
+
+	/**
+	 * Is called, when all items were published. No other method is called afterwards.
+	 */
+	void onComplete();
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.flow;
+
+/**
+ * Links a {@link Subscriber} to a {@link Publisher}. This interface follows the <a
+ * href="http://www.reactive-streams.org">Reactive Streams</a> specification.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see Publisher
+ * @see Subscriber
+ */
+public interface Subscription {
+
+	/**
+	 * Adds the given number of items to the demand of the subscriber. The demand is unbounded,
+	 * once it reaches {@link Long#MAX_VALUE}.
+	 * 
+	 * @param n
+	 *            the number of additionally requested items, must be greater than 0, otherwise the
+	 *            subscriber is notified with {@link Subscriber#onError(Throwable)}
+	 */
+	void request(long n);
+
+	/**
+	 * Stops the publishing of items to the subscriber. Calling this method more than once has no
+	 * effect.
+	 */
+	void cancel();
+}
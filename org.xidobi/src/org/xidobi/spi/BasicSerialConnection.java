@@ -15,17 +15,39 @@
  */
 package org.xidobi.spi;
 
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.currentThread;
+import static org.xidobi.spi.Preconditions.checkArgument;
 import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.xidobi.ConnectionMetrics;
+import org.xidobi.Deadline;
+import org.xidobi.GatheringConnection;
+import org.xidobi.InstrumentedConnection;
+import org.xidobi.LineStatusConnection;
+import org.xidobi.LineStatusEvent;
+import org.xidobi.LineStatusListener;
+import org.xidobi.PurgeableConnection;
+import org.xidobi.ReceivedData;
 import org.xidobi.SerialConnection;
 import org.xidobi.SerialPort;
+import org.xidobi.SerialPortSettings;
+import org.xidobi.TimedReadConnection;
+import org.xidobi.TimestampingConnection;
 
 /**
  * A basic implementation of the {@link SerialConnection} to provide synchonisation and proper
@@ -36,7 +58,7 @@ import org.xidobi.SerialPort;
  * @author Christian Schwarz
  * @author Tobias Breler
  */
-public class BasicSerialConnection implements SerialConnection {
+public class BasicSerialConnection implements LineStatusConnection, InstrumentedConnection, TimedReadConnection, TimestampingConnection, GatheringConnection {
 
 	/** The handle of this port, contains e.g. the name. */
 	@Nonnull
@@ -50,10 +72,35 @@ public class BasicSerialConnection implements SerialConnection {
 	 */
 	private volatile boolean isClosed;
 
-	/** Ensures that {@link #close()} can only called by one thread at a time. */
+	/**
+	 * Ensures that {@link #close()} can only called by one thread at a time and not while a
+	 * subclass holds the lock of {@link #lockOpenPort()}.
+	 */
 	@Nonnull
 	private final Lock closeLock = new ReentrantLock();
 
+	/**
+	 * Ensures that the unread data is returned in the right order, when more than one thread
+	 * reads.
+	 */
+	@Nonnull
+	private final Lock readLock = new ReentrantLock();
+
+	/**
+	 * the data, that was received by {@link #readFully(int, Deadline)} but not returned yet,
+	 * <code>null</code> if there is none; guarded by readLock
+	 */
+	@Nullable
+	private byte[] unreadData;
+
+	/**
+	 * the value of {@link System#nanoTime()}, when the data, that was returned by the last read,
+	 * was received; guarded by readLock
+	 */
+	private long receiveTimestamp;
+	/** the value of {@link System#nanoTime()}, when the unread data was received */
+	private long unreadTimestamp;
+
 	/** read operation, never <code>null</code> */
 	@Nonnull
 	private final Reader reader;
@@ -61,6 +108,20 @@ public class BasicSerialConnection implements SerialConnection {
 	@Nonnull
 	private final Writer writer;
 
+	/** the listeners, that are notified about line status changes */
+	private final List<LineStatusListener> lineStatusListeners = new CopyOnWriteArrayList<LineStatusListener>();
+
+	/**
+	 * removes the local echo of the written bytes from the received data, <code>null</code> if the
+	 * echo suppression is disabled
+	 */
+	@Nullable
+	private volatile EchoFilter echoFilter;
+
+	/** the I/O metrics of this connection, <code>null</code> if the metrics are disabled */
+	@Nullable
+	private final ConnectionMetrics metrics;
+
 	/**
 	 * Creates a new serial connection instance for the given serial port.
 	 * 
@@ -77,10 +138,57 @@ public class BasicSerialConnection implements SerialConnection {
 	protected BasicSerialConnection(@Nonnull SerialPort port,
 									@Nonnull Reader reader,
 									@Nonnull Writer writer) {
+		this(port, reader, writer, newMetrics(port));
+	}
+
+	/**
+	 * Creates a new serial connection instance for the given serial port, that records its I/O
+	 * operations in the given metrics. The metrics are registered at the platform MBean server
+	 * until the connection is closed.
+	 * 
+	 * @param port
+	 *            the serial port, must not be <code>null</code>
+	 * @param reader
+	 *            read operation, must not be <code>null</code>
+	 * @param writer
+	 *            write operation, must not be <code>null</code>
+	 * @param metrics
+	 *            the I/O metrics of this connection, <code>null</code> if no metrics should be
+	 *            recorded
+	 * 
+	 * @exception IllegalArgumentException
+	 *                if {@code portHandle==null}
+	 */
+	protected BasicSerialConnection(@Nonnull SerialPort port,
+									@Nonnull Reader reader,
+									@Nonnull Writer writer,
+									@Nullable ConnectionMetrics metrics) {
 
 		this.port = checkArgumentNotNull(port, "port");
 		this.reader = checkArgumentNotNull(reader, "reader");
 		this.writer = checkArgumentNotNull(writer, "writer");
+		this.metrics = metrics;
+
+		if (reader instanceof LineStatusReader)
+			((LineStatusReader) reader).setLineStatusListener(new LineStatusDispatcher());
+
+		if (metrics != null) {
+			if (reader instanceof InstrumentedIoOperation)
+				((InstrumentedIoOperation) reader).setMetrics(metrics);
+			if (writer instanceof InstrumentedIoOperation)
+				((InstrumentedIoOperation) writer).setMetrics(metrics);
+			metrics.register();
+		}
+	}
+
+	/**
+	 * Returns new metrics for the given port, or <code>null</code> if the metrics are disabled.
+	 */
+	@CheckForNull
+	private static ConnectionMetrics newMetrics(@Nullable SerialPort port) {
+		if (!ConnectionMetrics.isEnabled() || port == null)
+			return null;
+		return new ConnectionMetrics(port.getPortName());
 	}
 
 	/**
@@ -96,17 +204,64 @@ public class BasicSerialConnection implements SerialConnection {
 	/** {@inheritDoc} */
 	public final void write(@Nonnull byte[] data) throws IOException {
 		checkArgumentNotNull(data, "data");
+		writeToPort(data, null, data.length);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The buffers are passed to the {@link Writer}, if it implements the interface
+	 * {@link GatheringWriter}. Otherwise they are concatenated and written with
+	 * {@link Writer#write(byte[])}.
+	 */
+	public final void write(@Nonnull ByteBuffer[] data) throws IOException {
+		int length = ByteBuffers.remaining(data);
+		if (length == 0) {
+			ensurePortIsOpen();
+			return;
+		}
+		writeToPort(null, data, length);
+		ByteBuffers.consume(data);
+	}
+
+	/**
+	 * Writes the given array or the given buffers to the port and closes the port, if the write
+	 * fails.
+	 * 
+	 * @param data
+	 *            the array to write, <code>null</code> if the buffers are written
+	 * @param buffers
+	 *            the buffers to write, <code>null</code> if the array is written
+	 * @param length
+	 *            the number of bytes to write
+	 */
+	private void writeToPort(@Nullable byte[] data, @Nullable ByteBuffer[] buffers, int length) throws IOException {
 		ensurePortIsOpen();
+		EchoFilter filter = echoFilter;
+		if (filter != null)
+			filter.sent(data != null ? data : ByteBuffers.toByteArray(buffers));
 		try {
-			writer.write(data);
+			long start = metrics != null ? nanoTime() : 0;
+			if (data != null)
+				writer.write(data);
+			else if (writer instanceof GatheringWriter)
+				((GatheringWriter) writer).write(buffers, length);
+			else
+				writer.write(ByteBuffers.toByteArray(buffers));
+			if (metrics != null)
+				metrics.writeCompleted(length, nanoTime() - start);
 		}
 		catch (NativeCodeException e) {
+			if (metrics != null)
+				metrics.writeFailed();
 			// NOTE: If a NativeCodeException is thrown, the port must be closed in order to dispose
 			// all resources.
 			close();
 			throw e;
 		}
 		catch (IOException e) {
+			if (metrics != null)
+				metrics.writeFailed();
 			// NOTE: If a IOException is thrown, the port must be closed in order to dispose
 			// all resources.
 			close();
@@ -117,17 +272,148 @@ public class BasicSerialConnection implements SerialConnection {
 	/** {@inheritDoc} */
 	@Nonnull
 	public final byte[] read() throws IOException {
+		return readData(null);
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public final byte[] read(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws IOException {
+		return read(Deadline.after(timeout, unit));
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public final byte[] read(@Nonnull Deadline deadline) throws IOException {
+		checkArgumentNotNull(deadline, "deadline");
+		return readData(deadline);
+	}
+
+	/** {@inheritDoc} */
+	@Nonnull
+	public final byte[] readFully(@Nonnegative int length, @Nonnull Deadline deadline) throws IOException {
+		checkArgument(length >= 0, "length", "Expected a value greater or equal to 0!");
+		checkArgumentNotNull(deadline, "deadline");
+
+		readLock.lock();
+		try {
+			byte[] result = new byte[length];
+			int count = 0;
+			while (count < length) {
+				byte[] data = readData(deadline);
+				if (data.length == 0) {
+					// the deadline expired, the received bytes are returned by the next read
+					if (count > 0)
+						setUnreadData(copyOfRange(result, 0, count));
+					InterruptedIOException e = new InterruptedIOException("Read timed out on port " + port.getPortName() + "! Received " + count + " of " + length + " bytes.");
+					e.bytesTransferred = count;
+					throw e;
+				}
+
+				int n = Math.min(data.length, length - count);
+				System.arraycopy(data, 0, result, count, n);
+				count += n;
+				if (n < data.length)
+					setUnreadData(copyOfRange(data, n, data.length));
+			}
+			return result;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The timestamp is provided by the {@link Reader}, if it implements the interface
+	 * {@link TimestampingReader}. Otherwise the data is stamped, when the reader returns it.
+	 */
+	public final void read(@Nonnull ReceivedData result) throws IOException {
+		checkArgumentNotNull(result, "result");
+		readLock.lock();
+		try {
+			byte[] data = readData(null);
+			result.set(data, data.length, receiveTimestamp);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Keeps the given data, that was received by the last read, for the next read. Must be called
+	 * while the readLock is held.
+	 */
+	private void setUnreadData(byte[] data) {
+		unreadData = data;
+		unreadTimestamp = receiveTimestamp;
+	}
+
+	/** Returns a copy of the given range of the array. */
+	private static byte[] copyOfRange(byte[] data, int from, int to) {
+		byte[] copy = new byte[to - from];
+		System.arraycopy(data, from, copy, 0, copy.length);
+		return copy;
+	}
+
+	/**
+	 * Returns the unread data or reads from the port.
+	 * 
+	 * @param deadline
+	 *            the deadline for the read, <code>null</code> to block until data is received
+	 * @return the data, an empty array if the deadline expired
+	 */
+	@Nonnull
+	private byte[] readData(@Nullable Deadline deadline) throws IOException {
 		ensurePortIsOpen();
+		readLock.lock();
 		try {
-			return reader.read();
+			if (unreadData != null) {
+				byte[] data = unreadData;
+				unreadData = null;
+				receiveTimestamp = unreadTimestamp;
+				return data;
+			}
+			return readFromPort(deadline);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Reads from the port and closes the port, if the read fails. If the echo suppression is
+	 * enabled, the reads are repeated until data without the echo is received or the deadline
+	 * expires.
+	 */
+	@Nonnull
+	private byte[] readFromPort(@Nullable Deadline deadline) throws IOException {
+		try {
+			while (true) {
+				byte[] data = deadline == null ? reader.read() : reader.read(deadline);
+				receiveTimestamp = reader instanceof TimestampingReader ? ((TimestampingReader) reader).getReceiveTimestamp() : nanoTime();
+				if (metrics != null && data.length > 0)
+					metrics.readCompleted(data.length);
+
+				EchoFilter filter = echoFilter;
+				if (filter == null || data.length == 0)
+					return data;
+				data = filter.filter(data);
+				if (data.length > 0)
+					return data;
+			}
 		}
 		catch (NativeCodeException e) {
+			if (metrics != null)
+				metrics.readFailed();
 			// NOTE: If a NativeCodeException is thrown, the port must be closed in order to dispose
 			// all resources.
 			close();
 			throw e;
 		}
 		catch (IOException e) {
+			if (metrics != null)
+				metrics.readFailed();
 			// NOTE: If a IOException is thrown, the port must be closed in order to dispose
 			// all resources.
 			close();
@@ -141,6 +427,7 @@ public class BasicSerialConnection implements SerialConnection {
 		try {
 			if (isClosed)
 				return;
+			long start = metrics != null ? nanoTime() : 0;
 			//@formatter:off
 			try {
 				// close the reader and writer
@@ -148,10 +435,13 @@ public class BasicSerialConnection implements SerialConnection {
 			} finally { try {
 				// close system dependent resources
 				closeInternal();
-			} finally {
+			} finally { try {
 				// dispose the allocated resources of the reader and writer
 				disposeReaderAndWriter();
-			}}
+			} finally {
+				// record the close time and unregister the metrics
+				releaseMetrics(start);
+			}}}
 			// @formatter:on
 		}
 		finally {
@@ -170,6 +460,14 @@ public class BasicSerialConnection implements SerialConnection {
 		}
 	}
 
+	/** Records the time to close this connection and unregisters the metrics. */
+	private void releaseMetrics(long closeStart) {
+		if (metrics == null)
+			return;
+		metrics.closeCompleted(nanoTime() - closeStart);
+		metrics.unregister();
+	}
+
 	/** Disposes the resources of the read and write operations. */
 	private void disposeReaderAndWriter() {
 		try {
@@ -191,18 +489,112 @@ public class BasicSerialConnection implements SerialConnection {
 	 */
 	protected void closeInternal() throws IOException {}
 
+	/**
+	 * Locks this connection for a subclass, that changes the state of the open serial port, e.g.
+	 * applies changed control settings. The port can't be closed, until the lock is released with
+	 * {@link #unlockOpenPort()}:
+	 * 
+	 * <pre>
+	 * lockOpenPort();
+	 * try {
+	 * 	// change the state of the port
+	 * }
+	 * finally {
+	 * 	unlockOpenPort();
+	 * }
+	 * </pre>
+	 * 
+	 * @throws IOException
+	 *             if this port is closed, the connection is not locked then
+	 */
+	protected final void lockOpenPort() throws IOException {
+		closeLock.lock();
+		if (isClosed) {
+			closeLock.unlock();
+			throw portClosedException();
+		}
+	}
+
+	/**
+	 * Releases the lock, that was acquired by {@link #lockOpenPort()}.
+	 */
+	protected final void unlockOpenPort() {
+		closeLock.unlock();
+	}
+
+	/**
+	 * Discards the data, that was received but not returned yet: the data, that was received by
+	 * {@link #readFully(int, Deadline)} but not returned, unless another thread reads at the same
+	 * time, and the recorded echo of the written bytes. Subclasses, that implement
+	 * {@link PurgeableConnection}, call this method after the input buffer of the port was purged,
+	 * while the port is locked by {@link #lockOpenPort()}.
+	 */
+	protected final void discardReceivedData() {
+		// the echo of the sent bytes may be discarded as well
+		EchoFilter filter = echoFilter;
+		if (filter != null)
+			filter.clear();
+
+		// a thread, that reads at the same time, has already taken the unread data
+		if (readLock.tryLock()) {
+			try {
+				unreadData = null;
+			}
+			finally {
+				readLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Enables or disables the suppression of the local echo. If enabled, the written bytes are
+	 * removed from the received data, when they are received again, e.g. on a 2-wire RS-485 bus.
+	 * Subclasses call this method, if the echo suppression is enabled by the
+	 * {@link SerialPortSettings}.
+	 * 
+	 * @param enabled
+	 *            <ul>
+	 *            <li> <code>true</code> removes the echo of the written bytes
+	 *            <li> <code>false</code> returns the received data unchanged
+	 *            </ul>
+	 */
+	protected final void setEchoSuppression(boolean enabled) {
+		if (!enabled)
+			echoFilter = null;
+		else if (echoFilter == null)
+			echoFilter = new EchoFilter();
+	}
+
 	/** {@inheritDoc} */
 	public final boolean isClosed() {
 		return isClosed;
 	}
 
+	/** {@inheritDoc} */
+	@CheckForNull
+	public final ConnectionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** {@inheritDoc} */
+	public final void addLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		lineStatusListeners.add(listener);
+	}
+
+	/** {@inheritDoc} */
+	public final void removeLineStatusListener(@Nonnull LineStatusListener listener) {
+		checkArgumentNotNull(listener, "listener");
+		lineStatusListeners.remove(listener);
+	}
+
 	/**
 	 * Throw an {@link IOException} if this port is closed.
 	 * 
 	 * @throws IOException
 	 *             if this port is closed
 	 */
-	private void ensurePortIsOpen() throws IOException {
+	protected final void ensurePortIsOpen() throws IOException {
 		if (isClosed)
 			throw portClosedException();
 	}
@@ -242,4 +634,27 @@ public class BasicSerialConnection implements SerialConnection {
 			message = " " + message;
 		return new IOException("Port " + port.getPortName() + " was closed!" + message);
 	}
+
+	/**
+	 * Notifies the line status listeners of this connection. Exceptions thrown by a listener are
+	 * passed to the {@link Thread.UncaughtExceptionHandler} of the current thread, so the read
+	 * operation is not aborted.
+	 */
+	private final class LineStatusDispatcher implements LineStatusListener {
+
+		/** {@inheritDoc} */
+		public void lineStatusChanged(@Nonnull LineStatusEvent event) {
+			if (metrics != null)
+				metrics.lineErrorsDetected(event.getErrors());
+			for (LineStatusListener listener : lineStatusListeners) {
+				try {
+					listener.lineStatusChanged(event);
+				}
+				catch (RuntimeException e) {
+					Thread thread = currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.xidobi.GatheringConnection;
+import org.xidobi.SerialConnection;
+
+/**
+ * Utilities for the gathering writes of {@link ByteBuffer}'s.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see GatheringWriter
+ * @see GatheringConnection
+ */
+public final class ByteBuffers {
+
+	/** Prevents instantiation. */
+	private ByteBuffers() {}
+
+	/**
+	 * Returns the total number of remaining bytes of the given buffers.
+	 * 
+	 * @param buffers
+	 *            the buffers, must not be <code>null</code> and must not contain <code>null</code>
+	 * @return the number of remaining bytes
+	 * @exception IllegalArgumentException
+	 *                if a buffer is <code>null</code> or the total number of bytes exceeds
+	 *                {@link Integer#MAX_VALUE}
+	 */
+	@Nonnegative
+	public static int remaining(@Nonnull ByteBuffer[] buffers) {
+		checkArgumentNotNull(buffers, "buffers");
+		long remaining = 0;
+		for (int i = 0; i < buffers.length; i++)
+			remaining += checkArgumentNotNull(buffers[i], "buffers[" + i + "]").remaining();
+		checkArgument(remaining <= Integer.MAX_VALUE, "buffers", "Expected at most " + Integer.MAX_VALUE + " remaining bytes!");
+		return (int) remaining;
+	}
+
+	/**
+	 * Returns the remaining bytes of the given buffers in a single array. The positions of the
+	 * buffers are not changed.
+	 * 
+	 * @param buffers
+	 *            the buffers, must not be <code>null</code> and must not contain <code>null</code>
+	 * @return the remaining bytes, never <code>null</code>
+	 */
+	@Nonnull
+	public static byte[] toByteArray(@Nonnull ByteBuffer[] buffers) {
+		byte[] data = new byte[remaining(buffers)];
+		int offset = 0;
+		for (ByteBuffer buffer : buffers) {
+			int length = buffer.remaining();
+			buffer.duplicate().get(data, offset, length);
+			offset += length;
+		}
+		return data;
+	}
+
+	/**
+	 * Sets the positions of the given buffers to their limits, after their remaining bytes were
+	 * written.
+	 * 
+	 * @param buffers
+	 *            the buffers, must not be <code>null</code> and must not contain <code>null</code>
+	 */
+	public static void consume(@Nonnull ByteBuffer[] buffers) {
+		for (ByteBuffer buffer : buffers)
+			buffer.position(buffer.limit());
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffers to the given connection. The buffers are
+	 * passed to the connection, if it is a {@link GatheringConnection}. Otherwise they are
+	 * concatenated and written with {@link SerialConnection#write(byte[])}. The positions of the
+	 * buffers are set to their limits, after the bytes were written. If the write fails, the
+	 * positions are not changed by this method.
+	 * 
+	 * @param connection
+	 *            the connection to write to, must not be <code>null</code>
+	 * @param buffers
+	 *            the buffers to write, must not be <code>null</code> and must not contain
+	 *            <code>null</code>
+	 * @throws IOException
+	 *             if the connection was closed or an unexpected I/O error occurs
+	 */
+	public static void write(@Nonnull SerialConnection connection, @Nonnull ByteBuffer[] buffers) throws IOException {
+		checkArgumentNotNull(connection, "connection");
+		if (connection instanceof GatheringConnection) {
+			((GatheringConnection) connection).write(buffers);
+			return;
+		}
+		connection.write(toByteArray(buffers));
+		consume(buffers);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Removes the local echo of the transmitted bytes from the received data. On a 2-wire RS-485 bus
+ * the receiver of the own transceiver is connected to the same lines as the driver, so every
+ * transmitted byte is received again.
+ * <p>
+ * The transmitted bytes are recorded by {@link #sent(byte[])} before they are written. The
+ * received data is compared with the recorded bytes by {@link #filter(byte[])}, matching bytes
+ * are removed. If a received byte doesn't match, e.g. because the echo was corrupted by a
+ * collision on the bus, the remaining recorded bytes are discarded and the received data is
+ * returned unchanged.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see BasicSerialConnection#setEchoSuppression(boolean)
+ */
+@ThreadSafe
+final class EchoFilter {
+
+	/** the initial capacity of the buffer for the recorded bytes */
+	private static final int INITIAL_CAPACITY = 256;
+	/**
+	 * the maximum number of recorded bytes, if more bytes are written without receiving their echo
+	 * the oldest bytes are discarded
+	 */
+	static final int MAX_CAPACITY = 64 * 1024;
+
+	/** the recorded bytes, whose echo was not received yet, is used as a ring buffer */
+	private byte[] expected = new byte[INITIAL_CAPACITY];
+	/** the index of the oldest recorded byte */
+	private int head;
+	/** the number of recorded bytes */
+	private int size;
+
+	/**
+	 * Records the given bytes, whose echo is expected. Must be called before the bytes are
+	 * written, because the echo can be received before the write returns.
+	 * 
+	 * @param data
+	 *            the bytes, that will be written, must not be <code>null</code>
+	 */
+	synchronized void sent(@Nonnull byte[] data) {
+		int offset = 0;
+		int length = data.length;
+		if (length > MAX_CAPACITY) {
+			// only the echo of the last bytes can be recognized
+			offset = length - MAX_CAPACITY;
+			length = MAX_CAPACITY;
+		}
+		ensureCapacity(length);
+
+		for (int i = offset; i < offset + length; i++) {
+			if (size == expected.length) {
+				// discard the oldest byte
+				head = (head + 1) % expected.length;
+				size--;
+			}
+			expected[(head + size) % expected.length] = data[i];
+			size++;
+		}
+	}
+
+	/**
+	 * Removes the echo of the recorded bytes from the given received data.
+	 * 
+	 * @param data
+	 *            the received data, must not be <code>null</code>
+	 * @return the received data without the echo, the given array if it contains no echo, never
+	 *         <code>null</code>
+	 */
+	@Nonnull
+	synchronized byte[] filter(@Nonnull byte[] data) {
+		int echo = 0;
+		while (echo < data.length && size > 0) {
+			if (data[echo] != expected[head]) {
+				// the echo was lost or corrupted, the data was sent by another device
+				clear();
+				break;
+			}
+			head = (head + 1) % expected.length;
+			size--;
+			echo++;
+		}
+
+		if (echo == 0)
+			return data;
+		byte[] result = new byte[data.length - echo];
+		System.arraycopy(data, echo, result, 0, result.length);
+		return result;
+	}
+
+	/** Discards the recorded bytes, e.g. when the buffers of the port are purged. */
+	synchronized void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	/** Returns the number of recorded bytes, whose echo was not received yet. */
+	synchronized int getExpectedBytes() {
+		return size;
+	}
+
+	/** Grows the buffer, so that the given number of bytes can be added without discarding. */
+	private void ensureCapacity(int length) {
+		int required = Math.min(size + length, MAX_CAPACITY);
+		if (required <= expected.length)
+			return;
+
+		int capacity = expected.length;
+		while (capacity < required)
+			capacity *= 2;
+		byte[] buffer = new byte[Math.min(capacity, MAX_CAPACITY)];
+		for (int i = 0; i < size; i++)
+			buffer[i] = expected[(head + i) % expected.length];
+		expected = buffer;
+		head = 0;
+	}
+}
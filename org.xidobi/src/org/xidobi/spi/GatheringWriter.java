@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+import org.xidobi.GatheringConnection;
+
+/**
+ * This interface can be implemented by a {@link Writer} of a service provider, that is able to
+ * write several buffers with a single write operation. If the writer doesn't implement this
+ * interface, the {@link BasicSerialConnection} concatenates the buffers and passes them to
+ * {@link Writer#write(byte[])}.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see GatheringConnection#write(ByteBuffer[])
+ */
+public interface GatheringWriter {
+
+	/**
+	 * The implementation must write the remaining bytes of the given buffers in their order to the
+	 * port, with a single write operation if possible. The positions of the buffers must not be
+	 * changed, they are advanced by the {@link BasicSerialConnection} after the write.
+	 * <p>
+	 * This method will be called by {@link BasicSerialConnection#write(ByteBuffer[])}, if the port
+	 * is open and at least one byte remains in the buffers.
+	 * <p>
+	 * <b>IMPORTANT:</b> Dont call this method yourself! Otherwise there is no guaratee that the
+	 * port is currently open!
+	 * 
+	 * @param data
+	 *            the buffers, never <code>null</code> and never contains <code>null</code>
+	 * @param length
+	 *            the total number of remaining bytes of the buffers
+	 * @throws IOException
+	 *             when the write operation timed out or the serial port is not open
+	 */
+	void write(@Nonnull ByteBuffer[] data, int length) throws IOException;
+}
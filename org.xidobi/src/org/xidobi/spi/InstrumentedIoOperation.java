@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import javax.annotation.Nullable;
+
+import org.xidobi.ConnectionMetrics;
+
+/**
+ * This interface can be implemented by a {@link Reader} or {@link Writer} of a service provider,
+ * that records metrics of its native operations, e.g. the time to wait for a communication event.
+ * The {@link BasicSerialConnection} records the metrics of the read and write operations itself.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see ConnectionMetrics
+ */
+public interface InstrumentedIoOperation {
+
+	/**
+	 * Sets the metrics, that must be updated by this I/O operation.
+	 * <p>
+	 * <b>IMPORTANT:</b> Dont call this method yourself! It is called by the constructor of the
+	 * {@link BasicSerialConnection}, before the first I/O operation.
+	 * 
+	 * @param metrics
+	 *            the metrics, <code>null</code> if the metrics are disabled
+	 */
+	void setMetrics(@Nullable ConnectionMetrics metrics);
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import javax.annotation.Nullable;
+
+import org.xidobi.LineStatusListener;
+
+/**
+ * This interface can be implemented by a {@link Reader} of a service provider, that is able to
+ * detect changes of the modem control signals and line errors, while it waits for data. If the
+ * reader doesn't implement this interface, the listeners of a {@link BasicSerialConnection} are
+ * never notified.
+ * 
+ * @author Tobias Breler
+ * 
+ * @see BasicSerialConnection#addLineStatusListener(LineStatusListener)
+ */
+public interface LineStatusReader {
+
+	/**
+	 * Sets the listener, that must be notified by {@link Reader#read()} about line status changes.
+	 * <p>
+	 * <b>IMPORTANT:</b> Dont call this method yourself! It is called by the
+	 * {@link BasicSerialConnection}.
+	 * 
+	 * @param listener
+	 *            the listener, <code>null</code> if no listener should be notified
+	 */
+	void setLineStatusListener(@Nullable LineStatusListener listener);
+}
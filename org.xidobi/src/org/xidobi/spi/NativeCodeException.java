@@ -34,7 +34,25 @@ public class NativeCodeException extends RuntimeException {
 	 *            an error description, can be <code>null</code>
 	 */
 	public NativeCodeException(String message) {
-		super(buildMessage(message));
+		super(message);
+	}
+
+	/**
+	 * Returns the error description with an additional bug report link.
+	 */
+	@Override
+	public String getMessage() {
+		return buildMessage(getDescription());
+	}
+
+	/**
+	 * Returns the error description, that was passed to the constructor. Subclasses can overwrite
+	 * this method in order to build the description lazily, when the message is requested.
+	 * 
+	 * @return the error description, can be <code>null</code>
+	 */
+	protected String getDescription() {
+		return super.getMessage();
 	}
 
 	/** Returns a message with additional bug report link. */
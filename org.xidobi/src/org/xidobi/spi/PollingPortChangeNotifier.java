@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.xidobi.spi.Preconditions.checkArgument;
+import static org.xidobi.spi.Preconditions.checkArgumentNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link PortChangeNotifier} for service provider, that are not able to detect changes of the
+ * serial ports. It reports a possible change once per interval, so the serial ports are polled.
+ * 
+ * @author Tobias Breler
+ */
+public class PollingPortChangeNotifier implements PortChangeNotifier {
+
+	/** the poll interval in nanoseconds */
+	private final long interval;
+	/** the point in time (see {@link System#nanoTime()}) of the next poll */
+	private long nextPoll;
+
+	/**
+	 * Creates a new notifier, that reports a possible change once per interval.
+	 * 
+	 * @param interval
+	 *            the poll interval, must be greater than 0
+	 * @param unit
+	 *            the unit of the interval, must not be <code>null</code>
+	 */
+	public PollingPortChangeNotifier(	@Nonnegative long interval,
+										@Nonnull TimeUnit unit) {
+		checkArgument(interval > 0, "interval", "Expected a value greater than 0!");
+		checkArgumentNotNull(unit, "unit");
+		this.interval = unit.toNanos(interval);
+		nextPoll = nanoTime() + this.interval;
+	}
+
+	/** {@inheritDoc} */
+	public synchronized boolean awaitChange(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+		checkArgument(timeout >= 0, "timeout", "Expected a value greater or equal to 0!");
+		checkArgumentNotNull(unit, "unit");
+
+		long timeoutNanos = unit.toNanos(timeout);
+		long remaining = nextPoll - nanoTime();
+		if (remaining > timeoutNanos) {
+			NANOSECONDS.sleep(timeoutNanos);
+			return false;
+		}
+
+		NANOSECONDS.sleep(remaining);
+		nextPoll = nanoTime() + interval;
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	public void close() {}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import org.xidobi.SerialPortWatcher;
+
+/**
+ * This interface is implemented by service provider to notify the {@link SerialPortWatcher} about
+ * possible changes of the installed serial ports.
+ * <p>
+ * A notifier may report a change, even if the serial ports were not changed. The
+ * {@link SerialPortWatcher} compares the serial ports before it fires events.
+ * 
+ * @author Tobias Breler
+ * 
+ * @see PortChangeNotifierProvider
+ * @see SerialPortWatcher
+ */
+public interface PortChangeNotifier extends Closeable {
+
+	/**
+	 * Blocks until the serial ports may have changed or the timeout elapsed.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait, must not be negative
+	 * @param unit
+	 *            the unit of the timeout, must not be <code>null</code>
+	 * @return <ul>
+	 *         <li> <code>true</code> if the serial ports may have changed
+	 *         <li> <code>false</code> if the timeout elapsed
+	 *         </ul>
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting
+	 */
+	boolean awaitChange(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws InterruptedException;
+
+	/**
+	 * Releases all resources of this notifier. Calling this method more than once has no effect.
+	 */
+	void close();
+}
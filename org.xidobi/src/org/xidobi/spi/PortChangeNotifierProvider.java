@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import javax.annotation.Nonnull;
+
+import org.xidobi.SerialPortFinder;
+import org.xidobi.SerialPortWatcher;
+
+/**
+ * This interface can be implemented by a {@link SerialPortFinder} of a service provider, that is
+ * able to detect changes of the installed serial ports without enumerating them. If the finder
+ * doesn't implement this interface, the {@link SerialPortWatcher} polls the serial ports.
+ * 
+ * @author Tobias Breler
+ * 
+ * @see PortChangeNotifier
+ */
+public interface PortChangeNotifierProvider {
+
+	/**
+	 * Returns a new notifier, that detects changes of the serial ports found by this finder. The
+	 * caller must close the notifier.
+	 * 
+	 * @return a new notifier, never <code>null</code>
+	 */
+	@Nonnull
+	PortChangeNotifier newPortChangeNotifier();
+}
@@ -19,6 +19,8 @@ import java.io.IOException;
 
 import javax.annotation.Nonnull;
 
+import org.xidobi.Deadline;
+
 /**
  * This interface is implemented by service provider to read from a serial port.
  * 
@@ -45,4 +47,26 @@ public interface Reader extends IoOperation {
 	@Nonnull
 	byte[] read() throws IOException;
 
+	/**
+	 * The implementation must block until at least one byte can be returned, the given deadline
+	 * expires or an {@link IOException} is thrown. If the deadline expires, the implementation
+	 * must return an empty array and must remain usable for further reads.
+	 * <p>
+	 * This method will be called by {@link BasicSerialConnection#read(Deadline)} only if the port
+	 * is open.
+	 * <p>
+	 * <b>IMPORTANT:</b> Dont call this method yourself! Otherwise there is no guaratee that the
+	 * port is currently open!
+	 * 
+	 * @param deadline
+	 *            the deadline for the read, never <code>null</code>
+	 * @return the byte's read from the port, an empty array if the deadline expired, never
+	 *         <code>null</code>
+	 * @throws IOException
+	 *             if this port was closed or an unexpected I/O error occurs or the thread was
+	 *             interrupted
+	 */
+	@Nonnull
+	byte[] read(@Nonnull Deadline deadline) throws IOException;
+
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 Gemtec GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xidobi.spi;
+
+import org.xidobi.ReceivedData;
+
+/**
+ * This interface can be implemented by a {@link Reader} of a service provider, that is able to
+ * determine when the data was received, e.g. when the native wait for the data completed. If the
+ * reader doesn't implement this interface, the {@link BasicSerialConnection} stamps the data, when
+ * the read returns.
+ * 
+ * @author Christian Schwarz
+ * 
+ * @see BasicSerialConnection#read(ReceivedData)
+ */
+public interface TimestampingReader {
+
+	/**
+	 * Returns the time, when the data, that was returned by the last read, was received.
+	 * <p>
+	 * <b>IMPORTANT:</b> Dont call this method yourself! It is called by the
+	 * {@link BasicSerialConnection} after each read.
+	 * 
+	 * @return the value of {@link System#nanoTime()}, when the data was received
+	 */
+	long getReceiveTimestamp();
+}